@@ -1,29 +1,86 @@
 package musichub.client;
 
 import musichub.business.IMusicHub;
+import musichub.main.CachingMusicHub;
 import musichub.main.MusicTerminal;
 
 import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
 import javax.xml.ws.Service;
+import javax.xml.ws.soap.MTOMFeature;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Client's main class
+ * Client's main class<br>
+ *
+ * Options, given as "--key=value":<br>
+ * - host: host of the server (default localhost)<br>
+ * - port: port of the server (default 7779)<br>
+ * - connect.timeout: milliseconds to wait for the connection to the server, 0 to wait forever (default 0)<br>
+ * - request.timeout: milliseconds to wait for an answer of the server, 0 to wait forever (default 0)
  */
 public class Main {
 	public static void main(String[] args) throws MalformedURLException {
-		String ip = "localhost";
-	    if (args.length > 1) {
-	    	ip = args[1];
+		String host = "localhost";
+		String port = "7779";
+		int connectTimeout = 0;
+		int requestTimeout = 0;
+
+		List<String> params = new ArrayList<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				params.add(arg);
+				continue;
+			}
+
+			String value = arg.substring(separator + 1);
+			switch (arg.substring(2, separator)) {
+				case "host": host = value; break;
+				case "port": port = value; break;
+				case "connect.timeout": connectTimeout = parseTimeout(value); break;
+				case "request.timeout": requestTimeout = parseTimeout(value); break;
+				default: System.out.println("Unknown option " + arg);
+			}
 		}
 
-		URL url = new URL("http://" + ip + ":7779/ws/musichub?wsdl");
+	    if (params.size() > 1) {
+	    	host = params.get(1);
+		}
+
+		// the port of the server can be given, such as the one of a replica
+		String address = host.contains(":") ? host : host + ":" + port;
+
+		URL url = new URL("http://" + address + "/ws/musichub?wsdl");
 		QName qname = new QName("http://server.musichub/", "ServerMusicHubService");
 
 		Service service = Service.create(url, qname);
-		IMusicHub musicHub = service.getPort(IMusicHub.class);
+		// audio files are sent and received as binary attachments, like the server does
+		IMusicHub musicHub = service.getPort(IMusicHub.class, new MTOMFeature());
 
-		new MusicTerminal(musicHub).parseCommands("MusicHub-Client$ ");
+		// the JAX-WS bundled with the JDK reads its own keys, the reference implementation the others
+		Map<String, Object> context = ((BindingProvider) musicHub).getRequestContext();
+		context.put("com.sun.xml.internal.ws.connect.timeout", connectTimeout);
+		context.put("com.sun.xml.internal.ws.request.timeout", requestTimeout);
+		context.put("com.sun.xml.ws.connect.timeout", connectTimeout);
+		context.put("com.sun.xml.ws.request.timeout", requestTimeout);
+
+		// listings are displayed before most prompts: keep them until the catalog changes
+		new MusicTerminal(new CachingMusicHub(musicHub)).parseCommands("MusicHub-Client$ ");
+	}
+
+	private static int parseTimeout(String value) {
+		try {
+			int parsed = Integer.parseInt(value.trim());
+			if (parsed >= 0)
+				return parsed;
+		} catch (NumberFormatException ignored) {
+		}
+		System.out.println("Invalid timeout " + value + ", wait forever");
+		return 0;
 	}
 }
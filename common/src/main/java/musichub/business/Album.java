@@ -11,6 +11,7 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Class representing an album in MusicHub.<br>
@@ -57,18 +58,30 @@ public class Album {
 	@Getter private final Date date;
 
 	/**
-	 * Identifiers of the album's songs
+	 * Identifiers of the album's songs. Copy-on-write, so it can be read while the server adds songs.
 	 */
 	@XmlElement(name = "songs")
-	@Getter private final List<UUID> songs = new ArrayList<>();
+	@Getter private final List<UUID> songs = new CopyOnWriteArrayList<>();
 
 	public Album (@NonNull String title, @NonNull String artist, int lengthInSeconds, @NonNull Date date) {
+		this(UUID.randomUUID(), title, artist, lengthInSeconds, date);
+	}
+
+	/**
+	 * Create an album with a known id, for instance when it is restored from storage
+	 * @param uuid id of the album
+	 * @param title title
+	 * @param artist artist
+	 * @param lengthInSeconds total duration in seconds
+	 * @param date publication date
+	 */
+	public Album (@NonNull UUID uuid, @NonNull String title, @NonNull String artist, int lengthInSeconds, @NonNull Date date) {
 	    assert(lengthInSeconds >= 0);
 
 		this.title = title;
 		this.artist = artist;
 		this.lengthInSeconds = lengthInSeconds;
-		this.uuid = UUID.randomUUID();
+		this.uuid = uuid;
 		this.date = date;
 	}
 
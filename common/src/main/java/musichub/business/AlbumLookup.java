@@ -0,0 +1,31 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Result of a multi-get of albums
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class AlbumLookup extends CatalogLookup {
+	/**
+	 * Albums found, in request order
+	 */
+	@Getter private final Album[] found;
+
+	/**
+	 * Create a result
+	 * @param found albums found
+	 * @param missing requested keys which matched nothing
+	 */
+	public AlbumLookup (Album[] found, String[] missing) {
+		super(missing);
+		this.found = found;
+	}
+
+	private AlbumLookup () {
+		this(new Album[0], new String[0]);
+	}
+}
@@ -0,0 +1,32 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Page of albums
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class AlbumPage extends CatalogPage {
+	/**
+	 * Albums of the page, in listing order
+	 */
+	@Getter private final Album[] items;
+
+	/**
+	 * Create a page
+	 * @param items albums of the page
+	 * @param nextCursor cursor of the next page, null if this page is the last one
+	 * @param total number of albums in the whole listing
+	 */
+	public AlbumPage (Album[] items, String nextCursor, int total) {
+		super(nextCursor, total);
+		this.items = items;
+	}
+
+	private AlbumPage () {
+		this(new Album[0], null, 0);
+	}
+}
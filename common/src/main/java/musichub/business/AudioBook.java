@@ -4,6 +4,7 @@ import lombok.Getter;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import java.util.UUID;
 
 /**
  * Class representing an audio book in MusicHub
@@ -32,6 +33,23 @@ public class AudioBook extends AudioElement {
 		this.category = category;
 	}
 
+	/**
+	 * Create an audio book with a known id, for instance when it is restored from storage
+	 * @param uuid id of the audio book
+	 * @param title title
+	 * @param artist artist
+	 * @param lengthInSeconds duration in seconds
+	 * @param content path of the audio file
+	 * @param language language
+	 * @param category category
+	 */
+	public AudioBook(UUID uuid, String title, String artist, int lengthInSeconds, String content, Language language, Category category) {
+		super(uuid, title, artist, lengthInSeconds, content);
+
+		this.language = language;
+		this.category = category;
+	}
+
 	@Override
 	public String toString() {
 		return super.toString() + ", Language = " + getLanguage() + ", Category = " + getCategory() + "\n";
@@ -45,11 +45,23 @@ public abstract class AudioElement {
 	@Getter protected String content;
 
 	public AudioElement (String title, String artist, int lengthInSeconds, String content) {
+		this(UUID.randomUUID(), title, artist, lengthInSeconds, content);
+	}
+
+	/**
+	 * Create an audio element with a known id, for instance when it is restored from storage
+	 * @param uuid id of the element
+	 * @param title title
+	 * @param artist artist
+	 * @param lengthInSeconds duration in seconds
+	 * @param content path of the audio file
+	 */
+	protected AudioElement (UUID uuid, String title, String artist, int lengthInSeconds, String content) {
 		this.title = title;
 		this.artist = artist;
 		this.lengthInSeconds = lengthInSeconds;
 		this.content = content;
-		this.uuid =  UUID.randomUUID();
+		this.uuid = uuid;
 	}
 
 	/**
@@ -74,12 +86,30 @@ public abstract class AudioElement {
 		if (handler == null)
 			return;
 
-		File dir = new File(dataPath);
-		dir.mkdirs();
-
-		File file = new File(dir, this.getUuid().toString() + ".wav");
-		content = file.getCanonicalPath();
+		new File(dataPath).mkdirs();
+		File file = attachFile(dataPath);
 
 		Files.copy(handler.getInputStream(), file.toPath());
 	}
+
+	/**
+	 * Point the content of this audio element to its file in a data directory, without writing it
+	 * @param dataPath The directory in which the file is stored
+	 * @return the content file
+	 * @throws IOException IO error when resolving the path of the file
+	 */
+	public File attachFile(String dataPath) throws IOException {
+		File file = new File(dataPath, this.getUuid().toString() + ".wav");
+		attachFile(file);
+		return file;
+	}
+
+	/**
+	 * Point the content of this audio element to a stored file, which may be shared with other elements
+	 * @param file The content file
+	 * @throws IOException IO error when resolving the path of the file
+	 */
+	public void attachFile(File file) throws IOException {
+		content = file.getCanonicalPath();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Additions to the catalog applied at once by {@link IMusicHub#addBatch(CatalogBatch)}<br>
+ *
+ * Memberships refer to elements, albums and play lists by title: either ones already in the catalog or ones
+ * added by the same batch.<br>
+ *
+ * Example: an album and its two songs
+ * <pre>new CatalogBatch().addElement(song1).addElement(song2).addAlbum(album)
+ *	.addToAlbum(song1.getTitle(), album.getTitle()).addToAlbum(song2.getTitle(), album.getTitle())</pre>
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CatalogBatch {
+	/**
+	 * Added audio elements, without content
+	 */
+	@Getter private final List<AudioElement> elements = new ArrayList<>();
+	/**
+	 * Added albums
+	 */
+	@Getter private final List<Album> albums = new ArrayList<>();
+	/**
+	 * Added play lists
+	 */
+	@Getter private final List<PlayList> playlists = new ArrayList<>();
+	/**
+	 * Songs added to albums
+	 */
+	@Getter private final List<Membership> albumSongs = new ArrayList<>();
+	/**
+	 * Elements added to play lists
+	 */
+	@Getter private final List<Membership> playlistElements = new ArrayList<>();
+
+	/**
+	 * Create an empty batch
+	 */
+	public CatalogBatch () {
+	}
+
+	/**
+	 * @param element an audio element to add
+	 * @return this batch
+	 */
+	public CatalogBatch addElement (AudioElement element) {
+		elements.add(element);
+		return this;
+	}
+
+	/**
+	 * @param album an album to add
+	 * @return this batch
+	 */
+	public CatalogBatch addAlbum (Album album) {
+		albums.add(album);
+		return this;
+	}
+
+	/**
+	 * @param playlist a play list to add
+	 * @return this batch
+	 */
+	public CatalogBatch addPlaylist (PlayList playlist) {
+		playlists.add(playlist);
+		return this;
+	}
+
+	/**
+	 * @param songTitle title of a song
+	 * @param albumTitle title of the album to add it to
+	 * @return this batch
+	 */
+	public CatalogBatch addToAlbum (String songTitle, String albumTitle) {
+		albumSongs.add(new Membership(songTitle, albumTitle));
+		return this;
+	}
+
+	/**
+	 * @param elementTitle title of an audio element
+	 * @param playListTitle title of the play list to add it to
+	 * @return this batch
+	 */
+	public CatalogBatch addToPlayList (String elementTitle, String playListTitle) {
+		playlistElements.add(new Membership(elementTitle, playListTitle));
+		return this;
+	}
+
+	/**
+	 * @return number of additions in the batch
+	 */
+	public int size () {
+		return elements.size() + albums.size() + playlists.size() + albumSongs.size() + playlistElements.size();
+	}
+}
@@ -0,0 +1,34 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlSeeAlso;
+
+/**
+ * Result of a multi-get of {@link IMusicHub}: the entities found, and the keys which matched nothing<br>
+ *
+ * Known implementations:<br>
+ * - {@link musichub.business.AlbumLookup}<br>
+ * - {@link musichub.business.PlayListLookup}<br>
+ * - {@link musichub.business.ElementLookup}<br>
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlSeeAlso({
+	AlbumLookup.class, PlayListLookup.class, ElementLookup.class
+})
+public abstract class CatalogLookup {
+	/**
+	 * Requested titles or ids which matched nothing, in request order
+	 */
+	@Getter private final String[] missing;
+
+	protected CatalogLookup (String[] missing) {
+		this.missing = missing;
+	}
+
+	protected CatalogLookup () {
+		this(new String[0]);
+	}
+}
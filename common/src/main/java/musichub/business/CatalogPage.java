@@ -0,0 +1,39 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlSeeAlso;
+
+/**
+ * Page of a listing, returned by the cursor based listings of {@link IMusicHub}<br>
+ *
+ * Known implementations:<br>
+ * - {@link musichub.business.AlbumPage}<br>
+ * - {@link musichub.business.PlayListPage}<br>
+ * - {@link musichub.business.ElementPage}<br>
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlSeeAlso({
+	AlbumPage.class, PlayListPage.class, ElementPage.class
+})
+public abstract class CatalogPage {
+	/**
+	 * Cursor to pass to get the next page, null if this page is the last one
+	 */
+	@Getter private final String nextCursor;
+	/**
+	 * Number of items in the whole listing
+	 */
+	@Getter private final int total;
+
+	protected CatalogPage (String nextCursor, int total) {
+		this.nextCursor = nextCursor;
+		this.total = total;
+	}
+
+	protected CatalogPage () {
+		this(null, 0);
+	}
+}
@@ -0,0 +1,77 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import java.util.UUID;
+
+/**
+ * A change of the catalog, as sent by {@link IMusicHub#changesSince}<br>
+ *
+ * Additions carry the added entity, deletions and memberships only ids. Deleting an element also removes it from
+ * the albums and playlists holding it.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CatalogUpdate {
+	/**
+	 * Kind of change
+	 */
+	public enum Type {
+		ADD_ELEMENT, ADD_ALBUM, ADD_PLAYLIST,
+		DELETE_ELEMENT, DELETE_ALBUM, DELETE_PLAYLIST,
+		ADD_TO_ALBUM, ADD_TO_PLAYLIST
+	}
+
+	/**
+	 * Kind of change
+	 */
+	@Getter private final Type type;
+	/**
+	 * Version of the catalog after the change. The changes of a batch share their version.
+	 */
+	@Getter private final long version;
+	/**
+	 * Added element, for {@link Type#ADD_ELEMENT}
+	 */
+	@Getter private final AudioElement element;
+	/**
+	 * Added album with its songs at that version, for {@link Type#ADD_ALBUM}
+	 */
+	@Getter private final Album album;
+	/**
+	 * Added playlist with its elements at that version, for {@link Type#ADD_PLAYLIST}
+	 */
+	@Getter private final PlayList playlist;
+	/**
+	 * Deleted entity, or element added to a container
+	 */
+	@Getter private final UUID target;
+	/**
+	 * Album or playlist of a membership
+	 */
+	@Getter private final UUID container;
+
+	/**
+	 * @param type kind of change
+	 * @param version version of the catalog after the change
+	 * @param element added element, or null
+	 * @param album added album, or null
+	 * @param playlist added playlist, or null
+	 * @param target deleted entity or added element, or null
+	 * @param container album or playlist of a membership, or null
+	 */
+	public CatalogUpdate (Type type, long version, AudioElement element, Album album, PlayList playlist, UUID target, UUID container) {
+		this.type = type;
+		this.version = version;
+		this.element = element;
+		this.album = album;
+		this.playlist = playlist;
+		this.target = target;
+		this.container = container;
+	}
+
+	private CatalogUpdate () {
+		this(null, 0, null, null, null, null, null);
+	}
+}
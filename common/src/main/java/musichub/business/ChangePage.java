@@ -0,0 +1,98 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Changes of the catalog since a version, returned by {@link IMusicHub#changesSince}<br>
+ *
+ * When the requested version is too old for the changes kept by the server, the page is a snapshot instead: it
+ * holds part of the catalog at {@link #getVersion()} and no update. The next parts are read with
+ * {@link IMusicHub#snapshotAfter} while {@link #isMore()}, and together replace the catalog of the client.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ChangePage {
+	/**
+	 * Version reached once the page is applied, to request the next page from
+	 */
+	@Getter private final long version;
+	/**
+	 * Whether more changes, or more parts of the snapshot, follow this page
+	 */
+	@Getter private final boolean more;
+	/**
+	 * Cursor of the next part of the snapshot, null if there is none
+	 */
+	@Getter private final String cursor;
+	/**
+	 * Changes in version order
+	 */
+	@Getter private final CatalogUpdate[] updates;
+	/**
+	 * Whether the page is a snapshot of the whole catalog
+	 */
+	@Getter private final boolean snapshot;
+	/**
+	 * Albums of the snapshot
+	 */
+	@Getter private final Album[] albums;
+	/**
+	 * Playlists of the snapshot
+	 */
+	@Getter private final PlayList[] playlists;
+	/**
+	 * Audio elements of the snapshot
+	 */
+	@Getter private final AudioElement[] elements;
+
+	/**
+	 * Create a page of changes
+	 * @param version version reached by the changes
+	 * @param more whether more changes follow
+	 * @param updates the changes
+	 */
+	public ChangePage (long version, boolean more, CatalogUpdate[] updates) {
+		this(version, more, null, updates, false, new Album[0], new PlayList[0], new AudioElement[0]);
+	}
+
+	/**
+	 * Create a snapshot page holding the whole catalog
+	 * @param version version of the snapshot
+	 * @param albums all the albums
+	 * @param playlists all the playlists
+	 * @param elements all the audio elements
+	 */
+	public ChangePage (long version, Album[] albums, PlayList[] playlists, AudioElement[] elements) {
+		this(version, false, null, albums, playlists, elements);
+	}
+
+	/**
+	 * Create a page of a snapshot
+	 * @param version version of the snapshot
+	 * @param more whether more parts follow
+	 * @param cursor cursor of the next part, null if there is none
+	 * @param albums albums of this part
+	 * @param playlists playlists of this part
+	 * @param elements audio elements of this part
+	 */
+	public ChangePage (long version, boolean more, String cursor, Album[] albums, PlayList[] playlists, AudioElement[] elements) {
+		this(version, more, cursor, new CatalogUpdate[0], true, albums, playlists, elements);
+	}
+
+	private ChangePage (long version, boolean more, String cursor, CatalogUpdate[] updates, boolean snapshot, Album[] albums, PlayList[] playlists, AudioElement[] elements) {
+		this.version = version;
+		this.more = more;
+		this.cursor = cursor;
+		this.updates = updates;
+		this.snapshot = snapshot;
+		this.albums = albums;
+		this.playlists = playlists;
+		this.elements = elements;
+	}
+
+	private ChangePage () {
+		this(0, false, new CatalogUpdate[0]);
+	}
+}
@@ -0,0 +1,31 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Result of a multi-get of audio elements
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ElementLookup extends CatalogLookup {
+	/**
+	 * Audio elements found, in request order
+	 */
+	@Getter private final AudioElement[] found;
+
+	/**
+	 * Create a result
+	 * @param found audio elements found
+	 * @param missing requested keys which matched nothing
+	 */
+	public ElementLookup (AudioElement[] found, String[] missing) {
+		super(missing);
+		this.found = found;
+	}
+
+	private ElementLookup () {
+		this(new AudioElement[0], new String[0]);
+	}
+}
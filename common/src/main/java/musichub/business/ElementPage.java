@@ -0,0 +1,32 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Page of audio elements
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ElementPage extends CatalogPage {
+	/**
+	 * Audio elements of the page, in listing order
+	 */
+	@Getter private final AudioElement[] items;
+
+	/**
+	 * Create a page
+	 * @param items audio elements of the page
+	 * @param nextCursor cursor of the next page, null if this page is the last one
+	 * @param total number of audio elements in the whole listing
+	 */
+	public ElementPage (AudioElement[] items, String nextCursor, int total) {
+		super(nextCursor, total);
+		this.items = items;
+	}
+
+	private ElementPage () {
+		this(new AudioElement[0], null, 0);
+	}
+}
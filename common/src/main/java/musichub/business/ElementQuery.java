@@ -0,0 +1,118 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Filter on audio elements, used by {@link IMusicHub#queryElements(ElementQuery, String, int)}<br>
+ *
+ * Every criterion is optional, and an element must match all the criteria which are set. A genre only matches
+ * songs, a language or a category only matches audiobooks.<br>
+ *
+ * Example: ROCK songs of Artist1 shorter than 5 minutes:
+ * <pre>new ElementQuery().withGenre(Genre.ROCK).withArtist("Artist1").withMaxLength(299)</pre>
+ * Example: audiobooks longer than an hour:
+ * <pre>new ElementQuery().withType(ElementType.AUDIOBOOK).withMinLength(3600)</pre>
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ElementQuery {
+	/**
+	 * Type of the elements, null for any
+	 */
+	@Getter private ElementType type;
+	/**
+	 * Genre of the songs, null for any
+	 */
+	@Getter private Genre genre;
+	/**
+	 * Language of the audiobooks, null for any
+	 */
+	@Getter private Language language;
+	/**
+	 * Category of the audiobooks, null for any
+	 */
+	@Getter private Category category;
+	/**
+	 * Artist, case insensitive, null for any
+	 */
+	@Getter private String artist;
+	/**
+	 * Minimum length in seconds (inclusive), null for no minimum
+	 */
+	@Getter private Integer minLength;
+	/**
+	 * Maximum length in seconds (inclusive), null for no maximum
+	 */
+	@Getter private Integer maxLength;
+
+	/**
+	 * Create a query matching every element
+	 */
+	public ElementQuery () {
+	}
+
+	/**
+	 * @param type type of the elements
+	 * @return this query
+	 */
+	public ElementQuery withType (ElementType type) {
+		this.type = type;
+		return this;
+	}
+
+	/**
+	 * @param genre genre of the songs
+	 * @return this query
+	 */
+	public ElementQuery withGenre (Genre genre) {
+		this.genre = genre;
+		return this;
+	}
+
+	/**
+	 * @param language language of the audiobooks
+	 * @return this query
+	 */
+	public ElementQuery withLanguage (Language language) {
+		this.language = language;
+		return this;
+	}
+
+	/**
+	 * @param category category of the audiobooks
+	 * @return this query
+	 */
+	public ElementQuery withCategory (Category category) {
+		this.category = category;
+		return this;
+	}
+
+	/**
+	 * @param artist artist, case insensitive
+	 * @return this query
+	 */
+	public ElementQuery withArtist (String artist) {
+		this.artist = artist;
+		return this;
+	}
+
+	/**
+	 * @param minLength minimum length in seconds, inclusive
+	 * @return this query
+	 */
+	public ElementQuery withMinLength (int minLength) {
+		this.minLength = minLength;
+		return this;
+	}
+
+	/**
+	 * @param maxLength maximum length in seconds, inclusive
+	 * @return this query
+	 */
+	public ElementQuery withMaxLength (int maxLength) {
+		this.maxLength = maxLength;
+		return this;
+	}
+}
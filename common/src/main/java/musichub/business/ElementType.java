@@ -0,0 +1,14 @@
+package musichub.business;
+
+/**
+ * Type of an {@link AudioElement}, as a criterion of an {@link ElementQuery}
+ */
+public enum ElementType {
+	SONG,
+	AUDIOBOOK;
+
+	@Override
+	public String toString() {
+		return super.toString().toLowerCase();
+	}
+}
@@ -13,6 +13,16 @@ import javax.jws.soap.SOAPBinding;
 @WebService
 @SOAPBinding(style = SOAPBinding.Style.RPC)
 public interface IMusicHub {
+	/**
+	 * Maximum number of items returned by a page, larger limits are reduced to it
+	 */
+	int MAX_PAGE_SIZE = 1000;
+
+	/**
+	 * Maximum size in bytes of a chunk of a chunked upload
+	 */
+	int MAX_CHUNK_SIZE = 1024 * 1024;
+
 	/**
 	 * Add a new audio element (song or audiobook)
 	 * @param element a complete audio element object
@@ -20,6 +30,52 @@ public interface IMusicHub {
 	 */
 	@WebMethod void addElement(AudioElement element, DataHandler handler);
 
+	/**
+	 * Start a chunked upload of a new audio element. Its file is then sent with {@link #appendChunk}, and the
+	 * element is added by {@link #commitUpload}. An upload left idle for an hour is discarded.
+	 * @param element a complete audio element object
+	 * @return id of the upload
+	 */
+	@WebMethod String beginUpload(AudioElement element);
+
+	/**
+	 * Get the number of bytes received by an upload, to resume it after an interruption
+	 * @param uploadId id of the upload
+	 * @return offset of the next chunk
+	 * @throws NoUploadFoundException if the upload doesn't exists
+	 */
+	@WebMethod long uploadOffset(String uploadId) throws NoUploadFoundException;
+
+	/**
+	 * Append a chunk to an upload. A chunk which doesn't start at the offset of the upload is ignored, so a chunk
+	 * sent twice is only written once.
+	 * @param uploadId id of the upload
+	 * @param offset position of the chunk in the file
+	 * @param chunk the bytes, at most {@link #MAX_CHUNK_SIZE}
+	 * @param checksum CRC32 of the chunk
+	 * @return offset of the next chunk
+	 * @throws NoUploadFoundException if the upload doesn't exists
+	 * @throws IllegalArgumentException if the chunk is too large or doesn't match its checksum
+	 */
+	@WebMethod long appendChunk(String uploadId, long offset, byte[] chunk, long checksum) throws NoUploadFoundException;
+
+	/**
+	 * Complete an upload and add its audio element
+	 * @param uploadId id of the upload
+	 * @param length size of the file
+	 * @param checksum CRC32 of the whole file
+	 * @throws NoUploadFoundException if the upload doesn't exists
+	 * @throws IllegalArgumentException if bytes are missing, or if the file doesn't match its checksum. In the
+	 * latter case the upload is discarded.
+	 */
+	@WebMethod void commitUpload(String uploadId, long length, long checksum) throws NoUploadFoundException;
+
+	/**
+	 * Discard an upload. Nothing happens if it doesn't exists.
+	 * @param uploadId id of the upload
+	 */
+	@WebMethod void abortUpload(String uploadId);
+
 	/**
 	 * Add a new album
 	 * @param album a complete album object
@@ -32,6 +88,16 @@ public interface IMusicHub {
 	 */
 	@WebMethod void addPlaylist(PlayList playlist);
 
+	/**
+	 * Add many elements, albums and playlists, and their memberships, in a single call. The batch is applied
+	 * atomically: if a membership can't be resolved, nothing is added.
+	 * @param batch the additions. Elements are added without content.
+	 * @throws NoAlbumFoundException if an album of a membership doesn't exists
+	 * @throws NoPlayListFoundException if a playlist of a membership doesn't exists
+	 * @throws NoElementFoundException if an element of a membership doesn't exists, or is added to an album but isn't a song
+	 */
+	@WebMethod void addBatch(CatalogBatch batch) throws NoAlbumFoundException, NoPlayListFoundException, NoElementFoundException;
+
 	/**
 	 * Delete a playlist by his name
 	 * @param playListTitle the title
@@ -88,6 +154,160 @@ public interface IMusicHub {
 	 */
 	@WebMethod AudioBook[] audioBooks();
 
+	/**
+	 * Get the number of albums
+	 * @return the count
+	 */
+	@WebMethod int albumCount();
+
+	/**
+	 * Get a page of albums, in insertion order
+	 * @param offset index of the first item
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page, shorter than limit at the end of the listing
+	 */
+	@WebMethod Album[] albumsPage(int offset, int limit);
+
+	/**
+	 * Get the page of albums following a cursor, in insertion order. Unlike offsets, cursors stay valid
+	 * when items are added or deleted between two calls.
+	 * @param cursor cursor of the previous page, null or empty for the first page
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page
+	 */
+	@WebMethod AlbumPage albumsAfter(String cursor, int limit);
+
+	/**
+	 * Get the number of playlists
+	 * @return the count
+	 */
+	@WebMethod int playlistCount();
+
+	/**
+	 * Get a page of playlists, in insertion order
+	 * @param offset index of the first item
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page, shorter than limit at the end of the listing
+	 */
+	@WebMethod PlayList[] playlistsPage(int offset, int limit);
+
+	/**
+	 * Get the page of playlists following a cursor, in insertion order. Unlike offsets, cursors stay valid
+	 * when items are added or deleted between two calls.
+	 * @param cursor cursor of the previous page, null or empty for the first page
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page
+	 */
+	@WebMethod PlayListPage playlistsAfter(String cursor, int limit);
+
+	/**
+	 * Get the number of elements (audiobooks / songs)
+	 * @return the count
+	 */
+	@WebMethod int elementCount();
+
+	/**
+	 * Get a page of elements (audiobooks / songs), in insertion order
+	 * @param offset index of the first item
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page, shorter than limit at the end of the listing
+	 */
+	@WebMethod AudioElement[] elementsPage(int offset, int limit);
+
+	/**
+	 * Get the page of elements (audiobooks / songs) following a cursor, in insertion order. Unlike offsets, cursors stay valid
+	 * when items are added or deleted between two calls.
+	 * @param cursor cursor of the previous page, null or empty for the first page
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page
+	 */
+	@WebMethod ElementPage elementsAfter(String cursor, int limit);
+
+	/**
+	 * Get the number of songs
+	 * @return the count
+	 */
+	@WebMethod int songCount();
+
+	/**
+	 * Get a page of songs, in insertion order
+	 * @param offset index of the first item
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page, shorter than limit at the end of the listing
+	 */
+	@WebMethod Song[] songsPage(int offset, int limit);
+
+	/**
+	 * Get the page of songs following a cursor, in insertion order. Unlike offsets, cursors stay valid
+	 * when items are added or deleted between two calls.
+	 * Items of the page are all songs.
+	 * @param cursor cursor of the previous page, null or empty for the first page
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page
+	 */
+	@WebMethod ElementPage songsAfter(String cursor, int limit);
+
+	/**
+	 * Get the number of audiobooks
+	 * @return the count
+	 */
+	@WebMethod int audioBookCount();
+
+	/**
+	 * Get a page of audiobooks, in insertion order
+	 * @param offset index of the first item
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page, shorter than limit at the end of the listing
+	 */
+	@WebMethod AudioBook[] audioBooksPage(int offset, int limit);
+
+	/**
+	 * Get the page of audiobooks following a cursor, in insertion order. Unlike offsets, cursors stay valid
+	 * when items are added or deleted between two calls.
+	 * Items of the page are all audiobooks.
+	 * @param cursor cursor of the previous page, null or empty for the first page
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page
+	 */
+	@WebMethod ElementPage audioBooksAfter(String cursor, int limit);
+
+	/**
+	 * Search elements by title and artist. Every word of the query must match a word of the element, or be the
+	 * beginning of one. Case and accents are ignored.
+	 * @param query words to look for, in any order
+	 * @param fuzzy whether words with a typo also match
+	 * @param limit maximum number of results, at most {@link #MAX_PAGE_SIZE}
+	 * @return the best matches, best first
+	 */
+	@WebMethod AudioElement[] searchElements(String query, boolean fuzzy, int limit);
+
+	/**
+	 * Search albums by title and artist, see {@link #searchElements(String, boolean, int)}
+	 * @param query words to look for, in any order
+	 * @param fuzzy whether words with a typo also match
+	 * @param limit maximum number of results, at most {@link #MAX_PAGE_SIZE}
+	 * @return the best matches, best first
+	 */
+	@WebMethod Album[] searchAlbums(String query, boolean fuzzy, int limit);
+
+	/**
+	 * Search playlists by title, see {@link #searchElements(String, boolean, int)}
+	 * @param query words to look for, in any order
+	 * @param fuzzy whether words with a typo also match
+	 * @param limit maximum number of results, at most {@link #MAX_PAGE_SIZE}
+	 * @return the best matches, best first
+	 */
+	@WebMethod PlayList[] searchPlaylists(String query, boolean fuzzy, int limit);
+
+	/**
+	 * Get the page of elements matching a query and following a cursor, in insertion order
+	 * @param query criteria of the elements
+	 * @param cursor cursor of the previous page, null or empty for the first page
+	 * @param limit maximum number of items, at most {@link #MAX_PAGE_SIZE}
+	 * @return the page. Its total is the number of matching elements.
+	 */
+	@WebMethod ElementPage queryElements(ElementQuery query, String cursor, int limit);
+
 	/**
 	 * Get an album by his title
 	 * @param title the title
@@ -112,6 +332,34 @@ public interface IMusicHub {
 	 */
 	@WebMethod AudioElement elementByTitle(String title) throws NoElementFoundException;
 
+	/**
+	 * Get many albums by their titles
+	 * @param titles the titles, at most {@link #MAX_PAGE_SIZE}
+	 * @return the albums found, and the titles which matched nothing
+	 */
+	@WebMethod AlbumLookup albumsByTitle(String[] titles);
+
+	/**
+	 * Get many playlists by their titles
+	 * @param titles the titles, at most {@link #MAX_PAGE_SIZE}
+	 * @return the playlists found, and the titles which matched nothing
+	 */
+	@WebMethod PlayListLookup playlistsByTitle(String[] titles);
+
+	/**
+	 * Get many elements by their titles
+	 * @param titles the titles, at most {@link #MAX_PAGE_SIZE}
+	 * @return the elements found, and the titles which matched nothing
+	 */
+	@WebMethod ElementLookup elementsByTitle(String[] titles);
+
+	/**
+	 * Get many elements by their ids, for instance the songs of an album or the elements of a playlist
+	 * @param ids the ids, at most {@link #MAX_PAGE_SIZE}
+	 * @return the elements found, and the ids which matched nothing or aren't valid ids
+	 */
+	@WebMethod ElementLookup elementsById(String[] ids);
+
 	/**
 	 * Return all albums sorted by release date
 	 * @return all albums
@@ -185,7 +433,59 @@ public interface IMusicHub {
 	@WebMethod DataHandler downloadElement(String title) throws NoElementFoundException;
 
 	/**
-	Save data to XML on server side
+	 * Get the size of the audio file of an element, to download it by ranges with {@link #downloadRange}
+	 * @param title Title of the element
+	 * @return size of the file in bytes
+	 * @throws NoElementFoundException if the element doesn't exists
+	 */
+	@WebMethod long elementFileLength(String title) throws NoElementFoundException;
+
+	/**
+	 * Download a range of the audio file of an element, to seek in it or resume its playback without downloading
+	 * the whole file
+	 * @param title Title of the element
+	 * @param offset position of the range in the file
+	 * @param length number of bytes, at most {@link #MAX_CHUNK_SIZE}
+	 * @return the bytes of the range, fewer at the end of the file and none past it
+	 * @throws NoElementFoundException if the element doesn't exists
+	 * @throws IllegalArgumentException if the offset is negative or the length invalid
+	 */
+	@WebMethod byte[] downloadRange(String title, long offset, int length) throws NoElementFoundException;
+
+	/**
+	Save data on server side. The snapshot is written in the background.
 	 */
 	@WebMethod void save();
+
+	/**
+	 * Get the version of the catalog, incremented by every change. Cheaper than any listing, it tells a client
+	 * whether the listings it keeps are still current.
+	 * @return the current version
+	 */
+	@WebMethod long catalogVersion();
+
+	/**
+	 * Get the changes made to the catalog after a version, to keep a copy of it up to date. The changes of a
+	 * version are never split across pages. If the server doesn't keep all the changes since that version anymore,
+	 * the page is the first part of a snapshot of the whole catalog instead, the others being read with
+	 * {@link #snapshotAfter}.
+	 * @param version version of the copy, 0 for an empty one
+	 * @param limit maximum number of changes, or of entities of a snapshot, reduced to {@link #MAX_PAGE_SIZE}. Only
+	 *              exceeded by a single batch.
+	 * @return the changes and the version they reach, or the first part of a snapshot
+	 * @throws IllegalArgumentException if the limit isn't positive
+	 */
+	@WebMethod ChangePage changesSince(long version, int limit);
+
+	/**
+	 * Get the next part of a snapshot sent by {@link #changesSince}. The server only keeps the last few snapshots:
+	 * if this one was dropped, the reader starts over with {@link #changesSince}.
+	 * @param version version of the snapshot
+	 * @param cursor cursor of the previous part
+	 * @param limit maximum number of entities, reduced to {@link #MAX_PAGE_SIZE}
+	 * @return the part of the snapshot
+	 * @throws IllegalArgumentException if the limit isn't positive or the cursor is invalid
+	 * @throws IllegalStateException if the snapshot isn't kept anymore
+	 */
+	@WebMethod ChangePage snapshotAfter(long version, String cursor, int limit);
 }
\ No newline at end of file
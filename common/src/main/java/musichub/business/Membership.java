@@ -0,0 +1,34 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Addition of an audio element to an album or a play list, as part of a {@link CatalogBatch}
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class Membership {
+	/**
+	 * Title of the added element
+	 */
+	@Getter private final String elementTitle;
+	/**
+	 * Title of the album or play list
+	 */
+	@Getter private final String containerTitle;
+
+	/**
+	 * @param elementTitle title of the added element
+	 * @param containerTitle title of the album or play list
+	 */
+	public Membership (String elementTitle, String containerTitle) {
+		this.elementTitle = elementTitle;
+		this.containerTitle = containerTitle;
+	}
+
+	private Membership () {
+		this(null, null);
+	}
+}
@@ -0,0 +1,12 @@
+package musichub.business;
+
+import java.lang.Exception;
+
+/**
+ * Exception threw when a chunked upload isn't found, because it was committed, aborted or expired
+ */
+public class NoUploadFoundException extends Exception {
+	public NoUploadFoundException (String msg) {
+		super(msg);
+	}
+}
\ No newline at end of file
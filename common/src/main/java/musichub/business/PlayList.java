@@ -5,8 +5,9 @@ import lombok.Getter;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Class representing a play list<br>
@@ -25,15 +26,24 @@ public class PlayList {
 	@Getter private final UUID uuid;
 
 	/**
-	 * List of play list's elements
+	 * List of play list's elements. Copy-on-write, so it can be read while the server adds elements.
 	 */
 	@XmlElement(name = "elements")
-	@Getter private final ArrayList<UUID> elements;
+	@Getter private final List<UUID> elements;
 
 	public PlayList (String title) {
+		this(UUID.randomUUID(), title);
+	}
+
+	/**
+	 * Create a play list with a known id, for instance when it is restored from storage
+	 * @param uuid id of the play list
+	 * @param title title
+	 */
+	public PlayList (UUID uuid, String title) {
 		this.title = title;
-		this.uuid = UUID.randomUUID();
-		this.elements = new ArrayList<UUID>();
+		this.uuid = uuid;
+		this.elements = new CopyOnWriteArrayList<>();
 	}
 
 	private PlayList () {
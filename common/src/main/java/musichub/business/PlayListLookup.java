@@ -0,0 +1,31 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Result of a multi-get of play lists
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class PlayListLookup extends CatalogLookup {
+	/**
+	 * Play lists found, in request order
+	 */
+	@Getter private final PlayList[] found;
+
+	/**
+	 * Create a result
+	 * @param found play lists found
+	 * @param missing requested keys which matched nothing
+	 */
+	public PlayListLookup (PlayList[] found, String[] missing) {
+		super(missing);
+		this.found = found;
+	}
+
+	private PlayListLookup () {
+		this(new PlayList[0], new String[0]);
+	}
+}
@@ -0,0 +1,32 @@
+package musichub.business;
+
+import lombok.Getter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Page of play lists
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class PlayListPage extends CatalogPage {
+	/**
+	 * Play lists of the page, in listing order
+	 */
+	@Getter private final PlayList[] items;
+
+	/**
+	 * Create a page
+	 * @param items play lists of the page
+	 * @param nextCursor cursor of the next page, null if this page is the last one
+	 * @param total number of play lists in the whole listing
+	 */
+	public PlayListPage (PlayList[] items, String nextCursor, int total) {
+		super(nextCursor, total);
+		this.items = items;
+	}
+
+	private PlayListPage () {
+		this(new PlayList[0], null, 0);
+	}
+}
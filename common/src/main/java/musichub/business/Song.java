@@ -4,6 +4,7 @@ import lombok.Getter;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import java.util.UUID;
 
 /**
  * Class representing an audio book in MusicHub
@@ -25,6 +26,20 @@ public class Song extends AudioElement {
 		this.genre = genre;
 	}
 
+	/**
+	 * Create a song with a known id, for instance when it is restored from storage
+	 * @param uuid id of the song
+	 * @param title title
+	 * @param artist artist
+	 * @param length duration in seconds
+	 * @param content path of the audio file
+	 * @param genre genre
+	 */
+	public Song (UUID uuid, String title, String artist, int length, String content, Genre genre) {
+		super (uuid, title, artist, length, content);
+		this.genre = genre;
+	}
+
 	@Override
 	public String toString() {
 		return super.toString() + ", Genre = " + getGenre() + "\n";
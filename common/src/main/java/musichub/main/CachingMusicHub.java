@@ -0,0 +1,465 @@
+package musichub.main;
+
+import musichub.business.*;
+
+import javax.activation.DataHandler;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Hub keeping the listings of a remote hub until its catalog changes<br>
+ *
+ * Listings, counts and pages are kept with the catalog version they were read at. Before serving one, the cache asks
+ * the server for {@link IMusicHub#catalogVersion()}, a call much cheaper than the listing, and drops everything if
+ * the version changed. Within {@code maxStaleMillis} of the last check, the version isn't asked again: changes made
+ * by other clients show up after at most that delay, while changes made through this hub clear the cache at once.
+ * Other calls go straight to the remote hub.<br>
+ *
+ * Remote calls are made without holding the cache's lock, so a slow listing doesn't stall the other callers. A result
+ * is only kept if the cache wasn't cleared while it was read. At most {@value #MAX_RESULTS} results are kept, the
+ * least recently used being dropped first, as every page and cursor is a result of its own.<br>
+ *
+ * Cached arrays are shared by all callers: they must not be modified.
+ */
+public class CachingMusicHub implements IMusicHub {
+    private static final long DEFAULT_MAX_STALE_MILLIS = 1000;
+    static final int MAX_RESULTS = 128;
+
+    private final IMusicHub hub;
+    private final long maxStaleMillis;
+
+    private final Map<String, Object> results = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > MAX_RESULTS;
+        }
+    }; // guarded by this
+    private long version = -1; // guarded by this
+    private long generation; // guarded by this, changed whenever the results are dropped
+    private long checkedAt; // guarded by this
+    private long hits; // guarded by this
+    private long misses; // guarded by this
+
+    /**
+     * Create a cache checking the version of the catalog at most once a second
+     * @param hub the remote hub
+     */
+    public CachingMusicHub(IMusicHub hub) {
+        this(hub, DEFAULT_MAX_STALE_MILLIS);
+    }
+
+    /**
+     * @param hub the remote hub
+     * @param maxStaleMillis time during which listings are served without checking the version, 0 to check it
+     *                       every time
+     */
+    public CachingMusicHub(IMusicHub hub, long maxStaleMillis) {
+        this.hub = hub;
+        this.maxStaleMillis = maxStaleMillis;
+    }
+
+    /**
+     * @return the remote hub
+     */
+    IMusicHub remote() {
+        return hub;
+    }
+
+    /**
+     * @return number of listings served from the cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of listings read from the remote hub
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Drop all the cached listings
+     */
+    public synchronized void invalidate() {
+        results.clear();
+        version = -1;
+        generation++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(String key, Supplier<T> call) {
+        long now = System.currentTimeMillis();
+        boolean check;
+        synchronized (this) {
+            check = version < 0 || now - checkedAt >= maxStaleMillis;
+            // empty arrays may be received as null, hence containsKey
+            if (!check && results.containsKey(key)) {
+                hits++;
+                return (T) results.get(key);
+            }
+        }
+
+        if (check) {
+            long current = hub.catalogVersion();
+            synchronized (this) {
+                checkedAt = now;
+                if (current != version) {
+                    results.clear();
+                    version = current;
+                    generation++;
+                }
+                if (results.containsKey(key)) {
+                    hits++;
+                    return (T) results.get(key);
+                }
+            }
+        }
+
+        // read after the version, so at least as recent, unless the results were dropped meanwhile
+        long readAt;
+        synchronized (this) {
+            misses++;
+            readAt = generation;
+        }
+        T result = call.get();
+        synchronized (this) {
+            if (generation == readAt)
+                results.put(key, result);
+        }
+        return result;
+    }
+
+    // Cached reads
+
+    @Override
+    public Album[] albums() {
+        return cached("albums", hub::albums);
+    }
+
+    @Override
+    public PlayList[] playlists() {
+        return cached("playlists", hub::playlists);
+    }
+
+    @Override
+    public AudioElement[] elements() {
+        return cached("elements", hub::elements);
+    }
+
+    @Override
+    public Song[] songs() {
+        return cached("songs", hub::songs);
+    }
+
+    @Override
+    public AudioBook[] audioBooks() {
+        return cached("audioBooks", hub::audioBooks);
+    }
+
+    @Override
+    public int albumCount() {
+        return cached("albumCount", hub::albumCount);
+    }
+
+    @Override
+    public Album[] albumsPage(int offset, int limit) {
+        return cached("albumsPage:" + offset + ":" + limit, () -> hub.albumsPage(offset, limit));
+    }
+
+    @Override
+    public AlbumPage albumsAfter(String cursor, int limit) {
+        return cached("albumsAfter:" + cursor + ":" + limit, () -> hub.albumsAfter(cursor, limit));
+    }
+
+    @Override
+    public int playlistCount() {
+        return cached("playlistCount", hub::playlistCount);
+    }
+
+    @Override
+    public PlayList[] playlistsPage(int offset, int limit) {
+        return cached("playlistsPage:" + offset + ":" + limit, () -> hub.playlistsPage(offset, limit));
+    }
+
+    @Override
+    public PlayListPage playlistsAfter(String cursor, int limit) {
+        return cached("playlistsAfter:" + cursor + ":" + limit, () -> hub.playlistsAfter(cursor, limit));
+    }
+
+    @Override
+    public int elementCount() {
+        return cached("elementCount", hub::elementCount);
+    }
+
+    @Override
+    public AudioElement[] elementsPage(int offset, int limit) {
+        return cached("elementsPage:" + offset + ":" + limit, () -> hub.elementsPage(offset, limit));
+    }
+
+    @Override
+    public ElementPage elementsAfter(String cursor, int limit) {
+        return cached("elementsAfter:" + cursor + ":" + limit, () -> hub.elementsAfter(cursor, limit));
+    }
+
+    @Override
+    public int songCount() {
+        return cached("songCount", hub::songCount);
+    }
+
+    @Override
+    public Song[] songsPage(int offset, int limit) {
+        return cached("songsPage:" + offset + ":" + limit, () -> hub.songsPage(offset, limit));
+    }
+
+    @Override
+    public ElementPage songsAfter(String cursor, int limit) {
+        return cached("songsAfter:" + cursor + ":" + limit, () -> hub.songsAfter(cursor, limit));
+    }
+
+    @Override
+    public int audioBookCount() {
+        return cached("audioBookCount", hub::audioBookCount);
+    }
+
+    @Override
+    public AudioBook[] audioBooksPage(int offset, int limit) {
+        return cached("audioBooksPage:" + offset + ":" + limit, () -> hub.audioBooksPage(offset, limit));
+    }
+
+    @Override
+    public ElementPage audioBooksAfter(String cursor, int limit) {
+        return cached("audioBooksAfter:" + cursor + ":" + limit, () -> hub.audioBooksAfter(cursor, limit));
+    }
+
+    @Override
+    public Album[] getAlbumsSortedByDate() {
+        return cached("albumsSortedByDate", hub::getAlbumsSortedByDate);
+    }
+
+    @Override
+    public AudioBook[] getAudiobooksSortedByAuthor() {
+        return cached("audiobooksSortedByAuthor", hub::getAudiobooksSortedByAuthor);
+    }
+
+    // Changes, which clear the cache
+
+    @Override
+    public void addElement(AudioElement element, DataHandler handler) {
+        try {
+            hub.addElement(element, handler);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void commitUpload(String uploadId, long length, long checksum) throws NoUploadFoundException {
+        try {
+            hub.commitUpload(uploadId, length, checksum);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addAlbum(Album album) {
+        try {
+            hub.addAlbum(album);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addPlaylist(PlayList playlist) {
+        try {
+            hub.addPlaylist(playlist);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addBatch(CatalogBatch batch) throws NoAlbumFoundException, NoPlayListFoundException, NoElementFoundException {
+        try {
+            hub.addBatch(batch);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void deletePlayList(String playListTitle) throws NoPlayListFoundException {
+        try {
+            hub.deletePlayList(playListTitle);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void deleteAlbum(String albumTitle) throws NoAlbumFoundException {
+        try {
+            hub.deleteAlbum(albumTitle);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void deleteElement(String title) throws NoElementFoundException {
+        try {
+            hub.deleteElement(title);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addElementToAlbum(String elementTitle, String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        try {
+            hub.addElementToAlbum(elementTitle, albumTitle);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addElementToPlayList(String elementTitle, String playListTitle) throws NoPlayListFoundException, NoElementFoundException {
+        try {
+            hub.addElementToPlayList(elementTitle, playListTitle);
+        } finally {
+            invalidate();
+        }
+    }
+
+    // Other calls
+
+    @Override
+    public String beginUpload(AudioElement element) {
+        return hub.beginUpload(element);
+    }
+
+    @Override
+    public long uploadOffset(String uploadId) throws NoUploadFoundException {
+        return hub.uploadOffset(uploadId);
+    }
+
+    @Override
+    public long appendChunk(String uploadId, long offset, byte[] chunk, long checksum) throws NoUploadFoundException {
+        return hub.appendChunk(uploadId, offset, chunk, checksum);
+    }
+
+    @Override
+    public void abortUpload(String uploadId) {
+        hub.abortUpload(uploadId);
+    }
+
+    @Override
+    public AudioElement[] searchElements(String query, boolean fuzzy, int limit) {
+        return hub.searchElements(query, fuzzy, limit);
+    }
+
+    @Override
+    public Album[] searchAlbums(String query, boolean fuzzy, int limit) {
+        return hub.searchAlbums(query, fuzzy, limit);
+    }
+
+    @Override
+    public PlayList[] searchPlaylists(String query, boolean fuzzy, int limit) {
+        return hub.searchPlaylists(query, fuzzy, limit);
+    }
+
+    @Override
+    public ElementPage queryElements(ElementQuery query, String cursor, int limit) {
+        return hub.queryElements(query, cursor, limit);
+    }
+
+    @Override
+    public Album albumByTitle(String title) throws NoAlbumFoundException {
+        return hub.albumByTitle(title);
+    }
+
+    @Override
+    public PlayList playlistByTitle(String title) throws NoPlayListFoundException {
+        return hub.playlistByTitle(title);
+    }
+
+    @Override
+    public AudioElement elementByTitle(String title) throws NoElementFoundException {
+        return hub.elementByTitle(title);
+    }
+
+    @Override
+    public AlbumLookup albumsByTitle(String[] titles) {
+        return hub.albumsByTitle(titles);
+    }
+
+    @Override
+    public PlayListLookup playlistsByTitle(String[] titles) {
+        return hub.playlistsByTitle(titles);
+    }
+
+    @Override
+    public ElementLookup elementsByTitle(String[] titles) {
+        return hub.elementsByTitle(titles);
+    }
+
+    @Override
+    public ElementLookup elementsById(String[] ids) {
+        return hub.elementsById(ids);
+    }
+
+    @Override
+    public Song[] getAlbumSongs(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        return hub.getAlbumSongs(albumTitle);
+    }
+
+    @Override
+    public Song[] getAlbumSongsSortedByGenre(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        return hub.getAlbumSongsSortedByGenre(albumTitle);
+    }
+
+    @Override
+    public AudioElement[] getPlaylistElements(String playList) throws NoPlayListFoundException, NoElementFoundException {
+        return hub.getPlaylistElements(playList);
+    }
+
+    @Override
+    public DataHandler downloadElement(String title) throws NoElementFoundException {
+        return hub.downloadElement(title);
+    }
+
+    @Override
+    public long elementFileLength(String title) throws NoElementFoundException {
+        return hub.elementFileLength(title);
+    }
+
+    @Override
+    public byte[] downloadRange(String title, long offset, int length) throws NoElementFoundException {
+        return hub.downloadRange(title, offset, length);
+    }
+
+    @Override
+    public void save() {
+        hub.save();
+    }
+
+    @Override
+    public long catalogVersion() {
+        return hub.catalogVersion();
+    }
+
+    @Override
+    public ChangePage changesSince(long version, int limit) {
+        return hub.changesSince(version, limit);
+    }
+
+    @Override
+    public ChangePage snapshotAfter(long version, String cursor, int limit) {
+        return hub.snapshotAfter(version, cursor, limit);
+    }
+}
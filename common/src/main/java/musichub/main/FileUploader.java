@@ -0,0 +1,208 @@
+package musichub.main;
+
+import musichub.business.AudioElement;
+import musichub.business.IMusicHub;
+import musichub.business.NoUploadFoundException;
+
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.handler.MessageContext;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Upload audio files in chunks, resuming after connection errors. The upload goes on from the offset reported by the
+ * server, which may be behind the client after a restart of the server.<br>
+ *
+ * Failed calls are retried after a delay doubling from 100 milliseconds up to 5 seconds. When the server answered
+ * 503 Service Unavailable, the delay is the one of its Retry-After header instead.
+ */
+public class FileUploader {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final long MAX_RETRY_AFTER_MILLIS = 60000;
+
+    private final IMusicHub hub;
+    private final int chunkSize;
+
+    /**
+     * Create an uploader with the largest chunks accepted by the server
+     * @param hub the hub
+     */
+    public FileUploader(IMusicHub hub) {
+        this(hub, IMusicHub.MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * @param hub the hub
+     * @param chunkSize size of the chunks, at most {@link IMusicHub#MAX_CHUNK_SIZE}
+     */
+    public FileUploader(IMusicHub hub, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > IMusicHub.MAX_CHUNK_SIZE)
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+
+        this.hub = hub;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Upload an audio element and its file. Only one chunk of the file is held in memory.
+     * @param element the element
+     * @param file its audio file
+     * @throws IOException if the file can't be read, or the upload failed too many times
+     */
+    public void upload(AudioElement element, File file) throws IOException {
+        String id = hub.beginUpload(element);
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[chunkSize];
+        long offset = 0;
+        int failures = 0;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+
+            while (offset < length) {
+                int read = read(channel, offset, buffer);
+                byte[] chunk = read == buffer.length ? buffer : Arrays.copyOf(buffer, read);
+
+                CRC32 chunkChecksum = new CRC32();
+                chunkChecksum.update(chunk);
+
+                long next;
+                try {
+                    next = hub.appendChunk(id, offset, chunk, chunkChecksum.getValue());
+                } catch (WebServiceException e) {
+                    if (++failures >= MAX_ATTEMPTS)
+                        throw new IOException("Upload of " + file + " failed at " + offset, e);
+                    backOff(failures);
+                    // the chunk may have been written before the connection dropped
+                    next = resumeOffset(id);
+                }
+
+                if (next == offset + read) {
+                    checksum.update(chunk);
+                    offset = next;
+                    failures = 0;
+                } else if (next < 0 || next > length) {
+                    throw new IOException("Upload of " + file + " out of sync: server at " + next + ", client at " + offset);
+                } else if (next != offset) {
+                    // a server restarted after a crash may have lost the end of what it received
+                    checksum = checksum(channel, next, buffer);
+                    offset = next;
+                }
+            }
+
+            hub.commitUpload(id, length, checksum.getValue());
+        } catch (NoUploadFoundException e) {
+            throw new IOException("Upload of " + file + " expired", e);
+        } catch (IOException | RuntimeException e) {
+            abort(id);
+            throw e;
+        }
+    }
+
+    private void abort(String id) {
+        try {
+            hub.abortUpload(id);
+        } catch (WebServiceException ignored) {
+            // the server discards idle uploads anyway
+        }
+    }
+
+    private long resumeOffset(String id) throws NoUploadFoundException, IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return hub.uploadOffset(id);
+            } catch (WebServiceException e) {
+                if (attempt >= MAX_ATTEMPTS)
+                    throw new IOException("Couldn't resume upload " + id, e);
+                backOff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Wait before retrying a failed call
+     * @param attempt number of failed attempts so far
+     * @throws IOException if interrupted while waiting
+     */
+    private void backOff(int attempt) throws IOException {
+        long delay = retryAfter();
+        if (delay < 0)
+            delay = Math.min(MIN_BACKOFF_MILLIS << Math.min(attempt - 1, 16), MAX_BACKOFF_MILLIS);
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+    }
+
+    /**
+     * @return milliseconds asked by the Retry-After header of the last answer if it was 503, -1 otherwise
+     */
+    private long retryAfter() {
+        IMusicHub remote = hub instanceof CachingMusicHub ? ((CachingMusicHub) hub).remote() : hub;
+        if (!(remote instanceof BindingProvider))
+            return -1;
+
+        Map<String, Object> context = ((BindingProvider) remote).getResponseContext();
+        if (context == null || !Integer.valueOf(503).equals(context.get(MessageContext.HTTP_RESPONSE_CODE)))
+            return -1;
+
+        Object headers = context.get(MessageContext.HTTP_RESPONSE_HEADERS);
+        if (!(headers instanceof Map))
+            return -1;
+
+        // the name of the header isn't always sent in the same case
+        for (Map.Entry<?, ?> header : ((Map<?, ?>) headers).entrySet()) {
+            if (!"Retry-After".equalsIgnoreCase(String.valueOf(header.getKey())) || !(header.getValue() instanceof List))
+                continue;
+            for (Object value : (List<?>) header.getValue()) {
+                try {
+                    long seconds = Long.parseLong(String.valueOf(value).trim());
+                    if (seconds >= 0)
+                        return Math.min(TimeUnit.SECONDS.toMillis(seconds), MAX_RETRY_AFTER_MILLIS);
+                } catch (NumberFormatException ignored) {
+                    // an HTTP date, fall back to the usual delay
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return CRC32 of the start of a file
+     */
+    private static CRC32 checksum(FileChannel channel, long length, byte[] buffer) throws IOException {
+        CRC32 checksum = new CRC32();
+        for (long position = 0; position < length; ) {
+            int read = read(channel, position, buffer);
+            int n = (int) Math.min(read, length - position);
+            if (n <= 0)
+                throw new IOException("File shorter than " + length + " bytes");
+            checksum.update(buffer, 0, n);
+            position += n;
+        }
+        return checksum;
+    }
+
+    private static int read(FileChannel channel, long offset, byte[] buffer) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        while (target.hasRemaining()) {
+            if (channel.read(target, offset + target.position()) < 0)
+                break;
+        }
+        return target.position();
+    }
+}
@@ -4,13 +4,16 @@ import musichub.business.IMusicHub;
 import musichub.business.NoElementFoundException;
 
 import javax.sound.sampled.*;
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Simple music player, that play music asynchronously.
+ * Simple music player, that play music asynchronously.<br>
+ *
+ * Musics are downloaded by ranges while they are played, with a {@link RangeInputStream}: seeking in a music, or
+ * starting it at a given position, only downloads the file from that position.
  */
 public class MusicPlayer {
     private final int BUFFER_SIZE = 128000;
@@ -18,9 +21,27 @@ public class MusicPlayer {
 
     private int volume = 100;
 
-    private final BlockingQueue<String> elementsToPlay;
+    private final BlockingQueue<Track> elementsToPlay;
     private SourceDataLine currentDataLine;
 
+    private volatile String currentMusic;
+    private volatile long currentMillis;
+    private final AtomicLong seekMillis = new AtomicLong(-1);
+    private boolean paused; // guarded by this
+
+    /**
+     * A queued music, and the position to start from
+     */
+    private static final class Track {
+        final String musicName;
+        final long startMillis;
+
+        Track(String musicName, long startMillis) {
+            this.musicName = musicName;
+            this.startMillis = startMillis;
+        }
+    }
+
     /**
      * Create a new music player
      * @param hub the hub, used to retrieve musics
@@ -37,10 +58,65 @@ public class MusicPlayer {
      * @param musicName music name
      */
     public void queueMusic(String musicName) {
-        this.elementsToPlay.add(musicName);
+        queueMusic(musicName, 0);
+    }
+
+    /**
+     * Add a music to player queue, to play it from a position
+     * @param musicName music name
+     * @param startMillis position in milliseconds, to resume a music
+     */
+    public void queueMusic(String musicName, long startMillis) {
+        this.elementsToPlay.add(new Track(musicName, Math.max(0, startMillis)));
         System.out.println(musicName + " queued!");
     }
 
+    /**
+     * @return name of the music being played, or null
+     */
+    public String getCurrentMusic() {
+        return currentMusic;
+    }
+
+    /**
+     * @return position in milliseconds in the music being played
+     */
+    public long getPosition() {
+        return currentMillis;
+    }
+
+    /**
+     * Move to a position of the music being played. The file is downloaded from that position.
+     * @param millis position in milliseconds
+     * @return false if no music is played
+     */
+    public boolean seek(long millis) {
+        if (currentMusic == null)
+            return false;
+
+        this.seekMillis.set(Math.max(0, millis));
+        return true;
+    }
+
+    /**
+     * Pause the playback, until {@link #resume()}
+     */
+    public synchronized void pause() {
+        this.paused = true;
+        if (this.currentDataLine != null)
+            this.currentDataLine.stop();
+    }
+
+    /**
+     * Resume the playback where it was paused
+     */
+    public synchronized void resume() {
+        this.paused = false;
+        if (this.currentDataLine != null)
+            this.currentDataLine.start();
+        notifyAll();
+    }
+
     /**
      * Change the playback volume
      * @param volume Between 0 (muted) and 100
@@ -70,28 +146,63 @@ public class MusicPlayer {
         } catch (InterruptedException ignored) { }
     }
 
-    private void playMusic(String musicName) {
+    private synchronized void waitWhilePaused() throws InterruptedException {
+        while (this.paused)
+            wait();
+    }
+
+    private void playMusic(Track track) throws InterruptedException {
         try {
-            BufferedInputStream is = new BufferedInputStream(this.hub.downloadElement(musicName).getInputStream());
-            AudioInputStream audioStream = AudioSystem.getAudioInputStream(is);
+            RangeInputStream stream = new RangeInputStream(this.hub, track.musicName);
+            AudioInputStream audioStream = AudioSystem.getAudioInputStream(stream);
 
+            // the header was parsed: the stream is at the first frame
+            long dataStart = stream.position();
+            long frameLength = audioStream.getFrameLength();
             AudioFormat audioFormat = audioStream.getFormat();
+            int frameSize = audioFormat.getFrameSize();
+            float frameRate = audioFormat.getFrameRate();
+            boolean seekable = frameSize > 0 && frameRate > 0;
 
             DataLine.Info info = new DataLine.Info(SourceDataLine.class, audioFormat);
             currentDataLine = (SourceDataLine) AudioSystem.getLine(info);
 
             currentDataLine.open(audioFormat);
-            currentDataLine.start();
+            synchronized (this) {
+                if (!this.paused)
+                    currentDataLine.start();
+            }
 
             this.dataLineSetVolume();
+            this.currentMusic = track.musicName;
+            this.currentMillis = 0;
+            this.seekMillis.set(track.startMillis > 0 ? track.startMillis : -1);
 
+            long frame = 0;
             int nBytesRead = 0;
-            byte[] abData = new byte[BUFFER_SIZE];
+            byte[] abData = new byte[seekable ? BUFFER_SIZE - BUFFER_SIZE % frameSize : BUFFER_SIZE];
             while (nBytesRead != -1) {
+                long seek = this.seekMillis.getAndSet(-1);
+                if (seek >= 0 && seekable) {
+                    frame = (long) (seek / 1000.0 * frameRate);
+                    if (frameLength != AudioSystem.NOT_SPECIFIED)
+                        frame = Math.min(frame, frameLength);
+
+                    stream.seek(dataStart + frame * frameSize);
+                    audioStream = new AudioInputStream(stream, audioFormat,
+                            frameLength == AudioSystem.NOT_SPECIFIED ? AudioSystem.NOT_SPECIFIED : frameLength - frame);
+                    currentDataLine.flush();
+                }
+
+                waitWhilePaused();
                 nBytesRead = audioStream.read(abData, 0, abData.length);
 
                 if (nBytesRead >= 0) {
                     currentDataLine.write(abData, 0, nBytesRead);
+                    if (seekable) {
+                        frame += nBytesRead / frameSize;
+                        this.currentMillis = (long) (frame * 1000 / frameRate);
+                    }
                 }
             }
 
@@ -102,5 +213,6 @@ public class MusicPlayer {
         }
 
         currentDataLine = null;
+        currentMusic = null;
     }
 }
@@ -2,15 +2,18 @@ package musichub.main;
 
 import musichub.business.*;
 
-import javax.activation.DataHandler;
-import javax.activation.FileDataSource;
+import javax.xml.ws.WebServiceException;
 import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Interactive TTY application for MusicHub<br>
@@ -20,8 +23,19 @@ public class MusicTerminal
 {
 	protected static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
 
+	/**
+	 * Number of items fetched at once by the listing commands
+	 */
+	protected static final int PAGE_SIZE = 100;
+
+	/**
+	 * Maximum number of results displayed by the search command, for each type
+	 */
+	protected static final int SEARCH_LIMIT = 20;
+
 	protected final IMusicHub hub;
 	protected final MusicPlayer player;
+	protected final FileUploader uploader;
 
 	protected Scanner scan;
 	protected boolean should_quit;
@@ -36,6 +50,7 @@ public class MusicTerminal
 		this.commands = new LinkedHashMap<>();
 		this.hub = hubInput;
 		this.player = new MusicPlayer(hubInput);
+		this.uploader = new FileUploader(hubInput);
 
 		this.registerCommand(new Command("h", "print this help message") {
 			@Override
@@ -97,21 +112,36 @@ public class MusicTerminal
 		this.registerCommand(new Command("songs", "display songs") {
 			@Override
 			public void run() {
-				displaySongs(hub.songs());
+				displayPages(cursor -> hub.songsAfter(cursor, PAGE_SIZE),
+						page -> displaySongs(Arrays.copyOf(page.getItems(), page.getItems().length, Song[].class)));
 			}
 		});
 
 		this.registerCommand(new Command("elements", "display all songs/audiobooks") {
 			@Override
 			public void run() {
-			    displayElements(hub.elements());
+				displayPages(cursor -> hub.elementsAfter(cursor, PAGE_SIZE), page -> displayElements(page.getItems()));
 			}
 		});
 
 		this.registerCommand(new Command("playlists", "display all playlists") {
 			@Override
 			public void run() {
-				displayPlaylists(hub.playlists());
+				displayPages(cursor -> hub.playlistsAfter(cursor, PAGE_SIZE), page -> displayPlaylists(page.getItems()));
+			}
+		});
+
+		this.registerCommand(new Command("search", "search elements, albums and playlists by title or artist") {
+			@Override
+			public void run() {
+				String query = prompt("Search: ");
+
+				System.out.println("Elements:");
+				displayElements(hub.searchElements(query, true, SEARCH_LIMIT));
+				System.out.println("Albums:");
+				displayAlbums(hub.searchAlbums(query, true, SEARCH_LIMIT));
+				System.out.println("Playlists:");
+				displayPlaylists(hub.searchPlaylists(query, true, SEARCH_LIMIT));
 			}
 		});
 
@@ -138,13 +168,15 @@ public class MusicTerminal
 				// add a new song
 				System.out.println("---- New song ----");
 
-				hub.addElement(new Song(
+				Song song = new Song(
 						prompt("Title: "),
 						prompt("Artist: "),
 						prompt_uint("Length in seconds: "),
 						"",
 						prompt_enum("Genre", Genre.class)
-				), prompt_file("File name: "));
+				);
+				if (!upload(song, prompt_file("File name: ")))
+					return;
 
 				System.out.println("Song created!");
 				System.out.println("New element list: ");
@@ -210,9 +242,8 @@ public class MusicTerminal
 					prompt_enum("Category", Category.class)
 				);
 
-				DataHandler handler = prompt_file("File name: ");
-
-				hub.addElement(b, handler);
+				if (!upload(b, prompt_file("File name: ")))
+					return;
 				System.out.println("Audiobook created! New element list: ");
 
 				displayElements(hub.elements());
@@ -357,6 +388,34 @@ public class MusicTerminal
 			}
 		});
 
+		this.registerCommand(new Command("seek", "move in the element being played") {
+			@Override
+			public void run() {
+				if (player.getCurrentMusic() == null) {
+					System.out.println("No element is being played.");
+					return;
+				}
+
+				System.out.println("Playing " + player.getCurrentMusic() + " at " + player.getPosition() / 1000 + " s");
+				if (!player.seek(prompt_uint("New position in seconds: ") * 1000L))
+					System.out.println("No element is being played.");
+			}
+		});
+
+		this.registerCommand(new Command("pause", "pause the playback") {
+			@Override
+			public void run() {
+				player.pause();
+			}
+		});
+
+		this.registerCommand(new Command("resume", "resume the playback") {
+			@Override
+			public void run() {
+				player.resume();
+			}
+		});
+
 		this.registerCommand(new Command("quit", "quit program") {
 			@Override
 			public void run() {
@@ -440,6 +499,23 @@ public class MusicTerminal
 		formatter.display(System.out);
 	}
 
+	/**
+	 * Display a listing page by page, asking before fetching the next one
+	 * @param fetch fetches the page following a cursor
+	 * @param display displays a page
+	 * @param <P> page type
+	 */
+	public <P extends CatalogPage> void displayPages(Function<String, P> fetch, Consumer<P> display) {
+		P page = fetch.apply(null);
+		display.accept(page);
+
+		while (page.getNextCursor() != null
+				&& prompt(page.getTotal() + " items in total. Show more? [y/N] ", true).equalsIgnoreCase("y")) {
+			page = fetch.apply(page.getNextCursor());
+			display.accept(page);
+		}
+	}
+
 	/**
 	 * Print help using a formatter
 	 */
@@ -471,7 +547,12 @@ public class MusicTerminal
 				continue;
 
 			if (commands.containsKey(choice)) {
-				commands.get(choice).run();
+				try {
+					commands.get(choice).run();
+				} catch (WebServiceException ex) {
+					// such as a busy server rejecting the request, or a timeout
+					System.out.println("The request failed, try again: " + ex.getMessage());
+				}
 			} else {
 				System.out.println("Unknown command. Type h for help");
 			}
@@ -545,7 +626,23 @@ public class MusicTerminal
 		}
 	}
 
-	protected DataHandler prompt_file(String ps1) {
+	/**
+	 * Upload a new audio element and its file, in chunks
+	 * @param element the element
+	 * @param file its audio file
+	 * @return whether the upload succeeded
+	 */
+	protected boolean upload(AudioElement element, File file) {
+		try {
+			uploader.upload(element, file);
+			return true;
+		} catch (IOException e) {
+			System.out.println("Couldn't upload the file: " + e.getMessage());
+			return false;
+		}
+	}
+
+	protected File prompt_file(String ps1) {
 		while (true) {
 			File value = new File(prompt(ps1));
 
@@ -556,7 +653,7 @@ public class MusicTerminal
 			else if (!value.canRead())
 				System.out.println("We don't have read permission for this file!");
 			else
-				return new DataHandler(new FileDataSource(value));
+				return value;
 		}
 	}
 
@@ -0,0 +1,145 @@
+package musichub.main;
+
+import musichub.business.IMusicHub;
+import musichub.business.NoElementFoundException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream over the audio file of an element, downloaded by ranges as it is read.<br>
+ *
+ * The stream can be positioned anywhere in the file with {@link #seek}: only the ranges which are read are
+ * downloaded, and a single range is held in memory.
+ */
+public class RangeInputStream extends InputStream {
+    private final IMusicHub hub;
+    private final String title;
+    private final int rangeSize;
+    private final long length;
+
+    private byte[] range = new byte[0];
+    private long rangeOffset;
+    private long position;
+    private long mark;
+
+    /**
+     * Create a stream with the largest ranges accepted by the server
+     * @param hub the hub
+     * @param title title of the element
+     * @throws NoElementFoundException if the element doesn't exists
+     */
+    public RangeInputStream(IMusicHub hub, String title) throws NoElementFoundException {
+        this(hub, title, IMusicHub.MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * @param hub the hub
+     * @param title title of the element
+     * @param rangeSize size of the downloaded ranges, at most {@link IMusicHub#MAX_CHUNK_SIZE}
+     * @throws NoElementFoundException if the element doesn't exists
+     */
+    public RangeInputStream(IMusicHub hub, String title, int rangeSize) throws NoElementFoundException {
+        if (rangeSize <= 0 || rangeSize > IMusicHub.MAX_CHUNK_SIZE)
+            throw new IllegalArgumentException("Invalid range size: " + rangeSize);
+
+        this.hub = hub;
+        this.title = title;
+        this.rangeSize = rangeSize;
+        this.length = hub.elementFileLength(title);
+    }
+
+    /**
+     * @return size of the file
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return position of the next byte read
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Move to a position of the file. Nothing is downloaded until the next read.
+     * @param position the position, past the end of the file for an empty stream
+     */
+    public void seek(long position) {
+        if (position < 0)
+            throw new IllegalArgumentException("Negative position: " + position);
+        this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return range[(int) (position++ - rangeOffset)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+
+        int n = (int) Math.min(len, rangeOffset + range.length - position);
+        System.arraycopy(range, (int) (position - rangeOffset), b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long buffered = rangeOffset + range.length - position;
+        return position < rangeOffset || buffered < 0 ? 0 : (int) buffered;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+
+    /**
+     * Download the range at the current position, unless it's already held
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        if (position >= length)
+            return false;
+        if (position >= rangeOffset && position < rangeOffset + range.length)
+            return true;
+
+        byte[] bytes;
+        try {
+            bytes = hub.downloadRange(title, position, (int) Math.min(rangeSize, length - position));
+        } catch (NoElementFoundException e) {
+            throw new IOException("Element " + title + " was deleted", e);
+        }
+        // an empty array may be received as null
+        range = bytes == null ? new byte[0] : bytes;
+        rangeOffset = position;
+        return range.length > 0;
+    }
+}
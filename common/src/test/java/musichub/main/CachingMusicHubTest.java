@@ -0,0 +1,187 @@
+package musichub.main;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingMusicHubTest {
+    private final List<Album> albums = new ArrayList<>();
+    private final List<AudioElement> elements = new ArrayList<>();
+    private long version;
+    private volatile CountDownLatch albumsEntered;
+    private volatile CountDownLatch albumsReleased;
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private IMusicHub remote;
+
+    @BeforeEach
+    public void initTest() {
+        elements.add(new Song("Song1", "Artist1", 120, "unknownFile1", Genre.POP));
+        albums.add(new Album("Album1", "Artist1", 250, new Date(2000)));
+
+        // a catalog in memory counting the calls which reach it
+        remote = (IMusicHub) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IMusicHub.class },
+                (proxy, method, args) -> {
+                    calls.computeIfAbsent(method.getName(), n -> new AtomicInteger()).incrementAndGet();
+                    switch (method.getName()) {
+                        case "catalogVersion":
+                            return catalogVersion();
+                        case "albums":
+                            if (albumsEntered != null) {
+                                albumsEntered.countDown();
+                                albumsReleased.await(10, TimeUnit.SECONDS);
+                            }
+                            return albums();
+                        case "albumsPage":
+                            return albums();
+                        case "songs":
+                            return songs();
+                        case "elementCount":
+                            return elementCount();
+                        case "addAlbum":
+                            addAlbum((Album) args[0]);
+                            return null;
+                        case "addElementToAlbum":
+                            change();
+                            return null;
+                        case "deleteElement":
+                            deleteElement((String) args[0]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private synchronized long catalogVersion() {
+        return version;
+    }
+
+    private synchronized Album[] albums() {
+        return albums.toArray(new Album[0]);
+    }
+
+    private synchronized Song[] songs() {
+        return elements.stream().filter(e -> e instanceof Song).toArray(Song[]::new);
+    }
+
+    private synchronized int elementCount() {
+        return elements.size();
+    }
+
+    private synchronized void addAlbum(Album album) {
+        albums.add(album);
+        version++;
+    }
+
+    private synchronized void deleteElement(String title) {
+        elements.removeIf(e -> e.getTitle().equals(title));
+        version++;
+    }
+
+    private synchronized void change() {
+        version++;
+    }
+
+    private int calls(String method) {
+        AtomicInteger count = calls.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    @Test
+    public void testListingsKeptUntilVersionChanges() {
+        CachingMusicHub hub = new CachingMusicHub(remote, 0);
+
+        Album[] albums = hub.albums();
+        Assertions.assertSame(albums, hub.albums());
+        Assertions.assertEquals(1, hub.songs().length);
+        hub.songs();
+
+        Assertions.assertEquals(1, calls("albums"));
+        Assertions.assertEquals(1, calls("songs"));
+        Assertions.assertEquals(4, calls("catalogVersion"));
+        Assertions.assertEquals(2, hub.hits());
+
+        // another client adds an album
+        addAlbum(new Album("Album2", "Artist1", 250, new Date(3000)));
+        Assertions.assertEquals(2, hub.albums().length);
+        Assertions.assertEquals(2, calls("albums"));
+    }
+
+    @Test
+    public void testVersionCheckedOncePerDelay() {
+        CachingMusicHub hub = new CachingMusicHub(remote, 60000);
+
+        hub.albums();
+        addAlbum(new Album("Album2", "Artist1", 250, new Date(3000)));
+        // stale until the delay expires
+        Assertions.assertEquals(1, hub.albums().length);
+        Assertions.assertEquals(1, calls("catalogVersion"));
+    }
+
+    @Test
+    public void testOwnChangesClearCache() throws Exception {
+        CachingMusicHub hub = new CachingMusicHub(remote, 60000);
+
+        Assertions.assertEquals(1, hub.albums().length);
+        hub.addAlbum(new Album("Album2", "Artist1", 250, new Date(3000)));
+        Assertions.assertEquals(2, hub.albums().length);
+
+        hub.addElementToAlbum("Song1", "Album2");
+        hub.deleteElement("Song1");
+        Assertions.assertEquals(0, hub.elementCount());
+        Assertions.assertEquals(2, calls("albums"));
+    }
+
+    @Test
+    public void testSlowListingDoesNotBlockOtherReads() throws Exception {
+        CachingMusicHub hub = new CachingMusicHub(remote, 60000);
+        hub.songs();
+        albumsEntered = new CountDownLatch(1);
+        albumsReleased = new CountDownLatch(1);
+
+        Thread reader = new Thread(hub::albums);
+        reader.start();
+        Assertions.assertTrue(albumsEntered.await(10, TimeUnit.SECONDS));
+
+        // served while the listing is still being read, and cleared by a change
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            Assertions.assertEquals(1, hub.songs().length);
+            hub.addAlbum(new Album("Album2", "Artist1", 250, new Date(3000)));
+        });
+        albumsReleased.countDown();
+        reader.join();
+
+        // the listing read before the change wasn't kept
+        albumsEntered = null;
+        Assertions.assertEquals(2, hub.albums().length);
+        Assertions.assertEquals(2, calls("albums"));
+    }
+
+    @Test
+    public void testResultsAreBounded() {
+        CachingMusicHub hub = new CachingMusicHub(remote, 60000);
+
+        for (int offset = 0; offset <= CachingMusicHub.MAX_RESULTS; offset++)
+            hub.albumsPage(offset, 10);
+        Assertions.assertEquals(CachingMusicHub.MAX_RESULTS + 1, calls("albumsPage"));
+
+        // the least recently used page was dropped, the others are kept
+        hub.albumsPage(CachingMusicHub.MAX_RESULTS, 10);
+        Assertions.assertEquals(CachingMusicHub.MAX_RESULTS + 1, calls("albumsPage"));
+        hub.albumsPage(0, 10);
+        Assertions.assertEquals(CachingMusicHub.MAX_RESULTS + 2, calls("albumsPage"));
+    }
+}
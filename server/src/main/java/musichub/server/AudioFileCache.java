@@ -0,0 +1,179 @@
+package musichub.server;
+
+import musichub.business.AudioElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the audio files of the most recently downloaded elements, held in direct buffers<br>
+ *
+ * The files are keyed by path, so a blob shared by several elements is held once, and evicted in least recently used
+ * order once their total size exceeds the capacity. They live outside the heap: the cache doesn't add to the garbage
+ * collection work, and its buffers can be written to a channel without a copy. A file larger than a quarter of the
+ * capacity isn't cached, so a single audiobook can't evict all the popular songs: its size is checked without
+ * opening it, and it counts neither as a hit nor as a miss.<br>
+ *
+ * Files are read outside the lock: two concurrent misses on the same file both read it. As a listener of the
+ * elements, the cache drops the file of an element deleted or replaced, which may have been its last reference.
+ */
+class AudioFileCache implements CatalogStore.Listener<AudioElement> {
+    private final long capacity;
+    private final long maxFileSize;
+
+    private final LinkedHashMap<String, ByteBuffer> files = new LinkedHashMap<>(16, 0.75f, true); // guarded by this
+    private long size; // guarded by this
+    private long invalidations; // guarded by this
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of bytes held
+     */
+    AudioFileCache(long capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+
+        this.capacity = capacity;
+        this.maxFileSize = capacity / 4;
+    }
+
+    /**
+     * Get the content of an audio file, reading it on a miss
+     * @param file the audio file
+     * @return a read-only buffer of the whole file, or null if the file is too large to be cached
+     * @throws IOException if the file can't be read
+     */
+    ByteBuffer get(File file) throws IOException {
+        String path = file.getPath();
+        long generation;
+        synchronized (this) {
+            ByteBuffer cached = files.get(path);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached.duplicate();
+            }
+            generation = invalidations;
+        }
+        if (file.length() > maxFileSize)
+            return null;
+
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            // grown since it was checked
+            if (length > maxFileSize)
+                return null;
+
+            misses.incrementAndGet();
+
+            content = ByteBuffer.allocateDirect((int) length);
+            while (content.hasRemaining()) {
+                if (channel.read(content) < 0)
+                    throw new IOException("File " + file + " was truncated while it was cached");
+            }
+        }
+        content.flip();
+        ByteBuffer readOnly = content.asReadOnlyBuffer();
+
+        synchronized (this) {
+            // the element may have been deleted while its file was read
+            if (generation == invalidations && !files.containsKey(path)) {
+                files.put(path, readOnly);
+                size += readOnly.capacity();
+                evict();
+            }
+        }
+        return readOnly.duplicate();
+    }
+
+    /**
+     * Drop a file
+     * @param file the audio file
+     */
+    synchronized void invalidate(File file) {
+        invalidations++;
+        ByteBuffer removed = files.remove(file.getPath());
+        if (removed != null)
+            size -= removed.capacity();
+    }
+
+    @Override
+    public void added(AudioElement entity, long sequence) {
+        // a file named after the element may have been written again
+        if (entity.getContent() != null)
+            invalidate(entity.getDataLocation());
+    }
+
+    @Override
+    public void removed(AudioElement entity, long sequence) {
+        if (entity.getContent() != null)
+            invalidate(entity.getDataLocation());
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<String, ByteBuffer>> it = files.entrySet().iterator(); size > capacity && it.hasNext(); ) {
+            size -= it.next().getValue().capacity();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return maximum number of bytes held
+     */
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of bytes held
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return number of files held
+     */
+    synchronized int count() {
+        return files.size();
+    }
+
+    /**
+     * @return number of requests served from memory
+     */
+    long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests which read the file, not counting the files too large to be cached
+     */
+    long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of files evicted to make room for others
+     */
+    long evictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        long requests = hits() + misses();
+        return String.format("%d files, %d / %d bytes, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                count(), size(), capacity, hits(), misses(), requests == 0 ? 0.0 : 100.0 * hits() / requests, evictions());
+    }
+}
@@ -0,0 +1,294 @@
+package musichub.server;
+
+import musichub.business.AudioElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Content-addressed storage of the audio files, shared by the elements with the same audio<br>
+ *
+ * A file is stored once, as blobs/&lt;2 first digits&gt;/&lt;SHA-256&gt;.wav, whatever the number of elements
+ * uploaded with it. Its hash is computed while it is written, then it is moved in place, or dropped if the blob
+ * already exists.<br>
+ *
+ * As a listener of the elements, the store counts the references to each blob. The counts aren't persisted: they
+ * are rebuilt as the catalog is loaded. A blob losing its last reference is deleted by {@link #collect()}, called
+ * once the deletion is durable, since the change could otherwise be replayed on a missing file. The files written
+ * before the store existed, as &lt;element UUID&gt;.wav in the legacy directory, are counted and deleted the same
+ * way. Other files are never deleted, and only the exact paths the store gives to its files are counted: an element
+ * can't make it delete a file by pointing elsewhere.<br>
+ *
+ * A stored file is pinned until its element is added, so that a collection running meanwhile doesn't delete a blob
+ * which was an orphan before the upload.
+ */
+class BlobStore implements CatalogStore.Listener<AudioElement> {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    static final String ALGORITHM = "SHA-256";
+    private static final String SUFFIX = ".wav";
+
+    private final File dir;
+    private final File legacyDir;
+    private final String prefix;
+
+    // paths of the files
+    private final Map<String, Integer> references = new HashMap<>(); // guarded by this
+    private final Set<String> orphans = new HashSet<>(); // guarded by this
+    private final Map<String, Integer> pins = new HashMap<>(); // guarded by this
+
+    /**
+     * @param dir directory of the blobs, created by the first stored file
+     * @param legacyDir directory of the files named after their element
+     */
+    BlobStore(File dir, File legacyDir) {
+        this.dir = canonical(dir);
+        this.legacyDir = canonical(legacyDir);
+        this.prefix = this.dir.getPath() + File.separator;
+    }
+
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * Create the digest of the blobs
+     * @return a new SHA-256 digest
+     */
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " isn't supported", e);
+        }
+    }
+
+    /**
+     * @param digest a digest of the content
+     * @return hexadecimal hash of the content
+     */
+    static String hash(MessageDigest digest) {
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest())
+            hash.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hash.toString();
+    }
+
+    /**
+     * Store a file, hashed while it is written
+     * @param in the content
+     * @return the blob, pinned until {@link #release} is called
+     * @throws IOException if the file can't be written
+     */
+    File store(InputStream in) throws IOException {
+        File tmp = new File(dir, UUID.randomUUID() + ".tmp");
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Couldn't create blob directory " + dir);
+
+        MessageDigest digest = digest();
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp.toPath()), digest)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int n; (n = in.read(buffer)) >= 0; )
+                out.write(buffer, 0, n);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+        return adopt(tmp, hash(digest));
+    }
+
+    /**
+     * Move a complete file into the store. If the blob already exists, the file is deleted instead.
+     * @param file the file, on the same file system as the store
+     * @param hash its SHA-256
+     * @return the blob, pinned until {@link #release} is called
+     * @throws IOException if the file can't be moved
+     */
+    File adopt(File file, String hash) throws IOException {
+        File blob = blob(hash);
+        synchronized (this) {
+            // an orphan adopted again is kept, at least until its element is added
+            orphans.remove(blob.getPath());
+            if (blob.exists()) {
+                Files.delete(file.toPath());
+                LOGGER.log(Level.INFO, "Audio file already stored as " + blob);
+            } else {
+                File parent = blob.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs())
+                    throw new IOException("Couldn't create blob directory " + parent);
+                Files.move(file.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            pins.merge(blob.getPath(), 1, Integer::sum);
+            return blob;
+        }
+    }
+
+    /**
+     * Unpin a blob returned by {@link #store} or {@link #adopt}, once its element is added or failed to be. If no
+     * element references it, it is deleted by the next collection.
+     * @param blob the blob
+     */
+    synchronized void release(File blob) {
+        String path = blob.getPath();
+        Integer count = pins.get(path);
+        if (count == null)
+            return;
+
+        if (count > 1) {
+            pins.put(path, count - 1);
+        } else {
+            pins.remove(path);
+            if (!references.containsKey(path))
+                orphans.add(path);
+        }
+    }
+
+    /**
+     * Delete the files which lost their last reference
+     * @return number of deleted files
+     */
+    int collect() {
+        String[] candidates;
+        synchronized (this) {
+            candidates = orphans.toArray(new String[0]);
+        }
+
+        int deleted = 0;
+        for (String path : candidates) {
+            // checked again under the lock, as the file may have been adopted meanwhile
+            synchronized (this) {
+                if (!orphans.remove(path) || references.containsKey(path) || pins.containsKey(path))
+                    continue;
+
+                File file = new File(path);
+                if (file.delete())
+                    deleted++;
+                else if (file.exists())
+                    LOGGER.log(Level.WARNING, "Couldn't delete unreferenced audio file " + file);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete every file without reference, as well as partial blobs. Only called once the catalog is loaded.
+     * @return number of deleted files
+     */
+    int sweep() {
+        synchronized (this) {
+            File[] children = dir.listFiles();
+            for (File child : children == null ? new File[0] : children) {
+                if (child.isFile()) {
+                    // a file which was being stored
+                    if (!child.delete())
+                        LOGGER.log(Level.WARNING, "Couldn't delete partial blob " + child);
+                    continue;
+                }
+
+                File[] blobs = child.listFiles((d, name) -> name.endsWith(SUFFIX));
+                for (File blob : blobs == null ? new File[0] : blobs)
+                    orphans.add(blob.getPath());
+            }
+
+            File[] legacy = legacyDir.listFiles((d, name) -> isLegacyName(name));
+            for (File file : legacy == null ? new File[0] : legacy)
+                orphans.add(file.getPath());
+        }
+        return collect();
+    }
+
+    /**
+     * @param file a stored file
+     * @return number of elements with this file
+     */
+    synchronized int references(File file) {
+        return references.getOrDefault(canonical(file).getPath(), 0);
+    }
+
+    @Override
+    public void added(AudioElement entity, long sequence) {
+        String path = storedPath(entity);
+        if (path == null)
+            return;
+
+        synchronized (this) {
+            references.merge(path, 1, Integer::sum);
+            orphans.remove(path);
+        }
+    }
+
+    @Override
+    public void removed(AudioElement entity, long sequence) {
+        String path = storedPath(entity);
+        if (path == null)
+            return;
+
+        synchronized (this) {
+            if (references.merge(path, -1, Integer::sum) <= 0) {
+                references.remove(path);
+                orphans.add(path);
+            }
+        }
+    }
+
+    private File blob(String hash) {
+        return new File(new File(dir, hash.substring(0, 2)), hash + SUFFIX);
+    }
+
+    /**
+     * @return path of the file of an element, or null if the store doesn't manage it. Only the paths given by the
+     * store are accepted, not other paths to the same files.
+     */
+    private String storedPath(AudioElement element) {
+        String content = element.getContent();
+        if (content == null || !content.endsWith(SUFFIX))
+            return null;
+
+        String name = new File(content).getName();
+        String hash = name.substring(0, name.length() - SUFFIX.length());
+        if (content.startsWith(prefix))
+            return isHash(hash) && content.equals(blob(hash).getPath()) ? content : null;
+
+        String legacy = new File(legacyDir, element.getUuid() + SUFFIX).getPath();
+        return content.equals(legacy) ? content : null;
+    }
+
+    private static boolean isHash(String name) {
+        if (name.length() != 64)
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0 || Character.isUpperCase(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isLegacyName(String name) {
+        if (!name.endsWith(SUFFIX))
+            return false;
+        try {
+            UUID.fromString(name.substring(0, name.length() - SUFFIX.length()));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package musichub.server;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Data handler of an audio file held in memory by the {@link AudioFileCache}<br>
+ *
+ * {@link #writeTo} writes the buffer to the output channel as a whole, without an intermediate copy buffer.
+ */
+class BufferDataHandler extends DataHandler {
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer content of the file, from its position to its limit. It is not modified.
+     */
+    BufferDataHandler(ByteBuffer buffer) {
+        super(new BufferDataSource(buffer));
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer content = buffer.duplicate();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (content.hasRemaining())
+            target.write(content);
+    }
+
+    private static final class BufferDataSource implements DataSource {
+        private final ByteBuffer buffer;
+
+        BufferDataSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            ByteBuffer content = buffer.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return content.hasRemaining() ? content.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0)
+                        return 0;
+                    if (!content.hasRemaining())
+                        return -1;
+
+                    int n = Math.min(len, content.remaining());
+                    content.get(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public int available() {
+                    return content.remaining();
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Cached audio files are read-only");
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public String getName() {
+            return "cached audio file";
+        }
+    }
+}
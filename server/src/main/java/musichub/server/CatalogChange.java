@@ -0,0 +1,196 @@
+package musichub.server;
+
+import musichub.business.Album;
+import musichub.business.AudioElement;
+import musichub.business.CatalogUpdate;
+import musichub.business.PlayList;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A single mutation of the catalog, as written to the journal and replayed at startup<br>
+ *
+ * Additions carry the whole entity, deletions the id of the removed entity (target), and membership changes
+ * the id of the added element (target) and of the album or playlist (container). A batch groups changes which
+ * are applied, journaled and replayed together, as a single record with a single version.
+ */
+class CatalogChange {
+    enum Type {
+        ADD_ELEMENT,
+        ADD_ALBUM,
+        ADD_PLAYLIST,
+        DELETE_ELEMENT,
+        DELETE_ALBUM,
+        DELETE_PLAYLIST,
+        ADD_TO_ALBUM,
+        ADD_TO_PLAYLIST,
+        BATCH
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    /**
+     * Catalog version produced by this change, assigned when the change is recorded
+     */
+    long version;
+
+    final Type type;
+    final AudioElement element;
+    final Album album;
+    final PlayList playlist;
+    final UUID target;
+    final UUID container;
+    final List<CatalogChange> changes;
+
+    private CatalogChange(Type type, AudioElement element, Album album, PlayList playlist, UUID target, UUID container) {
+        this(type, element, album, playlist, target, container, Collections.emptyList());
+    }
+
+    private CatalogChange(Type type, AudioElement element, Album album, PlayList playlist, UUID target, UUID container,
+                          List<CatalogChange> changes) {
+        this.type = type;
+        this.element = element;
+        this.album = album;
+        this.playlist = playlist;
+        this.target = target;
+        this.container = container;
+        this.changes = changes;
+    }
+
+    static CatalogChange addElement(AudioElement element) {
+        return new CatalogChange(Type.ADD_ELEMENT, element, null, null, null, null);
+    }
+
+    static CatalogChange addAlbum(Album album) {
+        return new CatalogChange(Type.ADD_ALBUM, null, album, null, null, null);
+    }
+
+    static CatalogChange addPlaylist(PlayList playlist) {
+        return new CatalogChange(Type.ADD_PLAYLIST, null, null, playlist, null, null);
+    }
+
+    static CatalogChange delete(Type type, UUID target) {
+        return new CatalogChange(type, null, null, null, target, null);
+    }
+
+    static CatalogChange addToContainer(Type type, UUID element, UUID container) {
+        return new CatalogChange(type, null, null, null, element, container);
+    }
+
+    /**
+     * Convert an update received from the change feed of another hub. Albums and playlists are copied, as the
+     * memberships added later are applied to them.
+     * @param update the update, whose version is kept
+     */
+    static CatalogChange of(CatalogUpdate update) {
+        Album album = null;
+        PlayList playlist = null;
+        if (update.getAlbum() != null) {
+            Album source = update.getAlbum();
+            album = new Album(source.getUuid(), source.getTitle(), source.getArtist(), source.getLengthInSeconds(), source.getDate());
+            album.getSongs().addAll(source.getSongs());
+        }
+        if (update.getPlaylist() != null) {
+            playlist = new PlayList(update.getPlaylist().getUuid(), update.getPlaylist().getTitle());
+            playlist.getElements().addAll(update.getPlaylist().getElements());
+        }
+
+        CatalogChange change = new CatalogChange(Type.valueOf(update.getType().name()), update.getElement(), album,
+                playlist, update.getTarget(), update.getContainer());
+        change.version = update.getVersion();
+        return change;
+    }
+
+    /**
+     * @param changes changes applied together, in order. Batches can't be nested.
+     */
+    static CatalogChange batch(List<CatalogChange> changes) {
+        return new CatalogChange(Type.BATCH, null, null, null, null, null, changes);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(version);
+        out.writeByte(type.ordinal());
+
+        switch (type) {
+            case ADD_ELEMENT:
+                CatalogCodec.writeElement(out, element);
+                break;
+            case ADD_ALBUM:
+                CatalogCodec.writeAlbum(out, album);
+                break;
+            case ADD_PLAYLIST:
+                CatalogCodec.writePlayList(out, playlist);
+                break;
+            case DELETE_ELEMENT:
+            case DELETE_ALBUM:
+            case DELETE_PLAYLIST:
+                CatalogCodec.writeUuid(out, target);
+                break;
+            case ADD_TO_ALBUM:
+            case ADD_TO_PLAYLIST:
+                CatalogCodec.writeUuid(out, target);
+                CatalogCodec.writeUuid(out, container);
+                break;
+            case BATCH:
+                out.writeInt(changes.size());
+                for (CatalogChange change : changes)
+                    change.writeTo(out);
+                break;
+        }
+    }
+
+    static CatalogChange readFrom(DataInput in) throws IOException {
+        long version = in.readLong();
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= TYPES.length)
+            throw new IOException("Unknown change type: " + ordinal);
+
+        Type type = TYPES[ordinal];
+        CatalogChange change;
+
+        switch (type) {
+            case ADD_ELEMENT:
+                change = addElement(CatalogCodec.readElement(in));
+                break;
+            case ADD_ALBUM:
+                change = addAlbum(CatalogCodec.readAlbum(in));
+                break;
+            case ADD_PLAYLIST:
+                change = addPlaylist(CatalogCodec.readPlayList(in));
+                break;
+            case DELETE_ELEMENT:
+            case DELETE_ALBUM:
+            case DELETE_PLAYLIST:
+                change = delete(type, CatalogCodec.readUuid(in));
+                break;
+            case BATCH:
+                int size = in.readInt();
+                if (size < 0)
+                    throw new IOException("Invalid batch size: " + size);
+
+                List<CatalogChange> changes = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    CatalogChange nested = readFrom(in);
+                    if (nested.type == Type.BATCH)
+                        throw new IOException("Nested batch");
+                    changes.add(nested);
+                }
+                change = batch(changes);
+                break;
+            default:
+                UUID target = CatalogCodec.readUuid(in);
+                change = addToContainer(type, target, CatalogCodec.readUuid(in));
+                break;
+        }
+
+        change.version = version;
+        return change;
+    }
+}
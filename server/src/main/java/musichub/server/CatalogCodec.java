@@ -0,0 +1,266 @@
+package musichub.server;
+
+import musichub.business.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary encoding of catalog entities, used by the journal and the binary snapshot<br>
+ *
+ * UUIDs are written as two longs and enums as ordinals, so the encoding only depends on the declaration
+ * order of {@link Genre}, {@link Language} and {@link Category}: new constants must be added at the end.
+ * Artists can be written inline, or as an index in a {@link StringTable} when many entities share them.<br>
+ *
+ * Reads check every length, count and ordinal, so a corrupted or truncated file fails with an IOException instead
+ * of allocating a huge array.
+ */
+final class CatalogCodec {
+    private static final byte SONG = 0;
+    private static final byte AUDIOBOOK = 1;
+
+    /**
+     * Maximum size of a string, in UTF-8 bytes
+     */
+    static final int MAX_STRING_SIZE = 16 * 1024 * 1024;
+
+    private static final Genre[] GENRES = Genre.values();
+    private static final Language[] LANGUAGES = Language.values();
+    private static final Category[] CATEGORIES = Category.values();
+
+    private CatalogCodec() {
+    }
+
+    /**
+     * Strings shared by many entities, written once and then referenced by their index
+     */
+    static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        /**
+         * Add a string to the table, if not already present
+         * @param value the string
+         */
+        void add(String value) {
+            indexes.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values)
+                writeString(out, value);
+        }
+
+        static String[] readFrom(DataInput in) throws IOException {
+            // grown while reading: a corrupted count ends with the file
+            int count = readCount(in);
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+                values.add(readString(in));
+            return values.toArray(new String[0]);
+        }
+    }
+
+    static void writeElement(DataOutput out, AudioElement element) throws IOException {
+        writeElement(out, element, null);
+    }
+
+    static AudioElement readElement(DataInput in) throws IOException {
+        return readElement(in, null);
+    }
+
+    static void writeAlbum(DataOutput out, Album album) throws IOException {
+        writeAlbum(out, album, null);
+    }
+
+    static Album readAlbum(DataInput in) throws IOException {
+        return readAlbum(in, null);
+    }
+
+    /**
+     * @param table table holding the artist, null to write it inline
+     */
+    static void writeElement(DataOutput out, AudioElement element, StringTable table) throws IOException {
+        if (element instanceof Song) {
+            out.writeByte(SONG);
+        } else if (element instanceof AudioBook) {
+            out.writeByte(AUDIOBOOK);
+        } else {
+            throw new IOException("Unknown audio element type: " + element.getClass());
+        }
+
+        writeUuid(out, element.getUuid());
+        writeString(out, element.getTitle());
+        writeShared(out, element.getArtist(), table);
+        out.writeInt(element.getLengthInSeconds());
+        writeString(out, element.getContent());
+
+        if (element instanceof Song) {
+            out.writeByte(((Song) element).getGenre().ordinal());
+        } else {
+            AudioBook book = (AudioBook) element;
+            out.writeByte(book.getLanguage().ordinal());
+            out.writeByte(book.getCategory().ordinal());
+        }
+    }
+
+    /**
+     * @param table strings of the table used when writing, null if the artist was written inline
+     */
+    static AudioElement readElement(DataInput in, String[] table) throws IOException {
+        byte kind = in.readByte();
+
+        UUID uuid = readUuid(in);
+        String title = readString(in);
+        String artist = readShared(in, table);
+        int length = in.readInt();
+        String content = readString(in);
+
+        switch (kind) {
+            case SONG:
+                return new Song(uuid, title, artist, length, content, readEnum(in, GENRES));
+            case AUDIOBOOK:
+                Language language = readEnum(in, LANGUAGES);
+                return new AudioBook(uuid, title, artist, length, content, language, readEnum(in, CATEGORIES));
+            default:
+                throw new IOException("Unknown audio element type: " + kind);
+        }
+    }
+
+    static void writeAlbum(DataOutput out, Album album, StringTable table) throws IOException {
+        writeUuid(out, album.getUuid());
+        writeString(out, album.getTitle());
+        writeShared(out, album.getArtist(), table);
+        out.writeInt(album.getLengthInSeconds());
+        out.writeLong(album.getDate().getTime());
+        writeUuids(out, album.getSongs());
+    }
+
+    static Album readAlbum(DataInput in, String[] table) throws IOException {
+        UUID uuid = readUuid(in);
+        String title = readString(in);
+        String artist = readShared(in, table);
+        int length = in.readInt();
+        if (title == null || artist == null || length < 0)
+            throw new IOException("Invalid album " + uuid);
+        Album album = new Album(uuid, title, artist, length, new Date(in.readLong()));
+
+        // a single copy of the copy-on-write list
+        album.getSongs().addAll(readUuids(in));
+        return album;
+    }
+
+    static void writePlayList(DataOutput out, PlayList playlist) throws IOException {
+        writeUuid(out, playlist.getUuid());
+        writeString(out, playlist.getTitle());
+        writeUuids(out, playlist.getElements());
+    }
+
+    static PlayList readPlayList(DataInput in) throws IOException {
+        PlayList playlist = new PlayList(readUuid(in), readString(in));
+        playlist.getElements().addAll(readUuids(in));
+        return playlist;
+    }
+
+    static void writeUuid(DataOutput out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    static UUID readUuid(DataInput in) throws IOException {
+        long msb = in.readLong();
+        return new UUID(msb, in.readLong());
+    }
+
+    /**
+     * Write a string as its UTF-8 length followed by its bytes. Unlike {@link DataOutput#writeUTF}, it isn't
+     * limited to 64KB and null is written as length -1.
+     */
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_SIZE)
+            throw new IOException("String of " + bytes.length + " bytes is too long");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1)
+            return null;
+        if (length < -1 || length > MAX_STRING_SIZE)
+            throw new IOException("Invalid string length: " + length);
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeShared(DataOutput out, String value, StringTable table) throws IOException {
+        if (table == null) {
+            writeString(out, value);
+            return;
+        }
+
+        Integer index = table.indexes.get(value);
+        if (index == null)
+            throw new IOException("String missing from table: " + value);
+        out.writeInt(index);
+    }
+
+    private static String readShared(DataInput in, String[] table) throws IOException {
+        if (table == null)
+            return readString(in);
+
+        int index = in.readInt();
+        if (index < 0 || index >= table.length)
+            throw new IOException("Invalid string index: " + index);
+        return table[index];
+    }
+
+    /**
+     * Read the number of entries which follow
+     * @throws IOException if the count is negative
+     */
+    static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Invalid count: " + count);
+        return count;
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInput in, E[] values) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= values.length)
+            throw new IOException("Invalid " + values[0].getDeclaringClass().getSimpleName() + " ordinal: " + ordinal);
+        return values[ordinal];
+    }
+
+    private static List<UUID> readUuids(DataInput in) throws IOException {
+        int count = readCount(in);
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            uuids.add(readUuid(in));
+        return uuids;
+    }
+
+    private static void writeUuids(DataOutput out, List<UUID> uuids) throws IOException {
+        // copy-on-write lists: iterate a single snapshot so the count matches the entries
+        Object[] ids = uuids.toArray();
+        out.writeInt(ids.length);
+        for (Object id : ids)
+            writeUuid(out, (UUID) id);
+    }
+}
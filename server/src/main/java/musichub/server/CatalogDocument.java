@@ -0,0 +1,33 @@
+package musichub.server;
+
+import musichub.business.Album;
+import musichub.business.AudioElement;
+import musichub.business.PlayList;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * XML representation of the whole catalog, as stored in musichub.xml
+ */
+@XmlRootElement(name = "musichub")
+@XmlAccessorType(XmlAccessType.FIELD)
+class CatalogDocument {
+    /**
+     * Catalog version of the snapshot: journaled changes up to this version are already included
+     */
+    @XmlAttribute
+    long version;
+
+    @XmlElement(name = "album")
+    final List<Album> albums = new ArrayList<>();
+    @XmlElement(name = "playlist")
+    final List<PlayList> playlists = new ArrayList<>();
+    @XmlElement(name = "elements")
+    final List<AudioElement> elements = new ArrayList<>();
+}
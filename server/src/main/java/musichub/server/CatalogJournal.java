@@ -0,0 +1,358 @@
+package musichub.server;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of catalog mutations<br>
+ *
+ * Changes are encoded on the caller's thread and written by a single writer thread, which syncs the file once
+ * per batch (group commit): writers arriving while a sync is in progress share the next one. Each write therefore
+ * costs O(1) I/O, whatever the size of the catalog.<br>
+ *
+ * The journal is split in numbered segments. Taking a snapshot rotates to a new segment; once the snapshot is on
+ * disk, the segments it covers are deleted. A record is its payload length, the CRC32 of the payload and the
+ * payload itself ({@link CatalogChange#writeTo}), so a record torn by a crash is detected and ignored on replay.
+ */
+class CatalogJournal implements Closeable {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final String SUFFIX = ".log";
+    private static final int MAX_BATCH = 1024;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private enum Kind { RECORD, ROTATE, DELETE_BEFORE, CLOSE }
+
+    private static class Task {
+        final Kind kind;
+        final byte[] record;
+        final int segment;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Task(Kind kind, byte[] record, int segment) {
+            this.kind = kind;
+            this.record = record;
+            this.segment = segment;
+        }
+    }
+
+    private final File dir;
+    private final int compactThreshold;
+    private final Runnable onCompactionNeeded;
+
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    // guarded by this
+    private int segment;
+    private int recordsInSegment;
+    private boolean compactionRequested;
+    private boolean closed;
+
+    // writer thread only
+    private FileOutputStream file;
+    private DataOutputStream out;
+
+    /**
+     * Open the journal for writing. Appends go to a new segment, after any existing one.
+     * @param dir directory of the segments, created if needed
+     * @param compactThreshold number of records in the current segment after which a compaction is requested
+     * @param onCompactionNeeded called, at most once per segment, when the threshold is reached. Must not block.
+     * @throws IOException if the directory can't be created
+     */
+    CatalogJournal(File dir, int compactThreshold, Runnable onCompactionNeeded) throws IOException {
+        this.dir = dir;
+        this.compactThreshold = compactThreshold;
+        this.onCompactionNeeded = onCompactionNeeded;
+
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Couldn't create journal directory " + dir);
+
+        File[] existing = segments(dir);
+        this.segment = existing.length == 0 ? 1 : segmentNumber(existing[existing.length - 1]) + 1;
+
+        final int firstSegment = this.segment;
+        this.writer = new Thread(() -> writeLoop(firstSegment), "musichub-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Replay all segments of a journal directory
+     * @param dir directory of the segments
+     * @param afterVersion changes with a version lower or equal to this one are skipped (already in the snapshot)
+     * @param consumer receives the changes, in order
+     * @return version of the last replayed change, afterVersion if none
+     * @throws IOException if a segment can't be read, or if changes are missing after afterVersion, such as when the
+     *                     snapshot the journal follows wasn't loaded
+     */
+    static long replay(File dir, long afterVersion, Consumer<CatalogChange> consumer) throws IOException {
+        long last = afterVersion;
+
+        for (File segment : segments(dir)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+                byte[] payload;
+                while ((payload = readRecord(in, segment)) != null) {
+                    CatalogChange change = CatalogChange.readFrom(new DataInputStream(new ByteArrayInputStream(payload)));
+
+                    if (change.version <= last)
+                        continue;
+                    if (change.version != last + 1)
+                        throw new IOException("Journal " + segment + " goes from version " + last + " to "
+                                + change.version + ", changes are missing");
+                    consumer.accept(change);
+                    last = change.version;
+                }
+            }
+        }
+
+        return last;
+    }
+
+    /**
+     * Queue a change. The change is encoded immediately, so it may be modified once this method returns.
+     * @param change the change, with its version already assigned
+     * @return completed once the change is durable on disk
+     */
+    synchronized CompletableFuture<Void> append(CatalogChange change) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        if (closed) {
+            failed.completeExceptionally(new IOException("Journal is closed"));
+            return failed;
+        }
+
+        byte[] record;
+        try {
+            record = encode(change);
+        } catch (IOException e) {
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        Task task = new Task(Kind.RECORD, record, segment);
+        queue.add(task);
+
+        if (++recordsInSegment >= compactThreshold && !compactionRequested) {
+            compactionRequested = true;
+            onCompactionNeeded.run();
+        }
+
+        return task.done;
+    }
+
+    /**
+     * Switch appends to a new segment. Records appended before this call stay in the previous segments.
+     * @return number of the new segment
+     */
+    synchronized int rotate() {
+        segment++;
+        recordsInSegment = 0;
+        compactionRequested = false;
+
+        queue.add(new Task(Kind.ROTATE, null, segment));
+        return segment;
+    }
+
+    /**
+     * Delete the segments preceding a segment, once their content is covered by a snapshot
+     * @param segment first segment to keep, as returned by {@link #rotate()}
+     * @return completed once the segments are deleted
+     */
+    synchronized CompletableFuture<Void> deleteBefore(int segment) {
+        Task task = new Task(Kind.DELETE_BEFORE, null, segment);
+        queue.add(task);
+        return task.done;
+    }
+
+    /**
+     * Flush pending records and stop the writer thread
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            queue.add(new Task(Kind.CLOSE, null, 0));
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop(int firstSegment) {
+        List<Task> batch = new ArrayList<>();
+        boolean stop = false;
+
+        try {
+            openSegment(firstSegment);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Couldn't open journal: " + e);
+        }
+
+        try {
+            while (!stop) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                stop = writeBatch(batch);
+                batch.clear();
+            }
+
+            closeSegment();
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.SEVERE, "Journal writer interrupted");
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Couldn't close journal: " + e);
+        }
+    }
+
+    /**
+     * Write a batch of tasks and sync once
+     * @return true if the journal was closed
+     */
+    private boolean writeBatch(List<Task> batch) {
+        IOException error = null;
+        boolean stop = false;
+
+        for (Task task : batch) {
+            try {
+                switch (task.kind) {
+                    case RECORD:
+                        if (out == null)
+                            throw new IOException("no open journal segment");
+                        out.write(task.record);
+                        break;
+                    case ROTATE:
+                        sync();
+                        closeSegment();
+                        openSegment(task.segment);
+                        break;
+                    case DELETE_BEFORE:
+                        for (File f : segments(dir)) {
+                            if (segmentNumber(f) < task.segment && !f.delete())
+                                LOGGER.log(Level.WARNING, "Couldn't delete journal segment " + f);
+                        }
+                        break;
+                    case CLOSE:
+                        stop = true;
+                        break;
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        try {
+            sync();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        if (error != null)
+            LOGGER.log(Level.SEVERE, "Couldn't write journal: " + error);
+
+        for (Task task : batch) {
+            if (error != null)
+                task.done.completeExceptionally(error);
+            else
+                task.done.complete(null);
+        }
+
+        return stop;
+    }
+
+    private void openSegment(int number) throws IOException {
+        file = new FileOutputStream(new File(dir, String.format("%08d", number) + SUFFIX), true);
+        out = new DataOutputStream(new BufferedOutputStream(file));
+    }
+
+    private void closeSegment() throws IOException {
+        if (out != null)
+            out.close();
+        out = null;
+        file = null;
+    }
+
+    private void sync() throws IOException {
+        if (out == null)
+            return;
+
+        out.flush();
+        file.getChannel().force(false);
+    }
+
+    private static byte[] encode(CatalogChange change) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        change.writeTo(new DataOutputStream(payload));
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(payload.size() + 8);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        recordOut.writeInt(payload.size());
+        recordOut.writeInt((int) crc.getValue());
+        payload.writeTo(recordOut);
+
+        return record.toByteArray();
+    }
+
+    /**
+     * @return the payload of the next record, null at the end of the segment or on a torn record
+     */
+    private static byte[] readRecord(DataInputStream in, File segment) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        try {
+            int crc = in.readInt();
+            if (length < 0 || length > MAX_RECORD_SIZE)
+                throw new EOFException("invalid record length " + length);
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+
+            CRC32 actual = new CRC32();
+            actual.update(payload);
+            if ((int) actual.getValue() != crc)
+                throw new EOFException("checksum mismatch");
+
+            return payload;
+        } catch (EOFException e) {
+            LOGGER.log(Level.WARNING, "Ignoring torn journal record in " + segment + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static File[] segments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.matches("[0-9]+" + Pattern.quote(SUFFIX)));
+        if (files == null)
+            return new File[0];
+
+        Arrays.sort(files, (a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+        return files;
+    }
+
+    private static int segmentNumber(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
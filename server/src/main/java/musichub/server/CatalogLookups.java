@@ -0,0 +1,75 @@
+package musichub.server;
+
+import musichub.business.IMusicHub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Multi-gets of a {@link CatalogStore}<br>
+ *
+ * Keys are resolved in a single pass over the store maps. A key matching nothing is reported as missing instead of
+ * failing the whole call, so no exception is thrown nor logged per key.
+ */
+final class CatalogLookups {
+    /**
+     * Creates a result from the entities found and the missing keys
+     */
+    @FunctionalInterface
+    interface Factory<T, L> {
+        L create(T[] found, String[] missing);
+    }
+
+    private CatalogLookups() {
+    }
+
+    /**
+     * Resolve keys
+     * @param keys requested keys, null for none
+     * @param resolver finds the entity of a key, null if none
+     * @param arrayFactory creates arrays of the entity type
+     * @param factory creates the result
+     * @return the result
+     * @throws IllegalArgumentException if there are more than {@link IMusicHub#MAX_PAGE_SIZE} keys
+     */
+    static <T, L> L lookup(String[] keys, Function<String, T> resolver, IntFunction<T[]> arrayFactory, Factory<T, L> factory) {
+        if (keys == null)
+            keys = new String[0];
+        if (keys.length > IMusicHub.MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("Too many keys: " + keys.length + " > " + IMusicHub.MAX_PAGE_SIZE);
+
+        T[] found = arrayFactory.apply(keys.length);
+        int n = 0;
+        List<String> missing = new ArrayList<>();
+
+        for (String key : keys) {
+            T entity = key == null ? null : resolver.apply(key);
+            if (entity != null)
+                found[n++] = entity;
+            else
+                missing.add(key);
+        }
+
+        if (n < found.length) {
+            T[] trimmed = arrayFactory.apply(n);
+            System.arraycopy(found, 0, trimmed, 0, n);
+            found = trimmed;
+        }
+        return factory.create(found, missing.toArray(new String[0]));
+    }
+
+    /**
+     * @param id textual form of a UUID
+     * @return the UUID, null if the text isn't a valid UUID
+     */
+    static UUID parseUuid(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package musichub.server;
+
+import musichub.business.IMusicHub;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Offset and cursor based pages of a {@link CatalogStore} listing<br>
+ *
+ * Pages are sliced from the shared store snapshot, so only the returned items are copied. A listing can be
+ * restricted to a subtype (songs or audiobooks among the elements). A cursor is the sequence number of the last
+ * item of the previous page, encoded in base 36: clients must treat it as opaque.
+ */
+final class CatalogPages {
+    /**
+     * Creates a page from its items, the cursor of the next page and the size of the listing
+     */
+    @FunctionalInterface
+    interface Factory<S, P> {
+        P create(S[] items, String nextCursor, int total);
+    }
+
+    private CatalogPages() {
+    }
+
+    /**
+     * @param items a listing
+     * @param type type of the counted items
+     * @return number of items of this type
+     */
+    static int count(Object[] items, Class<?> type) {
+        if (type.isAssignableFrom(items.getClass().getComponentType()))
+            return items.length;
+
+        int count = 0;
+        for (Object item : items) {
+            if (type.isInstance(item))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get a page from an offset
+     * @param items the listing
+     * @param type type of the listed items
+     * @param offset number of items of this type to skip
+     * @param limit maximum number of items
+     * @param arrayFactory creates arrays of the listed type
+     * @return the page
+     * @throws IllegalArgumentException if the offset is negative or the limit isn't positive
+     */
+    static <T, S extends T> S[] page(T[] items, Class<S> type, int offset, int limit, IntFunction<S[]> arrayFactory) {
+        if (offset < 0)
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        limit = checkLimit(limit);
+
+        if (type.isAssignableFrom(items.getClass().getComponentType())) {
+            int from = Math.min(offset, items.length);
+            int to = (int) Math.min((long) from + limit, items.length);
+            return copy(items, from, to, type, arrayFactory, to - from);
+        }
+
+        int i = 0;
+        for (int skipped = 0; i < items.length && skipped < offset; i++) {
+            if (type.isInstance(items[i]))
+                skipped++;
+        }
+        return copy(items, i, items.length, type, arrayFactory, limit);
+    }
+
+    /**
+     * Get the page following a cursor
+     * @param view snapshot of the store
+     * @param type type of the listed items
+     * @param cursor cursor of the previous page, null or empty for the first page
+     * @param limit maximum number of items
+     * @param arrayFactory creates arrays of the listed type
+     * @param pageFactory creates the page
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is invalid or the limit isn't positive
+     */
+    static <T, S extends T, P> P after(CatalogStore.View<T> view, Class<S> type, String cursor, int limit,
+                                       IntFunction<S[]> arrayFactory, Factory<? super S, P> pageFactory) {
+        limit = checkLimit(limit);
+        T[] items = view.items;
+        int from = view.indexAfter(decode(cursor));
+
+        S[] page = copy(items, from, items.length, type, arrayFactory, limit);
+
+        // index of the last item of the page, then look for an item after it
+        int last = from - 1;
+        for (int found = 0; found < page.length; ) {
+            if (type.isInstance(items[++last]))
+                found++;
+        }
+
+        String next = null;
+        for (int i = last + 1; i < items.length; i++) {
+            if (type.isInstance(items[i])) {
+                next = encode(view.sequence(last));
+                break;
+            }
+        }
+
+        return pageFactory.create(page, next, count(items, type));
+    }
+
+    /**
+     * Copy up to max items of a type, from index from (inclusive) to index to (exclusive)
+     */
+    private static <T, S extends T> S[] copy(T[] items, int from, int to, Class<S> type, IntFunction<S[]> arrayFactory, int max) {
+        S[] buffer = arrayFactory.apply(Math.min(max, to - from));
+        int n = 0;
+        for (int i = from; i < to && n < buffer.length; i++) {
+            if (type.isInstance(items[i]))
+                buffer[n++] = type.cast(items[i]);
+        }
+        return n == buffer.length ? buffer : Arrays.copyOf(buffer, n);
+    }
+
+    /**
+     * @param limit a requested number of items
+     * @return the limit, reduced to {@link IMusicHub#MAX_PAGE_SIZE}
+     * @throws IllegalArgumentException if the limit isn't positive
+     */
+    static int checkLimit(int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        return Math.min(limit, IMusicHub.MAX_PAGE_SIZE);
+    }
+
+    static String encode(long sequence) {
+        return Long.toString(sequence, Character.MAX_RADIX);
+    }
+
+    static long decode(String cursor) {
+        if (cursor == null || cursor.isEmpty())
+            return 0;
+
+        try {
+            long sequence = Long.parseLong(cursor, Character.MAX_RADIX);
+            if (sequence >= 0)
+                return sequence;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+}
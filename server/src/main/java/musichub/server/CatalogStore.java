@@ -0,0 +1,308 @@
+package musichub.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Thread-safe store for one kind of catalog entity (elements, albums or playlists)<br>
+ *
+ * Lookups by id and by title are lock-free: both indexes are concurrent maps. Listings are served from an
+ * immutable array snapshot, rebuilt lazily after a mutation. Mutations are serialized by the store's own lock,
+ * so each entity type has its own write lock and writers on different types never contend.<br>
+ *
+ * Entities are kept in a slot array in insertion order. A removal only clears its slot, so add and remove are
+ * O(1); the array is compacted once more than half of the slots are empty.<br>
+ *
+ * Each entity also gets an increasing sequence number when it is added. Snapshots keep them next to the
+ * entities, so a listing can resume after a given entity with a binary search, even if it was removed since.<br>
+ *
+ * Secondary indexes follow the store through {@link Listener}s.
+ *
+ * @param <T> entity type
+ */
+class CatalogStore<T> {
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    private final Function<T, UUID> idOf;
+    private final Function<T, String> titleOf;
+    private final IntFunction<T[]> arrayFactory;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Notified of the changes of a store, under its write lock
+     * @param <T> entity type
+     */
+    interface Listener<T> {
+        /**
+         * @param entity the added entity
+         * @param sequence its sequence number
+         */
+        void added(T entity, long sequence);
+
+        /**
+         * @param entity the removed or replaced entity
+         * @param sequence its sequence number
+         */
+        void removed(T entity, long sequence);
+    }
+
+    private final List<Listener<? super T>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * An entity and its position in the slot array
+     */
+    private static final class Entry<T> {
+        final T value;
+        final long sequence;
+        int slot; // guarded by the store lock
+
+        Entry(T value, long sequence, int slot) {
+            this.value = value;
+            this.sequence = sequence;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the store: the entities in insertion order, and their sequence numbers
+     * @param <T> entity type
+     */
+    static final class View<T> {
+        /**
+         * Entities in insertion order, shared: must not be modified
+         */
+        final T[] items;
+        private final long[] sequences;
+
+        View(T[] items, long[] sequences) {
+            this.items = items;
+            this.sequences = sequences;
+        }
+
+        /**
+         * @param sequence sequence number of an entity, 0 for none
+         * @return index of the first entity added after it
+         */
+        int indexAfter(long sequence) {
+            int index = Arrays.binarySearch(sequences, sequence);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        /**
+         * @param index index of an entity
+         * @return its sequence number, always greater than 0
+         */
+        long sequence(int index) {
+            return sequences[index];
+        }
+    }
+
+    private Entry<?>[] slots = new Entry<?>[16];
+    private int end;
+    private long lastSequence;
+
+    private final Map<UUID, Entry<T>> byId = new ConcurrentHashMap<>();
+    private final Map<String, T> byTitle = new ConcurrentHashMap<>();
+
+    private volatile View<T> snapshot;
+
+    /**
+     * Create an empty store
+     * @param idOf extracts the unique id of an entity
+     * @param titleOf extracts the title of an entity, indexed case-insensitively
+     * @param arrayFactory creates typed arrays, used for snapshots
+     */
+    CatalogStore(Function<T, UUID> idOf, Function<T, String> titleOf, IntFunction<T[]> arrayFactory) {
+        this.idOf = idOf;
+        this.titleOf = titleOf;
+        this.arrayFactory = arrayFactory;
+        this.snapshot = new View<>(arrayFactory.apply(0), new long[0]);
+    }
+
+    /**
+     * @return the write lock of this store. Hold it to make several operations atomic for other writers.
+     */
+    ReentrantLock writeLock() {
+        return lock;
+    }
+
+    /**
+     * Register a listener. It isn't notified of the entities already in the store.
+     * @param listener the listener
+     */
+    void addListener(Listener<? super T> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Add an entity, replacing any entity with the same id
+     * @param entity the entity
+     * @throws IllegalArgumentException if the entity has no id or no title. The store is left unchanged.
+     */
+    void add(T entity) {
+        // checked before any structure is changed
+        UUID id = idOf.apply(entity);
+        String title = titleOf.apply(entity);
+        if (id == null || title == null)
+            throw new IllegalArgumentException("Entity without id or title: " + entity);
+        String key = title.toLowerCase();
+
+        lock.lock();
+        try {
+            if (end == slots.length)
+                slots = Arrays.copyOf(slots, slots.length * 2);
+
+            Entry<T> entry = new Entry<>(entity, ++lastSequence, end);
+            slots[end++] = entry;
+
+            Entry<T> previous = byId.put(id, entry);
+            if (previous != null) {
+                byTitle.remove(key(previous.value), previous.value);
+                clearSlot(previous.slot);
+                for (Listener<? super T> listener : listeners)
+                    listener.removed(previous.value, previous.sequence);
+            }
+
+            byTitle.put(key, entity);
+            snapshot = null;
+            for (Listener<? super T> listener : listeners)
+                listener.added(entity, entry.sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove an entity by its id
+     * @param id the id
+     * @return the removed entity, null if there was none
+     */
+    T remove(UUID id) {
+        lock.lock();
+        try {
+            Entry<T> entry = byId.remove(id);
+            if (entry == null)
+                return null;
+
+            byTitle.remove(key(entry.value), entry.value);
+            clearSlot(entry.slot);
+            snapshot = null;
+            for (Listener<? super T> listener : listeners)
+                listener.removed(entry.value, entry.sequence);
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param id the id
+     * @return the entity, null if not found
+     */
+    T byId(UUID id) {
+        Entry<T> entry = byId.get(id);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @param title the title, case insensitive
+     * @return the entity, null if not found
+     */
+    T byTitle(String title) {
+        return byTitle.get(title.toLowerCase());
+    }
+
+    /**
+     * @return number of entities
+     */
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * Get all entities in insertion order. The returned array is shared and must not be modified.
+     * @return all entities
+     */
+    T[] snapshot() {
+        return view().items;
+    }
+
+    /**
+     * @return the current snapshot of the store, shared
+     */
+    View<T> view() {
+        View<T> s = snapshot;
+        if (s != null)
+            return s;
+
+        lock.lock();
+        try {
+            if (snapshot == null) {
+                T[] live = arrayFactory.apply(byId.size());
+                long[] sequences = new long[live.length];
+                int n = 0;
+                for (int i = 0; i < end; i++) {
+                    Entry<?> entry = slots[i];
+                    if (entry != null) {
+                        sequences[n] = entry.sequence;
+                        live[n++] = value(entry);
+                    }
+                }
+                snapshot = new View<>(live, sequences);
+            }
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a copy of all entities in insertion order, which the caller may modify
+     */
+    T[] toArray() {
+        T[] s = snapshot();
+        return Arrays.copyOf(s, s.length);
+    }
+
+    private void clearSlot(int slot) {
+        slots[slot] = null;
+
+        if (end >= MIN_COMPACT_SIZE && byId.size() < end / 2)
+            compact();
+    }
+
+    /**
+     * Move live entities to the front of the slot array, keeping their order
+     */
+    private void compact() {
+        int n = 0;
+        for (int i = 0; i < end; i++) {
+            Entry<?> entry = slots[i];
+            if (entry == null)
+                continue;
+
+            entry.slot = n;
+            slots[n++] = entry;
+        }
+
+        Arrays.fill(slots, n, end, null);
+        end = n;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(Entry<?> entry) {
+        return (T) entry.value;
+    }
+
+    private String key(T entity) {
+        return titleOf.apply(entity).toLowerCase();
+    }
+}
@@ -0,0 +1,90 @@
+package musichub.server;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared JAXB context of {@link CatalogDocument}<br>
+ *
+ * Building a context reflects over the whole model, so it is created once, on first use or by
+ * {@link #warmUp()}, and then shared. The context is thread-safe but marshallers and unmarshallers aren't: each
+ * thread reuses its own.
+ */
+final class CatalogXmlContext {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static volatile JAXBContext context;
+
+    private static final ThreadLocal<Marshaller> MARSHALLERS = new ThreadLocal<>();
+    private static final ThreadLocal<Unmarshaller> UNMARSHALLERS = new ThreadLocal<>();
+
+    private CatalogXmlContext() {
+    }
+
+    /**
+     * @return the shared context, created on first call
+     * @throws JAXBException if the context can't be created
+     */
+    static JAXBContext context() throws JAXBException {
+        JAXBContext result = context;
+        if (result == null) {
+            synchronized (CatalogXmlContext.class) {
+                result = context;
+                if (result == null)
+                    context = result = JAXBContext.newInstance(CatalogDocument.class);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return marshaller of the current thread, producing formatted output
+     * @throws JAXBException if the marshaller can't be created
+     */
+    static Marshaller marshaller() throws JAXBException {
+        Marshaller marshaller = MARSHALLERS.get();
+        if (marshaller == null) {
+            marshaller = context().createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            MARSHALLERS.set(marshaller);
+        }
+        return marshaller;
+    }
+
+    /**
+     * @return unmarshaller of the current thread
+     * @throws JAXBException if the unmarshaller can't be created
+     */
+    static Unmarshaller unmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = UNMARSHALLERS.get();
+        if (unmarshaller == null) {
+            unmarshaller = context().createUnmarshaller();
+            UNMARSHALLERS.set(unmarshaller);
+        }
+        return unmarshaller;
+    }
+
+    /**
+     * Create the context and marshal an empty catalog, so that the first import or export doesn't pay for it
+     */
+    static void warmUp() {
+        try {
+            marshaller().marshal(new CatalogDocument(), new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            });
+        } catch (JAXBException e) {
+            LOGGER.log(Level.SEVERE, "Couldn't initialize XML binding: " + e);
+        }
+    }
+}
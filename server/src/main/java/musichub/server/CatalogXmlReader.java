@@ -0,0 +1,87 @@
+package musichub.server;
+
+import musichub.business.Album;
+import musichub.business.AudioElement;
+import musichub.business.PlayList;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader of musichub.xml<br>
+ *
+ * The document is walked with StAX and each album, playlist and element is unmarshalled on its own as soon as
+ * it is reached, then handed to a consumer. The whole document is never held in memory, and the consumer can
+ * index each entity while the rest of the file is parsed.
+ */
+final class CatalogXmlReader {
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    private CatalogXmlReader() {
+    }
+
+    /**
+     * Read a catalog
+     * @param file XML file, in the {@link CatalogDocument} format
+     * @param unmarshaller unmarshaller of a context knowing {@link CatalogDocument}
+     * @param albums receives the albums
+     * @param playlists receives the playlists
+     * @param elements receives the elements
+     * @return catalog version of the file, 0 if it has none
+     * @throws IOException if the file can't be read
+     * @throws JAXBException if the file isn't a valid catalog
+     */
+    static long read(File file, Unmarshaller unmarshaller, Consumer<Album> albums, Consumer<PlayList> playlists,
+                     Consumer<AudioElement> elements) throws IOException, JAXBException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                reader.nextTag();
+                reader.require(XMLStreamConstants.START_ELEMENT, null, "musichub");
+
+                String versionAttribute = reader.getAttributeValue(null, "version");
+                long version = versionAttribute == null ? 0 : Long.parseLong(versionAttribute.trim());
+
+                reader.nextTag();
+                while (reader.isStartElement()) {
+                    // unmarshal() consumes the element and leaves the reader just after its end tag
+                    switch (reader.getLocalName()) {
+                        case "album":
+                            albums.accept(unmarshaller.unmarshal(reader, Album.class).getValue());
+                            break;
+                        case "playlist":
+                            playlists.accept(unmarshaller.unmarshal(reader, PlayList.class).getValue());
+                            break;
+                        case "elements":
+                            elements.accept(unmarshaller.unmarshal(reader, AudioElement.class).getValue());
+                            break;
+                        default:
+                            throw new JAXBException("Unexpected element " + reader.getLocalName());
+                    }
+
+                    skipToTag(reader);
+                }
+
+                return version;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new JAXBException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Move to the next start or end tag, skipping whitespace and comments
+     */
+    private static void skipToTag(XMLStreamReader reader) throws XMLStreamException {
+        while (!reader.isStartElement() && !reader.isEndElement() && reader.hasNext())
+            reader.next();
+    }
+}
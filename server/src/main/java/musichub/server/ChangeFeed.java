@@ -0,0 +1,146 @@
+package musichub.server;
+
+import musichub.business.Album;
+import musichub.business.CatalogUpdate;
+import musichub.business.ChangePage;
+import musichub.business.PlayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The latest changes of the catalog, kept in a ring buffer to send them to clients and replicas<br>
+ *
+ * Changes are appended in version order, a batch being flattened into updates sharing its version. Once the
+ * buffer is full, the oldest updates are overwritten, and the versions they belonged to can't be served anymore:
+ * {@link #since} returns null for them, and the caller sends a snapshot instead. A version is never split across
+ * pages, so a page always leaves the reader on a complete version.
+ */
+class ChangeFeed {
+    static final int DEFAULT_CAPACITY = 10000;
+
+    private final CatalogUpdate[] ring;
+    private long head; // number of updates appended, guarded by this
+    private long floor; // every version above it is complete, guarded by this
+    private long last; // version of the latest update, guarded by this
+
+    /**
+     * @param capacity maximum number of updates kept
+     * @param version version of the catalog, from which changes are appended
+     */
+    ChangeFeed(int capacity, long version) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid feed capacity: " + capacity);
+
+        this.ring = new CatalogUpdate[capacity];
+        this.floor = version;
+        this.last = version;
+    }
+
+    /**
+     * Append a change. Changes must be appended in version order.
+     * @param change the change, with its version
+     */
+    synchronized void append(CatalogChange change) {
+        if (change.type == CatalogChange.Type.BATCH) {
+            for (CatalogChange nested : change.changes)
+                append(toUpdate(nested, change.version));
+        } else {
+            append(toUpdate(change, change.version));
+        }
+        last = change.version;
+    }
+
+    private void append(CatalogUpdate update) {
+        int slot = (int) (head % ring.length);
+        CatalogUpdate evicted = ring[slot];
+        if (evicted != null)
+            floor = Math.max(floor, evicted.getVersion());
+
+        ring[slot] = update;
+        head++;
+    }
+
+    /**
+     * Drop every update, when the catalog is replaced
+     * @param version version of the new catalog, from which changes are appended
+     */
+    synchronized void reset(long version) {
+        Arrays.fill(ring, null);
+        head = 0;
+        floor = version;
+        last = version;
+    }
+
+    /**
+     * Get the changes made after a version
+     * @param version version of the reader
+     * @param limit maximum number of updates, exceeded only by a single version larger than it
+     * @return a page with the updates of the following complete versions, in version order, or null if some of
+     * them were overwritten
+     */
+    synchronized ChangePage since(long version, int limit) {
+        if (version < floor || version > last)
+            return null;
+
+        // the updates are sorted by version: skip the ones already known
+        long low = Math.max(0, head - ring.length), high = head;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (get(mid).getVersion() <= version)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        List<CatalogUpdate> updates = new ArrayList<>();
+        long i = low;
+        while (i < head) {
+            long current = get(i).getVersion();
+            long end = i;
+            while (end < head && get(end).getVersion() == current)
+                end++;
+
+            if (!updates.isEmpty() && updates.size() + (end - i) > limit)
+                break;
+            for (; i < end; i++)
+                updates.add(get(i));
+        }
+
+        // versions without update, such as empty batches, are reached with the last page
+        long reached = i == head ? last : updates.get(updates.size() - 1).getVersion();
+        return new ChangePage(reached, reached < last, updates.toArray(new CatalogUpdate[0]));
+    }
+
+    private CatalogUpdate get(long index) {
+        return ring[(int) (index % ring.length)];
+    }
+
+    /**
+     * @return version of the latest change
+     */
+    synchronized long version() {
+        return last;
+    }
+
+    /**
+     * Convert a journaled change. Albums and playlists are copied, as their memberships change after their addition.
+     */
+    private static CatalogUpdate toUpdate(CatalogChange change, long version) {
+        CatalogUpdate.Type type = CatalogUpdate.Type.valueOf(change.type.name());
+        Album album = null;
+        PlayList playlist = null;
+
+        if (change.album != null) {
+            Album source = change.album;
+            album = new Album(source.getUuid(), source.getTitle(), source.getArtist(), source.getLengthInSeconds(), source.getDate());
+            album.getSongs().addAll(source.getSongs());
+        }
+        if (change.playlist != null) {
+            playlist = new PlayList(change.playlist.getUuid(), change.playlist.getTitle());
+            playlist.getElements().addAll(change.playlist.getElements());
+        }
+        return new CatalogUpdate(type, version, change.element, album, playlist, change.target, change.container);
+    }
+}
@@ -0,0 +1,329 @@
+package musichub.server;
+
+import musichub.business.AudioElement;
+import musichub.business.IMusicHub;
+import musichub.business.NoUploadFoundException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Uploads of audio files in chunks, written to a partial file until they are committed<br>
+ *
+ * Each chunk is checked against its CRC32, added to the SHA-256 of the file for the {@link BlobStore}, and written
+ * at its offset through a {@link FileChannel}, so the server holds a single chunk in memory per request, whatever
+ * the size of the file. A chunk which doesn't start where the upload stopped is ignored: after an interruption,
+ * the client asks for the offset and sends the rest.<br>
+ *
+ * The element of each upload is written next to its partial file, so that uploads can be resumed after a restart
+ * of the server (see {@link #recover()}). Uploads left idle are discarded by {@link #expire()}.
+ */
+class ChunkedUploads {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final String SUFFIX = ".part";
+    private static final String ELEMENT_SUFFIX = ".element";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * An upload in progress. Chunks of an upload are written one at a time.
+     */
+    private static final class Upload {
+        final AudioElement element;
+        final File file;
+        final FileChannel channel;
+        final CRC32 checksum = new CRC32();
+        final MessageDigest digest = BlobStore.digest();
+        long received; // guarded by this
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Upload(AudioElement element, File file, FileChannel channel) {
+            this.element = element;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A committed upload: its element, complete file and the SHA-256 of the file
+     */
+    static final class Completed {
+        final AudioElement element;
+        final File file;
+        final String hash;
+
+        Completed(AudioElement element, File file, String hash) {
+            this.element = element;
+            this.file = file;
+            this.hash = hash;
+        }
+    }
+
+    private final File dir;
+    private final long maxIdleMillis;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    /**
+     * @param dir directory of the partial files, created by the first upload
+     * @param maxIdleMillis time after which an upload without activity is discarded
+     */
+    ChunkedUploads(File dir, long maxIdleMillis) {
+        this.dir = dir;
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * Start an upload
+     * @param element the uploaded element
+     * @return id of the upload
+     * @throws IOException if the partial file can't be created
+     */
+    String begin(AudioElement element) throws IOException {
+        expire();
+
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Couldn't create upload directory " + dir);
+
+        String id = UUID.randomUUID().toString();
+        File elementFile = new File(dir, id + ELEMENT_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(elementFile)))) {
+            CatalogCodec.writeElement(out, element);
+        }
+
+        File file = new File(dir, id + SUFFIX);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        uploads.put(id, new Upload(element, file, channel));
+        return id;
+    }
+
+    /**
+     * Resume the uploads left by a previous run of the server. Their checksums are computed again from the partial
+     * files, and clients go on from the size of the file. Partial files idle for too long, or without their
+     * element, are deleted. Must be called before any upload begins.
+     * @return number of uploads resumed
+     */
+    int recover() {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return 0;
+
+        long limit = System.currentTimeMillis() - maxIdleMillis;
+        int recovered = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(ELEMENT_SUFFIX)) {
+                // the partial file is created right after its element
+                File part = new File(dir, name.substring(0, name.length() - ELEMENT_SUFFIX.length()) + SUFFIX);
+                if (!part.exists())
+                    delete(file);
+                continue;
+            }
+            if (!name.endsWith(SUFFIX))
+                continue;
+
+            String id = name.substring(0, name.length() - SUFFIX.length());
+            File elementFile = new File(dir, id + ELEMENT_SUFFIX);
+            if (file.lastModified() < limit || !elementFile.exists()) {
+                LOGGER.log(Level.INFO, "Discard upload " + id + " left by the previous run");
+                delete(file);
+                delete(elementFile);
+                continue;
+            }
+
+            try {
+                uploads.put(id, resume(file, elementFile));
+                recovered++;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Couldn't resume upload " + id + ": " + e + ". Discard it.");
+                delete(file);
+                delete(elementFile);
+            }
+        }
+
+        if (recovered > 0)
+            LOGGER.log(Level.INFO, "Resumed " + recovered + " uploads");
+        return recovered;
+    }
+
+    private static Upload resume(File file, File elementFile) throws IOException {
+        AudioElement element;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(elementFile)))) {
+            element = CatalogCodec.readElement(in);
+        }
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Upload upload = new Upload(element, file, channel);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            for (int n; (n = channel.read(buffer, upload.received)) > 0; ) {
+                upload.checksum.update(buffer.array(), 0, n);
+                upload.digest.update(buffer.array(), 0, n);
+                upload.received += n;
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return upload;
+    }
+
+    /**
+     * @param id id of the upload
+     * @return number of bytes received
+     * @throws NoUploadFoundException if the upload doesn't exists
+     */
+    long offset(String id) throws NoUploadFoundException {
+        Upload upload = get(id);
+        synchronized (upload) {
+            return upload.received;
+        }
+    }
+
+    /**
+     * Write a chunk
+     * @param id id of the upload
+     * @param offset position of the chunk
+     * @param chunk the bytes
+     * @param checksum CRC32 of the bytes
+     * @return number of bytes received
+     * @throws NoUploadFoundException if the upload doesn't exists
+     * @throws IOException if the chunk can't be written
+     * @throws IllegalArgumentException if the chunk is too large or doesn't match its checksum
+     */
+    long append(String id, long offset, byte[] chunk, long checksum) throws NoUploadFoundException, IOException {
+        if (chunk == null)
+            chunk = new byte[0];
+        if (chunk.length > IMusicHub.MAX_CHUNK_SIZE)
+            throw new IllegalArgumentException("Chunk too large: " + chunk.length + " > " + IMusicHub.MAX_CHUNK_SIZE);
+
+        CRC32 crc = new CRC32();
+        crc.update(chunk);
+        if (crc.getValue() != checksum)
+            throw new IllegalArgumentException("Checksum mismatch for chunk at " + offset);
+
+        Upload upload = get(id);
+        synchronized (upload) {
+            checkActive(id, upload);
+            if (offset != upload.received)
+                return upload.received;
+
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining())
+                upload.channel.write(buffer, offset + buffer.position());
+
+            upload.checksum.update(chunk);
+            upload.digest.update(chunk);
+            upload.received += chunk.length;
+            return upload.received;
+        }
+    }
+
+    /**
+     * Complete an upload: the partial file is synced and closed, and the upload removed
+     * @param id id of the upload
+     * @param length expected size of the file
+     * @param checksum expected CRC32 of the file
+     * @return the element and its file, which the caller must move
+     * @throws NoUploadFoundException if the upload doesn't exists
+     * @throws IOException if the file can't be synced
+     * @throws IllegalArgumentException if bytes are missing, or if the file doesn't match its checksum. The upload
+     * is discarded in the latter case.
+     */
+    Completed commit(String id, long length, long checksum) throws NoUploadFoundException, IOException {
+        Upload upload = get(id);
+        synchronized (upload) {
+            checkActive(id, upload);
+            if (upload.received != length)
+                throw new IllegalArgumentException("Upload " + id + " has " + upload.received + " bytes, expected " + length);
+
+            if (upload.checksum.getValue() != checksum) {
+                discard(id);
+                throw new IllegalArgumentException("Checksum mismatch for upload " + id + ", upload discarded");
+            }
+
+            uploads.remove(id);
+            try {
+                upload.channel.force(true);
+            } finally {
+                upload.channel.close();
+            }
+            delete(new File(dir, id + ELEMENT_SUFFIX));
+            return new Completed(upload.element, upload.file, BlobStore.hash(upload.digest));
+        }
+    }
+
+    /**
+     * Discard an upload and its partial file. Nothing happens if it doesn't exists.
+     * @param id id of the upload
+     */
+    void discard(String id) {
+        Upload upload = uploads.remove(id);
+        if (upload == null)
+            return;
+
+        synchronized (upload) {
+            try {
+                upload.channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Couldn't close upload " + id + ": " + e);
+            }
+            delete(upload.file);
+            delete(new File(dir, id + ELEMENT_SUFFIX));
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete())
+            LOGGER.log(Level.WARNING, "Couldn't delete partial upload " + file);
+    }
+
+    /**
+     * @return number of uploads in progress
+     */
+    int size() {
+        return uploads.size();
+    }
+
+    private Upload get(String id) throws NoUploadFoundException {
+        Upload upload = id == null ? null : uploads.get(id);
+        if (upload == null)
+            throw new NoUploadFoundException("Upload " + id + " not found!");
+
+        upload.lastAccess = System.currentTimeMillis();
+        return upload;
+    }
+
+    /**
+     * Check an upload wasn't committed or discarded while waiting for its lock
+     */
+    private void checkActive(String id, Upload upload) throws NoUploadFoundException {
+        if (uploads.get(id) != upload)
+            throw new NoUploadFoundException("Upload " + id + " not found!");
+    }
+
+    /**
+     * Discard the uploads idle for too long
+     */
+    void expire() {
+        long limit = System.currentTimeMillis() - maxIdleMillis;
+        for (Iterator<Map.Entry<String, Upload>> it = uploads.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Upload> entry = it.next();
+            if (entry.getValue().lastAccess < limit) {
+                LOGGER.log(Level.INFO, "Discard idle upload " + entry.getKey());
+                discard(entry.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package musichub.server;
+
+import musichub.business.*;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap indexes over the attributes of audio elements, to answer {@link ElementQuery}s<br>
+ *
+ * Each element gets a row, in insertion order. There is a bitmap of rows per element type, genre, language,
+ * category and artist, and a bitmap per minute of length. A query intersects the bitmaps of its criteria, then
+ * checks the exact length bounds on the remaining rows only, so a selective query never scans the catalog. Rows
+ * are in insertion order, so pages are read directly from the resulting bitmap.<br>
+ *
+ * The row of a removed element is cleared. Rows are renumbered, in the same order, once more than half of them
+ * are free.
+ */
+class ElementFilterIndex implements CatalogStore.Listener<AudioElement> {
+    private static final int MIN_COMPACT_SIZE = 64;
+    private static final int BUCKET_SECONDS = 60;
+
+    private static final Genre[] GENRES = Genre.values();
+    private static final Language[] LANGUAGES = Language.values();
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock. Sequence numbers increase with rows, and stay in place when a row is cleared.
+    private AudioElement[] rows = new AudioElement[16];
+    private long[] sequences = new long[16];
+    private int end;
+    private int liveCount;
+
+    private final BitSet songs = new BitSet();
+    private final BitSet audioBooks = new BitSet();
+    private final BitSet[] genres = bitSets(GENRES.length);
+    private final BitSet[] languages = bitSets(LANGUAGES.length);
+    private final BitSet[] categories = bitSets(CATEGORIES.length);
+    private final Map<String, BitSet> artists = new HashMap<>();
+    private final TreeMap<Integer, BitSet> lengthBuckets = new TreeMap<>();
+
+    private static BitSet[] bitSets(int count) {
+        BitSet[] bitSets = new BitSet[count];
+        for (int i = 0; i < count; i++)
+            bitSets[i] = new BitSet();
+        return bitSets;
+    }
+
+    @Override
+    public void added(AudioElement entity, long sequence) {
+        lock.writeLock().lock();
+        try {
+            if (end == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+                sequences = Arrays.copyOf(sequences, sequences.length * 2);
+            }
+
+            rows[end] = entity;
+            sequences[end] = sequence;
+            index(end, entity);
+            end++;
+            liveCount++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removed(AudioElement entity, long sequence) {
+        lock.writeLock().lock();
+        try {
+            int row = Arrays.binarySearch(sequences, 0, end, sequence);
+            if (row < 0 || rows[row] == null)
+                return;
+
+            unindex(row, entity);
+            rows[row] = null;
+            liveCount--;
+
+            if (end >= MIN_COMPACT_SIZE && liveCount < end / 2)
+                compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the page of elements matching a query and following a cursor
+     * @param query the criteria
+     * @param cursor cursor of the previous page, see {@link CatalogPages}
+     * @param limit maximum number of elements, already checked
+     * @return the page
+     */
+    ElementPage query(ElementQuery query, String cursor, int limit) {
+        long after = CatalogPages.decode(cursor);
+
+        lock.readLock().lock();
+        try {
+            BitSet matches = matches(query);
+
+            int from = Arrays.binarySearch(sequences, 0, end, after);
+            from = from >= 0 ? from + 1 : -from - 1;
+
+            List<AudioElement> page = new ArrayList<>(Math.min(limit, 64));
+            int last = -1;
+            int row = matches.nextSetBit(from);
+            for (; row >= 0 && page.size() < limit; row = matches.nextSetBit(row + 1)) {
+                page.add(rows[row]);
+                last = row;
+            }
+
+            String next = row >= 0 ? CatalogPages.encode(sequences[last]) : null;
+            return new ElementPage(page.toArray(new AudioElement[0]), next, matches.cardinality());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rows matching a query. The read lock must be held.
+     */
+    private BitSet matches(ElementQuery query) {
+        List<BitSet> filters = new ArrayList<>();
+        if (query.getType() != null)
+            filters.add(query.getType() == ElementType.SONG ? songs : audioBooks);
+        if (query.getGenre() != null)
+            filters.add(genres[query.getGenre().ordinal()]);
+        if (query.getLanguage() != null)
+            filters.add(languages[query.getLanguage().ordinal()]);
+        if (query.getCategory() != null)
+            filters.add(categories[query.getCategory().ordinal()]);
+        if (query.getArtist() != null)
+            filters.add(artists.getOrDefault(query.getArtist().toLowerCase(Locale.ROOT), new BitSet()));
+
+        int min = query.getMinLength() == null ? 0 : query.getMinLength();
+        int max = query.getMaxLength() == null ? Integer.MAX_VALUE : query.getMaxLength();
+        boolean ranged = min > 0 || max < Integer.MAX_VALUE;
+        if (ranged)
+            filters.add(lengthRange(min, max));
+
+        BitSet result;
+        if (filters.isEmpty()) {
+            result = new BitSet();
+            result.or(songs);
+            result.or(audioBooks);
+            return result;
+        }
+
+        // start with the smallest bitmap: the intersection can only shrink
+        filters.sort(Comparator.comparingInt(BitSet::cardinality));
+        result = (BitSet) filters.get(0).clone();
+        for (int i = 1; i < filters.size() && !result.isEmpty(); i++)
+            result.and(filters.get(i));
+
+        // buckets are whole minutes: check the exact bounds on the remaining rows
+        if (ranged) {
+            for (int row = result.nextSetBit(0); row >= 0; row = result.nextSetBit(row + 1)) {
+                int length = rows[row].getLengthInSeconds();
+                if (length < min || length > max)
+                    result.clear(row);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Rows in the length buckets overlapping a range
+     */
+    private BitSet lengthRange(int min, int max) {
+        BitSet result = new BitSet();
+        if (min > max)
+            return result;
+
+        for (BitSet bucket : lengthBuckets.subMap(min / BUCKET_SECONDS, true, max / BUCKET_SECONDS, true).values())
+            result.or(bucket);
+        return result;
+    }
+
+    /**
+     * Index an element. The hub rejects elements without genre, language, category or artist, but older journals
+     * and XML files may hold some: they are left out of the matching filters.
+     */
+    private void index(int row, AudioElement element) {
+        if (element instanceof Song) {
+            songs.set(row);
+            Genre genre = ((Song) element).getGenre();
+            if (genre != null)
+                genres[genre.ordinal()].set(row);
+        } else if (element instanceof AudioBook) {
+            AudioBook book = (AudioBook) element;
+            audioBooks.set(row);
+            if (book.getLanguage() != null)
+                languages[book.getLanguage().ordinal()].set(row);
+            if (book.getCategory() != null)
+                categories[book.getCategory().ordinal()].set(row);
+        }
+
+        if (element.getArtist() != null)
+            artists.computeIfAbsent(element.getArtist().toLowerCase(Locale.ROOT), a -> new BitSet()).set(row);
+        lengthBuckets.computeIfAbsent(element.getLengthInSeconds() / BUCKET_SECONDS, b -> new BitSet()).set(row);
+    }
+
+    private void unindex(int row, AudioElement element) {
+        if (element instanceof Song) {
+            songs.clear(row);
+            Genre genre = ((Song) element).getGenre();
+            if (genre != null)
+                genres[genre.ordinal()].clear(row);
+        } else if (element instanceof AudioBook) {
+            AudioBook book = (AudioBook) element;
+            audioBooks.clear(row);
+            if (book.getLanguage() != null)
+                languages[book.getLanguage().ordinal()].clear(row);
+            if (book.getCategory() != null)
+                categories[book.getCategory().ordinal()].clear(row);
+        }
+
+        if (element.getArtist() != null)
+            clear(artists, element.getArtist().toLowerCase(Locale.ROOT), row);
+        clear(lengthBuckets, element.getLengthInSeconds() / BUCKET_SECONDS, row);
+    }
+
+    private static <K> void clear(Map<K, BitSet> bitSets, K key, int row) {
+        BitSet bitSet = bitSets.get(key);
+        if (bitSet == null)
+            return;
+
+        bitSet.clear(row);
+        if (bitSet.isEmpty())
+            bitSets.remove(key);
+    }
+
+    /**
+     * Move the live rows to the front, keeping their order, and rebuild the bitmaps
+     */
+    private void compact() {
+        songs.clear();
+        audioBooks.clear();
+        for (BitSet[] bitSets : Arrays.asList(genres, languages, categories)) {
+            for (BitSet bitSet : bitSets)
+                bitSet.clear();
+        }
+        artists.clear();
+        lengthBuckets.clear();
+
+        int n = 0;
+        for (int i = 0; i < end; i++) {
+            AudioElement element = rows[i];
+            if (element == null)
+                continue;
+
+            rows[n] = element;
+            sequences[n] = sequences[i];
+            index(n, element);
+            n++;
+        }
+
+        Arrays.fill(rows, n, end, null);
+        end = n;
+    }
+}
@@ -0,0 +1,29 @@
+package musichub.server;
+
+import musichub.business.IMusicHub;
+import musichub.main.MusicTerminal;
+
+/**
+ * Music terminal of a published hub
+ *
+ * Same than a classic music terminal, but add command 'requests', which displays the statistics of the threads
+ * handling the requests of the endpoint
+ */
+public class EndpointTerminal extends MusicTerminal {
+    /**
+     * Create a new Music Terminal from a published hub
+     *
+     * @param hubInput The hub
+     * @param endpoint The endpoint of the hub
+     */
+    public EndpointTerminal(IMusicHub hubInput, HubEndpoint endpoint) {
+        super(hubInput);
+
+        this.registerCommand(new Command("requests", "display the statistics of the threads handling the requests") {
+            @Override
+            public void run() {
+                System.out.println("Requests on " + endpoint.getUrl() + ": " + endpoint.getExecutor());
+            }
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package musichub.server;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Data handler of an audio file, written with {@link FileChannel#transferTo}<br>
+ *
+ * With MTOM, JAX-WS writes the attachment through {@link #writeTo}: the file is transferred by the channel,
+ * without an input stream and an intermediate copy buffer. The data source is still a {@link FileDataSource},
+ * for the callers which read the handler as a stream.
+ */
+class FileDataHandler extends DataHandler {
+    private final File file;
+
+    /**
+     * @param file the audio file
+     */
+    FileDataHandler(File file) {
+        super(new FileDataSource(file));
+        this.file = file;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = channel.size();
+            for (long position = 0; position < size; )
+                position += channel.transferTo(position, size - position, target);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package musichub.server;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+
+import javax.xml.ws.Endpoint;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SOAP endpoint of a hub, on its own HTTP server<br>
+ *
+ * The server listens on the address and port of the configuration, and its requests are handled by a bounded
+ * {@link RequestExecutor}, set with {@link Endpoint#setExecutor}. A hub configured as a shard also publishes its
+ * {@link ShardHub} calls, meant for its router only.
+ */
+public class HubEndpoint {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    static final String PATH = "/ws/musichub";
+    static final String SHARD_PATH = "/ws/shard";
+
+    private final HttpServer httpServer;
+    private final Endpoint endpoint;
+    private final Endpoint shardEndpoint;
+    /**
+     * Pool of the threads handling the requests
+     */
+    @Getter private final RequestExecutor executor;
+
+    private HubEndpoint(HttpServer httpServer, Endpoint endpoint, Endpoint shardEndpoint, RequestExecutor executor) {
+        this.httpServer = httpServer;
+        this.endpoint = endpoint;
+        this.shardEndpoint = shardEndpoint;
+        this.executor = executor;
+    }
+
+    /**
+     * Publish a hub
+     * @param hub the hub, a class annotated with javax.jws.WebService
+     * @param config the configuration of the server
+     * @return the published endpoint
+     * @throws IOException if the address can't be bound
+     */
+    public static HubEndpoint publish(Object hub, ServerConfig config) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(config.getServerAddress(), config.getServerPort()), 0);
+        RequestExecutor executor = new RequestExecutor(config.getServerThreads(), config.getServerQueue(),
+                config.getServerQueueWait());
+
+        // the dispatcher of the HTTP server runs the filters, then JAX-WS hands the request to the executor
+        Endpoint endpoint = publish(httpServer, PATH, hub, executor);
+        Endpoint shardEndpoint = null;
+        if (config.isServerShard()) {
+            if (hub instanceof ShardHub)
+                shardEndpoint = publish(httpServer, SHARD_PATH, new ShardHubService((ShardHub) hub), executor);
+            else
+                LOGGER.log(Level.SEVERE, "Only a hub can be a shard, don't publish " + SHARD_PATH);
+        }
+        httpServer.start();
+
+        HubEndpoint output = new HubEndpoint(httpServer, endpoint, shardEndpoint, executor);
+        LOGGER.log(Level.INFO, "Listening on " + output.getUrl() + " with " + config.getServerThreads() + " threads");
+        return output;
+    }
+
+    private static Endpoint publish(HttpServer httpServer, String path, Object implementor, RequestExecutor executor) {
+        HttpContext context = httpServer.createContext(path);
+        context.getFilters().add(executor.admission());
+        Endpoint endpoint = Endpoint.create(implementor);
+        endpoint.setExecutor(executor);
+        endpoint.publish(context);
+        return endpoint;
+    }
+
+    /**
+     * @return the address the server listens on, with the chosen port if it was 0
+     */
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    /**
+     * @return the URL of the endpoint
+     */
+    public String getUrl() {
+        return "http://" + getAddress().getHostString() + ":" + getAddress().getPort() + PATH;
+    }
+
+    /**
+     * Stop the server, leaving one second to the requests being handled
+     */
+    public void close() {
+        endpoint.stop();
+        if (shardEndpoint != null)
+            shardEndpoint.stop();
+        httpServer.stop(1);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                LOGGER.log(Level.SEVERE, "Requests still running, stop waiting for them");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,20 +3,123 @@ package musichub.server;
 import musichub.business.IMusicHub;
 import musichub.main.MusicTerminal;
 
-import javax.xml.ws.Endpoint;
+import javax.xml.namespace.QName;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.MTOMFeature;
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Servers' main class
+ * Servers' main class<br>
+ *
+ * Without arguments, the server is a hub on the port of the configuration, or on the port given as first argument.
+ * With "replica &lt;primary host:port&gt; [port]", it is a read replica of that hub (see {@link ReplicaMusicHub}).
+ * With "router &lt;port&gt; &lt;shard host:port&gt;...", it is the front end of a catalog sharded across these hubs
+ * (see {@link ShardedMusicHub}), which must be started with "--server.shard=true".<br>
+ *
+ * The keys of the configuration can be given anywhere as options, such as "--server.threads=32" (see
+ * {@link ServerConfig}).
  */
 public class Main {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
     public static void main(String[] args) throws IOException {
+        List<String> options = new ArrayList<>();
+        List<String> params = new ArrayList<>();
+        for (String arg : args)
+            (arg.startsWith("--") ? options : params).add(arg);
+
+        if (params.size() > 1 && params.get(0).equals("replica")) {
+            if (params.size() > 2)
+                options.add("--server.port=" + params.get(2));
+            runReplica(params.get(1), options);
+            return;
+        }
+        if (params.size() > 2 && params.get(0).equals("router")) {
+            options.add("--server.port=" + params.get(1));
+            runRouter(params.subList(2, params.size()), options);
+            return;
+        }
+        if (!params.isEmpty())
+            options.add("--server.port=" + params.get(0));
+
         LogFormatter.prepareLogger("server_log.txt");
+        ServerConfig config = ServerConfig.load(new File(ServerConfig.FILE_PATH), options);
+
+        // the XML binding is only needed by imports and exports: build it while the server starts
+        Thread warmUp = new Thread(CatalogXmlContext::warmUp, "musichub-xml-warmup");
+        warmUp.setDaemon(true);
+        warmUp.start();
 
-        IMusicHub server = ServerMusicHub.load();
-    	MusicTerminal terminal = new ServerMusicTerminal(server);
+        ServerMusicHub server;
+        try {
+            server = ServerMusicHub.load(config);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage() + ". The server isn't started, the files are left unchanged.");
+            return;
+        }
+        HubEndpoint endpoint = HubEndpoint.publish(server, config);
+    	MusicTerminal terminal = new ServerMusicTerminal(server, endpoint);
 
-        Endpoint.publish("http://localhost:7779/ws/musichub", server);
     	terminal.parseCommands("MusicHub-Server$ ");
+        endpoint.close();
+    	server.close();
+    }
+
+    /**
+     * Get a client port to a hub
+     * @param address host:port of the hub
+     */
+    private static IMusicHub connect(String address) throws IOException {
+        URL url = new URL("http://" + address + "/ws/musichub?wsdl");
+        QName qname = new QName("http://server.musichub/", "ServerMusicHubService");
+        return Service.create(url, qname).getPort(IMusicHub.class, new MTOMFeature());
+    }
+
+    /**
+     * Get a client port to the calls of a router to a shard
+     * @param address host:port of the shard
+     */
+    private static ShardHub connectShard(String address) throws IOException {
+        URL url = new URL("http://" + address + HubEndpoint.SHARD_PATH + "?wsdl");
+        QName qname = new QName("http://server.musichub/", "ShardHubService");
+        return Service.create(url, qname).getPort(ShardHub.class);
+    }
+
+    private static void runReplica(String primaryAddress, List<String> options) throws IOException {
+        LogFormatter.prepareLogger("replica_log.txt");
+        ServerConfig config = ServerConfig.load(new File(ServerConfig.FILE_PATH), options);
+
+        File dir = new File(ServerMusicHub.DIR, "replica-" + config.getServerPort());
+        ReplicaMusicHub replica = new ReplicaMusicHub(connect(primaryAddress), dir);
+        replica.start(config.getReplicaInterval());
+
+        HubEndpoint endpoint = HubEndpoint.publish(replica, config);
+        new EndpointTerminal(replica, endpoint).parseCommands("MusicHub-Replica$ ");
+        endpoint.close();
+        replica.close();
+    }
+
+    private static void runRouter(List<String> shardAddresses, List<String> options) throws IOException {
+        LogFormatter.prepareLogger("router_log.txt");
+        ServerConfig config = ServerConfig.load(new File(ServerConfig.FILE_PATH), options);
+
+        List<IMusicHub> shards = new ArrayList<>();
+        List<ShardHub> shardCalls = new ArrayList<>();
+        for (String address : shardAddresses) {
+            shards.add(connect(address));
+            shardCalls.add(connectShard(address));
+        }
+        ShardedMusicHub router = new ShardedMusicHub(shards, shardCalls);
+
+        HubEndpoint endpoint = HubEndpoint.publish(router, config);
+        new EndpointTerminal(router, endpoint).parseCommands("MusicHub-Router$ ");
+        endpoint.close();
+        router.close();
     }
 }
@@ -0,0 +1,88 @@
+package musichub.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Reverse index of the memberships of elements: for each element, the albums or playlists holding it<br>
+ *
+ * The index follows the store of the containers for their additions and removals. Memberships added to a
+ * container already in the store are reported with {@link #link}, under the write lock of the store. Deleting an
+ * element then only visits the containers which hold it, instead of every album or playlist.
+ *
+ * @param <C> type of the containers
+ */
+class MembershipIndex<C> implements CatalogStore.Listener<C> {
+    private final Function<C, UUID> idGetter;
+    private final Function<C, List<UUID>> membersGetter;
+
+    private final Map<UUID, Set<UUID>> containers = new HashMap<>(); // guarded by this
+
+    /**
+     * @param idGetter gives the id of a container
+     * @param membersGetter gives the element ids of a container
+     */
+    MembershipIndex(Function<C, UUID> idGetter, Function<C, List<UUID>> membersGetter) {
+        this.idGetter = idGetter;
+        this.membersGetter = membersGetter;
+    }
+
+    /**
+     * Record that an element was added to a container
+     * @param element id of the element
+     * @param container id of the container
+     */
+    synchronized void link(UUID element, UUID container) {
+        containers.computeIfAbsent(element, e -> new HashSet<>(2)).add(container);
+    }
+
+    /**
+     * Record that elements were added to a container
+     * @param elements ids of the elements
+     * @param container id of the container
+     */
+    synchronized void link(List<UUID> elements, UUID container) {
+        for (UUID element : elements)
+            link(element, container);
+    }
+
+    /**
+     * Forget the memberships of an element
+     * @param element id of the element
+     * @return ids of the containers which held it
+     */
+    synchronized Set<UUID> unlink(UUID element) {
+        Set<UUID> removed = containers.remove(element);
+        return removed == null ? Collections.emptySet() : removed;
+    }
+
+    /**
+     * @param element id of an element
+     * @return ids of the containers holding it
+     */
+    synchronized Set<UUID> containers(UUID element) {
+        Set<UUID> found = containers.get(element);
+        return found == null ? Collections.emptySet() : new HashSet<>(found);
+    }
+
+    @Override
+    public synchronized void added(C entity, long sequence) {
+        link(membersGetter.apply(entity), idGetter.apply(entity));
+    }
+
+    @Override
+    public synchronized void removed(C entity, long sequence) {
+        UUID container = idGetter.apply(entity);
+        for (UUID element : membersGetter.apply(entity)) {
+            Set<UUID> found = containers.get(element);
+            if (found != null && found.remove(container) && found.isEmpty())
+                containers.remove(element);
+        }
+    }
+}
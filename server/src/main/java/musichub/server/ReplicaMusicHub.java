@@ -0,0 +1,474 @@
+package musichub.server;
+
+import musichub.business.*;
+
+import javax.activation.DataHandler;
+import javax.jws.WebService;
+import javax.xml.ws.soap.MTOM;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Read replica of a primary hub<br>
+ *
+ * The replica bootstraps from a snapshot of the primary, then tails its change feed with
+ * {@link IMusicHub#changesSince}, applying the changes to a local {@link ServerMusicHub} with the versions of the
+ * primary. A snapshot is read part by part, and applied once complete. Listings, lookups and searches are served by
+ * the local hub, and lag the primary by at most the poll interval. The local hub serves its own change feed, so
+ * replicas can also follow a replica. It has its own directory, so it never counts the audio files of the primary as
+ * its own.<br>
+ *
+ * Writes and uploads are forwarded to the primary, which journals them. The replica catches up right after, so a
+ * client sees its own changes. Audio files stay on the primary: downloads are forwarded too. If the primary can't
+ * be reached, reads go on from the last version received.<br>
+ *
+ * The replica is published under the service name of the primary, so clients connect to both the same way.
+ */
+@WebService(endpointInterface = "musichub.business.IMusicHub", serviceName = "ServerMusicHubService",
+        portName = "ServerMusicHubPort")
+@MTOM(threshold = ServerMusicHub.MTOM_THRESHOLD)
+public class ReplicaMusicHub implements IMusicHub {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private final IMusicHub primary;
+    private final ServerMusicHub local;
+
+    private final ScheduledExecutorService poller = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "musichub-replica");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object catchUpLock = new Object();
+    private boolean reachable = true; // guarded by catchUpLock
+
+    /**
+     * Create a replica, empty until it catches up
+     * @param primary the hub to follow
+     * @param dir directory of the local hub, apart from the one of the primary
+     */
+    public ReplicaMusicHub(IMusicHub primary, File dir) {
+        this.primary = primary;
+        this.local = new ServerMusicHub(dir);
+    }
+
+    /**
+     * Catch up with the primary, then keep polling its changes
+     * @param intervalMillis delay between two polls
+     */
+    public void start(long intervalMillis) {
+        catchUpQuietly();
+        poller.scheduleWithFixedDelay(this::catchUpQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apply the changes made on the primary since the version of the replica
+     * @return the version reached
+     * @throws javax.xml.ws.WebServiceException if the primary can't be reached
+     */
+    public long catchUp() {
+        synchronized (catchUpLock) {
+            ChangePage page;
+            do {
+                page = primary.changesSince(local.catalogVersion(), MAX_PAGE_SIZE);
+                if (page.isSnapshot())
+                    page = readSnapshot(page);
+                local.replicate(page);
+                if (page.isSnapshot())
+                    LOGGER.log(Level.INFO, "Replica bootstrapped from a snapshot at version " + page.getVersion());
+            } while (page.isMore());
+            return page.getVersion();
+        }
+    }
+
+    /**
+     * Read the other parts of a snapshot
+     * @param first the first part
+     * @return the whole snapshot
+     */
+    private ChangePage readSnapshot(ChangePage first) {
+        List<Album> albums = new ArrayList<>();
+        List<PlayList> playlists = new ArrayList<>();
+        List<AudioElement> elements = new ArrayList<>();
+        for (ChangePage page = first; ; page = primary.snapshotAfter(first.getVersion(), page.getCursor(), MAX_PAGE_SIZE)) {
+            // empty arrays are received as null
+            if (page.getAlbums() != null)
+                albums.addAll(Arrays.asList(page.getAlbums()));
+            if (page.getPlaylists() != null)
+                playlists.addAll(Arrays.asList(page.getPlaylists()));
+            if (page.getElements() != null)
+                elements.addAll(Arrays.asList(page.getElements()));
+            if (!page.isMore())
+                break;
+        }
+        return new ChangePage(first.getVersion(), albums.toArray(new Album[0]), playlists.toArray(new PlayList[0]),
+                elements.toArray(new AudioElement[0]));
+    }
+
+    private void catchUpQuietly() {
+        synchronized (catchUpLock) {
+            try {
+                catchUp();
+                if (!reachable)
+                    LOGGER.log(Level.INFO, "Primary reached again, replica at version " + local.catalogVersion());
+                reachable = true;
+            } catch (RuntimeException e) {
+                // only reported once, the replica keeps serving its version meanwhile
+                if (reachable)
+                    LOGGER.log(Level.SEVERE, "Couldn't read changes from primary: " + e);
+                reachable = false;
+            }
+        }
+    }
+
+    /**
+     * Stop polling the primary
+     */
+    public void close() {
+        poller.shutdown();
+        try {
+            if (!poller.awaitTermination(1, TimeUnit.MINUTES))
+                LOGGER.log(Level.SEVERE, "Replica still catching up, stop waiting for it");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        local.close();
+    }
+
+    // Reads, served locally
+
+    @Override
+    public Album[] albums() {
+        return local.albums();
+    }
+
+    @Override
+    public PlayList[] playlists() {
+        return local.playlists();
+    }
+
+    @Override
+    public AudioElement[] elements() {
+        return local.elements();
+    }
+
+    @Override
+    public Song[] songs() {
+        return local.songs();
+    }
+
+    @Override
+    public AudioBook[] audioBooks() {
+        return local.audioBooks();
+    }
+
+    @Override
+    public int albumCount() {
+        return local.albumCount();
+    }
+
+    @Override
+    public Album[] albumsPage(int offset, int limit) {
+        return local.albumsPage(offset, limit);
+    }
+
+    @Override
+    public AlbumPage albumsAfter(String cursor, int limit) {
+        return local.albumsAfter(cursor, limit);
+    }
+
+    @Override
+    public int playlistCount() {
+        return local.playlistCount();
+    }
+
+    @Override
+    public PlayList[] playlistsPage(int offset, int limit) {
+        return local.playlistsPage(offset, limit);
+    }
+
+    @Override
+    public PlayListPage playlistsAfter(String cursor, int limit) {
+        return local.playlistsAfter(cursor, limit);
+    }
+
+    @Override
+    public int elementCount() {
+        return local.elementCount();
+    }
+
+    @Override
+    public AudioElement[] elementsPage(int offset, int limit) {
+        return local.elementsPage(offset, limit);
+    }
+
+    @Override
+    public ElementPage elementsAfter(String cursor, int limit) {
+        return local.elementsAfter(cursor, limit);
+    }
+
+    @Override
+    public int songCount() {
+        return local.songCount();
+    }
+
+    @Override
+    public Song[] songsPage(int offset, int limit) {
+        return local.songsPage(offset, limit);
+    }
+
+    @Override
+    public ElementPage songsAfter(String cursor, int limit) {
+        return local.songsAfter(cursor, limit);
+    }
+
+    @Override
+    public int audioBookCount() {
+        return local.audioBookCount();
+    }
+
+    @Override
+    public AudioBook[] audioBooksPage(int offset, int limit) {
+        return local.audioBooksPage(offset, limit);
+    }
+
+    @Override
+    public ElementPage audioBooksAfter(String cursor, int limit) {
+        return local.audioBooksAfter(cursor, limit);
+    }
+
+    @Override
+    public Album[] getAlbumsSortedByDate() {
+        return local.getAlbumsSortedByDate();
+    }
+
+    @Override
+    public AudioBook[] getAudiobooksSortedByAuthor() {
+        return local.getAudiobooksSortedByAuthor();
+    }
+
+    @Override
+    public AudioElement[] searchElements(String query, boolean fuzzy, int limit) {
+        return local.searchElements(query, fuzzy, limit);
+    }
+
+    @Override
+    public Album[] searchAlbums(String query, boolean fuzzy, int limit) {
+        return local.searchAlbums(query, fuzzy, limit);
+    }
+
+    @Override
+    public PlayList[] searchPlaylists(String query, boolean fuzzy, int limit) {
+        return local.searchPlaylists(query, fuzzy, limit);
+    }
+
+    @Override
+    public ElementPage queryElements(ElementQuery query, String cursor, int limit) {
+        return local.queryElements(query, cursor, limit);
+    }
+
+    @Override
+    public Album albumByTitle(String title) throws NoAlbumFoundException {
+        return local.albumByTitle(title);
+    }
+
+    @Override
+    public PlayList playlistByTitle(String title) throws NoPlayListFoundException {
+        return local.playlistByTitle(title);
+    }
+
+    @Override
+    public AudioElement elementByTitle(String title) throws NoElementFoundException {
+        return local.elementByTitle(title);
+    }
+
+    @Override
+    public AlbumLookup albumsByTitle(String[] titles) {
+        return local.albumsByTitle(titles);
+    }
+
+    @Override
+    public PlayListLookup playlistsByTitle(String[] titles) {
+        return local.playlistsByTitle(titles);
+    }
+
+    @Override
+    public ElementLookup elementsByTitle(String[] titles) {
+        return local.elementsByTitle(titles);
+    }
+
+    @Override
+    public ElementLookup elementsById(String[] ids) {
+        return local.elementsById(ids);
+    }
+
+    @Override
+    public Song[] getAlbumSongs(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        return local.getAlbumSongs(albumTitle);
+    }
+
+    @Override
+    public Song[] getAlbumSongsSortedByGenre(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        return local.getAlbumSongsSortedByGenre(albumTitle);
+    }
+
+    @Override
+    public AudioElement[] getPlaylistElements(String playList) throws NoPlayListFoundException, NoElementFoundException {
+        return local.getPlaylistElements(playList);
+    }
+
+    @Override
+    public long catalogVersion() {
+        return local.catalogVersion();
+    }
+
+    @Override
+    public ChangePage changesSince(long version, int limit) {
+        return local.changesSince(version, limit);
+    }
+
+    @Override
+    public ChangePage snapshotAfter(long version, String cursor, int limit) {
+        return local.snapshotAfter(version, cursor, limit);
+    }
+
+    // Writes, forwarded to the primary
+
+    @Override
+    public void addElement(AudioElement element, DataHandler handler) {
+        try {
+            primary.addElement(element, handler);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void commitUpload(String uploadId, long length, long checksum) throws NoUploadFoundException {
+        try {
+            primary.commitUpload(uploadId, length, checksum);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void addAlbum(Album album) {
+        try {
+            primary.addAlbum(album);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void addPlaylist(PlayList playlist) {
+        try {
+            primary.addPlaylist(playlist);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void addBatch(CatalogBatch batch) throws NoAlbumFoundException, NoPlayListFoundException, NoElementFoundException {
+        try {
+            primary.addBatch(batch);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void deletePlayList(String playListTitle) throws NoPlayListFoundException {
+        try {
+            primary.deletePlayList(playListTitle);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void deleteAlbum(String albumTitle) throws NoAlbumFoundException {
+        try {
+            primary.deleteAlbum(albumTitle);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void deleteElement(String title) throws NoElementFoundException {
+        try {
+            primary.deleteElement(title);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void addElementToAlbum(String elementTitle, String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        try {
+            primary.addElementToAlbum(elementTitle, albumTitle);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void addElementToPlayList(String elementTitle, String playListTitle) throws NoPlayListFoundException, NoElementFoundException {
+        try {
+            primary.addElementToPlayList(elementTitle, playListTitle);
+        } finally {
+            catchUpQuietly();
+        }
+    }
+
+    @Override
+    public void save() {
+        primary.save();
+    }
+
+    // Audio files, kept by the primary
+
+    @Override
+    public String beginUpload(AudioElement element) {
+        return primary.beginUpload(element);
+    }
+
+    @Override
+    public long uploadOffset(String uploadId) throws NoUploadFoundException {
+        return primary.uploadOffset(uploadId);
+    }
+
+    @Override
+    public long appendChunk(String uploadId, long offset, byte[] chunk, long checksum) throws NoUploadFoundException {
+        return primary.appendChunk(uploadId, offset, chunk, checksum);
+    }
+
+    @Override
+    public void abortUpload(String uploadId) {
+        primary.abortUpload(uploadId);
+    }
+
+    @Override
+    public DataHandler downloadElement(String title) throws NoElementFoundException {
+        return primary.downloadElement(title);
+    }
+
+    @Override
+    public long elementFileLength(String title) throws NoElementFoundException {
+        return primary.elementFileLength(title);
+    }
+
+    @Override
+    public byte[] downloadRange(String title, long offset, int length) throws NoElementFoundException {
+        return primary.downloadRange(title, offset, length);
+    }
+}
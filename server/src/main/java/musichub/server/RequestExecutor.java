@@ -0,0 +1,151 @@
+package musichub.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of the threads handling the requests of an endpoint<br>
+ *
+ * At most 'threads' requests run at once, and at most 'queue' more wait for a thread. The places are taken by the
+ * {@link #admission()} filter of the HTTP server, before JAX-WS hands the request to this executor: JAX-WS drops
+ * the exceptions of its executor without answering the client, so the executor itself never rejects a request.<br>
+ *
+ * When every place is taken, the dispatcher of the HTTP server waits for one up to 'wait' milliseconds, and doesn't
+ * read new requests meanwhile. If none is released, the request is answered with 503 Service Unavailable, which
+ * clients can retry.
+ */
+public class RequestExecutor extends ThreadPoolExecutor {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final int queue;
+    private final long waitMillis;
+    private final Semaphore places;
+
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean saturated;
+
+    /**
+     * Create a pool, its threads are started with the first requests
+     * @param threads number of threads handling the requests
+     * @param queue number of requests waiting for a thread
+     * @param waitMillis milliseconds a request waits for a place before being rejected
+     */
+    public RequestExecutor(int threads, int queue, long waitMillis) {
+        // the places bound the queue: it is only sized for a thread releasing its place before it takes the next task
+        super(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads + queue), r -> {
+            Thread thread = new Thread(r, "musichub-request-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queue = queue;
+        this.waitMillis = waitMillis;
+        this.places = new Semaphore(threads + queue);
+    }
+
+    /**
+     * Get the filter taking a place for each request. Every task run by this executor must have been admitted by it.
+     * @return the filter to add to the HTTP context of the endpoint
+     */
+    public Filter admission() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (!admit()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                chain.doFilter(exchange);
+            }
+
+            @Override
+            public String description() {
+                return "Bounded request queue";
+            }
+        };
+    }
+
+    /**
+     * Take a place for a request, waiting for one if needed
+     * @return true if the request can be queued, false if it must be rejected
+     */
+    boolean admit() {
+        if (!places.tryAcquire()) {
+            waited.incrementAndGet();
+            boolean acquired = false;
+            try {
+                acquired = places.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!acquired) {
+                rejected.incrementAndGet();
+                // only reported once, until a request is admitted again
+                if (!saturated)
+                    LOGGER.log(Level.SEVERE, "Every request thread and queue place is taken, reject requests");
+                saturated = true;
+                return false;
+            }
+        }
+
+        if (saturated) {
+            saturated = false;
+            LOGGER.log(Level.INFO, "Requests admitted again, " + rejected.get() + " rejected so far");
+        }
+        return true;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        try {
+            super.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    places.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // only while shutting down
+            places.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of requests which had to wait for a place
+     */
+    public long waited() {
+        return waited.get();
+    }
+
+    /**
+     * @return number of requests rejected because no place was released in time
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d / %d threads busy, %d / %d requests queued, %d completed, %d waited, %d rejected",
+                getActiveCount(), getMaximumPoolSize(), getQueue().size(), queue, getCompletedTaskCount(), waited(),
+                rejected());
+    }
+}
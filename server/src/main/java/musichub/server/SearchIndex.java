@@ -0,0 +1,289 @@
+package musichub.server;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index over text fields of a {@link CatalogStore}, for prefix and fuzzy search<br>
+ *
+ * Fields are split in tokens: lower case words and numbers, without accents. Tokens are kept in a sorted map,
+ * so the tokens starting with a prefix are a range of the map. A fuzzy query also accepts tokens at a small edit
+ * distance of each query term, found by walking the sorted tokens like a trie.<br>
+ *
+ * An entity matches a query if every query term matches one of its tokens. Results are ranked by the sum of the
+ * match qualities (exact, prefix, then fuzzy), then by insertion order. The index follows the store as a
+ * listener; queries run concurrently with each other.
+ *
+ * @param <T> entity type
+ */
+class SearchIndex<T> implements CatalogStore.Listener<T> {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int FUZZY = 1;
+
+    private final IntFunction<T[]> arrayFactory;
+    private final List<Function<T, String>> fields;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Map<Long, T>> postings = new TreeMap<>(); // token -> sequence -> entity
+
+    /**
+     * Create an empty index. Register it on a store with {@link CatalogStore#addListener}, before adding entities.
+     * @param arrayFactory creates arrays of the entity type
+     * @param fields indexed fields, null values are ignored
+     */
+    @SafeVarargs
+    SearchIndex(IntFunction<T[]> arrayFactory, Function<T, String>... fields) {
+        this.arrayFactory = arrayFactory;
+        this.fields = Arrays.asList(fields);
+    }
+
+    @Override
+    public void added(T entity, long sequence) {
+        Set<String> tokens = tokensOf(entity);
+
+        lock.writeLock().lock();
+        try {
+            for (String token : tokens)
+                postings.computeIfAbsent(token, t -> new HashMap<>()).put(sequence, entity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removed(T entity, long sequence) {
+        Set<String> tokens = tokensOf(entity);
+
+        lock.writeLock().lock();
+        try {
+            for (String token : tokens) {
+                Map<Long, T> entities = postings.get(token);
+                if (entities != null && entities.remove(sequence) != null && entities.isEmpty())
+                    postings.remove(token);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Search entities
+     * @param query words to look for, in any order. Nothing matches a null or blank query.
+     * @param fuzzy whether query terms also match tokens at a small edit distance
+     * @param limit maximum number of results
+     * @return the best matches, best first
+     */
+    T[] search(String query, boolean fuzzy, int limit) {
+        List<String> terms = query == null ? Collections.emptyList() : new ArrayList<>(tokenize(query));
+        if (terms.isEmpty())
+            return arrayFactory.apply(0);
+
+        Map<Long, Match<T>> matches = null;
+
+        lock.readLock().lock();
+        try {
+            // longer terms match fewer tokens: start with them, so the intersection shrinks quickly
+            terms.sort(Comparator.comparingInt(String::length).reversed());
+            for (String term : terms) {
+                Map<Long, Match<T>> termMatches = matchTerm(term, fuzzy);
+                if (matches == null) {
+                    matches = termMatches;
+                } else {
+                    matches.keySet().retainAll(termMatches.keySet());
+                    for (Map.Entry<Long, Match<T>> entry : matches.entrySet())
+                        entry.getValue().score += termMatches.get(entry.getKey()).score;
+                }
+
+                if (matches.isEmpty())
+                    break;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return top(matches.values(), limit);
+    }
+
+    /**
+     * An entity matching the query so far
+     */
+    private static final class Match<T> {
+        final T entity;
+        final long sequence;
+        int score;
+
+        Match(T entity, long sequence, int score) {
+            this.entity = entity;
+            this.sequence = sequence;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Entities matching one term, with their best score for this term. The read lock must be held.
+     */
+    private Map<Long, Match<T>> matchTerm(String term, boolean fuzzy) {
+        Map<Long, Match<T>> matches = new HashMap<>();
+
+        for (Map.Entry<String, Map<Long, T>> entry : postings.subMap(term, term + Character.MAX_VALUE).entrySet())
+            collect(matches, entry.getValue(), entry.getKey().equals(term) ? EXACT : PREFIX);
+
+        int maxDistance = fuzzy ? maxDistance(term) : 0;
+        if (maxDistance > 0)
+            collectFuzzy(matches, term, maxDistance);
+
+        return matches;
+    }
+
+    /**
+     * Collect the tokens within an edit distance of a term. The sorted tokens are walked like a trie: tokens
+     * sharing a prefix share the rows of the Levenshtein matrix computed for it, and a prefix whose row exceeds
+     * the distance skips every token starting with it. Only the neighbourhood of the term is visited, not the
+     * whole vocabulary. The read lock must be held.
+     */
+    private void collectFuzzy(Map<Long, Match<T>> matches, String term, int max) {
+        // rows[d]: distances between the first d characters of the token and each prefix of the term
+        int[][] rows = new int[term.length() + max + 1][term.length() + 1];
+        for (int j = 0; j <= term.length(); j++)
+            rows[0][j] = j;
+
+        String previous = "";
+        String token = postings.isEmpty() ? null : postings.firstKey();
+        while (token != null) {
+            int depth = commonPrefixLength(previous, token);
+            int pruned = -1;
+            for (int d = depth + 1; d <= token.length() && pruned < 0; d++) {
+                // longer prefixes are farther than max from the term, whatever follows
+                if (d >= rows.length) {
+                    pruned = d;
+                    break;
+                }
+
+                int[] above = rows[d - 1];
+                int[] row = rows[d];
+                row[0] = d;
+                int rowMin = d;
+                for (int j = 1; j <= term.length(); j++) {
+                    int cost = token.charAt(d - 1) == term.charAt(j - 1) ? 0 : 1;
+                    row[j] = Math.min(Math.min(row[j - 1], above[j]) + 1, above[j - 1] + cost);
+                    rowMin = Math.min(rowMin, row[j]);
+                }
+                if (rowMin > max)
+                    pruned = d;
+            }
+            previous = token;
+
+            if (pruned >= 0) {
+                // the rows beyond the pruned prefix are stale: no following token shares it
+                previous = token.substring(0, pruned - 1);
+                token = postings.higherKey(token.substring(0, pruned) + Character.MAX_VALUE);
+                continue;
+            }
+
+            if (rows[token.length()][term.length()] <= max && !token.startsWith(term))
+                collect(matches, postings.get(token), FUZZY);
+            token = postings.higherKey(token);
+        }
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i))
+                return i;
+        }
+        return length;
+    }
+
+    private static <T> void collect(Map<Long, Match<T>> matches, Map<Long, T> entities, int score) {
+        for (Map.Entry<Long, T> entity : entities.entrySet()) {
+            Match<T> match = matches.get(entity.getKey());
+            if (match == null)
+                matches.put(entity.getKey(), new Match<>(entity.getValue(), entity.getKey(), score));
+            else if (match.score < score)
+                match.score = score;
+        }
+    }
+
+    /**
+     * Select the best matches with a bounded heap, worst match on top
+     */
+    private T[] top(Collection<Match<T>> matches, int limit) {
+        Comparator<Match<T>> ranking = Comparator.<Match<T>>comparingInt(m -> m.score).reversed()
+                .thenComparingLong(m -> m.sequence);
+
+        PriorityQueue<Match<T>> best = new PriorityQueue<>(Math.max(1, Math.min(limit, matches.size())), ranking.reversed());
+        for (Match<T> match : matches) {
+            if (best.size() < limit) {
+                best.add(match);
+            } else if (ranking.compare(match, best.peek()) < 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+
+        T[] results = arrayFactory.apply(best.size());
+        for (int i = results.length - 1; i >= 0; i--)
+            results[i] = best.poll().entity;
+        return results;
+    }
+
+    private Set<String> tokensOf(T entity) {
+        Set<String> tokens = new HashSet<>();
+        for (Function<T, String> field : fields) {
+            String value = field.apply(entity);
+            if (value != null)
+                tokenize(value, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Split a text in tokens: lower case words and numbers, without accents
+     * @param text the text
+     * @return the distinct tokens, in order of appearance
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        tokenize(text, tokens);
+        return tokens;
+    }
+
+    private static void tokenize(String text, Set<String> tokens) {
+        // titles are mostly ASCII: only decompose the others to drop their accents
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                text = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+                break;
+            }
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Short terms must match exactly, longer ones may contain one or two typos
+     */
+    private static int maxDistance(String term) {
+        if (term.length() < 4)
+            return 0;
+        return term.length() < 8 ? 1 : 2;
+    }
+}
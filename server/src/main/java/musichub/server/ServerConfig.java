@@ -0,0 +1,181 @@
+package musichub.server;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server configuration, read from musichub.properties in the working directory<br>
+ *
+ * Keys:<br>
+ * - snapshot.interval: seconds between two automatic snapshots, 0 to disable them (default 300)<br>
+ * - snapshot.dirtyThreshold: number of changes after which a snapshot is taken without waiting (default 10000)<br>
+ * - cache.size: MiB of audio files kept in memory for downloads, 0 to disable the cache (default 64)<br>
+ * - feed.capacity: number of changes kept for the readers of the change feed (default 10000)<br>
+ * - replica.interval: milliseconds between two polls of the primary by a replica (default 500)<br>
+ * - server.address: host name or IP address the endpoint listens on, 0.0.0.0 for every interface (default localhost)<br>
+ * - server.port: port of the endpoint, 0 for any free port (default 7779)<br>
+ * - server.threads: number of threads handling the requests (default 16)<br>
+ * - server.queue: number of requests waiting for a thread, beyond which requests are rejected (default 64)<br>
+ * - server.queue.wait: milliseconds a request waits for a place in the queue before being rejected (default 100)<br>
+ * - server.shard: whether the hub is the shard of a router, which then also reaches it at /ws/shard (default false)<br>
+ *
+ * Every key can also be given on the command line, such as "--server.port=7780", which overrides the file.
+ * Missing or invalid keys keep their default value.
+ */
+public class ServerConfig {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    static final String FILE_PATH = ServerMusicHub.DIR + File.separator + "musichub.properties";
+
+    /**
+     * Seconds between two automatic snapshots, 0 if disabled
+     */
+    @Getter private long snapshotInterval = 300;
+    /**
+     * Number of changes after which a snapshot is taken without waiting for the interval
+     */
+    @Getter private int snapshotDirtyThreshold = 10000;
+    /**
+     * MiB of audio files kept in memory, 0 if the cache is disabled
+     */
+    @Getter private long cacheSize = 64;
+    /**
+     * Number of changes kept for the readers of the change feed
+     */
+    @Getter private int feedCapacity = ChangeFeed.DEFAULT_CAPACITY;
+    /**
+     * Milliseconds between two polls of the primary by a replica
+     */
+    @Getter private long replicaInterval = 500;
+    /**
+     * Host name or IP address the endpoint listens on
+     */
+    @Getter private String serverAddress = "localhost";
+    /**
+     * Port of the endpoint, 0 for any free port
+     */
+    @Getter private int serverPort = 7779;
+    /**
+     * Number of threads handling the requests
+     */
+    @Getter private int serverThreads = 16;
+    /**
+     * Number of requests waiting for a thread
+     */
+    @Getter private int serverQueue = 64;
+    /**
+     * Milliseconds a request waits for a place in the queue before being rejected
+     */
+    @Getter private long serverQueueWait = 100;
+    /**
+     * Whether the hub is the shard of a {@link ShardedMusicHub}, and publishes the {@link ShardHub} calls
+     */
+    @Getter private boolean serverShard;
+
+    /**
+     * Create the default configuration
+     */
+    public ServerConfig() {
+    }
+
+    /**
+     * Read the configuration file. If it doesn't exist, the default configuration is returned.
+     * @param file the properties file
+     * @return the configuration
+     */
+    public static ServerConfig load(File file) {
+        ServerConfig config = new ServerConfig();
+        if (!file.exists())
+            return config;
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Couldn't read configuration: " + e + ". Use default configuration.");
+            return config;
+        }
+
+        config.apply(properties);
+        return config;
+    }
+
+    /**
+     * Read the configuration file, then override it with the options of the command line
+     * @param file the properties file
+     * @param args the arguments of the command line, the ones not starting with "--" are ignored
+     * @return the configuration
+     */
+    public static ServerConfig load(File file, List<String> args) {
+        ServerConfig config = load(file);
+        Properties options = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--"))
+                continue;
+
+            int separator = arg.indexOf('=');
+            if (separator < 0)
+                LOGGER.log(Level.SEVERE, "Invalid option " + arg + ", expected --key=value. Ignore it.");
+            else
+                options.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        config.apply(options);
+        return config;
+    }
+
+    /**
+     * Override the configuration with the given properties
+     * @param properties the properties, unknown keys are ignored
+     */
+    void apply(Properties properties) {
+        snapshotInterval = parse(properties, "snapshot.interval", snapshotInterval, 0);
+        snapshotDirtyThreshold = (int) parse(properties, "snapshot.dirtyThreshold", snapshotDirtyThreshold, 1);
+        cacheSize = parse(properties, "cache.size", cacheSize, 0);
+        feedCapacity = (int) parse(properties, "feed.capacity", feedCapacity, 1);
+        replicaInterval = parse(properties, "replica.interval", replicaInterval, 1);
+
+        String address = properties.getProperty("server.address");
+        if (address != null && !address.trim().isEmpty())
+            serverAddress = address.trim();
+        else if (address != null)
+            LOGGER.log(Level.SEVERE, "Invalid value for server.address: empty. Use " + serverAddress + ".");
+        serverPort = (int) parse(properties, "server.port", serverPort, 0, 65535);
+        serverThreads = (int) parse(properties, "server.threads", serverThreads, 1);
+        serverQueue = (int) parse(properties, "server.queue", serverQueue, 0);
+        serverQueueWait = parse(properties, "server.queue.wait", serverQueueWait, 0);
+
+        String shard = properties.getProperty("server.shard");
+        if (shard != null && (shard.trim().equalsIgnoreCase("true") || shard.trim().equalsIgnoreCase("false")))
+            serverShard = Boolean.parseBoolean(shard.trim());
+        else if (shard != null)
+            LOGGER.log(Level.SEVERE, "Invalid value for server.shard: " + shard + ". Use " + serverShard + ".");
+    }
+
+    private static long parse(Properties properties, String key, long defaultValue, long min) {
+        return parse(properties, key, defaultValue, min, Integer.MAX_VALUE);
+    }
+
+    private static long parse(Properties properties, String key, long defaultValue, long min, long max) {
+        String value = properties.getProperty(key);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed >= min && parsed <= max)
+                return parsed;
+        } catch (NumberFormatException ignored) {
+        }
+
+        LOGGER.log(Level.SEVERE, "Invalid value for " + key + ": " + value + ". Use " + defaultValue + ".");
+        return defaultValue;
+    }
+}
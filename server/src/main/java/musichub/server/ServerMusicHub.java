@@ -1,357 +1,1468 @@
-package musichub.server;
-
-import lombok.NonNull;
-import musichub.business.*;
-
-import javax.activation.DataHandler;
-import javax.activation.FileDataSource;
-import javax.jws.WebMethod;
-import javax.jws.WebService;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
-import javax.xml.bind.annotation.XmlElement;
-import javax.xml.bind.annotation.XmlRootElement;
-import javax.xml.bind.annotation.XmlTransient;
-import java.io.File;
-import java.io.IOException;
-import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-class SortByDate implements Comparator<Album>
-{
-	public int compare(Album a1, Album a2) {
-			return a1.getDate().compareTo(a2.getDate());
-	} 
-}
-
-class SortByGenre implements Comparator<Song>
-{
-	public int compare(Song s1, Song s2) {
-			return s1.getGenre().compareTo(s2.getGenre());
-	} 
-}
-
-class SortByAuthor implements Comparator<AudioElement>
-{
-	public int compare(AudioElement e1, AudioElement e2) {
-			return e1.getArtist().compareTo(e2.getArtist());
-	} 
-}
-
-/**
- * Implemention of music hub for server
- */
-@XmlRootElement(name = "musichub")
-@WebService(endpointInterface = "musichub.business.IMusicHub")
-public class ServerMusicHub implements IMusicHub {
-	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
-
-	static final String DIR = System.getProperty("user.dir");
-	static final String FILE_PATH = DIR + File.separator + "musichub.xml";
-	static final String DATA_PATH = DIR + File.separator + "data";
-
-	@XmlElement(name = "album")
-	private final List<Album> albums;
-	@XmlElement(name = "playlist")
-	private final List<PlayList> playlists;
-	@XmlElement(name = "elements")
-	private final List<AudioElement> elements;
-
-	///// optimization structures, ignored in marshalling
-	@XmlTransient
-	private final Map<UUID, AudioElement> elementsById = new HashMap<>();
-
-	@XmlTransient
-	private final Map<String, AudioElement> elementsByName = new HashMap<>();
-
-	@XmlTransient
-	private final Map<String, PlayList> playlistByName = new HashMap<>();
-
-	@XmlTransient
-	private final Map<String, Album> albumsByName = new HashMap<>();
-
-	/**
-	 * Load the music hub from the file. If the XML doesn't exists or is corrupted, an empty hub is created.
-	 * @return the create hub
-	 */
-	public static ServerMusicHub load() {
-	    File file = new File(FILE_PATH);
-
-	    if (!file.exists()) {
-			LOGGER.log(Level.INFO, "No data found, create an empty MusicHub");
-			return new ServerMusicHub();
-		}
-
-	    try {
-			JAXBContext jaxbContext = JAXBContext.newInstance(ServerMusicHub.class);
-			Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-
-			ServerMusicHub output = (ServerMusicHub) jaxbUnmarshaller.unmarshal(new File(FILE_PATH));
-			output.initializeOptimizationStructures();
-
-			LOGGER.log(Level.INFO, "MusicHub loaded from file");
-			return output;
-		} catch (JAXBException e) {
-	    	LOGGER.log(Level.SEVERE, "Couldn't load data: " + e + ". Create an empty MusicHub.");
-	    	return new ServerMusicHub();
-		}
-	}
-
-	public ServerMusicHub () {
-		albums = new LinkedList<>();
-		playlists = new LinkedList<>();
-		elements = new LinkedList<>();
-	}
-
-	private void initializeOptimizationStructures() {
-		for (Album v : albums)
-			albumsByName.put(v.getTitle().toLowerCase(), v);
-		for (PlayList v : playlists)
-			playlistByName.put(v.getTitle().toLowerCase(), v);
-		for (AudioElement v : elements) {
-			elementsByName.put(v.getTitle().toLowerCase(), v);
-			elementsById.put(v.getUuid(), v);
-		}
-	}
-
-	@Override
-	public void addElement(AudioElement element, DataHandler handler) {
-		LOGGER.log(Level.INFO, "Upload audio element: " + element.getTitle());
-		try {
-			element.createFile(DATA_PATH, handler);
-		} catch (IOException e) {
-			LOGGER.log(Level.SEVERE, "Couldn't upload file: " + e);
-		}
-
-		elements.add(element);
-		elementsByName.put(element.getTitle().toLowerCase(), element);
-		elementsById.put(element.getUuid(), element);
-	}
-
-	@Override
-	public void addAlbum(Album album) {
-		LOGGER.log(Level.INFO, "Add album: " + album.getTitle());
-		albums.add(album);
-		albumsByName.put(album.getTitle().toLowerCase(), album);
-	}
-
-	@Override
-	public void addPlaylist(PlayList playlist) {
-		LOGGER.log(Level.INFO, "Add playlist: " + playlist.getTitle());
-		playlists.add(playlist);
-		playlistByName.put(playlist.getTitle().toLowerCase(), playlist);
-	}
-
-	@Override
-	public void deletePlayList(String playListTitle) throws NoPlayListFoundException {
-	    PlayList thePlayList = this.playlistByTitle(playListTitle);
-		playlists.remove(thePlayList);
-		playlistByName.remove(playListTitle.toLowerCase());
-		LOGGER.log(Level.INFO, "Remove playlist " + playListTitle);
-	}
-
-	@WebMethod
-	public void deleteAlbum(String albumTitle) throws NoAlbumFoundException {
-		Album album = this.albumByTitle(albumTitle);
-		albums.remove(album);
-		albumsByName.remove(albumTitle.toLowerCase());
-		LOGGER.log(Level.INFO, "Remove album" + albumTitle);
-	}
-
-	@WebMethod
-	public void deleteElement(String elementTitle) throws NoElementFoundException {
-		AudioElement element = this.elementByTitle(elementTitle);
-		elements.remove(element);
-		elementsById.remove(element.getUuid());
-		elementsByName.remove(elementTitle.toLowerCase());
-		LOGGER.log(Level.INFO, "Remove element" + elementTitle);
-	}
-
-	@Override
-	public Album[] albums() {
-		return albums.toArray(new Album[0]);
-	}
-
-	@Override
-	public PlayList	[] playlists() {
-		return playlists.toArray(new PlayList[0]);
-	}
-
-	@Override
-	public AudioElement[] elements() {
-		return elements.toArray(new AudioElement[0]);
-	}
-
-	@Override
-	public Song[] songs() {
-		List<Song> songs = new ArrayList<>();
-		for (AudioElement ae : elements) {
-			if (ae instanceof Song)
-				songs.add((Song) ae);
-		}
-
-		return songs.toArray(new Song[0]);
-	}
-
-	@Override
-	public AudioBook[] audioBooks() {
-		List<AudioBook> ab = new ArrayList<>();
-		for (AudioElement ae : elements) {
-			if (ae instanceof AudioBook)
-				ab.add((AudioBook) ae);
-		}
-
-		return ab.toArray(new AudioBook[0]);
-	}
-
-	@Override
-	public Album[] getAlbumsSortedByDate() {
-	    Album[] albums = albums();
-	    Arrays.sort(albums, new SortByDate());
-
-	    return albums;
-	}
-
-	@Override
-	public AudioBook[] getAudiobooksSortedByAuthor() {
-		AudioBook[] ab = audioBooks();
-		Arrays.sort(ab, new SortByAuthor());
-		return ab;
-	}
-
-	@Override
-	public Song[] getAlbumSongs(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
-		Album theAlbum = albumByTitle(albumTitle);
-		Song[] songsInAlbum = new Song[theAlbum.getSongs().size()];
-
-		List<UUID> songIDs = theAlbum.getSongs();
-		for (int i = 0; i < songIDs.size(); i++) {
-		    AudioElement e = elementById(songIDs.get(i));
-
-		    if (!(e instanceof Song))
-				throw new NoElementFoundException("Element (ID) " + songIDs.get(i) + " exists, but is not a song");
-		    songsInAlbum[i] = (Song) e;
-		}
-
-		return songsInAlbum;
-	}
-
-	@Override
-	public Song[] getAlbumSongsSortedByGenre (String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
-		Song[] songs = getAlbumSongs(albumTitle);
-		return Arrays.stream(songs)
-					 .sorted(new SortByGenre())
-				     .toArray(Song[]::new);
-	}
-
-	@Override
-	public Album albumByTitle(@NonNull String title) throws NoAlbumFoundException {
-	    Album e = albumsByName.getOrDefault(title.toLowerCase(), null);
-
-	    if (e != null)
-	    	return e;
-
-		LOGGER.log(Level.WARNING, "Couldn't find album " + title);
-		throw new NoAlbumFoundException("Album " + title + " not found!");
-	}
-
-	@Override
-	public PlayList playlistByTitle(@NonNull String title) throws NoPlayListFoundException {
-		PlayList e = playlistByName.getOrDefault(title.toLowerCase(), null);
-
-		if (e != null)
-			return e;
-
-		LOGGER.log(Level.WARNING, "Couldn't find playlist " + title);
-		throw new NoPlayListFoundException("PlayList " + title + " not found!");
-	}
-
-	@Override
-	public AudioElement elementByTitle(@NonNull String title) throws NoElementFoundException {
-		AudioElement e = elementsByName.getOrDefault(title.toLowerCase(), null);
-
-		if (e != null)
-			return e;
-
-		LOGGER.log(Level.WARNING, "Couldn't find element " + title);
-		throw new NoElementFoundException("Element  " + title + " not found!");
-	}
-
-	public AudioElement elementById(@NonNull UUID id) throws NoElementFoundException {
-		AudioElement e = elementsById.getOrDefault(id, null);
-
-		if (e != null)
-			return e;
-
-		LOGGER.log(Level.WARNING, "Couldn't find element by id: " + id);
-		throw new NoElementFoundException("Element (ID) " + id + " not found!");
-	}
-
-	@Override
-	public void addElementToAlbum(String elementTitle, String albumTitle) throws NoAlbumFoundException, NoElementFoundException
-	{
-		Album theAlbum = albumByTitle(albumTitle);
-		AudioElement theElement = elementByTitle(elementTitle);
-
-		if (!(theElement instanceof Song))
-		    throw new NoElementFoundException("Element " + elementTitle + " exists, but is not a song");
-
-		LOGGER.log(Level.INFO, "Add song " + elementTitle + " to album " + albumTitle);
-		theAlbum.addSong(theElement.getUuid());
-	}
-
-	@Override
-	public void addElementToPlayList(String elementTitle, String playListTitle) throws NoPlayListFoundException, NoElementFoundException
-	{
-		PlayList thePlayList = playlistByTitle(playListTitle);
-		AudioElement theElement = elementByTitle(elementTitle);
-
-		LOGGER.log(Level.INFO, "Add element " + elementTitle + " to playlist " + playListTitle);
-		thePlayList.addElement(theElement.getUuid());
-	}
-
-	@Override
-	public AudioElement[] getPlaylistElements(String playList) throws NoPlayListFoundException, NoElementFoundException {
-		PlayList thePlayList = playlistByTitle(playList);
-		AudioElement[] elementsInPlaylist = new AudioElement[thePlayList.getElements().size()];
-
-		List<UUID> elementsIDs = thePlayList.getElements();
-		for (int i = 0; i < elementsIDs.size(); i++) {
-		    elementsInPlaylist[i] = elementById(elementsIDs.get(i));
-		}
-
-		return elementsInPlaylist;
-	}
-
-	@Override
-	public void save() {
-	    try {
-			JAXBContext jaxbContext = JAXBContext.newInstance(ServerMusicHub.class);
-			Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-
-			jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-			jaxbMarshaller.marshal(this, new File(FILE_PATH));
-
-			LOGGER.log(Level.INFO, "Data saved");
-		} catch(JAXBException e) {
-	        LOGGER.log(Level.SEVERE, "Couldn't save data: " + e);
-		}
-	}
-
-	@Override
-	public DataHandler downloadElement(String title) throws NoElementFoundException {
-		AudioElement element = elementByTitle(title);
-		File file = element.getDataLocation();
-
-		if (!file.exists()) {
-			LOGGER.log(Level.SEVERE, "Couldn't find audio element file: " + file);
-		}
-
-		FileDataSource dataSource = new FileDataSource(element.getDataLocation());
-
-		return new DataHandler(dataSource);
-	}
+package musichub.server;
+
+import lombok.NonNull;
+import musichub.business.*;
+
+import javax.activation.DataHandler;
+import javax.jws.WebMethod;
+import javax.jws.WebService;
+import javax.xml.ws.soap.MTOM;
+import javax.xml.bind.JAXBException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class SortByDate implements Comparator<Album>
+{
+	public int compare(Album a1, Album a2) {
+			return a1.getDate().compareTo(a2.getDate());
+	} 
+}
+
+class SortByAuthor implements Comparator<AudioElement>
+{
+	public int compare(AudioElement e1, AudioElement e2) {
+			return e1.getArtist().compareTo(e2.getArtist());
+	} 
+}
+
+/**
+ * Implemention of music hub for server<br>
+ *
+ * The hub is served by concurrent JAX-WS worker threads: each entity type lives in its own
+ * {@link CatalogStore}, which gives lock-free lookups and listings and a write lock per entity type. Sorted
+ * listings are served from {@link SortedIndex}es, songs and audiobooks from {@link TypePartition}s, searches
+ * from {@link SearchIndex}es and filter queries from an {@link ElementFilterIndex}, all updated with the stores.<br>
+ *
+ * Every mutation gets a new catalog version and, for a hub created by {@link #load()}, is written to the
+ * {@link CatalogJournal} before the call returns. The latest changes are also kept in a {@link ChangeFeed}, so
+ * clients and replicas can catch up from their version. Snapshots compact the journal into musichub.dat (see
+ * {@link SnapshotCodec}); musichub.xml is only used to import and export the catalog.<br>
+ *
+ * Audio files are exchanged as MTOM attachments, in binary rather than base64, and downloads are written with
+ * {@link FileDataHandler}. The files of the most downloaded elements are served from an {@link AudioFileCache}.
+ * Files are stored once per content in a {@link BlobStore}, and deleted with their last element by a background
+ * thread. Deleting an element also removes it from its albums and playlists, found with {@link MembershipIndex}es.<br>
+ *
+ * Snapshots are written by a background thread, periodically and once enough changes are journaled (see
+ * {@link ServerConfig}). The thread copies the catalog under the write locks, which is cheap as the stores
+ * already keep copy-on-write arrays, then serializes the copy while requests go on.
+ */
+@WebService(endpointInterface = "musichub.business.IMusicHub")
+@MTOM(threshold = ServerMusicHub.MTOM_THRESHOLD)
+public class ServerMusicHub implements IMusicHub, ShardHub {
+	private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+	static final String DIR = System.getProperty("user.dir");
+	/**
+	 * Binary payloads (audio files and upload chunks) from this size are sent as MTOM attachments instead of base64
+	 */
+	static final int MTOM_THRESHOLD = 4096;
+
+	// files of a hub, in its directory
+	static final String XML_FILE = "musichub.xml";
+	static final String SNAPSHOT_FILE = "musichub.dat";
+	static final String JOURNAL_DIR = "journal";
+	static final String DATA_DIR = "data";
+	static final String UPLOAD_DIR = DATA_DIR + File.separator + "uploads";
+	static final String BLOB_DIR = DATA_DIR + File.separator + "blobs";
+
+	private static final long UPLOAD_MAX_IDLE = TimeUnit.HOURS.toMillis(1);
+	static final int MAX_SNAPSHOTS = 4;
+
+	private final CatalogStore<Album> albums = new CatalogStore<>(Album::getUuid, Album::getTitle, Album[]::new);
+	private final CatalogStore<PlayList> playlists = new CatalogStore<>(PlayList::getUuid, PlayList::getTitle, PlayList[]::new);
+	private final CatalogStore<AudioElement> elements = new CatalogStore<>(AudioElement::getUuid, AudioElement::getTitle, AudioElement[]::new);
+
+	private static final Genre[] GENRES = Genre.values();
+
+	private final TypePartition<AudioElement, Song> songs = new TypePartition<>(Song.class, Song[]::new);
+	private final TypePartition<AudioElement, AudioBook> audioBooks = new TypePartition<>(AudioBook.class, AudioBook[]::new);
+	private final SortedIndex<Album, Album> albumsByDate = new SortedIndex<>(Album.class, new SortByDate(), Album[]::new);
+	private final SortedIndex<AudioElement, AudioBook> audioBooksByAuthor = new SortedIndex<>(AudioBook.class, new SortByAuthor(), AudioBook[]::new);
+
+	private final SearchIndex<AudioElement> elementSearch = new SearchIndex<>(AudioElement[]::new, AudioElement::getTitle, AudioElement::getArtist);
+	private final SearchIndex<Album> albumSearch = new SearchIndex<>(Album[]::new, Album::getTitle, Album::getArtist);
+	private final SearchIndex<PlayList> playlistSearch = new SearchIndex<>(PlayList[]::new, PlayList::getTitle);
+	private final ElementFilterIndex elementFilter = new ElementFilterIndex();
+	private final File dir;
+	private final BlobStore blobs;
+	private final MembershipIndex<Album> albumMembers = new MembershipIndex<>(Album::getUuid, Album::getSongs);
+	private final MembershipIndex<PlayList> playlistMembers = new MembershipIndex<>(PlayList::getUuid, PlayList::getElements);
+
+	{
+		elements.addListener(elementSearch);
+		albums.addListener(albumSearch);
+		playlists.addListener(playlistSearch);
+		albums.addListener(albumsByDate);
+		elements.addListener(songs);
+		elements.addListener(audioBooks);
+		elements.addListener(audioBooksByAuthor);
+		elements.addListener(elementFilter);
+		albums.addListener(albumMembers);
+		playlists.addListener(playlistMembers);
+	}
+
+	private final ChunkedUploads uploads;
+	private volatile AudioFileCache fileCache;
+
+	private final Object versionLock = new Object();
+	private long version;
+	private CatalogJournal journal;
+	private ChangeFeed feed = new ChangeFeed(ChangeFeed.DEFAULT_CAPACITY, 0); // guarded by versionLock
+	/**
+	 * Snapshots being read by readers too far behind the feed, by version, the least recently read dropped first
+	 */
+	private final Map<Long, CatalogDocument> snapshots = new LinkedHashMap<Long, CatalogDocument>(4, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, CatalogDocument> eldest) {
+			return size() > MAX_SNAPSHOTS;
+		}
+	}; // guarded by itself
+
+	private final ScheduledExecutorService snapshotter = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread thread = new Thread(r, "musichub-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicBoolean snapshotPending = new AtomicBoolean();
+	private long savedVersion; // only used by the snapshot thread
+
+	private final ExecutorService reclaimer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "musichub-reclaim");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicBoolean reclaimPending = new AtomicBoolean();
+
+	/**
+	 * Load the music hub with the configuration of musichub.properties
+	 * @return the create hub
+	 * @throws IOException if the snapshot, the XML file or the journal can't be read
+	 * @see #load(ServerConfig)
+	 */
+	public static ServerMusicHub load() throws IOException {
+		return load(ServerConfig.load(new File(ServerConfig.FILE_PATH)));
+	}
+
+	/**
+	 * Load the music hub of the working directory
+	 * @param config server configuration
+	 * @return the create hub
+	 * @throws IOException if the snapshot, the XML file or the journal can't be read
+	 * @see #load(File, ServerConfig)
+	 */
+	public static ServerMusicHub load(ServerConfig config) throws IOException {
+		return load(new File(DIR), config);
+	}
+
+	/**
+	 * Load the music hub from the binary snapshot, then replay the journal. Without snapshot, the catalog is
+	 * imported from the XML file.<br>
+	 *
+	 * If the snapshot, the XML file or the journal can't be read, the hub doesn't start: the next snapshot would
+	 * replace the files with a partial catalog, and drop the journal. They are left as they are, to be repaired or
+	 * moved aside.
+	 * @param dir directory of the files of the hub
+	 * @param config server configuration
+	 * @return the create hub
+	 * @throws IOException if the snapshot, the XML file or the journal can't be read
+	 */
+	static ServerMusicHub load(File dir, ServerConfig config) throws IOException {
+		File snapshot = new File(dir, SNAPSHOT_FILE);
+	    File file = new File(dir, XML_FILE);
+		ServerMusicHub output = new ServerMusicHub(dir);
+
+		if (snapshot.exists()) {
+			try {
+				output.restore(SnapshotCodec.read(snapshot));
+				LOGGER.log(Level.INFO, "MusicHub loaded from snapshot");
+			} catch (IOException e) {
+				output.close();
+				throw new IOException("Couldn't load snapshot " + snapshot + ": " + e.getMessage(), e);
+			}
+		} else if (file.exists()) {
+			try {
+				// entities are indexed while the rest of the file is parsed
+				long version = CatalogXmlReader.read(file, CatalogXmlContext.unmarshaller(),
+						output.albums::add, output.playlists::add, output.elements::add);
+				synchronized (output.versionLock) {
+					output.version = version;
+				}
+
+				LOGGER.log(Level.INFO, "MusicHub imported from XML file");
+			} catch (JAXBException | IOException e) {
+				output.close();
+				throw new IOException("Couldn't import " + file + ": " + e, e);
+			}
+		} else {
+			LOGGER.log(Level.INFO, "No data found, create an empty MusicHub");
+		}
+
+		try {
+			output.openJournal(new File(dir, JOURNAL_DIR), config.getSnapshotDirtyThreshold());
+		} catch (IOException e) {
+			output.close();
+			throw e;
+		}
+		synchronized (output.versionLock) {
+			// readers behind the loaded version get a snapshot
+			output.feed = new ChangeFeed(config.getFeedCapacity(), output.version);
+		}
+		// audio files are only known to be unreferenced once the whole catalog is loaded
+		if (output.journal != null) {
+			int swept = output.blobs.sweep();
+			if (swept > 0)
+				LOGGER.log(Level.INFO, "Deleted " + swept + " unreferenced audio files");
+		}
+		// uploads interrupted by the restart go on where they stopped
+		output.uploads.recover();
+		output.scheduleUploadExpiry();
+		output.scheduleSnapshots(config.getSnapshotInterval());
+		if (config.getCacheSize() > 0)
+			output.enableFileCache(config.getCacheSize() * 1024 * 1024);
+		return output;
+	}
+
+	/**
+	 * Create an empty hub, whose files are in the working directory
+	 */
+	public ServerMusicHub () {
+		this(new File(DIR));
+	}
+
+	/**
+	 * Create an empty hub
+	 * @param dir directory of the files of the hub: snapshot, journal and audio files
+	 */
+	ServerMusicHub (File dir) {
+		this.dir = dir;
+		this.blobs = new BlobStore(new File(dir, BLOB_DIR), new File(dir, DATA_DIR));
+		this.uploads = new ChunkedUploads(new File(dir, UPLOAD_DIR), UPLOAD_MAX_IDLE);
+		elements.addListener(blobs);
+	}
+
+	/**
+	 * Keep the audio files of the most downloaded elements in memory
+	 * @param capacity maximum number of bytes held
+	 * @see AudioFileCache
+	 */
+	void enableFileCache(long capacity) {
+		AudioFileCache cache = new AudioFileCache(capacity);
+		elements.addListener(cache);
+		fileCache = cache;
+	}
+
+	/**
+	 * @return the cache of audio files, or null if it's disabled
+	 */
+	AudioFileCache fileCache() {
+		return fileCache;
+	}
+
+	/**
+	 * Get the content of an audio file from the cache
+	 * @return the content, or null if the cache is disabled or the file too large
+	 */
+	private ByteBuffer cachedFile(File file) {
+		AudioFileCache cache = fileCache;
+		if (cache == null || !file.exists())
+			return null;
+
+		try {
+			return cache.get(file);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't cache audio element file " + file + ": " + e);
+			return null;
+		}
+	}
+
+	private void restore(CatalogDocument document) {
+		for (Album v : document.albums)
+			albums.add(v);
+		for (PlayList v : document.playlists)
+			playlists.add(v);
+		for (AudioElement v : document.elements)
+			elements.add(v);
+
+		synchronized (versionLock) {
+			version = document.version;
+		}
+		savedVersion = document.version;
+	}
+
+	/**
+	 * Replay the changes journaled since the last snapshot, then record new changes in the journal
+	 * @param dir directory of the journal
+	 * @param dirtyThreshold number of journaled changes after which a snapshot is taken
+	 * @throws IOException if the journal can't be replayed
+	 */
+	private void openJournal(File dir, int dirtyThreshold) throws IOException {
+		long loaded = version;
+		long replayed = CatalogJournal.replay(dir, loaded, this::apply);
+
+		synchronized (versionLock) {
+			version = replayed;
+		}
+		if (replayed > loaded)
+			LOGGER.log(Level.INFO, "Replayed journal up to version " + replayed);
+
+		try {
+			journal = new CatalogJournal(dir, dirtyThreshold, this::saveAsync);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't open journal, changes won't be durable: " + e);
+		}
+	}
+
+	/**
+	 * Take a snapshot at a fixed interval, if the catalog changed since the last one
+	 * @param seconds the interval, 0 to disable
+	 */
+	private void scheduleSnapshots(long seconds) {
+		if (seconds <= 0)
+			return;
+
+		snapshotter.scheduleWithFixedDelay(() -> {
+			if (currentVersion() != savedVersion)
+				writeSnapshot();
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Discard idle uploads even when no new upload begins
+	 */
+	private void scheduleUploadExpiry() {
+		long period = UPLOAD_MAX_IDLE / 4;
+		snapshotter.scheduleWithFixedDelay(uploads::expire, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private long currentVersion() {
+		synchronized (versionLock) {
+			return version;
+		}
+	}
+
+	/**
+	 * Apply a journaled change, without recording it again
+	 * @param change the change
+	 */
+	void apply(CatalogChange change) {
+		switch (change.type) {
+			case ADD_ELEMENT:
+				elements.add(change.element);
+				break;
+			case ADD_ALBUM:
+				albums.add(change.album);
+				break;
+			case ADD_PLAYLIST:
+				playlists.add(change.playlist);
+				break;
+			case DELETE_ELEMENT:
+				removeElement(change.target);
+				break;
+			case DELETE_ALBUM:
+				albums.remove(change.target);
+				break;
+			case DELETE_PLAYLIST:
+				playlists.remove(change.target);
+				break;
+			case ADD_TO_ALBUM:
+				Album album = albums.byId(change.container);
+				if (album != null) {
+					album.addSong(change.target);
+					albumMembers.link(change.target, album.getUuid());
+				}
+				break;
+			case ADD_TO_PLAYLIST:
+				PlayList playlist = playlists.byId(change.container);
+				if (playlist != null) {
+					playlist.addElement(change.target);
+					playlistMembers.link(change.target, playlist.getUuid());
+				}
+				break;
+			case BATCH:
+				applyBatch(change.changes);
+				break;
+		}
+	}
+
+	/**
+	 * Apply the changes of a batch. Albums and playlists keep copy-on-write lists, so the memberships are applied
+	 * last, with a single copy per album or playlist. Batches only hold additions, so this keeps their outcome.
+	 * @param changes the changes of the batch
+	 */
+	private void applyBatch(List<CatalogChange> changes) {
+		Map<UUID, List<UUID>> albumSongs = new LinkedHashMap<>();
+		Map<UUID, List<UUID>> playlistElements = new LinkedHashMap<>();
+
+		for (CatalogChange change : changes) {
+			if (change.type == CatalogChange.Type.ADD_TO_ALBUM)
+				albumSongs.computeIfAbsent(change.container, c -> new ArrayList<>()).add(change.target);
+			else if (change.type == CatalogChange.Type.ADD_TO_PLAYLIST)
+				playlistElements.computeIfAbsent(change.container, c -> new ArrayList<>()).add(change.target);
+			else
+				apply(change);
+		}
+
+		for (Map.Entry<UUID, List<UUID>> entry : albumSongs.entrySet()) {
+			Album album = albums.byId(entry.getKey());
+			if (album != null) {
+				album.getSongs().addAll(entry.getValue());
+				albumMembers.link(entry.getValue(), album.getUuid());
+			}
+		}
+		for (Map.Entry<UUID, List<UUID>> entry : playlistElements.entrySet()) {
+			PlayList playlist = playlists.byId(entry.getKey());
+			if (playlist != null) {
+				playlist.getElements().addAll(entry.getValue());
+				playlistMembers.link(entry.getValue(), playlist.getUuid());
+			}
+		}
+	}
+
+	/**
+	 * Remove an element, and remove it from the albums and playlists holding it. Only these containers are
+	 * visited, found with the membership indexes. All write locks must be held.
+	 * @param id id of the element
+	 */
+	private void removeElement(UUID id) {
+		elements.remove(id);
+
+		Set<UUID> removed = Collections.singleton(id);
+		for (UUID container : albumMembers.unlink(id)) {
+			Album album = albums.byId(container);
+			if (album != null)
+				album.getSongs().removeAll(removed);
+		}
+		for (UUID container : playlistMembers.unlink(id)) {
+			PlayList playlist = playlists.byId(container);
+			if (playlist != null)
+				playlist.getElements().removeAll(removed);
+		}
+	}
+
+	/**
+	 * Apply a mutation under the write lock of a store and record it. Returns once the change is durable.
+	 * @param store store holding the mutated entity
+	 * @param change the change, recorded in the journal
+	 * @param mutation applies the change to the store
+	 */
+	private void commit(CatalogStore<?> store, CatalogChange change, Runnable mutation) {
+		CompletableFuture<Void> durable;
+
+		store.writeLock().lock();
+		try {
+			mutation.run();
+			durable = record(change);
+		} finally {
+			store.writeLock().unlock();
+		}
+
+		awaitDurable(durable);
+	}
+
+	private static void awaitDurable(CompletableFuture<Void> durable) {
+		try {
+			durable.join();
+		} catch (CompletionException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't journal change: " + e.getCause());
+		}
+	}
+
+	private CompletableFuture<Void> record(CatalogChange change) {
+		synchronized (versionLock) {
+			change.version = ++version;
+			feed.append(change);
+			return journal == null ? CompletableFuture.completedFuture(null) : journal.append(change);
+		}
+	}
+
+	private void lockAll() {
+		elements.writeLock().lock();
+		albums.writeLock().lock();
+		playlists.writeLock().lock();
+	}
+
+	private void unlockAll() {
+		playlists.writeLock().unlock();
+		albums.writeLock().unlock();
+		elements.writeLock().unlock();
+	}
+
+	/**
+	 * Copy the catalog for marshalling. All write locks must be held, so the copy is consistent.<br>
+	 * Elements are immutable and the store arrays are shared, but albums and playlists are copied: songs
+	 * can be added to them once the locks are released.
+	 * @return the catalog document
+	 */
+	private CatalogDocument toDocument() {
+		CatalogDocument document = new CatalogDocument();
+
+		for (Album album : albums.snapshot()) {
+			Album copy = new Album(album.getUuid(), album.getTitle(), album.getArtist(), album.getLengthInSeconds(), album.getDate());
+			copy.getSongs().addAll(album.getSongs());
+			document.albums.add(copy);
+		}
+		for (PlayList playlist : playlists.snapshot()) {
+			PlayList copy = new PlayList(playlist.getUuid(), playlist.getTitle());
+			copy.getElements().addAll(playlist.getElements());
+			document.playlists.add(copy);
+		}
+		document.elements.addAll(Arrays.asList(elements.snapshot()));
+		synchronized (versionLock) {
+			document.version = version;
+		}
+
+		return document;
+	}
+
+	/**
+	 * Stop automatic snapshots and the deletion of audio files, wait for the running ones and flush the journal.
+	 * Changes made after this call aren't durable anymore.
+	 */
+	public void close() {
+		reclaimer.shutdown();
+		snapshotter.shutdown();
+		try {
+			if (!snapshotter.awaitTermination(1, TimeUnit.MINUTES))
+				LOGGER.log(Level.SEVERE, "Snapshot still running, stop waiting for it");
+			if (!reclaimer.awaitTermination(1, TimeUnit.MINUTES))
+				LOGGER.log(Level.SEVERE, "Audio files still being deleted, stop waiting for it");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (journal != null)
+			journal.close();
+	}
+
+	@Override
+	public void addElement(AudioElement element, DataHandler handler) {
+		checkElement(element);
+		LOGGER.log(Level.INFO, "Upload audio element: " + element.getTitle());
+		File blob = null;
+		try {
+			if (handler != null) {
+				blob = blobs.store(handler.getInputStream());
+				element.attachFile(blob);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't upload file: " + e);
+		}
+
+		try {
+			commit(elements, CatalogChange.addElement(element), () -> elements.add(element));
+		} finally {
+			if (blob != null)
+				blobs.release(blob);
+		}
+	}
+
+	@Override
+	public String beginUpload(AudioElement element) {
+		checkElement(element);
+		LOGGER.log(Level.INFO, "Begin upload of audio element: " + element.getTitle());
+		try {
+			return uploads.begin(element);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't begin upload: " + e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public long uploadOffset(String uploadId) throws NoUploadFoundException {
+		return uploads.offset(uploadId);
+	}
+
+	@Override
+	public long appendChunk(String uploadId, long offset, byte[] chunk, long checksum) throws NoUploadFoundException {
+		try {
+			return uploads.append(uploadId, offset, chunk, checksum);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't write chunk of upload " + uploadId + ": " + e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * The partial file is moved to the data directory, then the element is added like by {@link #addElement}.
+	 */
+	@Override
+	public void commitUpload(String uploadId, long length, long checksum) throws NoUploadFoundException {
+		AudioElement element;
+		File blob = null;
+		try {
+			ChunkedUploads.Completed upload = uploads.commit(uploadId, length, checksum);
+			element = upload.element;
+			blob = blobs.adopt(upload.file, upload.hash);
+			element.attachFile(blob);
+		} catch (IOException e) {
+			if (blob != null)
+				blobs.release(blob);
+			LOGGER.log(Level.SEVERE, "Couldn't store upload " + uploadId + ": " + e);
+			throw new UncheckedIOException(e);
+		}
+
+		LOGGER.log(Level.INFO, "Upload audio element: " + element.getTitle());
+		try {
+			commit(elements, CatalogChange.addElement(element), () -> elements.add(element));
+		} finally {
+			blobs.release(blob);
+		}
+	}
+
+	@Override
+	public void abortUpload(String uploadId) {
+		uploads.discard(uploadId);
+	}
+
+	@Override
+	public void addAlbum(Album album) {
+		checkAlbum(album);
+		LOGGER.log(Level.INFO, "Add album: " + album.getTitle());
+		commit(albums, CatalogChange.addAlbum(album), () -> albums.add(album));
+	}
+
+	@Override
+	public void addPlaylist(PlayList playlist) {
+		checkPlaylist(playlist);
+		LOGGER.log(Level.INFO, "Add playlist: " + playlist.getTitle());
+		commit(playlists, CatalogChange.addPlaylist(playlist), () -> playlists.add(playlist));
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * The memberships are resolved first, then the batch is applied under the write locks of all the stores and
+	 * journaled as a single record, so it costs one lock acquisition and one sync whatever its size.
+	 */
+	@Override
+	public void addBatch(CatalogBatch batch) throws NoAlbumFoundException, NoPlayListFoundException, NoElementFoundException {
+		LOGGER.log(Level.INFO, "Add batch: " + batch.getElements().size() + " elements, " + batch.getAlbums().size()
+				+ " albums, " + batch.getPlaylists().size() + " playlists");
+		CompletableFuture<Void> durable;
+
+		lockAll();
+		try {
+			CatalogChange change = CatalogChange.batch(resolve(batch));
+			// recorded first: the batch adds songs to its albums, which must be journaled without them
+			durable = record(change);
+			apply(change);
+		} finally {
+			unlockAll();
+		}
+
+		awaitDurable(durable);
+	}
+
+	/**
+	 * Translate a batch into changes. Titles are looked up in the batch, then in the catalog. All write locks must
+	 * be held.
+	 * @return the changes: additions first, then memberships
+	 */
+	private List<CatalogChange> resolve(CatalogBatch batch) throws NoAlbumFoundException, NoPlayListFoundException, NoElementFoundException {
+		List<CatalogChange> changes = new ArrayList<>(batch.size());
+		Map<String, AudioElement> newElements = new HashMap<>();
+		Map<String, Album> newAlbums = new HashMap<>();
+		Map<String, PlayList> newPlaylists = new HashMap<>();
+
+		for (AudioElement element : batch.getElements()) {
+			checkElement(element);
+			newElements.put(element.getTitle().toLowerCase(), element);
+			changes.add(CatalogChange.addElement(element));
+		}
+		for (Album album : batch.getAlbums()) {
+			checkAlbum(album);
+			newAlbums.put(album.getTitle().toLowerCase(), album);
+			changes.add(CatalogChange.addAlbum(album));
+		}
+		for (PlayList playlist : batch.getPlaylists()) {
+			checkPlaylist(playlist);
+			newPlaylists.put(playlist.getTitle().toLowerCase(), playlist);
+			changes.add(CatalogChange.addPlaylist(playlist));
+		}
+
+		for (Membership membership : batch.getAlbumSongs()) {
+			Album album = newAlbums.get(membership.getContainerTitle().toLowerCase());
+			if (album == null)
+				album = albumByTitle(membership.getContainerTitle());
+
+			AudioElement element = newElements.get(membership.getElementTitle().toLowerCase());
+			if (element == null)
+				element = elementByTitle(membership.getElementTitle());
+			if (!(element instanceof Song))
+				throw new NoElementFoundException("Element " + membership.getElementTitle() + " exists, but is not a song");
+
+			changes.add(CatalogChange.addToContainer(CatalogChange.Type.ADD_TO_ALBUM, element.getUuid(), album.getUuid()));
+		}
+		for (Membership membership : batch.getPlaylistElements()) {
+			PlayList playlist = newPlaylists.get(membership.getContainerTitle().toLowerCase());
+			if (playlist == null)
+				playlist = playlistByTitle(membership.getContainerTitle());
+
+			AudioElement element = newElements.get(membership.getElementTitle().toLowerCase());
+			if (element == null)
+				element = elementByTitle(membership.getElementTitle());
+
+			changes.add(CatalogChange.addToContainer(CatalogChange.Type.ADD_TO_PLAYLIST, element.getUuid(), playlist.getUuid()));
+		}
+
+		return changes;
+	}
+
+	@Override
+	public void deletePlayList(String playListTitle) throws NoPlayListFoundException {
+	    PlayList thePlayList = this.playlistByTitle(playListTitle);
+		UUID id = thePlayList.getUuid();
+		commit(playlists, CatalogChange.delete(CatalogChange.Type.DELETE_PLAYLIST, id), () -> playlists.remove(id));
+		LOGGER.log(Level.INFO, "Remove playlist " + playListTitle);
+	}
+
+	@WebMethod
+	public void deleteAlbum(String albumTitle) throws NoAlbumFoundException {
+		Album album = this.albumByTitle(albumTitle);
+		UUID id = album.getUuid();
+		commit(albums, CatalogChange.delete(CatalogChange.Type.DELETE_ALBUM, id), () -> albums.remove(id));
+		LOGGER.log(Level.INFO, "Remove album" + albumTitle);
+	}
+
+	@WebMethod
+	public void deleteElement(String elementTitle) throws NoElementFoundException {
+		AudioElement element = this.elementByTitle(elementTitle);
+		delete(element.getUuid());
+		LOGGER.log(Level.INFO, "Remove element" + elementTitle);
+	}
+
+	@Override
+	public void deleteElementById(String id) {
+		if (delete(parseId(id)))
+			LOGGER.log(Level.INFO, "Remove element (ID) " + id);
+	}
+
+	/**
+	 * Delete an element, and remove it from its albums and playlists
+	 * @param id id of the element
+	 * @return false if neither the element nor a membership of it was found
+	 */
+	private boolean delete(UUID id) {
+		CatalogChange change = CatalogChange.delete(CatalogChange.Type.DELETE_ELEMENT, id);
+		CompletableFuture<Void> durable;
+
+		// the element is also removed from its albums and playlists
+		lockAll();
+		try {
+			if (elements.byId(id) == null && albumMembers.containers(id).isEmpty() && playlistMembers.containers(id).isEmpty())
+				return false;
+			apply(change);
+			durable = record(change);
+		} finally {
+			unlockAll();
+		}
+
+		awaitDurable(durable);
+		// the deletion is durable: the audio file can't be needed by a replay anymore
+		reclaimAsync();
+		return true;
+	}
+
+	/**
+	 * Check the fields indexed by the listeners of the stores, before anything is changed
+	 * @throws IllegalArgumentException if a title, artist, genre, language or category is missing
+	 */
+	private static void checkElement(AudioElement element) {
+		if (element == null || element.getTitle() == null || element.getArtist() == null)
+			throw new IllegalArgumentException("Audio element without title or artist");
+		if (element instanceof Song && ((Song) element).getGenre() == null)
+			throw new IllegalArgumentException("Song without genre: " + element.getTitle());
+		if (element instanceof AudioBook && (((AudioBook) element).getLanguage() == null
+				|| ((AudioBook) element).getCategory() == null))
+			throw new IllegalArgumentException("Audio book without language or category: " + element.getTitle());
+	}
+
+	/**
+	 * Check the fields indexed and saved with an album, before anything is changed
+	 * @throws IllegalArgumentException if the title, artist or date is missing
+	 */
+	private static void checkAlbum(Album album) {
+		if (album == null || album.getTitle() == null || album.getArtist() == null || album.getDate() == null)
+			throw new IllegalArgumentException("Album without title, artist or date");
+	}
+
+	/**
+	 * Check the title of a playlist, before anything is changed
+	 * @throws IllegalArgumentException if the title is missing
+	 */
+	private static void checkPlaylist(PlayList playlist) {
+		if (playlist == null || playlist.getTitle() == null)
+			throw new IllegalArgumentException("Playlist without title");
+	}
+
+	private static UUID parseId(String id) {
+		UUID uuid = id == null ? null : CatalogLookups.parseUuid(id);
+		if (uuid == null)
+			throw new IllegalArgumentException("Invalid id: " + id);
+		return uuid;
+	}
+
+	/**
+	 * Journal memberships added by id, as a batch
+	 * @param type type of the memberships
+	 * @param ids ids of the added elements
+	 * @param container id of the album or playlist
+	 * @return the batch, null if there is no id
+	 */
+	private static CatalogChange memberships(CatalogChange.Type type, String[] ids, UUID container) {
+		if (ids == null || ids.length == 0)
+			return null;
+		if (ids.length > MAX_PAGE_SIZE)
+			throw new IllegalArgumentException("Too many ids: " + ids.length + " > " + MAX_PAGE_SIZE);
+
+		List<CatalogChange> changes = new ArrayList<>(ids.length);
+		for (String id : ids)
+			changes.add(CatalogChange.addToContainer(type, parseId(id), container));
+		return CatalogChange.batch(changes);
+	}
+
+	@Override
+	public Album[] albums() {
+		return albums.toArray();
+	}
+
+	@Override
+	public PlayList	[] playlists() {
+		return playlists.toArray();
+	}
+
+	@Override
+	public AudioElement[] elements() {
+		return elements.toArray();
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * The array is shared by all callers until the next change: it must not be modified.
+	 */
+	@Override
+	public Song[] songs() {
+		return songs.view().items;
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * The array is shared by all callers until the next change: it must not be modified.
+	 */
+	@Override
+	public AudioBook[] audioBooks() {
+		return audioBooks.view().items;
+	}
+
+	@Override
+	public int albumCount() {
+		return albums.size();
+	}
+
+	@Override
+	public Album[] albumsPage(int offset, int limit) {
+		return CatalogPages.page(albums.snapshot(), Album.class, offset, limit, Album[]::new);
+	}
+
+	@Override
+	public AlbumPage albumsAfter(String cursor, int limit) {
+		return CatalogPages.after(albums.view(), Album.class, cursor, limit, Album[]::new, AlbumPage::new);
+	}
+
+	@Override
+	public int playlistCount() {
+		return playlists.size();
+	}
+
+	@Override
+	public PlayList[] playlistsPage(int offset, int limit) {
+		return CatalogPages.page(playlists.snapshot(), PlayList.class, offset, limit, PlayList[]::new);
+	}
+
+	@Override
+	public PlayListPage playlistsAfter(String cursor, int limit) {
+		return CatalogPages.after(playlists.view(), PlayList.class, cursor, limit, PlayList[]::new, PlayListPage::new);
+	}
+
+	@Override
+	public int elementCount() {
+		return elements.size();
+	}
+
+	@Override
+	public AudioElement[] elementsPage(int offset, int limit) {
+		return CatalogPages.page(elements.snapshot(), AudioElement.class, offset, limit, AudioElement[]::new);
+	}
+
+	@Override
+	public ElementPage elementsAfter(String cursor, int limit) {
+		return CatalogPages.after(elements.view(), AudioElement.class, cursor, limit, AudioElement[]::new, ElementPage::new);
+	}
+
+	@Override
+	public int songCount() {
+		return songs.size();
+	}
+
+	@Override
+	public Song[] songsPage(int offset, int limit) {
+		return CatalogPages.page(songs.view().items, Song.class, offset, limit, Song[]::new);
+	}
+
+	@Override
+	public ElementPage songsAfter(String cursor, int limit) {
+		return CatalogPages.after(songs.view(), Song.class, cursor, limit, Song[]::new, ElementPage::new);
+	}
+
+	@Override
+	public int audioBookCount() {
+		return audioBooks.size();
+	}
+
+	@Override
+	public AudioBook[] audioBooksPage(int offset, int limit) {
+		return CatalogPages.page(audioBooks.view().items, AudioBook.class, offset, limit, AudioBook[]::new);
+	}
+
+	@Override
+	public ElementPage audioBooksAfter(String cursor, int limit) {
+		return CatalogPages.after(audioBooks.view(), AudioBook.class, cursor, limit, AudioBook[]::new, ElementPage::new);
+	}
+
+	@Override
+	public AudioElement[] searchElements(String query, boolean fuzzy, int limit) {
+		return elementSearch.search(query, fuzzy, CatalogPages.checkLimit(limit));
+	}
+
+	@Override
+	public Album[] searchAlbums(String query, boolean fuzzy, int limit) {
+		return albumSearch.search(query, fuzzy, CatalogPages.checkLimit(limit));
+	}
+
+	@Override
+	public PlayList[] searchPlaylists(String query, boolean fuzzy, int limit) {
+		return playlistSearch.search(query, fuzzy, CatalogPages.checkLimit(limit));
+	}
+
+	@Override
+	public ElementPage queryElements(ElementQuery query, String cursor, int limit) {
+		return elementFilter.query(query == null ? new ElementQuery() : query, cursor, CatalogPages.checkLimit(limit));
+	}
+
+	@Override
+	public Album[] getAlbumsSortedByDate() {
+	    return albumsByDate.toArray();
+	}
+
+	@Override
+	public AudioBook[] getAudiobooksSortedByAuthor() {
+		return audioBooksByAuthor.toArray();
+	}
+
+	@Override
+	public Song[] getAlbumSongs(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+		Album theAlbum = albumByTitle(albumTitle);
+		Song[] songsInAlbum = new Song[theAlbum.getSongs().size()];
+
+		List<UUID> songIDs = theAlbum.getSongs();
+		for (int i = 0; i < songIDs.size(); i++) {
+		    AudioElement e = elementById(songIDs.get(i));
+
+		    if (!(e instanceof Song))
+				throw new NoElementFoundException("Element (ID) " + songIDs.get(i) + " exists, but is not a song");
+		    songsInAlbum[i] = (Song) e;
+		}
+
+		return songsInAlbum;
+	}
+
+	@Override
+	public Song[] getAlbumSongsSortedByGenre (String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+		Song[] songs = getAlbumSongs(albumTitle);
+
+		// bucket sort on the genre: linear in the number of songs, and songs of a genre keep the album order
+		int[] starts = new int[GENRES.length + 1];
+		for (Song song : songs)
+			starts[song.getGenre().ordinal() + 1]++;
+		for (int i = 1; i < starts.length; i++)
+			starts[i] += starts[i - 1];
+
+		Song[] sorted = new Song[songs.length];
+		for (Song song : songs)
+			sorted[starts[song.getGenre().ordinal()]++] = song;
+		return sorted;
+	}
+
+	@Override
+	public Album albumByTitle(@NonNull String title) throws NoAlbumFoundException {
+	    Album e = albums.byTitle(title);
+
+	    if (e != null)
+	    	return e;
+
+		LOGGER.log(Level.WARNING, "Couldn't find album " + title);
+		throw new NoAlbumFoundException("Album " + title + " not found!");
+	}
+
+	@Override
+	public PlayList playlistByTitle(@NonNull String title) throws NoPlayListFoundException {
+		PlayList e = playlists.byTitle(title);
+
+		if (e != null)
+			return e;
+
+		LOGGER.log(Level.WARNING, "Couldn't find playlist " + title);
+		throw new NoPlayListFoundException("PlayList " + title + " not found!");
+	}
+
+	@Override
+	public AudioElement elementByTitle(@NonNull String title) throws NoElementFoundException {
+		AudioElement e = elements.byTitle(title);
+
+		if (e != null)
+			return e;
+
+		LOGGER.log(Level.WARNING, "Couldn't find element " + title);
+		throw new NoElementFoundException("Element  " + title + " not found!");
+	}
+
+	@Override
+	public AlbumLookup albumsByTitle(String[] titles) {
+		return CatalogLookups.lookup(titles, albums::byTitle, Album[]::new, AlbumLookup::new);
+	}
+
+	@Override
+	public PlayListLookup playlistsByTitle(String[] titles) {
+		return CatalogLookups.lookup(titles, playlists::byTitle, PlayList[]::new, PlayListLookup::new);
+	}
+
+	@Override
+	public ElementLookup elementsByTitle(String[] titles) {
+		return CatalogLookups.lookup(titles, elements::byTitle, AudioElement[]::new, ElementLookup::new);
+	}
+
+	@Override
+	public ElementLookup elementsById(String[] ids) {
+		return CatalogLookups.lookup(ids, id -> {
+			UUID uuid = CatalogLookups.parseUuid(id);
+			return uuid == null ? null : elements.byId(uuid);
+		}, AudioElement[]::new, ElementLookup::new);
+	}
+
+	public AudioElement elementById(@NonNull UUID id) throws NoElementFoundException {
+		AudioElement e = elements.byId(id);
+
+		if (e != null)
+			return e;
+
+		LOGGER.log(Level.WARNING, "Couldn't find element by id: " + id);
+		throw new NoElementFoundException("Element (ID) " + id + " not found!");
+	}
+
+	@Override
+	public void addElementToAlbum(String elementTitle, String albumTitle) throws NoAlbumFoundException, NoElementFoundException
+	{
+		Album theAlbum = albumByTitle(albumTitle);
+		AudioElement theElement = elementByTitle(elementTitle);
+
+		if (!(theElement instanceof Song))
+		    throw new NoElementFoundException("Element " + elementTitle + " exists, but is not a song");
+
+		LOGGER.log(Level.INFO, "Add song " + elementTitle + " to album " + albumTitle);
+		UUID song = theElement.getUuid();
+		commit(albums, CatalogChange.addToContainer(CatalogChange.Type.ADD_TO_ALBUM, song, theAlbum.getUuid()),
+				() -> {
+					theAlbum.addSong(song);
+					albumMembers.link(song, theAlbum.getUuid());
+				});
+	}
+
+	@Override
+	public void addElementToPlayList(String elementTitle, String playListTitle) throws NoPlayListFoundException, NoElementFoundException
+	{
+		PlayList thePlayList = playlistByTitle(playListTitle);
+		AudioElement theElement = elementByTitle(elementTitle);
+
+		LOGGER.log(Level.INFO, "Add element " + elementTitle + " to playlist " + playListTitle);
+		UUID element = theElement.getUuid();
+		commit(playlists, CatalogChange.addToContainer(CatalogChange.Type.ADD_TO_PLAYLIST, element, thePlayList.getUuid()),
+				() -> {
+					thePlayList.addElement(element);
+					playlistMembers.link(element, thePlayList.getUuid());
+				});
+	}
+
+	@Override
+	public void addSongsToAlbum(String albumId, String[] songIds) throws NoAlbumFoundException {
+		Album album = albums.byId(parseId(albumId));
+		if (album == null)
+			throw new NoAlbumFoundException("Album (ID) " + albumId + " not found!");
+
+		CatalogChange change = memberships(CatalogChange.Type.ADD_TO_ALBUM, songIds, album.getUuid());
+		if (change != null) {
+			LOGGER.log(Level.INFO, "Add " + songIds.length + " songs to album " + album.getTitle());
+			commit(albums, change, () -> apply(change));
+		}
+	}
+
+	@Override
+	public void addElementsToPlayList(String playListId, String[] elementIds) throws NoPlayListFoundException {
+		PlayList playlist = playlists.byId(parseId(playListId));
+		if (playlist == null)
+			throw new NoPlayListFoundException("PlayList (ID) " + playListId + " not found!");
+
+		CatalogChange change = memberships(CatalogChange.Type.ADD_TO_PLAYLIST, elementIds, playlist.getUuid());
+		if (change != null) {
+			LOGGER.log(Level.INFO, "Add " + elementIds.length + " elements to playlist " + playlist.getTitle());
+			commit(playlists, change, () -> apply(change));
+		}
+	}
+
+	@Override
+	public AudioElement[] getPlaylistElements(String playList) throws NoPlayListFoundException, NoElementFoundException {
+		PlayList thePlayList = playlistByTitle(playList);
+		AudioElement[] elementsInPlaylist = new AudioElement[thePlayList.getElements().size()];
+
+		List<UUID> elementsIDs = thePlayList.getElements();
+		for (int i = 0; i < elementsIDs.size(); i++) {
+		    elementsInPlaylist[i] = elementById(elementsIDs.get(i));
+		}
+
+		return elementsInPlaylist;
+	}
+
+	/**
+	 * Take a snapshot in the background. Returns immediately.
+	 */
+	@Override
+	public void save() {
+		saveAsync();
+	}
+
+	/**
+	 * Take a snapshot on the snapshot thread. Calls made while a snapshot is waiting to start share it.
+	 * @return completes once the snapshot is written, or at once if the hub is closed
+	 */
+	CompletableFuture<Void> saveAsync() {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		// otherwise a snapshot hasn't started yet: it will include the changes made until now
+		boolean owner = snapshotPending.compareAndSet(false, true);
+
+		try {
+			snapshotter.execute(() -> {
+				if (owner) {
+					snapshotPending.set(false);
+					writeSnapshot();
+				}
+				done.complete(null);
+			});
+		} catch (RejectedExecutionException e) {
+			if (owner)
+				snapshotPending.set(false);
+			done.complete(null);
+		}
+		return done;
+	}
+
+	/**
+	 * Delete the audio files which lost their last element on the reclaim thread. Calls made while a reclaim is
+	 * waiting to start share it.
+	 * @return completes once the files are deleted, or at once if the hub is closed
+	 */
+	CompletableFuture<Void> reclaimAsync() {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		boolean owner = reclaimPending.compareAndSet(false, true);
+
+		try {
+			reclaimer.execute(() -> {
+				if (owner) {
+					reclaimPending.set(false);
+					int deleted = blobs.collect();
+					if (deleted > 0)
+						LOGGER.log(Level.INFO, "Deleted " + deleted + " unreferenced audio files");
+				}
+				done.complete(null);
+			});
+		} catch (RejectedExecutionException e) {
+			if (owner)
+				reclaimPending.set(false);
+			done.complete(null);
+		}
+		return done;
+	}
+
+	/**
+	 * Copy the catalog and write it to a temporary file, then replace musichub.dat with it. Only called by the
+	 * snapshot thread.
+	 */
+	private void writeSnapshot() {
+		CatalogDocument document;
+		int segment = 0;
+
+		lockAll();
+		try {
+			document = toDocument();
+			if (journal != null)
+				segment = journal.rotate();
+		} finally {
+			unlockAll();
+		}
+
+		try {
+			File file = new File(dir, SNAPSHOT_FILE);
+			File tmp = new File(dir, SNAPSHOT_FILE + ".tmp");
+
+			SnapshotCodec.write(document, tmp);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			savedVersion = document.version;
+
+			// the snapshot now covers the previous journal segments
+			if (journal != null)
+				journal.deleteBefore(segment);
+
+			LOGGER.log(Level.INFO, "Data saved");
+		} catch(IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't save data: " + e);
+		}
+	}
+
+	/**
+	 * Export the catalog to the XML file
+	 */
+	public void exportXml() {
+		CatalogDocument document;
+
+		lockAll();
+		try {
+			document = toDocument();
+		} finally {
+			unlockAll();
+		}
+
+		try {
+			File file = new File(dir, XML_FILE);
+			File tmp = new File(dir, XML_FILE + ".tmp");
+
+			CatalogXmlContext.marshaller().marshal(document, tmp);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			LOGGER.log(Level.INFO, "Data exported to " + file);
+		} catch(JAXBException | IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't export data: " + e);
+		}
+	}
+
+	@Override
+	public DataHandler downloadElement(String title) throws NoElementFoundException {
+		AudioElement element = elementByTitle(title);
+		File file = element.getDataLocation();
+
+		if (!file.exists()) {
+			LOGGER.log(Level.SEVERE, "Couldn't find audio element file: " + file);
+		}
+
+		ByteBuffer cached = cachedFile(file);
+		return cached != null ? new BufferDataHandler(cached) : new FileDataHandler(file);
+	}
+
+	@Override
+	public long catalogVersion() {
+		return currentVersion();
+	}
+
+	@Override
+	public ChangePage changesSince(long version, int limit) {
+		limit = CatalogPages.checkLimit(limit);
+		ChangeFeed current;
+		synchronized (versionLock) {
+			current = feed;
+		}
+
+		ChangePage page = current.since(version, limit);
+		if (page != null)
+			return page;
+
+		// the reader is too far behind, or ahead of a hub which lost changes: send the whole catalog, page by page
+		LOGGER.log(Level.INFO, "Send a snapshot to a reader at version " + version);
+		CatalogDocument document;
+		synchronized (snapshots) {
+			document = snapshots.get(currentVersion());
+		}
+		if (document == null) {
+			lockAll();
+			try {
+				document = toDocument();
+			} finally {
+				unlockAll();
+			}
+			synchronized (snapshots) {
+				snapshots.put(document.version, document);
+			}
+		}
+		return snapshotPage(document, 0, limit);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * The last {@value #MAX_SNAPSHOTS} snapshots are kept, as copies of the albums and playlists sharing the elements
+	 * of the catalog.
+	 */
+	@Override
+	public ChangePage snapshotAfter(long version, String cursor, int limit) {
+		limit = CatalogPages.checkLimit(limit);
+		long from = CatalogPages.decode(cursor);
+		CatalogDocument document;
+		synchronized (snapshots) {
+			document = snapshots.get(version);
+		}
+		if (document == null)
+			throw new IllegalStateException("Snapshot at version " + version + " isn't kept anymore, read changes since the version of the copy");
+		return snapshotPage(document, (int) Math.min(from, Integer.MAX_VALUE), limit);
+	}
+
+	/**
+	 * Get a part of a snapshot: the elements, then the albums, then the playlists
+	 * @param from position of the first entity
+	 */
+	private static ChangePage snapshotPage(CatalogDocument document, int from, int limit) {
+		int elementCount = document.elements.size();
+		int albumCount = document.albums.size();
+		int total = elementCount + albumCount + document.playlists.size();
+		int to = (int) Math.min((long) from + limit, total);
+
+		AudioElement[] elements = slice(document.elements, from, to).toArray(new AudioElement[0]);
+		Album[] albums = slice(document.albums, from - elementCount, to - elementCount).toArray(new Album[0]);
+		PlayList[] playlists = slice(document.playlists, from - elementCount - albumCount,
+				to - elementCount - albumCount).toArray(new PlayList[0]);
+		boolean more = to < total;
+		return new ChangePage(document.version, more, more ? CatalogPages.encode(to) : null, albums, playlists, elements);
+	}
+
+	private static <T> List<T> slice(List<T> items, int from, int to) {
+		from = Math.max(0, Math.min(from, items.size()));
+		to = Math.max(from, Math.min(to, items.size()));
+		return items.subList(from, to);
+	}
+
+	/**
+	 * Apply a page read from the change feed of another hub, keeping its versions. A snapshot, whose parts are put
+	 * together first, replaces the whole catalog. The changes aren't journaled: a replica catches up from its primary instead.
+	 * @param page the page, read from the current version of this hub
+	 * @see ReplicaMusicHub
+	 */
+	void replicate(ChangePage page) {
+		lockAll();
+		try {
+			if (page.isSnapshot()) {
+				for (PlayList playlist : playlists.snapshot())
+					playlists.remove(playlist.getUuid());
+				for (Album album : albums.snapshot())
+					albums.remove(album.getUuid());
+				for (AudioElement element : elements.snapshot())
+					elements.remove(element.getUuid());
+
+				// empty arrays are received as null
+				if (page.getAlbums() != null)
+					for (Album album : page.getAlbums())
+						albums.add(album);
+				if (page.getPlaylists() != null)
+					for (PlayList playlist : page.getPlaylists())
+						playlists.add(playlist);
+				if (page.getElements() != null)
+					for (AudioElement element : page.getElements())
+						elements.add(element);
+				synchronized (versionLock) {
+					feed.reset(page.getVersion());
+				}
+			} else {
+				CatalogUpdate[] updates = page.getUpdates() == null ? new CatalogUpdate[0] : page.getUpdates();
+				for (int i = 0; i < updates.length; ) {
+					// the updates of a version are a batch on the other hub
+					List<CatalogChange> changes = new ArrayList<>();
+					long current = updates[i].getVersion();
+					for (; i < updates.length && updates[i].getVersion() == current; i++)
+						changes.add(CatalogChange.of(updates[i]));
+
+					CatalogChange change = changes.size() == 1 ? changes.get(0) : CatalogChange.batch(changes);
+					change.version = current;
+					apply(change);
+					synchronized (versionLock) {
+						feed.append(change);
+					}
+				}
+
+				synchronized (versionLock) {
+					// versions without update, such as empty batches
+					if (feed.version() < page.getVersion()) {
+						CatalogChange empty = CatalogChange.batch(Collections.emptyList());
+						empty.version = page.getVersion();
+						feed.append(empty);
+					}
+				}
+			}
+
+			synchronized (versionLock) {
+				version = page.getVersion();
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	@Override
+	public long elementFileLength(String title) throws NoElementFoundException {
+		return elementByTitle(title).getDataLocation().length();
+	}
+
+	@Override
+	public byte[] downloadRange(String title, long offset, int length) throws NoElementFoundException {
+		if (offset < 0 || length < 0 || length > MAX_CHUNK_SIZE)
+			throw new IllegalArgumentException("Invalid range: " + length + " bytes at " + offset);
+
+		AudioElement element = elementByTitle(title);
+		File file = element.getDataLocation();
+
+		ByteBuffer cached = cachedFile(file);
+		if (cached != null) {
+			byte[] range = new byte[(int) Math.max(0, Math.min(length, cached.remaining() - offset))];
+			if (range.length > 0) {
+				cached.position((int) offset);
+				cached.get(range);
+			}
+			return range;
+		}
+
+		// a positional read of the range only, mapping the file wouldn't pay off for a single chunk
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - offset)));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0)
+					break;
+			}
+			return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Couldn't read audio element file " + file + ": " + e);
+			throw new UncheckedIOException(e);
+		}
+	}
 }
\ No newline at end of file
@@ -1,27 +1,41 @@
 package musichub.server;
 
-import musichub.business.IMusicHub;
-import musichub.main.MusicTerminal;
-
 /**
  * Server music terminal
  *
- * Same than a classic music terminal, but add command 'save'
+ * Same than an endpoint terminal, but add command 'save', which compacts the journal into a snapshot,
+ * 'export', which writes the catalog to musichub.xml, and 'cache', which displays the statistics of the audio file cache
  */
-public class ServerMusicTerminal extends MusicTerminal {
+public class ServerMusicTerminal extends EndpointTerminal {
     /**
      * Create a new Music Terminal from a hub
      *
-     * @param hubInput The hub (can be a client or a server)
+     * @param hubInput The server hub
+     * @param endpoint The endpoint of the hub
      */
-    public ServerMusicTerminal(IMusicHub hubInput) {
-        super(hubInput);
+    public ServerMusicTerminal(ServerMusicHub hubInput, HubEndpoint endpoint) {
+        super(hubInput, endpoint);
 
-        this.registerCommand(new Command("save", "save elements, albums, playlists") {
+        this.registerCommand(new Command("save", "snapshot elements, albums, playlists in the background and compact the journal") {
             @Override
             public void run() {
                 hub.save();
             }
         });
+
+        this.registerCommand(new Command("export", "export elements, albums, playlists to musichub.xml") {
+            @Override
+            public void run() {
+                hubInput.exportXml();
+            }
+        });
+
+        this.registerCommand(new Command("cache", "display the statistics of the audio file cache") {
+            @Override
+            public void run() {
+                AudioFileCache cache = hubInput.fileCache();
+                System.out.println(cache == null ? "The audio file cache is disabled" : "Audio file cache: " + cache);
+            }
+        });
     }
 }
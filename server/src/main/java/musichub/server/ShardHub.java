@@ -0,0 +1,47 @@
+package musichub.server;
+
+import musichub.business.NoAlbumFoundException;
+import musichub.business.NoPlayListFoundException;
+
+import javax.jws.WebMethod;
+import javax.jws.WebService;
+import javax.jws.soap.SOAPBinding;
+
+/**
+ * Calls of a {@link ShardedMusicHub} to its shards, which aren't part of {@link musichub.business.IMusicHub}<br>
+ *
+ * Memberships are given by id, and the members aren't looked up: in a sharded catalog, they may be held by other
+ * shards, which the router has checked already. A hub only publishes this interface when it is configured as a shard
+ * (see {@link HubEndpoint}).
+ */
+@WebService
+@SOAPBinding(style = SOAPBinding.Style.RPC)
+public interface ShardHub {
+    /**
+     * Add songs to an album, as a single change
+     * @param albumId id of the album
+     * @param songIds ids of the songs, null for none
+     * @throws NoAlbumFoundException if the album doesn't exist
+     * @throws IllegalArgumentException if an id is invalid, or if there are more than
+     *                                  {@link musichub.business.IMusicHub#MAX_PAGE_SIZE} songs
+     */
+    @WebMethod void addSongsToAlbum(String albumId, String[] songIds) throws NoAlbumFoundException;
+
+    /**
+     * Add elements to a playlist, as a single change
+     * @param playListId id of the playlist
+     * @param elementIds ids of the elements, null for none
+     * @throws NoPlayListFoundException if the playlist doesn't exist
+     * @throws IllegalArgumentException if an id is invalid, or if there are more than
+     *                                  {@link musichub.business.IMusicHub#MAX_PAGE_SIZE} elements
+     */
+    @WebMethod void addElementsToPlayList(String playListId, String[] elementIds) throws NoPlayListFoundException;
+
+    /**
+     * Delete an element by id, and remove it from its albums and playlists. If this hub doesn't hold the element,
+     * it is only removed from them.
+     * @param id id of the element
+     * @throws IllegalArgumentException if the id is invalid
+     */
+    @WebMethod void deleteElementById(String id);
+}
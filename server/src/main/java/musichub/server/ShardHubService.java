@@ -0,0 +1,37 @@
+package musichub.server;
+
+import musichub.business.NoAlbumFoundException;
+import musichub.business.NoPlayListFoundException;
+
+import javax.jws.WebService;
+
+/**
+ * SOAP endpoint of the {@link ShardHub} calls of a hub, published next to its {@link musichub.business.IMusicHub}
+ * endpoint
+ */
+@WebService(endpointInterface = "musichub.server.ShardHub", serviceName = "ShardHubService", portName = "ShardHubPort")
+public class ShardHubService implements ShardHub {
+    private final ShardHub hub;
+
+    /**
+     * @param hub the shard
+     */
+    public ShardHubService(ShardHub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void addSongsToAlbum(String albumId, String[] songIds) throws NoAlbumFoundException {
+        hub.addSongsToAlbum(albumId, songIds);
+    }
+
+    @Override
+    public void addElementsToPlayList(String playListId, String[] elementIds) throws NoPlayListFoundException {
+        hub.addElementsToPlayList(playListId, elementIds);
+    }
+
+    @Override
+    public void deleteElementById(String id) {
+        hub.deleteElementById(id);
+    }
+}
@@ -0,0 +1,952 @@
+package musichub.server;
+
+import musichub.business.*;
+
+import javax.activation.DataHandler;
+import javax.jws.WebService;
+import javax.xml.ws.soap.MTOM;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Front end of a catalog partitioned across several hubs, the shards<br>
+ *
+ * Each element, album and playlist is held by the shard picked by the hash of its UUID: additions and lookups by
+ * id go to a single shard, and each shard only stores its part of the catalog and of the audio files. Titles
+ * aren't partitioned, so lookups by title are sent to every shard in parallel, and an addition is refused if another
+ * shard already has its title (see {@link #checkTitles}). Listings, counts and searches are
+ * gathered from every shard too: listings and pages go through the shards one after the other, sorted listings are
+ * merged and search results are interleaved rank by rank.<br>
+ *
+ * Albums and playlists may hold the elements of any shard. Their members are resolved with one multi-get per
+ * shard, and memberships are added by id on the shard of the album or playlist, through its {@link ShardHub} calls.
+ * Deleting an element removes it from the albums and playlists of every shard.<br>
+ *
+ * A change spanning several shards, such as a batch, isn't atomic: it is validated first, then applied shard by
+ * shard. The number of shards can't change once entities are added, as it decides where they are. There is no
+ * change feed of the whole catalog: replicas follow the shards instead (see {@link #changesSince}).<br>
+ *
+ * The front end is published under the service name of a single hub, so clients connect to both the same way.
+ */
+@WebService(endpointInterface = "musichub.business.IMusicHub", serviceName = "ServerMusicHubService",
+        portName = "ServerMusicHubPort")
+@MTOM(threshold = ServerMusicHub.MTOM_THRESHOLD)
+public class ShardedMusicHub implements IMusicHub {
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Reads a page of a shard from its cursor
+     */
+    @FunctionalInterface
+    private interface CursorCall<P> {
+        P get(IMusicHub shard, String cursor, int limit);
+    }
+
+    /**
+     * Reads a page of a shard from its offset
+     */
+    @FunctionalInterface
+    private interface OffsetCall<T> {
+        T[] get(IMusicHub shard, int offset, int limit);
+    }
+
+    private final List<IMusicHub> shards;
+    private final List<ShardHub> shardCalls;
+
+    private final AtomicInteger threads = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "musichub-shard-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param shards the shards, always in the same order
+     * @param shardCalls the {@link ShardHub} calls of the same shards, in the same order
+     */
+    public ShardedMusicHub(List<IMusicHub> shards, List<ShardHub> shardCalls) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("No shard");
+        if (shardCalls.size() != shards.size())
+            throw new IllegalArgumentException("Expected the calls of " + shards.size() + " shards, got " + shardCalls.size());
+        this.shards = new ArrayList<>(shards);
+        this.shardCalls = new ArrayList<>(shardCalls);
+    }
+
+    /**
+     * @param id id of an entity
+     * @param count number of shards
+     * @return index of the shard holding the entity
+     */
+    static int shardOf(UUID id, int count) {
+        return Math.floorMod(id.hashCode(), count);
+    }
+
+    private IMusicHub owner(UUID id) {
+        return shards.get(shardOf(id, shards.size()));
+    }
+
+    private ShardHub ownerCalls(UUID id) {
+        return shardCalls.get(shardOf(id, shards.size()));
+    }
+
+    /**
+     * Stop the threads calling the shards
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    // Calls to the shards
+
+    /**
+     * Call every shard in parallel
+     * @return the results, in the order of the shards
+     */
+    private <R> List<R> scatter(Function<IMusicHub, R> call) {
+        List<Supplier<R>> calls = new ArrayList<>(shards.size());
+        for (IMusicHub shard : shards)
+            calls.add(() -> call.apply(shard));
+        return all(calls);
+    }
+
+    private <R> List<R> all(List<Supplier<R>> calls) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(calls.size());
+        for (Supplier<R> call : calls)
+            futures.add(CompletableFuture.supplyAsync(call, executor));
+
+        List<R> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<R> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                // as if the shard was called directly
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Concatenate listings. Empty arrays may be received as null.
+     */
+    private static <T> T[] concat(List<T[]> parts, IntFunction<T[]> arrayFactory) {
+        List<T> items = new ArrayList<>();
+        for (T[] part : parts) {
+            if (part != null)
+                items.addAll(Arrays.asList(part));
+        }
+        return items.toArray(arrayFactory.apply(items.size()));
+    }
+
+    /**
+     * Merge listings sorted by each shard. A heap holds the shards by the next item of their listing, ties going
+     * to the first shard. Empty arrays may be received as null.
+     */
+    private static <T> T[] merge(List<T[]> parts, Comparator<? super T> order, IntFunction<T[]> arrayFactory) {
+        int[] positions = new int[parts.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> {
+            int compared = order.compare(parts.get(a)[positions[a]], parts.get(b)[positions[b]]);
+            return compared != 0 ? compared : Integer.compare(a, b);
+        });
+
+        int total = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            T[] part = parts.get(i);
+            if (part != null && part.length > 0) {
+                total += part.length;
+                heads.add(i);
+            }
+        }
+
+        T[] merged = arrayFactory.apply(total);
+        for (int n = 0; n < total; n++) {
+            int shard = heads.poll();
+            T[] part = parts.get(shard);
+            merged[n] = part[positions[shard]++];
+            if (positions[shard] < part.length)
+                heads.add(shard);
+        }
+        return merged;
+    }
+
+    private int sum(ToIntFunction<IMusicHub> count) {
+        int total = 0;
+        for (int n : scatter(count::applyAsInt))
+            total += n;
+        return total;
+    }
+
+    /**
+     * Get a page from an offset in the shards one after the other
+     */
+    private <T> T[] page(int offset, int limit, ToIntFunction<IMusicHub> count, OffsetCall<T> call,
+                         IntFunction<T[]> arrayFactory) {
+        if (offset < 0)
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        limit = CatalogPages.checkLimit(limit);
+
+        List<Integer> counts = scatter(count::applyAsInt);
+        List<T> items = new ArrayList<>();
+        for (int i = 0; i < shards.size() && items.size() < limit; i++) {
+            if (offset >= counts.get(i)) {
+                offset -= counts.get(i);
+                continue;
+            }
+
+            T[] part = call.get(shards.get(i), offset, limit - items.size());
+            if (part != null)
+                items.addAll(Arrays.asList(part));
+            offset = 0;
+        }
+        return items.toArray(arrayFactory.apply(items.size()));
+    }
+
+    /**
+     * Get the page following a cursor in the shards one after the other. The cursor is the index of a shard and the
+     * cursor in this shard, empty to start the shard from its first page.
+     */
+    private <T, P extends CatalogPage> P after(String cursor, int limit, CursorCall<P> call, Function<P, T[]> itemsOf,
+                                               IntFunction<T[]> arrayFactory, CatalogPages.Factory<T, P> factory) {
+        limit = CatalogPages.checkLimit(limit);
+        int start = 0;
+        String inner = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            int separator = cursor.indexOf(SEPARATOR);
+            try {
+                start = separator < 0 ? -1 : Integer.parseInt(cursor.substring(0, separator));
+            } catch (NumberFormatException e) {
+                start = -1;
+            }
+            if (start < 0 || start >= shards.size())
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            inner = cursor.substring(separator + 1);
+        }
+
+        List<T> items = new ArrayList<>();
+        Integer[] totals = new Integer[shards.size()];
+        String next = null;
+        int last = start;
+        for (int i = start; i < shards.size() && items.size() < limit; i++) {
+            P page = call.get(shards.get(i), i == start ? inner : null, limit - items.size());
+            totals[i] = page.getTotal();
+            last = i;
+
+            T[] part = itemsOf.apply(page);
+            if (part != null)
+                items.addAll(Arrays.asList(part));
+            if (page.getNextCursor() != null) {
+                next = String.valueOf(i) + SEPARATOR + page.getNextCursor();
+                break;
+            }
+        }
+
+        // the sizes of the other listings
+        List<Supplier<Integer>> counts = new ArrayList<>();
+        List<Integer> counted = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (totals[i] == null) {
+                IMusicHub shard = shards.get(i);
+                counts.add(() -> call.get(shard, null, 1).getTotal());
+                counted.add(i);
+            }
+        }
+        List<Integer> results = all(counts);
+        for (int i = 0; i < counted.size(); i++)
+            totals[counted.get(i)] = results.get(i);
+
+        // the page ends with a shard: the next one starts the following shard with items
+        for (int i = last + 1; next == null && i < shards.size(); i++) {
+            if (totals[i] > 0)
+                next = String.valueOf(i) + SEPARATOR;
+        }
+
+        int total = 0;
+        for (int size : totals)
+            total += size;
+        return factory.create(items.toArray(arrayFactory.apply(items.size())), next, total);
+    }
+
+    /**
+     * Interleave the results of a search, rank by rank
+     */
+    private static <T> T[] interleave(List<T[]> results, int limit, IntFunction<T[]> arrayFactory) {
+        List<T> items = new ArrayList<>();
+        for (int rank = 0; items.size() < limit; rank++) {
+            boolean found = false;
+            for (T[] result : results) {
+                if (result != null && rank < result.length && items.size() < limit) {
+                    items.add(result[rank]);
+                    found = true;
+                }
+            }
+            if (!found)
+                break;
+        }
+        return items.toArray(arrayFactory.apply(items.size()));
+    }
+
+    /**
+     * Check that no shard has another entity with the titles of the entities being added. A single hub lets the
+     * latest entity take over a title, but the shards can't agree on which one is the latest. The check isn't atomic:
+     * two entities added at the same time with the same title on two shards are both accepted.
+     * @param adding ids of the entities being added, by title in lower case
+     * @throws IllegalArgumentException if a title is taken by another entity
+     */
+    private <T> void checkTitles(Map<String, UUID> adding, BiFunction<IMusicHub, String[], T[]> lookup,
+                                 Function<T, String> titleOf, Function<T, UUID> idOf) {
+        List<String> keys = new ArrayList<>(adding.keySet());
+        for (int from = 0; from < keys.size(); from += MAX_PAGE_SIZE) {
+            String[] chunk = keys.subList(from, Math.min(from + MAX_PAGE_SIZE, keys.size())).toArray(new String[0]);
+            for (T[] result : scatter(shard -> lookup.apply(shard, chunk))) {
+                if (result == null)
+                    continue;
+                for (T entity : result) {
+                    String title = titleOf.apply(entity);
+                    if (!idOf.apply(entity).equals(adding.get(title.toLowerCase())))
+                        throw new IllegalArgumentException("Title " + title + " is already taken");
+                }
+            }
+        }
+    }
+
+    private void checkElementTitles(Map<String, UUID> adding) {
+        checkTitles(adding, (s, t) -> s.elementsByTitle(t).getFound(), AudioElement::getTitle, AudioElement::getUuid);
+    }
+
+    private void checkAlbumTitles(Map<String, UUID> adding) {
+        checkTitles(adding, (s, t) -> s.albumsByTitle(t).getFound(), Album::getTitle, Album::getUuid);
+    }
+
+    private void checkPlaylistTitles(Map<String, UUID> adding) {
+        checkTitles(adding, (s, t) -> s.playlistsByTitle(t).getFound(), PlayList::getTitle, PlayList::getUuid);
+    }
+
+    /**
+     * @return the id by title in lower case, or nothing without title, which the shard refuses
+     */
+    private static Map<String, UUID> titled(String title, UUID id) {
+        return title == null ? Collections.emptyMap() : Collections.singletonMap(title.toLowerCase(), id);
+    }
+
+    /**
+     * Add an entity of a batch by title in lower case
+     * @throws IllegalArgumentException if the batch has another entity with the same title
+     */
+    private static <T> void put(Map<String, T> entities, String title, T entity, Function<T, UUID> idOf) {
+        T previous = entities.put(title.toLowerCase(), entity);
+        if (previous != null && !idOf.apply(previous).equals(idOf.apply(entity)))
+            throw new IllegalArgumentException("Title " + title + " is used twice in the batch");
+    }
+
+    /**
+     * Look titles up on every shard
+     * @return the entities found, by title in lower case
+     */
+    private <T> Map<String, T> locate(Collection<String> titles, BiFunction<IMusicHub, String[], T[]> lookup,
+                                      Function<T, String> titleOf) {
+        Map<String, T> found = new HashMap<>();
+        List<String> keys = new ArrayList<>(titles);
+        for (int from = 0; from < keys.size(); from += MAX_PAGE_SIZE) {
+            String[] chunk = keys.subList(from, Math.min(from + MAX_PAGE_SIZE, keys.size())).toArray(new String[0]);
+            for (T[] result : scatter(shard -> lookup.apply(shard, chunk))) {
+                if (result == null)
+                    continue;
+                // the first shard wins, as titles are checked to be unique when added
+                for (T entity : result)
+                    found.putIfAbsent(titleOf.apply(entity).toLowerCase(), entity);
+            }
+        }
+        return found;
+    }
+
+    private <T, L> L lookup(String[] titles, BiFunction<IMusicHub, String[], T[]> lookup, Function<T, String> titleOf,
+                            IntFunction<T[]> arrayFactory, CatalogLookups.Factory<T, L> factory) {
+        if (titles != null && titles.length > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("Too many keys: " + titles.length + " > " + MAX_PAGE_SIZE);
+
+        List<String> keys = new ArrayList<>();
+        if (titles != null) {
+            for (String title : titles) {
+                if (title != null)
+                    keys.add(title);
+            }
+        }
+        Map<String, T> found = locate(keys, lookup, titleOf);
+        return CatalogLookups.lookup(titles, title -> found.get(title.toLowerCase()), arrayFactory, factory);
+    }
+
+    /**
+     * Resolve the members of an album or playlist, with one multi-get per shard
+     * @throws NoElementFoundException if a member doesn't exist
+     */
+    private AudioElement[] members(List<UUID> ids) throws NoElementFoundException {
+        Map<UUID, AudioElement> found = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += MAX_PAGE_SIZE) {
+            String[] chunk = new String[Math.min(MAX_PAGE_SIZE, ids.size() - from)];
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = ids.get(from + i).toString();
+            AudioElement[] result = elementsById(chunk).getFound();
+            for (AudioElement element : result)
+                found.put(element.getUuid(), element);
+        }
+
+        AudioElement[] members = new AudioElement[ids.size()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = found.get(ids.get(i));
+            if (members[i] == null)
+                throw new NoElementFoundException("Element (ID) " + ids.get(i) + " not found!");
+        }
+        return members;
+    }
+
+    // Uploads, whose id starts with the index of the shard
+
+    private IMusicHub uploadShard(String uploadId) throws NoUploadFoundException {
+        int separator = uploadId == null ? -1 : uploadId.indexOf(SEPARATOR);
+        if (separator > 0) {
+            try {
+                int shard = Integer.parseInt(uploadId.substring(0, separator));
+                if (shard >= 0 && shard < shards.size())
+                    return shards.get(shard);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        throw new NoUploadFoundException("Upload " + uploadId + " not found!");
+    }
+
+    private static String shardUploadId(String uploadId) {
+        return uploadId.substring(uploadId.indexOf(SEPARATOR) + 1);
+    }
+
+    @Override
+    public String beginUpload(AudioElement element) {
+        checkElementTitles(titled(element.getTitle(), element.getUuid()));
+        int shard = shardOf(element.getUuid(), shards.size());
+        return String.valueOf(shard) + SEPARATOR + shards.get(shard).beginUpload(element);
+    }
+
+    @Override
+    public long uploadOffset(String uploadId) throws NoUploadFoundException {
+        return uploadShard(uploadId).uploadOffset(shardUploadId(uploadId));
+    }
+
+    @Override
+    public long appendChunk(String uploadId, long offset, byte[] chunk, long checksum) throws NoUploadFoundException {
+        return uploadShard(uploadId).appendChunk(shardUploadId(uploadId), offset, chunk, checksum);
+    }
+
+    @Override
+    public void commitUpload(String uploadId, long length, long checksum) throws NoUploadFoundException {
+        uploadShard(uploadId).commitUpload(shardUploadId(uploadId), length, checksum);
+    }
+
+    @Override
+    public void abortUpload(String uploadId) {
+        try {
+            uploadShard(uploadId).abortUpload(shardUploadId(uploadId));
+        } catch (NoUploadFoundException ignored) {
+            // nothing to abort
+        }
+    }
+
+    // Changes
+
+    @Override
+    public void addElement(AudioElement element, DataHandler handler) {
+        checkElementTitles(titled(element.getTitle(), element.getUuid()));
+        owner(element.getUuid()).addElement(element, handler);
+    }
+
+    @Override
+    public void addAlbum(Album album) {
+        checkAlbumTitles(titled(album.getTitle(), album.getUuid()));
+        owner(album.getUuid()).addAlbum(album);
+    }
+
+    @Override
+    public void addPlaylist(PlayList playlist) {
+        checkPlaylistTitles(titled(playlist.getTitle(), playlist.getUuid()));
+        owner(playlist.getUuid()).addPlaylist(playlist);
+    }
+
+    @Override
+    public void addBatch(CatalogBatch batch) throws NoAlbumFoundException, NoPlayListFoundException, NoElementFoundException {
+        Map<String, AudioElement> newElements = new HashMap<>();
+        Map<String, Album> newAlbums = new HashMap<>();
+        Map<String, PlayList> newPlaylists = new HashMap<>();
+        for (AudioElement element : batch.getElements())
+            put(newElements, element.getTitle(), element, AudioElement::getUuid);
+        for (Album album : batch.getAlbums())
+            put(newAlbums, album.getTitle(), album, Album::getUuid);
+        for (PlayList playlist : batch.getPlaylists())
+            put(newPlaylists, playlist.getTitle(), playlist, PlayList::getUuid);
+        checkElementTitles(ids(newElements, AudioElement::getUuid));
+        checkAlbumTitles(ids(newAlbums, Album::getUuid));
+        checkPlaylistTitles(ids(newPlaylists, PlayList::getUuid));
+
+        // the entities already in the catalog, each looked up on every shard at once
+        Set<String> elementTitles = new HashSet<>();
+        Set<String> albumTitles = new HashSet<>();
+        Set<String> playlistTitles = new HashSet<>();
+        for (Membership membership : batch.getAlbumSongs()) {
+            elementTitles.add(membership.getElementTitle());
+            albumTitles.add(membership.getContainerTitle());
+        }
+        for (Membership membership : batch.getPlaylistElements()) {
+            elementTitles.add(membership.getElementTitle());
+            playlistTitles.add(membership.getContainerTitle());
+        }
+        Map<String, AudioElement> elements = locate(elementTitles, (s, t) -> s.elementsByTitle(t).getFound(), AudioElement::getTitle);
+        Map<String, Album> albums = locate(albumTitles, (s, t) -> s.albumsByTitle(t).getFound(), Album::getTitle);
+        Map<String, PlayList> playlists = locate(playlistTitles, (s, t) -> s.playlistsByTitle(t).getFound(), PlayList::getTitle);
+        elements.putAll(newElements);
+        albums.putAll(newAlbums);
+        playlists.putAll(newPlaylists);
+
+        // validated before any change
+        Map<UUID, List<UUID>> albumSongs = new LinkedHashMap<>();
+        Map<UUID, List<UUID>> playlistElements = new LinkedHashMap<>();
+        for (Membership membership : batch.getAlbumSongs()) {
+            Album album = albums.get(membership.getContainerTitle().toLowerCase());
+            if (album == null)
+                throw new NoAlbumFoundException("Album " + membership.getContainerTitle() + " not found!");
+            AudioElement element = elements.get(membership.getElementTitle().toLowerCase());
+            if (element == null)
+                throw new NoElementFoundException("Element  " + membership.getElementTitle() + " not found!");
+            if (!(element instanceof Song))
+                throw new NoElementFoundException("Element " + membership.getElementTitle() + " exists, but is not a song");
+            albumSongs.computeIfAbsent(album.getUuid(), a -> new ArrayList<>()).add(element.getUuid());
+        }
+        for (Membership membership : batch.getPlaylistElements()) {
+            PlayList playlist = playlists.get(membership.getContainerTitle().toLowerCase());
+            if (playlist == null)
+                throw new NoPlayListFoundException("PlayList " + membership.getContainerTitle() + " not found!");
+            AudioElement element = elements.get(membership.getElementTitle().toLowerCase());
+            if (element == null)
+                throw new NoElementFoundException("Element  " + membership.getElementTitle() + " not found!");
+            playlistElements.computeIfAbsent(playlist.getUuid(), p -> new ArrayList<>()).add(element.getUuid());
+        }
+
+        // new albums and playlists are sent with their members
+        for (Album album : batch.getAlbums()) {
+            List<UUID> songs = albumSongs.remove(album.getUuid());
+            if (songs != null)
+                album.getSongs().addAll(songs);
+        }
+        for (PlayList playlist : batch.getPlaylists()) {
+            List<UUID> members = playlistElements.remove(playlist.getUuid());
+            if (members != null)
+                playlist.getElements().addAll(members);
+        }
+
+        CatalogBatch[] parts = new CatalogBatch[shards.size()];
+        for (AudioElement element : batch.getElements())
+            part(parts, element.getUuid()).addElement(element);
+        for (Album album : batch.getAlbums())
+            part(parts, album.getUuid()).addAlbum(album);
+        for (PlayList playlist : batch.getPlaylists())
+            part(parts, playlist.getUuid()).addPlaylist(playlist);
+
+        List<Supplier<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] == null)
+                continue;
+            IMusicHub shard = shards.get(i);
+            CatalogBatch part = parts[i];
+            calls.add(() -> {
+                try {
+                    shard.addBatch(part);
+                    return null;
+                } catch (NoAlbumFoundException | NoPlayListFoundException | NoElementFoundException e) {
+                    throw new IllegalStateException("Shard rejected a batch without membership", e);
+                }
+            });
+        }
+        all(calls);
+
+        // then the memberships of the albums and playlists already in the catalog
+        for (Map.Entry<UUID, List<UUID>> entry : albumSongs.entrySet()) {
+            for (String[] chunk : chunks(entry.getValue()))
+                ownerCalls(entry.getKey()).addSongsToAlbum(entry.getKey().toString(), chunk);
+        }
+        for (Map.Entry<UUID, List<UUID>> entry : playlistElements.entrySet()) {
+            for (String[] chunk : chunks(entry.getValue()))
+                ownerCalls(entry.getKey()).addElementsToPlayList(entry.getKey().toString(), chunk);
+        }
+    }
+
+    private static <T> Map<String, UUID> ids(Map<String, T> entities, Function<T, UUID> idOf) {
+        Map<String, UUID> ids = new HashMap<>();
+        for (Map.Entry<String, T> entry : entities.entrySet())
+            ids.put(entry.getKey(), idOf.apply(entry.getValue()));
+        return ids;
+    }
+
+    private CatalogBatch part(CatalogBatch[] parts, UUID id) {
+        int shard = shardOf(id, parts.length);
+        if (parts[shard] == null)
+            parts[shard] = new CatalogBatch();
+        return parts[shard];
+    }
+
+    private static List<String[]> chunks(List<UUID> ids) {
+        List<String[]> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += MAX_PAGE_SIZE) {
+            String[] chunk = new String[Math.min(MAX_PAGE_SIZE, ids.size() - from)];
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = ids.get(from + i).toString();
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    @Override
+    public void deletePlayList(String playListTitle) throws NoPlayListFoundException {
+        owner(playlistByTitle(playListTitle).getUuid()).deletePlayList(playListTitle);
+    }
+
+    @Override
+    public void deleteAlbum(String albumTitle) throws NoAlbumFoundException {
+        owner(albumByTitle(albumTitle).getUuid()).deleteAlbum(albumTitle);
+    }
+
+    @Override
+    public void deleteElement(String title) throws NoElementFoundException {
+        String id = elementByTitle(title).getUuid().toString();
+        // deleted by its shard, and removed from the albums and playlists of every shard
+        List<Supplier<Void>> calls = new ArrayList<>();
+        for (ShardHub shard : shardCalls) {
+            calls.add(() -> {
+                shard.deleteElementById(id);
+                return null;
+            });
+        }
+        all(calls);
+    }
+
+    @Override
+    public void addElementToAlbum(String elementTitle, String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        Album album = albumByTitle(albumTitle);
+        AudioElement element = elementByTitle(elementTitle);
+        if (!(element instanceof Song))
+            throw new NoElementFoundException("Element " + elementTitle + " exists, but is not a song");
+
+        ownerCalls(album.getUuid()).addSongsToAlbum(album.getUuid().toString(), new String[] {element.getUuid().toString()});
+    }
+
+    @Override
+    public void addElementToPlayList(String elementTitle, String playListTitle) throws NoPlayListFoundException, NoElementFoundException {
+        PlayList playlist = playlistByTitle(playListTitle);
+        AudioElement element = elementByTitle(elementTitle);
+
+        ownerCalls(playlist.getUuid()).addElementsToPlayList(playlist.getUuid().toString(),
+                new String[] {element.getUuid().toString()});
+    }
+
+    @Override
+    public void save() {
+        scatter(shard -> {
+            shard.save();
+            return null;
+        });
+    }
+
+    // Listings, gathered from every shard
+
+    @Override
+    public Album[] albums() {
+        return concat(scatter(IMusicHub::albums), Album[]::new);
+    }
+
+    @Override
+    public PlayList[] playlists() {
+        return concat(scatter(IMusicHub::playlists), PlayList[]::new);
+    }
+
+    @Override
+    public AudioElement[] elements() {
+        return concat(scatter(IMusicHub::elements), AudioElement[]::new);
+    }
+
+    @Override
+    public Song[] songs() {
+        return concat(scatter(IMusicHub::songs), Song[]::new);
+    }
+
+    @Override
+    public AudioBook[] audioBooks() {
+        return concat(scatter(IMusicHub::audioBooks), AudioBook[]::new);
+    }
+
+    @Override
+    public int albumCount() {
+        return sum(IMusicHub::albumCount);
+    }
+
+    @Override
+    public Album[] albumsPage(int offset, int limit) {
+        return page(offset, limit, IMusicHub::albumCount, IMusicHub::albumsPage, Album[]::new);
+    }
+
+    @Override
+    public AlbumPage albumsAfter(String cursor, int limit) {
+        return after(cursor, limit, IMusicHub::albumsAfter, AlbumPage::getItems, Album[]::new, AlbumPage::new);
+    }
+
+    @Override
+    public int playlistCount() {
+        return sum(IMusicHub::playlistCount);
+    }
+
+    @Override
+    public PlayList[] playlistsPage(int offset, int limit) {
+        return page(offset, limit, IMusicHub::playlistCount, IMusicHub::playlistsPage, PlayList[]::new);
+    }
+
+    @Override
+    public PlayListPage playlistsAfter(String cursor, int limit) {
+        return after(cursor, limit, IMusicHub::playlistsAfter, PlayListPage::getItems, PlayList[]::new, PlayListPage::new);
+    }
+
+    @Override
+    public int elementCount() {
+        return sum(IMusicHub::elementCount);
+    }
+
+    @Override
+    public AudioElement[] elementsPage(int offset, int limit) {
+        return page(offset, limit, IMusicHub::elementCount, IMusicHub::elementsPage, AudioElement[]::new);
+    }
+
+    @Override
+    public ElementPage elementsAfter(String cursor, int limit) {
+        return after(cursor, limit, IMusicHub::elementsAfter, ElementPage::getItems, AudioElement[]::new, ElementPage::new);
+    }
+
+    @Override
+    public int songCount() {
+        return sum(IMusicHub::songCount);
+    }
+
+    @Override
+    public Song[] songsPage(int offset, int limit) {
+        return page(offset, limit, IMusicHub::songCount, IMusicHub::songsPage, Song[]::new);
+    }
+
+    @Override
+    public ElementPage songsAfter(String cursor, int limit) {
+        return after(cursor, limit, IMusicHub::songsAfter, ElementPage::getItems, AudioElement[]::new, ElementPage::new);
+    }
+
+    @Override
+    public int audioBookCount() {
+        return sum(IMusicHub::audioBookCount);
+    }
+
+    @Override
+    public AudioBook[] audioBooksPage(int offset, int limit) {
+        return page(offset, limit, IMusicHub::audioBookCount, IMusicHub::audioBooksPage, AudioBook[]::new);
+    }
+
+    @Override
+    public ElementPage audioBooksAfter(String cursor, int limit) {
+        return after(cursor, limit, IMusicHub::audioBooksAfter, ElementPage::getItems, AudioElement[]::new, ElementPage::new);
+    }
+
+    @Override
+    public ElementPage queryElements(ElementQuery query, String cursor, int limit) {
+        return after(cursor, limit, (shard, c, l) -> shard.queryElements(query, c, l), ElementPage::getItems,
+                AudioElement[]::new, ElementPage::new);
+    }
+
+    @Override
+    public Album[] getAlbumsSortedByDate() {
+        // each shard keeps its listing sorted: only the shards are merged
+        return merge(scatter(IMusicHub::getAlbumsSortedByDate), new SortByDate(), Album[]::new);
+    }
+
+    @Override
+    public AudioBook[] getAudiobooksSortedByAuthor() {
+        return merge(scatter(IMusicHub::getAudiobooksSortedByAuthor), new SortByAuthor(), AudioBook[]::new);
+    }
+
+    @Override
+    public AudioElement[] searchElements(String query, boolean fuzzy, int limit) {
+        int max = CatalogPages.checkLimit(limit);
+        return interleave(scatter(shard -> shard.searchElements(query, fuzzy, max)), max, AudioElement[]::new);
+    }
+
+    @Override
+    public Album[] searchAlbums(String query, boolean fuzzy, int limit) {
+        int max = CatalogPages.checkLimit(limit);
+        return interleave(scatter(shard -> shard.searchAlbums(query, fuzzy, max)), max, Album[]::new);
+    }
+
+    @Override
+    public PlayList[] searchPlaylists(String query, boolean fuzzy, int limit) {
+        int max = CatalogPages.checkLimit(limit);
+        return interleave(scatter(shard -> shard.searchPlaylists(query, fuzzy, max)), max, PlayList[]::new);
+    }
+
+    // Lookups
+
+    @Override
+    public AlbumLookup albumsByTitle(String[] titles) {
+        return lookup(titles, (shard, keys) -> shard.albumsByTitle(keys).getFound(), Album::getTitle,
+                Album[]::new, AlbumLookup::new);
+    }
+
+    @Override
+    public PlayListLookup playlistsByTitle(String[] titles) {
+        return lookup(titles, (shard, keys) -> shard.playlistsByTitle(keys).getFound(), PlayList::getTitle,
+                PlayList[]::new, PlayListLookup::new);
+    }
+
+    @Override
+    public ElementLookup elementsByTitle(String[] titles) {
+        return lookup(titles, (shard, keys) -> shard.elementsByTitle(keys).getFound(), AudioElement::getTitle,
+                AudioElement[]::new, ElementLookup::new);
+    }
+
+    @Override
+    public ElementLookup elementsById(String[] ids) {
+        if (ids != null && ids.length > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException("Too many keys: " + ids.length + " > " + MAX_PAGE_SIZE);
+
+        // one multi-get per shard
+        Map<Integer, List<String>> byShard = new TreeMap<>();
+        if (ids != null) {
+            for (String id : ids) {
+                UUID uuid = id == null ? null : CatalogLookups.parseUuid(id);
+                if (uuid != null)
+                    byShard.computeIfAbsent(shardOf(uuid, shards.size()), s -> new ArrayList<>()).add(id);
+            }
+        }
+
+        List<Supplier<AudioElement[]>> calls = new ArrayList<>();
+        for (Map.Entry<Integer, List<String>> entry : byShard.entrySet()) {
+            IMusicHub shard = shards.get(entry.getKey());
+            String[] keys = entry.getValue().toArray(new String[0]);
+            calls.add(() -> shard.elementsById(keys).getFound());
+        }
+
+        Map<UUID, AudioElement> found = new HashMap<>();
+        for (AudioElement element : concat(all(calls), AudioElement[]::new))
+            found.put(element.getUuid(), element);
+        return CatalogLookups.lookup(ids, id -> {
+            UUID uuid = CatalogLookups.parseUuid(id);
+            return uuid == null ? null : found.get(uuid);
+        }, AudioElement[]::new, ElementLookup::new);
+    }
+
+    @Override
+    public Album albumByTitle(String title) throws NoAlbumFoundException {
+        Album[] found = albumsByTitle(new String[] {title}).getFound();
+        if (found.length == 0)
+            throw new NoAlbumFoundException("Album " + title + " not found!");
+        return found[0];
+    }
+
+    @Override
+    public PlayList playlistByTitle(String title) throws NoPlayListFoundException {
+        PlayList[] found = playlistsByTitle(new String[] {title}).getFound();
+        if (found.length == 0)
+            throw new NoPlayListFoundException("PlayList " + title + " not found!");
+        return found[0];
+    }
+
+    @Override
+    public AudioElement elementByTitle(String title) throws NoElementFoundException {
+        AudioElement[] found = elementsByTitle(new String[] {title}).getFound();
+        if (found.length == 0)
+            throw new NoElementFoundException("Element  " + title + " not found!");
+        return found[0];
+    }
+
+    @Override
+    public Song[] getAlbumSongs(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        AudioElement[] members = members(albumByTitle(albumTitle).getSongs());
+        Song[] songs = new Song[members.length];
+        for (int i = 0; i < members.length; i++) {
+            if (!(members[i] instanceof Song))
+                throw new NoElementFoundException("Element (ID) " + members[i].getUuid() + " exists, but is not a song");
+            songs[i] = (Song) members[i];
+        }
+        return songs;
+    }
+
+    @Override
+    public Song[] getAlbumSongsSortedByGenre(String albumTitle) throws NoAlbumFoundException, NoElementFoundException {
+        // stable: songs of a genre keep the album order
+        Song[] songs = getAlbumSongs(albumTitle);
+        Arrays.sort(songs, Comparator.comparing(Song::getGenre));
+        return songs;
+    }
+
+    @Override
+    public AudioElement[] getPlaylistElements(String playList) throws NoPlayListFoundException, NoElementFoundException {
+        return members(playlistByTitle(playList).getElements());
+    }
+
+    // Audio files, on the shard of their element
+
+    @Override
+    public DataHandler downloadElement(String title) throws NoElementFoundException {
+        return owner(elementByTitle(title).getUuid()).downloadElement(title);
+    }
+
+    @Override
+    public long elementFileLength(String title) throws NoElementFoundException {
+        return owner(elementByTitle(title).getUuid()).elementFileLength(title);
+    }
+
+    @Override
+    public byte[] downloadRange(String title, long offset, int length) throws NoElementFoundException {
+        return owner(elementByTitle(title).getUuid()).downloadRange(title, offset, length);
+    }
+
+    // Versions
+
+    /**
+     * @return sum of the versions of the shards, which increases with every change
+     */
+    @Override
+    public long catalogVersion() {
+        long version = 0;
+        for (long shardVersion : scatter(IMusicHub::catalogVersion))
+            version += shardVersion;
+        return version;
+    }
+
+    /**
+     * Not supported: the shards have their own change feeds, which a single version can't point into, and a
+     * snapshot of the whole catalog can't be paged consistently across them. A copy of the catalog follows every
+     * shard instead, each with a {@link ReplicaMusicHub}, and is sharded the same way.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public ChangePage changesSince(long version, int limit) {
+        throw new UnsupportedOperationException("A sharded catalog has no change feed, follow its shards instead");
+    }
+
+    /**
+     * Not supported, as there are no snapshots (see {@link #changesSince})
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public ChangePage snapshotAfter(long version, String cursor, int limit) {
+        throw new UnsupportedOperationException("A sharded catalog has no change feed, follow its shards instead");
+    }
+}
@@ -0,0 +1,98 @@
+package musichub.server;
+
+import musichub.business.Album;
+import musichub.business.AudioElement;
+import musichub.business.PlayList;
+
+import java.io.*;
+
+/**
+ * Compact binary snapshot of the catalog (musichub.dat)<br>
+ *
+ * Layout: magic, format version, catalog version, artist string table, then the albums, playlists and
+ * elements, each section prefixed by its entry count. Entities use {@link CatalogCodec}. Loading streams the
+ * file through a buffer, so the only allocations are the entities themselves.<br>
+ *
+ * musichub.xml stays supported as an import/export format.
+ */
+final class SnapshotCodec {
+    private static final int MAGIC = 0x4D484231; // "MHB1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * Write a snapshot
+     * @param document the catalog
+     * @param file destination
+     * @throws IOException if the file can't be written
+     */
+    static void write(CatalogDocument document, File file) throws IOException {
+        CatalogCodec.StringTable artists = new CatalogCodec.StringTable();
+        for (Album album : document.albums)
+            artists.add(album.getArtist());
+        for (AudioElement element : document.elements)
+            artists.add(element.getArtist());
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(document.version);
+            artists.writeTo(out);
+
+            out.writeInt(document.albums.size());
+            for (Album album : document.albums)
+                CatalogCodec.writeAlbum(out, album, artists);
+
+            out.writeInt(document.playlists.size());
+            for (PlayList playlist : document.playlists)
+                CatalogCodec.writePlayList(out, playlist);
+
+            out.writeInt(document.elements.size());
+            for (AudioElement element : document.elements)
+                CatalogCodec.writeElement(out, element, artists);
+
+            out.flush();
+            fos.getChannel().force(false);
+        }
+    }
+
+    /**
+     * Read a snapshot
+     * @param file the snapshot
+     * @return the catalog
+     * @throws IOException if the file can't be read or isn't a valid snapshot
+     */
+    static CatalogDocument read(File file) throws IOException {
+        CatalogDocument document = new CatalogDocument();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file + " isn't a MusicHub snapshot");
+
+            int format = in.readInt();
+            if (format != FORMAT_VERSION)
+                throw new IOException("Unsupported snapshot format version " + format);
+
+            document.version = in.readLong();
+            String[] artists = CatalogCodec.StringTable.readFrom(in);
+
+            int count = CatalogCodec.readCount(in);
+            for (int i = 0; i < count; i++)
+                document.albums.add(CatalogCodec.readAlbum(in, artists));
+
+            count = CatalogCodec.readCount(in);
+            for (int i = 0; i < count; i++)
+                document.playlists.add(CatalogCodec.readPlayList(in));
+
+            count = CatalogCodec.readCount(in);
+            for (int i = 0; i < count; i++)
+                document.elements.add(CatalogCodec.readElement(in, artists));
+        }
+
+        return document;
+    }
+}
@@ -0,0 +1,87 @@
+package musichub.server;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+/**
+ * Secondary index of a {@link CatalogStore}, kept sorted as entities are added and removed<br>
+ *
+ * Each change costs O(log n) and a sorted listing is served without sorting: the sorted array is cached until the
+ * next change. Entities which compare equal keep their insertion order. The index can be restricted to a
+ * subtype of the store's entities, for instance the audiobooks of the elements store.
+ *
+ * @param <T> entity type of the store
+ * @param <S> entity type of the index
+ */
+class SortedIndex<T, S extends T> implements CatalogStore.Listener<T> {
+    /**
+     * An indexed entity, ordered by the index comparator, then by insertion
+     */
+    private static final class Entry<S> {
+        final S value;
+        final long sequence;
+
+        Entry(S value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Class<S> type;
+    private final IntFunction<S[]> arrayFactory;
+
+    private final TreeSet<Entry<S>> entries; // guarded by this
+    private volatile S[] sorted;
+
+    /**
+     * Create an empty index. Register it on a store with {@link CatalogStore#addListener}, before adding entities.
+     * @param type type of the indexed entities, other entities of the store are ignored
+     * @param comparator order of the index
+     * @param arrayFactory creates arrays of the indexed type
+     */
+    SortedIndex(Class<S> type, Comparator<? super S> comparator, IntFunction<S[]> arrayFactory) {
+        this.type = type;
+        this.arrayFactory = arrayFactory;
+        this.entries = new TreeSet<>(Comparator.<Entry<S>, S>comparing(e -> e.value, comparator)
+                .thenComparingLong(e -> e.sequence));
+        this.sorted = arrayFactory.apply(0);
+    }
+
+    @Override
+    public synchronized void added(T entity, long sequence) {
+        if (type.isInstance(entity)) {
+            entries.add(new Entry<>(type.cast(entity), sequence));
+            sorted = null;
+        }
+    }
+
+    @Override
+    public synchronized void removed(T entity, long sequence) {
+        if (type.isInstance(entity)) {
+            entries.remove(new Entry<>(type.cast(entity), sequence));
+            sorted = null;
+        }
+    }
+
+    /**
+     * @return a copy of the indexed entities in index order, which the caller may modify
+     */
+    S[] toArray() {
+        S[] s = sorted;
+        if (s == null) {
+            synchronized (this) {
+                if (sorted == null) {
+                    S[] values = arrayFactory.apply(entries.size());
+                    int n = 0;
+                    for (Entry<S> entry : entries)
+                        values[n++] = entry.value;
+                    sorted = values;
+                }
+                s = sorted;
+            }
+        }
+        return Arrays.copyOf(s, s.length);
+    }
+}
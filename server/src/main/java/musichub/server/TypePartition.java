@@ -0,0 +1,84 @@
+package musichub.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Entities of a {@link CatalogStore} which are instances of one type, in insertion order<br>
+ *
+ * The partition follows the store as a listener, so listing one type doesn't filter the whole store. Like the
+ * store, it serves a shared {@link CatalogStore.View}, rebuilt lazily after a change of this type only.
+ *
+ * @param <T> entity type of the store
+ * @param <S> entity type of the partition
+ */
+class TypePartition<T, S extends T> implements CatalogStore.Listener<T> {
+    private final Class<S> type;
+    private final IntFunction<S[]> arrayFactory;
+
+    // guarded by this. Entities are added with increasing sequence numbers, so the map is in sequence order.
+    private final Map<Long, S> entries = new LinkedHashMap<>();
+    private volatile int size;
+    private volatile CatalogStore.View<S> view;
+
+    /**
+     * Create an empty partition. Register it on a store with {@link CatalogStore#addListener}, before adding
+     * entities.
+     * @param type type of the entities of the partition
+     * @param arrayFactory creates arrays of this type
+     */
+    TypePartition(Class<S> type, IntFunction<S[]> arrayFactory) {
+        this.type = type;
+        this.arrayFactory = arrayFactory;
+        this.view = new CatalogStore.View<>(arrayFactory.apply(0), new long[0]);
+    }
+
+    @Override
+    public synchronized void added(T entity, long sequence) {
+        if (type.isInstance(entity)) {
+            entries.put(sequence, type.cast(entity));
+            size = entries.size();
+            view = null;
+        }
+    }
+
+    @Override
+    public synchronized void removed(T entity, long sequence) {
+        if (type.isInstance(entity)) {
+            entries.remove(sequence);
+            size = entries.size();
+            view = null;
+        }
+    }
+
+    /**
+     * @return number of entities of the partition
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the current snapshot of the partition, shared
+     */
+    CatalogStore.View<S> view() {
+        CatalogStore.View<S> v = view;
+        if (v != null)
+            return v;
+
+        synchronized (this) {
+            if (view == null) {
+                S[] items = arrayFactory.apply(entries.size());
+                long[] sequences = new long[items.length];
+                int n = 0;
+                for (Map.Entry<Long, S> entry : entries.entrySet()) {
+                    sequences[n] = entry.getKey();
+                    items[n++] = entry.getValue();
+                }
+                view = new CatalogStore.View<>(items, sequences);
+            }
+            return view;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.activation.DataHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class AudioFileCacheTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    @TempDir
+    File dir;
+
+    public AudioFileCacheTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    private File writeFile(String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        AudioFileCache cache = new AudioFileCache(4000);
+        File file = writeFile("a.wav", 1000);
+
+        ByteBuffer first = cache.get(file);
+        Assertions.assertTrue(first.isDirect());
+        Assertions.assertArrayEquals(Files.readAllBytes(file.toPath()), bytes(first));
+
+        // served from memory, even once the file is gone
+        Assertions.assertTrue(file.delete());
+        Assertions.assertArrayEquals(bytes(first), bytes(cache.get(file)));
+
+        Assertions.assertEquals(1, cache.hits());
+        Assertions.assertEquals(1, cache.misses());
+        Assertions.assertEquals(1000, cache.size());
+
+        cache.invalidate(file);
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertThrows(IOException.class, () -> cache.get(file));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        AudioFileCache cache = new AudioFileCache(4000);
+        File[] files = new File[5];
+        for (int i = 0; i < files.length; i++)
+            files[i] = writeFile(i + ".wav", 1000);
+
+        for (int i = 0; i < 4; i++)
+            cache.get(files[i]);
+        cache.get(files[0]);
+        Assertions.assertEquals(4000, cache.size());
+
+        // the least recently used file is the second one
+        cache.get(files[4]);
+        Assertions.assertEquals(4000, cache.size());
+        Assertions.assertEquals(1, cache.evictions());
+
+        long misses = cache.misses();
+        cache.get(files[0]);
+        Assertions.assertEquals(misses, cache.misses());
+        cache.get(files[1]);
+        Assertions.assertEquals(misses + 1, cache.misses());
+    }
+
+    @Test
+    public void testLargeFilesAreNotCached() throws IOException {
+        AudioFileCache cache = new AudioFileCache(4000);
+        File large = writeFile("large.wav", 1001);
+        Assertions.assertNull(cache.get(large));
+        Assertions.assertNull(cache.get(large));
+        Assertions.assertEquals(0, cache.count());
+        Assertions.assertEquals(0, cache.misses());
+    }
+
+    @Test
+    public void testHubServesCachedFiles() throws Exception {
+        File file = writeFile("song.wav", 10000);
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        ServerMusicHub hub = new ServerMusicHub();
+        hub.enableFileCache(100000);
+        hub.addElement(new Song("Song1", "Artist1", 120, file.getPath(), Genre.POP), null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        hub.downloadElement("Song1").writeTo(out);
+        Assertions.assertArrayEquals(content, out.toByteArray());
+
+        DataHandler handler = hub.downloadElement("Song1");
+        try (InputStream in = handler.getInputStream()) {
+            byte[] read = new byte[content.length + 1];
+            int n = 0;
+            for (int r; (r = in.read(read, n, read.length - n)) > 0; )
+                n += r;
+            Assertions.assertArrayEquals(content, Arrays.copyOf(read, n));
+        }
+        Assertions.assertArrayEquals(Arrays.copyOfRange(content, 9990, 10000), hub.downloadRange("Song1", 9990, 100));
+        Assertions.assertEquals(2, hub.fileCache().hits());
+        Assertions.assertEquals(1, hub.fileCache().misses());
+
+        hub.deleteElement("Song1");
+        Assertions.assertEquals(0, hub.fileCache().count());
+    }
+
+    @Test
+    public void testSharedFileIsCachedOnce() throws Exception {
+        File file = writeFile("song.wav", 10000);
+
+        ServerMusicHub hub = new ServerMusicHub();
+        hub.enableFileCache(100000);
+        hub.addElement(new Song("Song1", "Artist1", 120, file.getPath(), Genre.POP), null);
+        hub.addElement(new Song("Song2", "Artist1", 120, file.getPath(), Genre.POP), null);
+
+        hub.downloadRange("Song1", 0, 100);
+        hub.downloadRange("Song2", 0, 100);
+        Assertions.assertEquals(1, hub.fileCache().count());
+        Assertions.assertEquals(10000, hub.fileCache().size());
+        Assertions.assertEquals(1, hub.fileCache().hits());
+        Assertions.assertEquals(1, hub.fileCache().misses());
+    }
+}
@@ -0,0 +1,209 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class BlobStoreTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    @TempDir
+    File dir;
+
+    public BlobStoreTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Song song(String title, File blob) throws IOException {
+        Song song = new Song(title, "Artist1", 120, "", Genre.POP);
+        song.attachFile(blob);
+        return song;
+    }
+
+    @Test
+    public void testSameContentIsStoredOnce() throws IOException {
+        BlobStore store = new BlobStore(new File(dir, "blobs"), dir);
+        byte[] content = randomBytes(100000, 1);
+
+        File first = store.store(new ByteArrayInputStream(content));
+        File second = store.store(new ByteArrayInputStream(content));
+        File other = store.store(new ByteArrayInputStream(randomBytes(100000, 2)));
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertNotEquals(first, other);
+        Assertions.assertArrayEquals(content, Files.readAllBytes(first.toPath()));
+
+        MessageDigest digest = BlobStore.digest();
+        digest.update(content);
+        Assertions.assertEquals(BlobStore.hash(digest) + ".wav", first.getName());
+
+        // only the two blobs, and no partial file
+        Assertions.assertEquals(2, new File(dir, "blobs").listFiles().length);
+    }
+
+    @Test
+    public void testBlobsAreCollectedWithTheirLastElement() throws IOException {
+        BlobStore store = new BlobStore(new File(dir, "blobs"), dir);
+        File blob = store.store(new ByteArrayInputStream(randomBytes(1000, 1)));
+
+        Song sg1 = song("Song1", blob);
+        Song sg2 = song("Song2", blob);
+        store.added(sg1, 0);
+        store.added(sg2, 1);
+        store.release(blob);
+        Assertions.assertEquals(2, store.references(blob));
+
+        store.removed(sg1, 0);
+        Assertions.assertEquals(0, store.collect());
+        Assertions.assertTrue(blob.exists());
+
+        // an element replaced by itself keeps its blob
+        store.removed(sg2, 1);
+        store.added(sg2, 2);
+        Assertions.assertEquals(0, store.collect());
+
+        store.removed(sg2, 2);
+        Assertions.assertEquals(1, store.collect());
+        Assertions.assertFalse(blob.exists());
+    }
+
+    @Test
+    public void testSweepDeletesUnreferencedFiles() throws IOException {
+        BlobStore store = new BlobStore(new File(dir, "blobs"), dir);
+        File kept = store.store(new ByteArrayInputStream(randomBytes(1000, 1)));
+        File lost = store.store(new ByteArrayInputStream(randomBytes(1000, 2)));
+        store.release(kept);
+        store.release(lost);
+        File partial = new File(dir, "blobs/upload.tmp");
+        Files.write(partial.toPath(), new byte[10]);
+
+        // files named after their element, stored before the blobs
+        Song legacy = new Song("Song2", "Artist1", 120, "", Genre.POP);
+        File legacyKept = legacy.attachFile(dir.getPath());
+        Files.write(legacyKept.toPath(), new byte[10]);
+        File legacyLost = new File(dir, UUID.randomUUID() + ".wav");
+        Files.write(legacyLost.toPath(), new byte[10]);
+        File other = new File(dir, "other.wav");
+        Files.write(other.toPath(), new byte[10]);
+
+        store.added(song("Song1", kept), 0);
+        store.added(legacy, 1);
+        Assertions.assertEquals(2, store.sweep());
+
+        Assertions.assertTrue(kept.exists());
+        Assertions.assertFalse(lost.exists());
+        Assertions.assertFalse(partial.exists());
+        Assertions.assertTrue(legacyKept.exists());
+        Assertions.assertFalse(legacyLost.exists());
+        Assertions.assertTrue(other.exists());
+
+        store.removed(legacy, 1);
+        Assertions.assertEquals(1, store.collect());
+        Assertions.assertFalse(legacyKept.exists());
+    }
+
+    @Test
+    public void testOnlyStoredPathsAreCounted() throws IOException {
+        File blobs = new File(dir, "blobs");
+        BlobStore store = new BlobStore(blobs, new File(dir, "legacy"));
+        File blob = store.store(new ByteArrayInputStream(randomBytes(1000, 1)));
+        store.release(blob);
+        File outside = new File(dir, "x.wav");
+        Files.write(outside.toPath(), new byte[10]);
+
+        // paths given by a client, which lead outside the store or to another name of a blob
+        String[] contents = {
+                blobs.getCanonicalPath() + File.separator + ".." + File.separator + "x.wav",
+                blobs.getCanonicalPath() + File.separator + "ab" + File.separator + ".." + File.separator
+                        + ".." + File.separator + "x.wav",
+                blob.getParent() + File.separator + "." + File.separator + blob.getName(),
+                new File(dir, "legacy" + File.separator + ".." + File.separator + "x.wav").getPath(),
+        };
+        for (int i = 0; i < contents.length; i++) {
+            Song song = new Song("Song" + i, "Artist1", 120, contents[i], Genre.POP);
+            store.added(song, i);
+            store.removed(song, i);
+        }
+
+        Assertions.assertEquals(0, store.references(outside));
+        Assertions.assertEquals(0, store.references(blob));
+        Assertions.assertEquals(1, store.collect());
+        Assertions.assertTrue(outside.exists());
+        Assertions.assertFalse(blob.exists());
+    }
+
+    @Test
+    public void testAdoptedOrphanIsKeptUntilAdded() throws IOException {
+        BlobStore store = new BlobStore(new File(dir, "blobs"), dir);
+        byte[] content = randomBytes(1000, 1);
+        File blob = store.store(new ByteArrayInputStream(content));
+        Song sg1 = song("Song1", blob);
+        store.added(sg1, 0);
+        store.release(blob);
+
+        // the blob loses its element, then is uploaded again before its new element is added
+        store.removed(sg1, 0);
+        File tmp = new File(dir, "upload.part");
+        Files.write(tmp.toPath(), content);
+        MessageDigest digest = BlobStore.digest();
+        digest.update(content);
+        Assertions.assertEquals(blob, store.adopt(tmp, BlobStore.hash(digest)));
+        Assertions.assertEquals(0, store.collect());
+        Assertions.assertTrue(blob.exists());
+
+        store.added(song("Song2", blob), 1);
+        store.release(blob);
+        Assertions.assertEquals(0, store.collect());
+        Assertions.assertTrue(blob.exists());
+
+        // an element which failed to be added doesn't keep the blob
+        File other = store.store(new ByteArrayInputStream(randomBytes(1000, 2)));
+        Assertions.assertEquals(0, store.collect());
+        store.release(other);
+        Assertions.assertEquals(1, store.collect());
+        Assertions.assertFalse(other.exists());
+    }
+
+    @Test
+    public void testHubSharesUploadedFiles() throws Exception {
+        byte[] content = randomBytes(10000, 3);
+        File file = new File(dir, "song.wav");
+        Files.write(file.toPath(), content);
+
+        ServerMusicHub hub = new ServerMusicHub();
+        hub.addElement(new Song("Song1", "Artist1", 120, "", Genre.POP), new DataHandler(new FileDataSource(file)));
+        hub.addElement(new Song("Song2", "Artist1", 120, "", Genre.POP), new DataHandler(new FileDataSource(file)));
+
+        File blob = hub.elementByTitle("Song1").getDataLocation();
+        Assertions.assertEquals(blob, hub.elementByTitle("Song2").getDataLocation());
+        Assertions.assertArrayEquals(content, Files.readAllBytes(blob.toPath()));
+
+        hub.deleteElement("Song1");
+        hub.reclaimAsync().join();
+        Assertions.assertTrue(blob.exists());
+
+        // deleted in the background
+        hub.deleteElement("Song2");
+        hub.reclaimAsync().join();
+        Assertions.assertFalse(blob.exists());
+    }
+}
@@ -0,0 +1,160 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class CatalogJournalTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    @TempDir
+    File dir;
+
+    private final Song sg1 = new Song("Song1", "Artist1", 120, "unknownFile1", Genre.POP);
+    private final AudioBook b1 = new AudioBook("Book1", "ZArtist3", 293, "unknownFile4", Language.GERMAN, Category.SPEECH);
+    private final Album alb1 = new Album("Album1", "Artist1", 250, new Date(2000));
+    private final PlayList pl1 = new PlayList("Playlist1");
+
+    public CatalogJournalTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    private static CatalogChange versioned(CatalogChange change, long version) {
+        change.version = version;
+        return change;
+    }
+
+    private List<CatalogChange> writeSample() {
+        List<CatalogChange> changes = new ArrayList<>();
+        changes.add(versioned(CatalogChange.addElement(sg1), 1));
+        changes.add(versioned(CatalogChange.addElement(b1), 2));
+        changes.add(versioned(CatalogChange.addAlbum(alb1), 3));
+        changes.add(versioned(CatalogChange.addPlaylist(pl1), 4));
+        changes.add(versioned(CatalogChange.addToContainer(CatalogChange.Type.ADD_TO_ALBUM, sg1.getUuid(), alb1.getUuid()), 5));
+        changes.add(versioned(CatalogChange.addToContainer(CatalogChange.Type.ADD_TO_PLAYLIST, b1.getUuid(), pl1.getUuid()), 6));
+        changes.add(versioned(CatalogChange.delete(CatalogChange.Type.DELETE_ELEMENT, b1.getUuid()), 7));
+        return changes;
+    }
+
+    @Test
+    public void testReplayRestoresHub() throws Exception {
+        try (CatalogJournal journal = new CatalogJournal(dir, 1000, () -> {})) {
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            for (CatalogChange change : writeSample())
+                pending.add(journal.append(change));
+            for (CompletableFuture<Void> f : pending)
+                f.join();
+        }
+
+        ServerMusicHub hub = new ServerMusicHub();
+        long version = CatalogJournal.replay(dir, 0, hub::apply);
+
+        Assertions.assertEquals(7, version);
+        Assertions.assertEquals(1, hub.elements().length);
+        Assertions.assertEquals(sg1.getUuid(), hub.elementByTitle("Song1").getUuid());
+        Assertions.assertEquals(Genre.POP, ((Song) hub.elementByTitle("Song1")).getGenre());
+        Assertions.assertEquals(new Date(2000), hub.albumByTitle("Album1").getDate());
+        Assertions.assertEquals(sg1.getUuid(), hub.albumByTitle("Album1").getSongs().get(0));
+        // the deleted book was removed from its playlist
+        Assertions.assertTrue(hub.playlistByTitle("Playlist1").getElements().isEmpty());
+    }
+
+    @Test
+    public void testReplaySkipsSnapshottedChanges() throws IOException {
+        try (CatalogJournal journal = new CatalogJournal(dir, 1000, () -> {})) {
+            for (CatalogChange change : writeSample())
+                journal.append(change);
+        }
+
+        List<CatalogChange> replayed = new ArrayList<>();
+        Assertions.assertEquals(7, CatalogJournal.replay(dir, 5, replayed::add));
+        Assertions.assertEquals(2, replayed.size());
+        Assertions.assertEquals(6, replayed.get(0).version);
+    }
+
+    @Test
+    public void testReplayRejectsMissingChanges() throws IOException {
+        try (CatalogJournal journal = new CatalogJournal(dir, 1000, () -> {})) {
+            List<CatalogChange> changes = writeSample();
+            for (CatalogChange change : changes.subList(3, changes.size()))
+                journal.append(change);
+        }
+
+        // the journal follows a snapshot at version 3
+        List<CatalogChange> replayed = new ArrayList<>();
+        Assertions.assertThrows(IOException.class, () -> CatalogJournal.replay(dir, 0, replayed::add));
+        Assertions.assertTrue(replayed.isEmpty());
+        Assertions.assertEquals(7, CatalogJournal.replay(dir, 3, replayed::add));
+    }
+
+    @Test
+    public void testTornRecordIgnored() throws IOException {
+        try (CatalogJournal journal = new CatalogJournal(dir, 1000, () -> {})) {
+            for (CatalogChange change : writeSample())
+                journal.append(change);
+        }
+
+        File segment = dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        List<CatalogChange> replayed = new ArrayList<>();
+        Assertions.assertEquals(6, CatalogJournal.replay(dir, 0, replayed::add));
+    }
+
+    @Test
+    public void testRotateAndCompact() throws IOException {
+        int[] requests = { 0 };
+
+        try (CatalogJournal journal = new CatalogJournal(dir, 3, () -> requests[0]++)) {
+            List<CatalogChange> changes = writeSample();
+            for (int i = 0; i < 4; i++)
+                journal.append(changes.get(i));
+
+            int segment = journal.rotate();
+            for (int i = 4; i < changes.size(); i++)
+                journal.append(changes.get(i));
+
+            journal.deleteBefore(segment).join();
+        }
+
+        Assertions.assertEquals(2, requests[0]);
+        Assertions.assertEquals(1, dir.listFiles().length);
+
+        List<CatalogChange> replayed = new ArrayList<>();
+        CatalogJournal.replay(dir, 4, replayed::add);
+        Assertions.assertEquals(3, replayed.size());
+    }
+
+    @Test
+    public void testBatchReplayedAsOneChange() throws Exception {
+        List<CatalogChange> changes = writeSample().subList(0, 6);
+        try (CatalogJournal journal = new CatalogJournal(dir, 1000, () -> {})) {
+            journal.append(versioned(CatalogChange.batch(changes), 1)).join();
+        }
+
+        List<CatalogChange> replayed = new ArrayList<>();
+        Assertions.assertEquals(1, CatalogJournal.replay(dir, 0, replayed::add));
+        Assertions.assertEquals(1, replayed.size());
+        Assertions.assertEquals(CatalogChange.Type.BATCH, replayed.get(0).type);
+        Assertions.assertEquals(6, replayed.get(0).changes.size());
+
+        ServerMusicHub hub = new ServerMusicHub();
+        hub.apply(replayed.get(0));
+        Assertions.assertEquals(2, hub.elements().length);
+        Assertions.assertEquals(sg1.getUuid(), hub.albumByTitle("Album1").getSongs().get(0));
+        Assertions.assertEquals(b1.getUuid(), hub.playlistByTitle("Playlist1").getElements().get(0));
+    }
+}
@@ -0,0 +1,102 @@
+package musichub.server;
+
+import musichub.business.Genre;
+import musichub.business.Song;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CatalogStoreTest {
+    private final CatalogStore<Song> store = new CatalogStore<>(Song::getUuid, Song::getTitle, Song[]::new);
+
+    @Test
+    public void testInsertionOrder() {
+        Song s1 = new Song("Song1", "Artist1", 120, "", Genre.POP);
+        Song s2 = new Song("Song2", "Artist1", 120, "", Genre.POP);
+        Song s3 = new Song("Song3", "Artist1", 120, "", Genre.POP);
+
+        store.add(s1);
+        store.add(s2);
+        store.add(s3);
+        store.remove(s2.getUuid());
+
+        Assertions.assertArrayEquals(new Song[] { s1, s3 }, store.toArray());
+        Assertions.assertNull(store.byTitle("song2"));
+        Assertions.assertEquals(s3, store.byTitle("SONG3"));
+        Assertions.assertEquals(s1, store.byId(s1.getUuid()));
+    }
+
+    @Test
+    public void testReplaceSameId() {
+        Song s1 = new Song("Song1", "Artist1", 120, "", Genre.POP);
+
+        store.add(s1);
+        store.add(s1);
+
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertArrayEquals(new Song[] { s1 }, store.toArray());
+    }
+
+    @Test
+    public void testRejectedEntityLeavesStoreUnchanged() {
+        Song s1 = new Song("Song1", "Artist1", 120, "", Genre.POP);
+        Song untitled = new Song(null, "Artist1", 120, "", Genre.POP);
+        store.add(s1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.add(untitled));
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertNull(store.byId(untitled.getUuid()));
+        Assertions.assertArrayEquals(new Song[] { s1 }, store.toArray());
+    }
+
+    @Test
+    public void testCompactionKeepsOrder() {
+        List<Song> expected = new ArrayList<>();
+
+        for (int i = 0; i < 300; i++) {
+            Song s = new Song("Song" + i, "Artist", 100, "", Genre.JAZZ);
+            store.add(s);
+            if (i % 3 == 0)
+                expected.add(s);
+        }
+        for (int i = 0; i < 300; i++) {
+            if (i % 3 != 0)
+                store.remove(store.byTitle("Song" + i).getUuid());
+        }
+
+        Assertions.assertArrayEquals(expected.toArray(new Song[0]), store.toArray());
+        Assertions.assertEquals(expected.get(5), store.byTitle("Song15"));
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    Song s = new Song("t" + thread + "-" + i, "Artist", 100, "", Genre.ROCK);
+                    store.add(s);
+                    Assertions.assertEquals(s, store.byId(s.getUuid()));
+                    if (i % 2 == 0)
+                        store.remove(s.getUuid());
+                    store.snapshot();
+                }
+            }));
+        }
+
+        for (Future<?> f : futures)
+            f.get();
+        pool.shutdown();
+
+        Assertions.assertEquals(8 * 1000, store.size());
+        Assertions.assertEquals(8 * 1000, store.snapshot().length);
+    }
+}
@@ -0,0 +1,95 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+public class CatalogXmlContextTest {
+    private final static Logger BENCHMARK = Logger.getLogger("musichub.benchmark");
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void testContextShared() throws JAXBException {
+        Assertions.assertSame(CatalogXmlContext.context(), CatalogXmlContext.context());
+    }
+
+    @Test
+    public void testMarshallerPerThread() throws Exception {
+        Marshaller marshaller = CatalogXmlContext.marshaller();
+        Assertions.assertSame(marshaller, CatalogXmlContext.marshaller());
+
+        Marshaller other = CompletableFuture.supplyAsync(() -> {
+            try {
+                return CatalogXmlContext.marshaller();
+            } catch (JAXBException e) {
+                throw new IllegalStateException(e);
+            }
+        }).get();
+        Assertions.assertNotSame(marshaller, other);
+    }
+
+    private static CatalogDocument document(int size) {
+        CatalogDocument document = new CatalogDocument();
+        for (int i = 0; i < size; i++)
+            document.elements.add(new Song("s" + i, "artist" + (i % 100), 100, "f" + i, Genre.HIPHOP));
+        return document;
+    }
+
+    @Test
+    public void testExportsReuseContext() throws JAXBException {
+        File file = new File(dir, "musichub.xml");
+        JAXBContext context = CatalogXmlContext.context();
+        Marshaller marshaller = CatalogXmlContext.marshaller();
+
+        for (int i = 0; i < 3; i++) {
+            CatalogXmlContext.marshaller().marshal(document(100 + i), file);
+            Assertions.assertSame(context, CatalogXmlContext.context());
+            Assertions.assertSame(marshaller, CatalogXmlContext.marshaller());
+
+            CatalogDocument read = (CatalogDocument) CatalogXmlContext.unmarshaller().unmarshal(file);
+            Assertions.assertEquals(100 + i, read.elements.size());
+        }
+    }
+
+    /**
+     * Export latency of a large catalog with a new context per call, as before, and with the shared context.
+     * Run with -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void benchmarkExportLatency() throws JAXBException {
+        CatalogDocument document = document(20000);
+
+        File file = new File(dir, "musichub.xml");
+        CatalogXmlContext.warmUp();
+
+        int rounds = 5;
+        long fresh = 0;
+        long cached = 0;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            Marshaller marshaller = JAXBContext.newInstance(CatalogDocument.class).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            marshaller.marshal(document, file);
+            fresh += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            CatalogXmlContext.marshaller().marshal(document, file);
+            cached += System.nanoTime() - start;
+        }
+
+        BENCHMARK.info(String.format("Export of %d elements: %d ms with a new context, %d ms with the shared one",
+                document.elements.size(), fresh / rounds / 1000000, cached / rounds / 1000000));
+    }
+}
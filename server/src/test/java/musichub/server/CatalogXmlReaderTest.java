@@ -0,0 +1,111 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.bind.JAXBException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class CatalogXmlReaderTest {
+    private static final String SAMPLE = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+            "<musichub version=\"12\">\n" +
+            "    <album>\n" +
+            "        <title>The Great War</title>\n" +
+            "        <artist>Sabaton</artist>\n" +
+            "        <lengthInSeconds>2307</lengthInSeconds>\n" +
+            "        <uuid>a3d77cbc-d773-447b-badb-ff6e33b89dfb</uuid>\n" +
+            "        <date>2020-07-07</date>\n" +
+            "        <songs>dc91c230-a2ac-44d6-8d13-b009d2fcda0b</songs>\n" +
+            "    </album>\n" +
+            "    <!-- comments are skipped -->\n" +
+            "    <playlist>\n" +
+            "        <title>MyPlaylist</title>\n" +
+            "        <uuid>ec571bf8-e99c-462a-8a2a-5e3c5206cb8b</uuid>\n" +
+            "        <elements>dc91c230-a2ac-44d6-8d13-b009d2fcda0b</elements>\n" +
+            "    </playlist>\n" +
+            "    <elements xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:type=\"song\">\n" +
+            "        <title>Fields of Verdun</title>\n" +
+            "        <artist>Sabaton</artist>\n" +
+            "        <lengthInSeconds>360</lengthInSeconds>\n" +
+            "        <uuid>dc91c230-a2ac-44d6-8d13-b009d2fcda0b</uuid>\n" +
+            "        <content>data/dc91c230-a2ac-44d6-8d13-b009d2fcda0b.wav</content>\n" +
+            "        <genre>METAL</genre>\n" +
+            "    </elements>\n" +
+            "    <elements xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:type=\"audioBook\">\n" +
+            "        <title>Book1</title>\n" +
+            "        <artist>Author</artist>\n" +
+            "        <lengthInSeconds>100</lengthInSeconds>\n" +
+            "        <uuid>4c418146-c103-45de-9936-c7a2e766d363</uuid>\n" +
+            "        <content>data/4c418146-c103-45de-9936-c7a2e766d363.wav</content>\n" +
+            "        <language>FRENCH</language>\n" +
+            "        <category>NOVEL</category>\n" +
+            "    </elements>\n" +
+            "</musichub>\n";
+
+    @TempDir
+    File dir;
+
+    private final List<Album> albums = new ArrayList<>();
+    private final List<PlayList> playlists = new ArrayList<>();
+    private final List<AudioElement> elements = new ArrayList<>();
+
+    private long read(File file) throws JAXBException, IOException {
+        return CatalogXmlReader.read(file, CatalogXmlContext.unmarshaller(), albums::add, playlists::add, elements::add);
+    }
+
+    @Test
+    public void testReadSample() throws Exception {
+        File file = new File(dir, "musichub.xml");
+        Files.write(file.toPath(), SAMPLE.getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(12, read(file));
+
+        Assertions.assertEquals(1, albums.size());
+        Assertions.assertEquals("The Great War", albums.get(0).getTitle());
+        Assertions.assertEquals("2020-07-07", albums.get(0).getDateStr());
+        Assertions.assertEquals(1, albums.get(0).getSongs().size());
+
+        Assertions.assertEquals(1, playlists.size());
+        Assertions.assertEquals("MyPlaylist", playlists.get(0).getTitle());
+
+        Assertions.assertEquals(2, elements.size());
+        Assertions.assertEquals(Genre.METAL, ((Song) elements.get(0)).getGenre());
+        Assertions.assertEquals(Category.NOVEL, ((AudioBook) elements.get(1)).getCategory());
+        Assertions.assertEquals(albums.get(0).getSongs().get(0), elements.get(0).getUuid());
+    }
+
+    @Test
+    public void testReadMarshalledDocument() throws Exception {
+        CatalogDocument document = new CatalogDocument();
+        Song song = new Song("Song1", "Artist1", 120, "unknownFile1", Genre.POP);
+        Album album = new Album("Album1", "Artist1", 250, new Date());
+        album.addSong(song.getUuid());
+        document.elements.add(song);
+        document.albums.add(album);
+        document.playlists.add(new PlayList("Playlist1"));
+
+        File file = new File(dir, "musichub.xml");
+        CatalogXmlContext.marshaller().marshal(document, file);
+
+        Assertions.assertEquals(0, read(file));
+        Assertions.assertEquals(song.getUuid(), elements.get(0).getUuid());
+        Assertions.assertEquals(album.getSongs(), albums.get(0).getSongs());
+        Assertions.assertEquals("Playlist1", playlists.get(0).getTitle());
+    }
+
+    @Test
+    public void testRejectsOtherDocument() throws IOException {
+        File file = new File(dir, "musichub.xml");
+        Files.write(file.toPath(), "<catalog><album/></catalog>".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertThrows(JAXBException.class, () -> read(file));
+    }
+}
@@ -0,0 +1,124 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class ChangeFeedTest {
+    private long version;
+
+    private CatalogChange addSong(String title) {
+        CatalogChange change = CatalogChange.addElement(new Song(title, "Artist1", 120, "", Genre.POP));
+        change.version = ++version;
+        return change;
+    }
+
+    private CatalogChange batch(CatalogChange... changes) {
+        CatalogChange change = CatalogChange.batch(new ArrayList<>(Arrays.asList(changes)));
+        change.version = ++version;
+        return change;
+    }
+
+    private static List<Long> versions(ChangePage page) {
+        List<Long> versions = new ArrayList<>();
+        for (CatalogUpdate update : page.getUpdates())
+            versions.add(update.getVersion());
+        return versions;
+    }
+
+    @Test
+    public void testPaging() {
+        ChangeFeed feed = new ChangeFeed(100, 0);
+        for (int i = 0; i < 5; i++)
+            feed.append(addSong("Song" + i));
+
+        ChangePage first = feed.since(0, 2);
+        Assertions.assertEquals(Arrays.asList(1L, 2L), versions(first));
+        Assertions.assertEquals(2, first.getVersion());
+        Assertions.assertTrue(first.isMore());
+        Assertions.assertFalse(first.isSnapshot());
+        Assertions.assertEquals("Song0", first.getUpdates()[0].getElement().getTitle());
+
+        ChangePage last = feed.since(first.getVersion(), 10);
+        Assertions.assertEquals(Arrays.asList(3L, 4L, 5L), versions(last));
+        Assertions.assertEquals(5, last.getVersion());
+        Assertions.assertFalse(last.isMore());
+
+        ChangePage empty = feed.since(5, 10);
+        Assertions.assertEquals(0, empty.getUpdates().length);
+        Assertions.assertEquals(5, empty.getVersion());
+    }
+
+    @Test
+    public void testBatchIsNeverSplit() {
+        ChangeFeed feed = new ChangeFeed(100, 0);
+        feed.append(addSong("Song0"));
+        feed.append(batch(addSong("Song1"), addSong("Song2"), addSong("Song3")));
+        feed.append(addSong("Song4"));
+
+        // the batch doesn't fit after the first change
+        ChangePage first = feed.since(0, 2);
+        Assertions.assertEquals(Collections.singletonList(1L), versions(first));
+
+        // but is sent alone when larger than the limit
+        ChangePage batch = feed.since(first.getVersion(), 2);
+        Assertions.assertEquals(3, batch.getUpdates().length);
+        Assertions.assertEquals(CatalogUpdate.Type.ADD_ELEMENT, batch.getUpdates()[2].getType());
+        Assertions.assertEquals(batch.getUpdates()[0].getVersion(), batch.getVersion());
+        Assertions.assertTrue(batch.isMore());
+
+        Assertions.assertEquals(1, feed.since(batch.getVersion(), 2).getUpdates().length);
+    }
+
+    @Test
+    public void testEmptyBatchIsReached() {
+        ChangeFeed feed = new ChangeFeed(100, 0);
+        feed.append(addSong("Song0"));
+        feed.append(batch());
+
+        ChangePage page = feed.since(0, 10);
+        Assertions.assertEquals(1, page.getUpdates().length);
+        Assertions.assertEquals(2, page.getVersion());
+        Assertions.assertFalse(page.isMore());
+        Assertions.assertEquals(2, feed.version());
+    }
+
+    @Test
+    public void testOverwrittenVersionsAreNotServed() {
+        ChangeFeed feed = new ChangeFeed(3, 0);
+        for (int i = 0; i < 5; i++)
+            feed.append(addSong("Song" + i));
+
+        Assertions.assertNull(feed.since(0, 10));
+        Assertions.assertNull(feed.since(1, 10));
+        Assertions.assertEquals(Arrays.asList(3L, 4L, 5L), versions(feed.since(2, 10)));
+
+        // a reader ahead of the feed
+        Assertions.assertNull(feed.since(6, 10));
+    }
+
+    @Test
+    public void testStartsAtVersion() {
+        ChangeFeed feed = new ChangeFeed(10, 7);
+        Assertions.assertNull(feed.since(0, 10));
+        Assertions.assertEquals(0, feed.since(7, 10).getUpdates().length);
+    }
+
+    @Test
+    public void testAlbumsAreCopied() {
+        ChangeFeed feed = new ChangeFeed(10, 0);
+        Album album = new Album("Album1", "Artist1", 250, new Date(0));
+        CatalogChange change = CatalogChange.addAlbum(album);
+        change.version = ++version;
+        feed.append(change);
+
+        album.addSong(new Song("Song1", "Artist1", 120, "", Genre.POP).getUuid());
+        Assertions.assertTrue(feed.since(0, 10).getUpdates()[0].getAlbum().getSongs().isEmpty());
+    }
+}
@@ -0,0 +1,307 @@
+package musichub.server;
+
+import musichub.business.*;
+import musichub.main.FileUploader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.handler.MessageContext;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+public class ChunkedUploadsTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    @TempDir
+    File dir;
+
+    private final Song sg1 = new Song("Song1", "Artist1", 120, "", Genre.POP);
+
+    public ChunkedUploadsTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testChunksAreWrittenInOrder() throws Exception {
+        ChunkedUploads uploads = new ChunkedUploads(new File(dir, "uploads"), 60000);
+        byte[] data = randomBytes(1000);
+        byte[] first = Arrays.copyOfRange(data, 0, 600);
+        byte[] second = Arrays.copyOfRange(data, 600, 1000);
+
+        String id = uploads.begin(sg1);
+        Assertions.assertEquals(600, uploads.append(id, 0, first, crc(first)));
+        // a chunk sent again, or sent too early, is ignored
+        Assertions.assertEquals(600, uploads.append(id, 0, first, crc(first)));
+        Assertions.assertEquals(600, uploads.append(id, 700, second, crc(second)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> uploads.append(id, 600, second, crc(first)));
+        Assertions.assertEquals(600, uploads.offset(id));
+
+        Assertions.assertEquals(1000, uploads.append(id, 600, second, crc(second)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> uploads.commit(id, 1200, crc(data)));
+
+        ChunkedUploads.Completed completed = uploads.commit(id, 1000, crc(data));
+        Assertions.assertSame(sg1, completed.element);
+        Assertions.assertArrayEquals(data, Files.readAllBytes(completed.file.toPath()));
+
+        MessageDigest digest = BlobStore.digest();
+        digest.update(data);
+        Assertions.assertEquals(BlobStore.hash(digest), completed.hash);
+        Assertions.assertThrows(NoUploadFoundException.class, () -> uploads.offset(id));
+    }
+
+    @Test
+    public void testBadChecksumDiscardsUpload() throws Exception {
+        ChunkedUploads uploads = new ChunkedUploads(new File(dir, "uploads"), 60000);
+        byte[] data = randomBytes(100);
+
+        String id = uploads.begin(sg1);
+        uploads.append(id, 0, data, crc(data));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> uploads.commit(id, 100, crc(data) + 1));
+
+        Assertions.assertEquals(0, uploads.size());
+        Assertions.assertEquals(0, new File(dir, "uploads").listFiles().length);
+    }
+
+    @Test
+    public void testIdleUploadsExpire() throws Exception {
+        ChunkedUploads uploads = new ChunkedUploads(new File(dir, "uploads"), 0);
+        String id = uploads.begin(sg1);
+        Thread.sleep(5);
+
+        uploads.begin(sg1);
+        Assertions.assertThrows(NoUploadFoundException.class, () -> uploads.offset(id));
+        Assertions.assertEquals(1, uploads.size());
+
+        // without new uploads too
+        Thread.sleep(5);
+        uploads.expire();
+        Assertions.assertEquals(0, uploads.size());
+        Assertions.assertEquals(0, new File(dir, "uploads").listFiles().length);
+    }
+
+    @Test
+    public void testUploadsResumeAfterRestart() throws Exception {
+        byte[] data = randomBytes(1000);
+        byte[] first = Arrays.copyOfRange(data, 0, 600);
+        byte[] second = Arrays.copyOfRange(data, 600, 1000);
+
+        ChunkedUploads before = new ChunkedUploads(new File(dir, "uploads"), 60000);
+        String id = before.begin(sg1);
+        before.append(id, 0, first, crc(first));
+
+        ChunkedUploads after = new ChunkedUploads(new File(dir, "uploads"), 60000);
+        Assertions.assertEquals(1, after.recover());
+        Assertions.assertEquals(600, after.offset(id));
+        Assertions.assertEquals(1000, after.append(id, 600, second, crc(second)));
+
+        ChunkedUploads.Completed completed = after.commit(id, 1000, crc(data));
+        Assertions.assertEquals(sg1.getUuid(), completed.element.getUuid());
+        Assertions.assertEquals(sg1.getTitle(), completed.element.getTitle());
+        Assertions.assertArrayEquals(data, Files.readAllBytes(completed.file.toPath()));
+
+        MessageDigest digest = BlobStore.digest();
+        digest.update(data);
+        Assertions.assertEquals(BlobStore.hash(digest), completed.hash);
+    }
+
+    @Test
+    public void testStalePartialFilesAreSwept() throws Exception {
+        File uploadDir = new File(dir, "uploads");
+        ChunkedUploads before = new ChunkedUploads(uploadDir, 60000);
+        String stale = before.begin(sg1);
+        String orphan = before.begin(sg1);
+        before.append(orphan, 0, new byte[] { 1 }, crc(new byte[] { 1 }));
+
+        Assertions.assertTrue(new File(uploadDir, stale + ".part").setLastModified(System.currentTimeMillis() - 120000));
+        Assertions.assertTrue(new File(uploadDir, orphan + ".element").delete());
+
+        ChunkedUploads after = new ChunkedUploads(uploadDir, 60000);
+        Assertions.assertEquals(0, after.recover());
+        Assertions.assertEquals(0, after.size());
+        Assertions.assertEquals(0, uploadDir.listFiles().length);
+    }
+
+    @Test
+    public void testUploaderResumesAfterDroppedConnections() throws Exception {
+        ChunkedUploads uploads = new ChunkedUploads(new File(dir, "uploads"), 60000);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicReference<ChunkedUploads.Completed> completed = new AtomicReference<>();
+
+        // a hub which drops the connection on every third chunk, before or after writing it
+        IMusicHub hub = (IMusicHub) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IMusicHub.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "beginUpload":
+                            return uploads.begin((AudioElement) args[0]);
+                        case "uploadOffset":
+                            return uploads.offset((String) args[0]);
+                        case "appendChunk":
+                            int call = calls.incrementAndGet();
+                            if (call % 6 == 0)
+                                throw new WebServiceException("connection reset before the chunk");
+                            long next = uploads.append((String) args[0], (long) args[1], (byte[]) args[2], (long) args[3]);
+                            if (call % 3 == 0)
+                                throw new WebServiceException("connection reset after the chunk");
+                            return next;
+                        case "commitUpload":
+                            completed.set(uploads.commit((String) args[0], (long) args[1], (long) args[2]));
+                            return null;
+                        case "abortUpload":
+                            uploads.discard((String) args[0]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        byte[] data = randomBytes(10 * 1000 + 7);
+        File file = new File(dir, "song.wav");
+        Files.write(file.toPath(), data);
+
+        new FileUploader(hub, 1000).upload(sg1, file);
+
+        Assertions.assertArrayEquals(data, Files.readAllBytes(completed.get().file.toPath()));
+        Assertions.assertTrue(calls.get() > 11);
+    }
+
+    @Test
+    public void testUploaderResumesAfterServerRestart() throws Exception {
+        File uploadDir = new File(dir, "uploads");
+        AtomicReference<ChunkedUploads> server = new AtomicReference<>(new ChunkedUploads(uploadDir, 60000));
+        AtomicInteger chunks = new AtomicInteger();
+        AtomicReference<ChunkedUploads.Completed> completed = new AtomicReference<>();
+
+        // the server crashes while receiving the third chunk, having kept only part of the second one
+        IMusicHub hub = (IMusicHub) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IMusicHub.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "beginUpload":
+                            return server.get().begin((AudioElement) args[0]);
+                        case "uploadOffset":
+                            return server.get().offset((String) args[0]);
+                        case "appendChunk":
+                            if (chunks.incrementAndGet() == 3) {
+                                try (RandomAccessFile part = new RandomAccessFile(new File(uploadDir, args[0] + ".part"), "rw")) {
+                                    part.setLength(1500);
+                                }
+                                server.set(new ChunkedUploads(uploadDir, 60000));
+                                server.get().recover();
+                                throw new WebServiceException("connection reset by the restart");
+                            }
+                            return server.get().append((String) args[0], (long) args[1], (byte[]) args[2], (long) args[3]);
+                        case "commitUpload":
+                            completed.set(server.get().commit((String) args[0], (long) args[1], (long) args[2]));
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        byte[] data = randomBytes(5000 + 7);
+        File file = new File(dir, "song.wav");
+        Files.write(file.toPath(), data);
+
+        new FileUploader(hub, 1000).upload(sg1, file);
+
+        Assertions.assertArrayEquals(data, Files.readAllBytes(completed.get().file.toPath()));
+        MessageDigest digest = BlobStore.digest();
+        digest.update(data);
+        Assertions.assertEquals(BlobStore.hash(digest), completed.get().hash);
+    }
+
+    @Test
+    public void testUploaderGivesUp() throws IOException {
+        ChunkedUploads uploads = new ChunkedUploads(new File(dir, "uploads"), 60000);
+        IMusicHub hub = (IMusicHub) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IMusicHub.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "beginUpload":
+                            return uploads.begin((AudioElement) args[0]);
+                        case "abortUpload":
+                            uploads.discard((String) args[0]);
+                            return null;
+                        default:
+                            throw new WebServiceException("server unreachable");
+                    }
+                });
+
+        File file = new File(dir, "song.wav");
+        Files.write(file.toPath(), randomBytes(100));
+
+        Assertions.assertThrows(IOException.class, () -> new FileUploader(hub, 10).upload(sg1, file));
+        Assertions.assertEquals(0, uploads.size());
+    }
+
+    @Test
+    public void testUploaderWaitsForRetryAfter() throws Exception {
+        ChunkedUploads uploads = new ChunkedUploads(new File(dir, "uploads"), 60000);
+        AtomicInteger calls = new AtomicInteger();
+        Map<String, Object> response = new HashMap<>();
+
+        // a saturated server rejects the first chunk with 503 and asks to retry after a second
+        IMusicHub hub = (IMusicHub) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { IMusicHub.class, BindingProvider.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getResponseContext":
+                            return response;
+                        case "beginUpload":
+                            return uploads.begin((AudioElement) args[0]);
+                        case "uploadOffset":
+                            return uploads.offset((String) args[0]);
+                        case "appendChunk":
+                            if (calls.incrementAndGet() == 1) {
+                                response.put(MessageContext.HTTP_RESPONSE_CODE, 503);
+                                response.put(MessageContext.HTTP_RESPONSE_HEADERS,
+                                        Collections.singletonMap("Retry-after", Collections.singletonList("1")));
+                                throw new WebServiceException("The server sent HTTP status code 503: Service Unavailable");
+                            }
+                            response.put(MessageContext.HTTP_RESPONSE_CODE, 200);
+                            return uploads.append((String) args[0], (long) args[1], (byte[]) args[2], (long) args[3]);
+                        case "commitUpload":
+                            uploads.commit((String) args[0], (long) args[1], (long) args[2]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        File file = new File(dir, "song.wav");
+        Files.write(file.toPath(), randomBytes(100));
+
+        long start = System.nanoTime();
+        new FileUploader(hub, 100).upload(sg1, file);
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+        Assertions.assertEquals(2, calls.get());
+    }
+}
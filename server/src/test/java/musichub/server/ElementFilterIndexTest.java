@@ -0,0 +1,146 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ElementFilterIndexTest {
+    private final CatalogStore<AudioElement> store = new CatalogStore<>(AudioElement::getUuid, AudioElement::getTitle, AudioElement[]::new);
+    private final ElementFilterIndex index = new ElementFilterIndex();
+
+    private final Song sg1 = new Song("Song1", "Artist1", 120, "", Genre.ROCK);
+    private final Song sg2 = new Song("Song2", "Artist1", 300, "", Genre.ROCK);
+    private final Song sg3 = new Song("Song3", "Artist2", 200, "", Genre.ROCK);
+    private final Song sg4 = new Song("Song4", "Artist1", 250, "", Genre.JAZZ);
+    private final AudioBook b1 = new AudioBook("Book1", "Artist1", 3600, "", Language.FRENCH, Category.NOVEL);
+    private final AudioBook b2 = new AudioBook("Book2", "Artist2", 1800, "", Language.FRENCH, Category.YOUTH);
+    private final AudioBook b3 = new AudioBook("Book3", "Artist3", 2400, "", Language.ENGLISH, Category.NOVEL);
+
+    public ElementFilterIndexTest() {
+        store.addListener(index);
+        for (AudioElement element : new AudioElement[] { sg1, b1, sg2, sg3, b2, sg4, b3 })
+            store.add(element);
+    }
+
+    private AudioElement[] query(ElementQuery query) {
+        return index.query(query, null, IMusicHub.MAX_PAGE_SIZE).getItems();
+    }
+
+    @Test
+    public void testAll() {
+        ElementPage page = index.query(new ElementQuery(), null, IMusicHub.MAX_PAGE_SIZE);
+
+        Assertions.assertArrayEquals(new AudioElement[] { sg1, b1, sg2, sg3, b2, sg4, b3 }, page.getItems());
+        Assertions.assertEquals(7, page.getTotal());
+        Assertions.assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testCombinedCriteria() {
+        Assertions.assertArrayEquals(new AudioElement[] { sg1 },
+                query(new ElementQuery().withGenre(Genre.ROCK).withArtist("artist1").withMaxLength(299)));
+        Assertions.assertArrayEquals(new AudioElement[] { b1, b3 }, query(new ElementQuery().withCategory(Category.NOVEL)));
+        Assertions.assertArrayEquals(new AudioElement[] { b1 },
+                query(new ElementQuery().withLanguage(Language.FRENCH).withCategory(Category.NOVEL)));
+        Assertions.assertArrayEquals(new AudioElement[0], query(new ElementQuery().withArtist("Nobody")));
+        Assertions.assertArrayEquals(new AudioElement[0],
+                query(new ElementQuery().withGenre(Genre.ROCK).withLanguage(Language.FRENCH)));
+    }
+
+    @Test
+    public void testTypeCriterion() {
+        Assertions.assertArrayEquals(new AudioElement[] { sg1, sg2, sg3, sg4 }, query(new ElementQuery().withType(ElementType.SONG)));
+        Assertions.assertArrayEquals(new AudioElement[] { b1, b2, b3 }, query(new ElementQuery().withType(ElementType.AUDIOBOOK)));
+        Assertions.assertArrayEquals(new AudioElement[] { b1, b3 },
+                query(new ElementQuery().withType(ElementType.AUDIOBOOK).withMinLength(2400)));
+        Assertions.assertArrayEquals(new AudioElement[0],
+                query(new ElementQuery().withType(ElementType.AUDIOBOOK).withGenre(Genre.ROCK)));
+
+        ElementPage page = index.query(new ElementQuery().withType(ElementType.SONG), null, 3);
+        Assertions.assertEquals(4, page.getTotal());
+        Assertions.assertArrayEquals(new AudioElement[] { sg4 },
+                index.query(new ElementQuery().withType(ElementType.SONG), page.getNextCursor(), 3).getItems());
+    }
+
+    @Test
+    public void testLengthRange() {
+        // bounds inside a minute bucket are exact
+        Assertions.assertArrayEquals(new AudioElement[] { sg2, sg3, sg4 },
+                query(new ElementQuery().withMinLength(200).withMaxLength(300)));
+        Assertions.assertArrayEquals(new AudioElement[] { sg4 },
+                query(new ElementQuery().withMinLength(201).withMaxLength(299)));
+        Assertions.assertArrayEquals(new AudioElement[] { b1, b3 }, query(new ElementQuery().withMinLength(2400)));
+        Assertions.assertArrayEquals(new AudioElement[0], query(new ElementQuery().withMinLength(300).withMaxLength(200)));
+    }
+
+    @Test
+    public void testPages() {
+        ElementQuery rock = new ElementQuery().withGenre(Genre.ROCK);
+
+        ElementPage first = index.query(rock, null, 2);
+        Assertions.assertArrayEquals(new AudioElement[] { sg1, sg2 }, first.getItems());
+        Assertions.assertEquals(3, first.getTotal());
+        Assertions.assertNotNull(first.getNextCursor());
+
+        ElementPage second = index.query(rock, first.getNextCursor(), 2);
+        Assertions.assertArrayEquals(new AudioElement[] { sg3 }, second.getItems());
+        Assertions.assertNull(second.getNextCursor());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.query(rock, "not a cursor", 2));
+    }
+
+    @Test
+    public void testRemove() {
+        ElementQuery rock = new ElementQuery().withGenre(Genre.ROCK);
+        String cursor = index.query(rock, null, 1).getNextCursor();
+
+        store.remove(sg1.getUuid());
+        store.remove(sg3.getUuid());
+
+        Assertions.assertArrayEquals(new AudioElement[] { sg2 }, query(rock));
+        Assertions.assertArrayEquals(new AudioElement[] { sg2 }, index.query(rock, cursor, 10).getItems());
+        Assertions.assertArrayEquals(new AudioElement[0], query(new ElementQuery().withArtist("Artist2").withGenre(Genre.ROCK)));
+    }
+
+    @Test
+    public void testCompaction() {
+        List<Song> added = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Song song = new Song("Many" + i, "Many", 60 + i, "", Genre.values()[i % 7]);
+            added.add(song);
+            store.add(song);
+        }
+        for (int i = 0; i < 190; i++)
+            store.remove(added.get(i).getUuid());
+
+        ElementPage page = index.query(new ElementQuery().withArtist("Many"), null, 5);
+        Assertions.assertArrayEquals(added.subList(190, 195).toArray(new AudioElement[0]), page.getItems());
+        Assertions.assertEquals(10, page.getTotal());
+
+        ElementPage next = index.query(new ElementQuery().withArtist("Many"), page.getNextCursor(), 5);
+        Assertions.assertArrayEquals(added.subList(195, 200).toArray(new AudioElement[0]), next.getItems());
+        Assertions.assertNull(next.getNextCursor());
+
+        Assertions.assertEquals(17, index.query(new ElementQuery(), null, 100).getTotal());
+    }
+
+    @Test
+    public void testMissingFields() {
+        // such as read from an old XML file
+        Song noGenre = new Song("Song5", null, 100, "", null);
+        AudioBook noLanguage = new AudioBook("Book4", "Artist3", 100, "", null, Category.NOVEL);
+        store.add(noGenre);
+        store.add(noLanguage);
+
+        Assertions.assertEquals(9, index.query(new ElementQuery(), null, 100).getTotal());
+        Assertions.assertArrayEquals(new AudioElement[] { b1, b3, noLanguage }, query(new ElementQuery().withCategory(Category.NOVEL)));
+        Assertions.assertArrayEquals(new AudioElement[] { sg4 }, query(new ElementQuery().withGenre(Genre.JAZZ)));
+
+        store.remove(noGenre.getUuid());
+        store.remove(noLanguage.getUuid());
+        Assertions.assertEquals(7, index.query(new ElementQuery(), null, 100).getTotal());
+    }
+}
@@ -0,0 +1,132 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.Service;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.MTOMFeature;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class HubEndpointTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final QName SERVICE = new QName("http://server.musichub/", "ServerMusicHubService");
+
+    static {
+        // the SAAJ API pulled by jaxws-api defaults to the implementation bundled with Java 8
+        System.setProperty("javax.xml.soap.MetaFactory", "com.sun.xml.messaging.saaj.soap.SAAJMetaFactoryImpl");
+    }
+
+    private final ServerMusicHub hub = new ServerMusicHub();
+    private HubEndpoint endpoint;
+
+    public HubEndpointTest() {
+        LOGGER.setLevel(Level.OFF);
+        hub.addElement(new Song("Song1", "Artist1", 120, "unknownFile1", Genre.POP), null);
+    }
+
+    @AfterEach
+    public void stop() {
+        endpoint.close();
+        hub.close();
+    }
+
+    private void publish(int threads, int queue, long waitMillis) throws IOException {
+        publish(threads, queue, waitMillis, false);
+    }
+
+    private void publish(int threads, int queue, long waitMillis, boolean shard) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("server.shard", String.valueOf(shard));
+        properties.setProperty("server.port", "0");
+        properties.setProperty("server.threads", String.valueOf(threads));
+        properties.setProperty("server.queue", String.valueOf(queue));
+        properties.setProperty("server.queue.wait", String.valueOf(waitMillis));
+        ServerConfig config = new ServerConfig();
+        config.apply(properties);
+        endpoint = HubEndpoint.publish(hub, config);
+    }
+
+    private IMusicHub connect() throws IOException {
+        return Service.create(new URL(endpoint.getUrl() + "?wsdl"), SERVICE).getPort(IMusicHub.class, new MTOMFeature());
+    }
+
+    @Test
+    public void testRequestsRunOnTheExecutor() throws Exception {
+        publish(4, 8, 0);
+        Assertions.assertNotEquals(0, endpoint.getAddress().getPort());
+
+        IMusicHub client = connect();
+        for (int i = 0; i < 10; i++)
+            Assertions.assertEquals(1, client.elementCount());
+        Assertions.assertEquals("Song1", client.elementByTitle("Song1").getTitle());
+
+        // the WSDL and the calls
+        long deadline = System.currentTimeMillis() + 10000;
+        while (endpoint.getExecutor().getCompletedTaskCount() < 12 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Assertions.assertTrue(endpoint.getExecutor().getCompletedTaskCount() >= 12);
+        Assertions.assertEquals(0, endpoint.getExecutor().rejected());
+    }
+
+    @Test
+    public void testShardCallsAreOnlyPublishedByShards() throws Exception {
+        publish(4, 8, 0);
+        HttpURLConnection connection = (HttpURLConnection) new URL(shardUrl()).openConnection();
+        Assertions.assertEquals(404, connection.getResponseCode());
+        connection.disconnect();
+        endpoint.close();
+
+        publish(4, 8, 0, true);
+        ShardHub shard = Service.create(new URL(shardUrl()), new QName("http://server.musichub/", "ShardHubService"))
+                .getPort(ShardHub.class);
+        shard.deleteElementById(hub.elementByTitle("Song1").getUuid().toString());
+        Assertions.assertEquals(0, connect().elementCount());
+    }
+
+    private String shardUrl() {
+        return endpoint.getUrl().replace(HubEndpoint.PATH, HubEndpoint.SHARD_PATH) + "?wsdl";
+    }
+
+    @Test
+    public void testBusyServerRejectsRequests() throws Exception {
+        // the place of a request is released just after its answer is sent
+        publish(1, 0, 200);
+        IMusicHub client = connect();
+        Assertions.assertEquals(1, client.elementCount());
+
+        // the only place is taken by a long request
+        CountDownLatch release = new CountDownLatch(1);
+        Assertions.assertTrue(endpoint.getExecutor().admit());
+        endpoint.getExecutor().execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(endpoint.getUrl() + "?wsdl").openConnection();
+        Assertions.assertEquals(503, connection.getResponseCode());
+        Assertions.assertEquals("1", connection.getHeaderField("Retry-After"));
+        connection.disconnect();
+        Assertions.assertThrows(WebServiceException.class, client::elementCount);
+        Assertions.assertEquals(2, endpoint.getExecutor().rejected());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (endpoint.getExecutor().getActiveCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Assertions.assertEquals(1, client.elementCount());
+    }
+}
@@ -0,0 +1,53 @@
+package musichub.server;
+
+import musichub.business.Album;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.UUID;
+
+public class MembershipIndexTest {
+    private final UUID sg1 = UUID.randomUUID();
+    private final UUID sg2 = UUID.randomUUID();
+
+    private Album album(String title, UUID... songs) {
+        Album album = new Album(title, "Artist1", 100, new Date(0));
+        for (UUID song : songs)
+            album.addSong(song);
+        return album;
+    }
+
+    @Test
+    public void testFollowsContainers() {
+        MembershipIndex<Album> index = new MembershipIndex<>(Album::getUuid, Album::getSongs);
+        Album alb1 = album("Album1", sg1, sg2);
+        Album alb2 = album("Album2", sg1);
+
+        index.added(alb1, 0);
+        index.added(alb2, 1);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(alb1.getUuid(), alb2.getUuid())), index.containers(sg1));
+        Assertions.assertEquals(Collections.singleton(alb1.getUuid()), index.containers(sg2));
+
+        index.removed(alb1, 0);
+        Assertions.assertEquals(Collections.singleton(alb2.getUuid()), index.containers(sg1));
+        Assertions.assertTrue(index.containers(sg2).isEmpty());
+    }
+
+    @Test
+    public void testLinkAndUnlink() {
+        MembershipIndex<Album> index = new MembershipIndex<>(Album::getUuid, Album::getSongs);
+        Album alb1 = album("Album1");
+        index.added(alb1, 0);
+
+        index.link(sg1, alb1.getUuid());
+        Assertions.assertEquals(Collections.singleton(alb1.getUuid()), index.containers(sg1));
+
+        Assertions.assertEquals(Collections.singleton(alb1.getUuid()), index.unlink(sg1));
+        Assertions.assertTrue(index.containers(sg1).isEmpty());
+        Assertions.assertTrue(index.unlink(sg1).isEmpty());
+    }
+}
@@ -0,0 +1,224 @@
+package musichub.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import musichub.business.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+import javax.xml.namespace.QName;
+import javax.xml.ws.Endpoint;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.MTOMFeature;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Transfers of audio files through a real JAX-WS endpoint, counting the bytes on the wire
+ */
+public class MtomTransferTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final int MB = 1024 * 1024;
+    private static final QName SERVICE = new QName("http://server.musichub/", "ServerMusicHubService");
+
+    static {
+        // the SAAJ API pulled by jaxws-api defaults to the implementation bundled with Java 8
+        System.setProperty("javax.xml.soap.MetaFactory", "com.sun.xml.messaging.saaj.soap.SAAJMetaFactoryImpl");
+    }
+
+    @TempDir
+    File dir;
+
+    private HttpServer httpServer;
+    private Endpoint endpoint;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    public MtomTransferTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    @AfterEach
+    public void stop() {
+        if (endpoint != null)
+            endpoint.stop();
+        if (httpServer != null)
+            httpServer.stop(0);
+    }
+
+    /**
+     * Publish a hub on a free port, and get a client port to it
+     */
+    private IMusicHub publish(ServerMusicHub hub, boolean mtom) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.start();
+
+        HttpContext context = httpServer.createContext("/ws/musichub");
+        context.getFilters().add(new CountingFilter());
+        // MTOM is enabled by the annotation of the hub
+        endpoint = mtom ? Endpoint.create(hub) : Endpoint.create(hub, new MTOMFeature(false));
+        endpoint.publish(context);
+
+        URL url = new URL("http://localhost:" + httpServer.getAddress().getPort() + "/ws/musichub?wsdl");
+        IMusicHub port = Service.create(url, SERVICE).getPort(IMusicHub.class, new MTOMFeature(mtom));
+
+        received.set(0);
+        sent.set(0);
+        return port;
+    }
+
+    /**
+     * Write a file of random content
+     * @return its CRC32
+     */
+    private static long writeFile(File file, int size) throws IOException {
+        byte[] block = new byte[MB];
+        new Random(42).nextBytes(block);
+        CRC32 crc = new CRC32();
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (int written = 0; written < size; written += block.length) {
+                int n = Math.min(block.length, size - written);
+                out.write(block, 0, n);
+                crc.update(block, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long checksum(InputStream in) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        for (int n; (n = in.read(buffer)) >= 0; )
+            crc.update(buffer, 0, n);
+        return crc.getValue();
+    }
+
+    private long download(IMusicHub port, String title) throws Exception {
+        DataHandler handler = port.downloadElement(title);
+        try (InputStream in = handler.getInputStream()) {
+            return checksum(in);
+        }
+    }
+
+    @Test
+    public void testMtomAvoidsBase64() throws Exception {
+        int size = 4 * MB;
+        File file = new File(dir, "song.wav");
+        long crc = writeFile(file, size);
+
+        ServerMusicHub hub = new ServerMusicHub();
+        hub.addElement(new Song("Song1", "Artist1", 120, file.getPath(), Genre.POP), null);
+
+        Assertions.assertEquals(crc, download(publish(hub, false), "Song1"));
+        long base64 = sent.get();
+        stop();
+
+        Assertions.assertEquals(crc, download(publish(hub, true), "Song1"));
+        long mtom = sent.get();
+
+        Assertions.assertTrue(base64 > size * 4L / 3, "base64 should add a third");
+        Assertions.assertTrue(mtom < size + 64 * 1024, "MTOM should send the file as is");
+    }
+
+    @Test
+    public void testLargeFileTransfer() throws Exception {
+        // several MTOM buffers, without writing hundreds of MB on every build
+        int size = 8 * MB + 12345;
+        File file = new File(dir, "book.wav");
+        long crc = writeFile(file, size);
+
+        ServerMusicHub hub = new ServerMusicHub();
+        IMusicHub port = publish(hub, true);
+
+        AudioBook book = new AudioBook("Book1", "Artist1", 36000, "", Language.FRENCH, Category.NOVEL);
+        port.addElement(book, new DataHandler(new FileDataSource(file)));
+        long uploaded = received.get();
+
+        File stored = hub.elementByTitle("Book1").getDataLocation();
+        try {
+            Assertions.assertEquals(crc, download(port, "Book1"));
+            Assertions.assertEquals(size, stored.length());
+            Assertions.assertTrue(uploaded < size + 64 * 1024);
+            Assertions.assertTrue(sent.get() < size + 64 * 1024);
+        } finally {
+            Assertions.assertTrue(stored.delete());
+        }
+    }
+
+    /**
+     * Counts the bytes of the HTTP bodies received and sent by the endpoint
+     */
+    private class CountingFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            exchange.setStreams(new CountingInputStream(exchange.getRequestBody(), received),
+                    new CountingOutputStream(exchange.getResponseBody(), sent));
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "counts the bytes on the wire";
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count;
+
+        CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count.addAndGet(n);
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong count;
+
+        CountingOutputStream(OutputStream out, AtomicLong count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.addAndGet(len);
+        }
+    }
+}
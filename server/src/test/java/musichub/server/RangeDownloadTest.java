@@ -0,0 +1,115 @@
+package musichub.server;
+
+import musichub.business.*;
+import musichub.main.RangeInputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class RangeDownloadTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    // 16 bits mono at 8 kHz: 16000 bytes per second
+    private static final AudioFormat FORMAT = new AudioFormat(8000, 16, 1, true, false);
+    private static final int SECONDS = 60;
+
+    @TempDir
+    File dir;
+
+    public RangeDownloadTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    private byte[] samples() {
+        byte[] samples = new byte[SECONDS * 16000];
+        new Random(42).nextBytes(samples);
+        return samples;
+    }
+
+    private ServerMusicHub hubWithBook(byte[] samples) throws Exception {
+        File file = new File(dir, "book.wav");
+        AudioInputStream audio = new AudioInputStream(new ByteArrayInputStream(samples), FORMAT, samples.length / 2);
+        AudioSystem.write(audio, AudioFileFormat.Type.WAVE, file);
+
+        ServerMusicHub hub = new ServerMusicHub();
+        hub.addElement(new AudioBook("Book1", "Artist1", SECONDS, file.getPath(), Language.FRENCH, Category.NOVEL), null);
+        return hub;
+    }
+
+    /**
+     * A hub which counts the bytes downloaded by ranges
+     */
+    private static IMusicHub counting(IMusicHub hub, AtomicLong downloaded) {
+        return (IMusicHub) Proxy.newProxyInstance(RangeDownloadTest.class.getClassLoader(), new Class<?>[] { IMusicHub.class },
+                (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(hub, args);
+                        if (method.getName().equals("downloadRange"))
+                            downloaded.addAndGet(((byte[]) result).length);
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @Test
+    public void testDownloadRange() throws Exception {
+        ServerMusicHub hub = hubWithBook(samples());
+        byte[] file = Files.readAllBytes(hub.elementByTitle("Book1").getDataLocation().toPath());
+
+        Assertions.assertEquals(file.length, hub.elementFileLength("Book1"));
+        Assertions.assertArrayEquals(Arrays.copyOfRange(file, 1000, 1100), hub.downloadRange("Book1", 1000, 100));
+        Assertions.assertArrayEquals(Arrays.copyOfRange(file, file.length - 10, file.length),
+                hub.downloadRange("Book1", file.length - 10, 100));
+        Assertions.assertEquals(0, hub.downloadRange("Book1", file.length + 10, 100).length);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.downloadRange("Book1", -1, 100));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.downloadRange("Book1", 0, IMusicHub.MAX_CHUNK_SIZE + 1));
+        Assertions.assertThrows(NoElementFoundException.class, () -> hub.downloadRange("Book2", 0, 100));
+    }
+
+    @Test
+    public void testSeekOnlyDownloadsFromPosition() throws Exception {
+        byte[] samples = samples();
+        AtomicLong downloaded = new AtomicLong();
+        IMusicHub hub = counting(hubWithBook(samples), downloaded);
+
+        RangeInputStream stream = new RangeInputStream(hub, "Book1", 64 * 1024);
+        AudioInputStream audio = AudioSystem.getAudioInputStream(stream);
+        Assertions.assertEquals(FORMAT.getFrameRate(), audio.getFormat().getFrameRate());
+        Assertions.assertEquals(samples.length / 2, audio.getFrameLength());
+        long dataStart = stream.position();
+        Assertions.assertEquals(stream.length() - samples.length, dataStart);
+
+        // seek to the last ten seconds
+        int position = (SECONDS - 10) * 16000;
+        downloaded.set(0);
+        stream.seek(dataStart + position);
+
+        byte[] read = new byte[samples.length - position];
+        int n = 0;
+        for (int r; n < read.length && (r = stream.read(read, n, read.length - n)) > 0; )
+            n += r;
+
+        Assertions.assertEquals(read.length, n);
+        Assertions.assertEquals(-1, stream.read());
+        Assertions.assertArrayEquals(Arrays.copyOfRange(samples, position, samples.length), read);
+        Assertions.assertEquals(read.length, downloaded.get());
+    }
+}
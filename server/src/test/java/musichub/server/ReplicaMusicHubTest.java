@@ -0,0 +1,216 @@
+package musichub.server;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+import musichub.business.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.Endpoint;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.MTOMFeature;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ReplicaMusicHubTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final QName SERVICE = new QName("http://server.musichub/", "ServerMusicHubService");
+
+    static {
+        // the SAAJ API pulled by jaxws-api defaults to the implementation bundled with Java 8
+        System.setProperty("javax.xml.soap.MetaFactory", "com.sun.xml.messaging.saaj.soap.SAAJMetaFactoryImpl");
+    }
+
+    private final Song sg1 = new Song("Song1", "Artist1", 120, "unknownFile1", Genre.POP);
+    private final Song sg2 = new Song("Song2", "Artist1", 130, "unknownFile2", Genre.ROCK);
+    private final AudioBook b1 = new AudioBook("Book1", "Artist2", 293, "unknownFile3", Language.GERMAN, Category.SPEECH);
+    private final Album alb1 = new Album("Album1", "Artist1", 250, new Date(2000));
+    private final PlayList pl1 = new PlayList("Playlist1");
+
+    @TempDir
+    File dir;
+
+    private ServerMusicHub primary;
+    private final List<ReplicaMusicHub> replicas = new ArrayList<>();
+    private final List<HttpServer> httpServers = new ArrayList<>();
+    private final List<Endpoint> endpoints = new ArrayList<>();
+
+    public ReplicaMusicHubTest() {
+        LOGGER.setLevel(Level.OFF);
+        alb1.addSong(sg1.getUuid());
+        pl1.addElement(sg2.getUuid());
+        pl1.addElement(b1.getUuid());
+    }
+
+    @BeforeEach
+    public void initPrimary() {
+        primary = new ServerMusicHub();
+        primary.addElement(sg1, null);
+        primary.addElement(sg2, null);
+        primary.addElement(b1, null);
+        primary.addAlbum(alb1);
+        primary.addPlaylist(pl1);
+    }
+
+    @AfterEach
+    public void stop() {
+        for (ReplicaMusicHub replica : replicas)
+            replica.close();
+        for (Endpoint endpoint : endpoints)
+            endpoint.stop();
+        for (HttpServer httpServer : httpServers)
+            httpServer.stop(0);
+        primary.close();
+    }
+
+    private ReplicaMusicHub replicaOf(IMusicHub hub) {
+        ReplicaMusicHub replica = new ReplicaMusicHub(hub, new File(dir, "replica" + replicas.size()));
+        replicas.add(replica);
+        return replica;
+    }
+
+    /**
+     * Publish a hub on a free localhost port, and get a client port to it
+     */
+    private IMusicHub publish(Object hub) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.start();
+        httpServers.add(httpServer);
+
+        HttpContext context = httpServer.createContext("/ws/musichub");
+        Endpoint endpoint = Endpoint.create(hub);
+        endpoint.publish(context);
+        endpoints.add(endpoint);
+
+        URL url = new URL("http://localhost:" + httpServer.getAddress().getPort() + "/ws/musichub?wsdl");
+        return Service.create(url, SERVICE).getPort(IMusicHub.class, new MTOMFeature());
+    }
+
+    @Test
+    public void testReplicaFollowsPrimary() throws Exception {
+        ReplicaMusicHub replica = replicaOf(primary);
+        Assertions.assertEquals(primary.catalogVersion(), replica.catchUp());
+        Assertions.assertEquals(3, replica.elementCount());
+        Assertions.assertEquals(Collections.singletonList(sg1.getUuid()), replica.albumByTitle("Album1").getSongs());
+        Assertions.assertEquals(2, replica.getPlaylistElements("Playlist1").length);
+
+        // changes made on the primary are read by the next poll
+        primary.addBatch(new CatalogBatch().addAlbum(new Album("Album2", "Artist1", 100, new Date(3000)))
+                .addToAlbum("Song2", "Album2"));
+        primary.deleteElement("Book1");
+        Assertions.assertThrows(NoAlbumFoundException.class, () -> replica.albumByTitle("Album2"));
+
+        Assertions.assertEquals(primary.catalogVersion(), replica.catchUp());
+        Assertions.assertEquals(Collections.singletonList(sg2.getUuid()), replica.albumByTitle("Album2").getSongs());
+        Assertions.assertArrayEquals(new AudioElement[] {sg2}, replica.getPlaylistElements("Playlist1"));
+        Assertions.assertEquals(0, replica.searchElements("Book1", false, 10).length);
+        Assertions.assertEquals("Album2", replica.getAlbumsSortedByDate()[1].getTitle());
+    }
+
+    @Test
+    public void testWritesAreForwarded() throws Exception {
+        ReplicaMusicHub replica = replicaOf(primary);
+        replica.catchUp();
+
+        replica.addElementToAlbum("Song2", "Album1");
+        // applied by the primary, and read back at once by the replica
+        Assertions.assertEquals(2, primary.albumByTitle("Album1").getSongs().size());
+        Assertions.assertEquals(2, replica.albumByTitle("Album1").getSongs().size());
+        Assertions.assertEquals(primary.catalogVersion(), replica.catalogVersion());
+
+        Assertions.assertThrows(NoPlayListFoundException.class, () -> replica.deletePlayList("Unknown"));
+    }
+
+    @Test
+    public void testReplicaOfReplica() throws Exception {
+        ReplicaMusicHub first = replicaOf(primary);
+        ReplicaMusicHub second = replicaOf(first);
+        first.catchUp();
+        second.catchUp();
+        Assertions.assertEquals(primary.catalogVersion(), second.catalogVersion());
+        Assertions.assertEquals(3, second.elementCount());
+
+        primary.addBatch(new CatalogBatch());
+        primary.addElementToPlayList("Song1", "Playlist1");
+        first.catchUp();
+        Assertions.assertEquals(primary.catalogVersion(), second.catchUp());
+        Assertions.assertEquals(3, second.getPlaylistElements("Playlist1").length);
+    }
+
+    @Test
+    public void testSnapshotReplacesCatalog() throws Exception {
+        ServerMusicHub local = new ServerMusicHub();
+        local.addElement(new Song("Other", "Artist3", 10, "unknownFile4", Genre.JAZZ), null);
+        local.addAlbum(new Album("Other album", "Artist3", 10, new Date(0)));
+
+        // a version the primary never reached
+        ChangePage snapshot = primary.changesSince(primary.catalogVersion() + 1, 10);
+        Assertions.assertTrue(snapshot.isSnapshot());
+        local.replicate(snapshot);
+
+        Assertions.assertEquals(primary.catalogVersion(), local.catalogVersion());
+        Assertions.assertEquals(3, local.elementCount());
+        Assertions.assertThrows(NoElementFoundException.class, () -> local.elementByTitle("Other"));
+        Assertions.assertThrows(NoAlbumFoundException.class, () -> local.albumByTitle("Other album"));
+        Assertions.assertEquals(1, local.albumByTitle("Album1").getSongs().size());
+
+        // the feed of the replica starts at the snapshot
+        Assertions.assertEquals(0, local.changesSince(local.catalogVersion(), 10).getUpdates().length);
+        Assertions.assertTrue(local.changesSince(0, 10).isSnapshot());
+        local.close();
+    }
+
+    @Test
+    public void testReplicaReadsSnapshotInParts() throws Exception {
+        CatalogBatch batch = new CatalogBatch();
+        for (int i = 0; i < IMusicHub.MAX_PAGE_SIZE + 100; i++)
+            batch.addElement(new Song("Batch" + i, "Artist1", 100, "unknownFile", Genre.POP));
+        primary.addBatch(batch);
+        // the primary forgets its changes, as if it had loaded a snapshot
+        primary.replicate(new ChangePage(primary.catalogVersion(), primary.albums(), primary.playlists(), primary.elements()));
+
+        ReplicaMusicHub replica = replicaOf(publish(primary));
+        Assertions.assertEquals(primary.catalogVersion(), replica.catchUp());
+        Assertions.assertEquals(primary.elementCount(), replica.elementCount());
+        Assertions.assertEquals(2, replica.getPlaylistElements("Playlist1").length);
+    }
+
+    @Test
+    public void testReplicasOnLocalhostPorts() throws Exception {
+        IMusicHub primaryPort = publish(primary);
+        ReplicaMusicHub replica1 = replicaOf(primaryPort);
+        ReplicaMusicHub replica2 = replicaOf(primaryPort);
+        replica1.start(10);
+        replica2.start(10);
+        IMusicHub client1 = publish(replica1);
+        IMusicHub client2 = publish(replica2);
+
+        Assertions.assertEquals(3, client1.elementCount());
+        Assertions.assertEquals(1, client2.albumByTitle("Album1").getSongs().size());
+
+        // written through a replica, read from the other one once it polled
+        client1.addPlaylist(new PlayList("Playlist2"));
+        client1.addElementToPlayList("Song1", "Playlist2");
+        Assertions.assertEquals(1, primary.playlistByTitle("Playlist2").getElements().size());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (client2.catalogVersion() < primary.catalogVersion() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        AudioElement[] elements = client2.getPlaylistElements("Playlist2");
+        Assertions.assertEquals(1, elements.length);
+        Assertions.assertEquals(sg1.getUuid(), elements[0].getUuid());
+    }
+}
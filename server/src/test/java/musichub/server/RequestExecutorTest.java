@@ -0,0 +1,96 @@
+package musichub.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class RequestExecutorTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private RequestExecutor executor;
+
+    public RequestExecutorTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    @AfterEach
+    public void stop() throws InterruptedException {
+        release.countDown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Admit and run a request blocked until the end of the test
+     */
+    private void runBlocked() {
+        Assertions.assertTrue(executor.admit());
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @Test
+    public void testRejectsBeyondThreadsAndQueue() {
+        executor = new RequestExecutor(2, 1, 10);
+        runBlocked();
+        runBlocked();
+        runBlocked();
+
+        Assertions.assertFalse(executor.admit());
+        Assertions.assertFalse(executor.admit());
+        Assertions.assertEquals(2, executor.waited());
+        Assertions.assertEquals(2, executor.rejected());
+        Assertions.assertEquals(2, executor.getPoolSize());
+        Assertions.assertEquals(1, executor.getQueue().size());
+    }
+
+    @Test
+    public void testPlacesAreReleasedByFinishedRequests() throws InterruptedException {
+        executor = new RequestExecutor(1, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(executor.admit());
+            CountDownLatch done = new CountDownLatch(1);
+            executor.execute(done::countDown);
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            // the place is released right after the request
+            long deadline = System.currentTimeMillis() + 10000;
+            while (executor.getCompletedTaskCount() < i + 1 && System.currentTimeMillis() < deadline)
+                Thread.sleep(1);
+        }
+        Assertions.assertEquals(100, executor.getCompletedTaskCount());
+        Assertions.assertEquals(0, executor.rejected());
+    }
+
+    @Test
+    public void testWaitsForAPlace() {
+        executor = new RequestExecutor(1, 0, 10000);
+        Assertions.assertTrue(executor.admit());
+        executor.execute(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // admitted once the first request is over
+        Assertions.assertTrue(executor.admit());
+        executor.execute(() -> {
+        });
+        Assertions.assertEquals(1, executor.waited());
+        Assertions.assertEquals(0, executor.rejected());
+        Assertions.assertTrue(executor.toString().contains("1 waited, 0 rejected"));
+    }
+}
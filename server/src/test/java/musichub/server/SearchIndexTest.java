@@ -0,0 +1,121 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class SearchIndexTest {
+    private final CatalogStore<AudioElement> store = new CatalogStore<>(AudioElement::getUuid, AudioElement::getTitle, AudioElement[]::new);
+    private final SearchIndex<AudioElement> index = new SearchIndex<>(AudioElement[]::new, AudioElement::getTitle, AudioElement::getArtist);
+
+    private final Song sg1 = new Song("Fields of Verdun", "Sabaton", 360, "", Genre.METAL);
+    private final Song sg2 = new Song("The Red Baron", "Sabaton", 200, "", Genre.METAL);
+    private final Song sg3 = new Song("Fielding", "Someone", 100, "", Genre.POP);
+    private final AudioBook b1 = new AudioBook("Les Misérables", "Victor Hugo", 1000, "", Language.FRENCH, Category.NOVEL);
+
+    public SearchIndexTest() {
+        store.addListener(index);
+        store.add(sg1);
+        store.add(sg2);
+        store.add(sg3);
+        store.add(b1);
+    }
+
+    @Test
+    public void testTokenize() {
+        Assertions.assertEquals("[les, miserables, 1862]", SearchIndex.tokenize("Les Misérables (1862)").toString());
+    }
+
+    @Test
+    public void testAllTermsMustMatch() {
+        Assertions.assertArrayEquals(new AudioElement[] { sg1 }, index.search("sabaton verdun", false, 10));
+        Assertions.assertArrayEquals(new AudioElement[] { sg1, sg2 }, index.search("SABATON", false, 10));
+        Assertions.assertEquals(0, index.search("sabaton hugo", false, 10).length);
+        Assertions.assertEquals(0, index.search("  ", false, 10).length);
+    }
+
+    @Test
+    public void testPrefixRankedAfterExact() {
+        Assertions.assertArrayEquals(new AudioElement[] { sg1, sg3 }, index.search("fiel", false, 10));
+        Assertions.assertArrayEquals(new AudioElement[] { sg1 }, index.search("fields", false, 10));
+
+        Song sg4 = new Song("Sabat", "Other", 100, "", Genre.JAZZ);
+        store.add(sg4);
+        Assertions.assertArrayEquals(new AudioElement[] { sg4, sg1, sg2 }, index.search("sabat", false, 10));
+    }
+
+    @Test
+    public void testFuzzy() {
+        Assertions.assertEquals(0, index.search("miserabels", false, 10).length);
+        Assertions.assertArrayEquals(new AudioElement[] { b1 }, index.search("miserabels", true, 10));
+        Assertions.assertArrayEquals(new AudioElement[] { b1 }, index.search("victr", true, 10));
+        // short terms must match exactly
+        Assertions.assertEquals(0, index.search("red barin", false, 10).length);
+        Assertions.assertArrayEquals(new AudioElement[] { sg2 }, index.search("red barin", true, 10));
+    }
+
+    /**
+     * Levenshtein distance, computed over the whole matrix
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0)
+                    d[i][j] = i + j;
+                else
+                    d[i][j] = Math.min(Math.min(d[i - 1][j], d[i][j - 1]) + 1,
+                            d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    @Test
+    public void testFuzzyFindsEveryCloseToken() {
+        // a small alphabet, so that many tokens share prefixes and are close to each other
+        Random random = new Random(42);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(11);
+            for (int c = 0; c < length; c++)
+                word.append((char) ('a' + random.nextInt(4)));
+            words.add(word.toString());
+            store.add(new Song(word.toString(), "", 100, "", Genre.POP));
+        }
+
+        for (int q = 0; q < 200; q++) {
+            String term = words.get(random.nextInt(words.size()));
+            if (term.length() < 4)
+                continue;
+            int max = term.length() < 8 ? 1 : 2;
+
+            Set<String> expected = new TreeSet<>();
+            for (String word : words) {
+                if (word.startsWith(term) || distance(word, term) <= max)
+                    expected.add(word);
+            }
+
+            Set<String> found = new TreeSet<>();
+            for (AudioElement element : index.search(term, true, Integer.MAX_VALUE))
+                found.add(element.getTitle());
+            Assertions.assertEquals(expected, found, term);
+        }
+    }
+
+    @Test
+    public void testTopK() {
+        Assertions.assertArrayEquals(new AudioElement[] { sg1 }, index.search("sabaton", false, 1));
+    }
+
+    @Test
+    public void testFollowsRemovals() {
+        store.remove(sg1.getUuid());
+
+        Assertions.assertArrayEquals(new AudioElement[] { sg2 }, index.search("sabaton", false, 10));
+        Assertions.assertEquals(0, index.search("verdun", true, 10).length);
+    }
+}
@@ -0,0 +1,90 @@
+package musichub.server;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ServerConfigTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    @TempDir
+    File dir;
+
+    public ServerConfigTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    private ServerConfig load(String content) throws IOException {
+        File file = new File(dir, "musichub.properties");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+        return ServerConfig.load(file);
+    }
+
+    @Test
+    public void testDefaultsWithoutFile() {
+        ServerConfig config = ServerConfig.load(new File(dir, "missing.properties"));
+
+        Assertions.assertEquals(300, config.getSnapshotInterval());
+        Assertions.assertEquals(10000, config.getSnapshotDirtyThreshold());
+        Assertions.assertEquals(64, config.getCacheSize());
+        Assertions.assertEquals(ChangeFeed.DEFAULT_CAPACITY, config.getFeedCapacity());
+        Assertions.assertEquals(500, config.getReplicaInterval());
+        Assertions.assertEquals("localhost", config.getServerAddress());
+        Assertions.assertEquals(7779, config.getServerPort());
+        Assertions.assertEquals(16, config.getServerThreads());
+        Assertions.assertEquals(64, config.getServerQueue());
+        Assertions.assertEquals(100, config.getServerQueueWait());
+    }
+
+    @Test
+    public void testReadFile() throws IOException {
+        ServerConfig config = load("# comment\nsnapshot.interval = 60\nsnapshot.dirtyThreshold=500\ncache.size=0\nfeed.capacity=100\nreplica.interval=50\n"
+                + "server.address=0.0.0.0\nserver.port=7781\nserver.threads=4\nserver.queue=0\nserver.queue.wait=0\n");
+
+        Assertions.assertEquals(60, config.getSnapshotInterval());
+        Assertions.assertEquals(500, config.getSnapshotDirtyThreshold());
+        Assertions.assertEquals(0, config.getCacheSize());
+        Assertions.assertEquals(100, config.getFeedCapacity());
+        Assertions.assertEquals(50, config.getReplicaInterval());
+        Assertions.assertEquals("0.0.0.0", config.getServerAddress());
+        Assertions.assertEquals(7781, config.getServerPort());
+        Assertions.assertEquals(4, config.getServerThreads());
+        Assertions.assertEquals(0, config.getServerQueue());
+        Assertions.assertEquals(0, config.getServerQueueWait());
+    }
+
+    @Test
+    public void testOptionsOverrideFile() throws IOException {
+        File file = new File(dir, "musichub.properties");
+        Files.write(file.toPath(), "server.port=7781\nserver.threads=4\n".getBytes(StandardCharsets.ISO_8859_1));
+        ServerConfig config = ServerConfig.load(file, Arrays.asList("replica", "--server.port=7790", "--server.queue",
+                "--server.address=example.org", "localhost:7779"));
+
+        Assertions.assertEquals(7790, config.getServerPort());
+        Assertions.assertEquals(4, config.getServerThreads());
+        Assertions.assertEquals("example.org", config.getServerAddress());
+        // without value, the option is ignored
+        Assertions.assertEquals(64, config.getServerQueue());
+    }
+
+    @Test
+    public void testInvalidValuesKeepDefaults() throws IOException {
+        ServerConfig config = load("snapshot.interval=-1\nsnapshot.dirtyThreshold=many\nfeed.capacity=0\n"
+                + "server.address= \nserver.port=65536\nserver.threads=0\n");
+
+        Assertions.assertEquals(300, config.getSnapshotInterval());
+        Assertions.assertEquals(10000, config.getSnapshotDirtyThreshold());
+        Assertions.assertEquals(ChangeFeed.DEFAULT_CAPACITY, config.getFeedCapacity());
+        Assertions.assertEquals("localhost", config.getServerAddress());
+        Assertions.assertEquals(7779, config.getServerPort());
+        Assertions.assertEquals(16, config.getServerThreads());
+    }
+}
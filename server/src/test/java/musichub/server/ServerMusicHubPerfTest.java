@@ -73,4 +73,26 @@ public class ServerMusicHubPerfTest {
     public void testGetAlbum() throws NoAlbumFoundException, NoElementFoundException {
         Assertions.assertArrayEquals(new Song[] { sg1, sg2 }, hub.getAlbumSongs(alb1.getTitle()));
     }
+
+    @Test
+    @Timeout(value = 2, unit = TimeUnit.SECONDS)
+    public void testBulkDelete() throws NoElementFoundException {
+        for (int i = 0; i < 100000; i++)
+            hub.deleteElement("s" + i);
+
+        Assertions.assertArrayEquals(new AudioElement[] {sg1, sg2, sg3, b1, b2}, hub.elements());
+    }
+
+    @Test
+    @Timeout(value = 2, unit = TimeUnit.SECONDS)
+    public void testBatchImport() throws Exception {
+        CatalogBatch batch = new CatalogBatch().addAlbum(new Album("Imported", "label", 100000, new Date()));
+        for (int i = 0; i < 100000; i++) {
+            batch.addElement(new Song("imported" + i, "label", 100, "g" + i, Genre.JAZZ));
+            batch.addToAlbum("imported" + i, "Imported");
+        }
+        hub.addBatch(batch);
+
+        Assertions.assertEquals(100000, hub.albumByTitle("Imported").getSongs().size());
+    }
 }
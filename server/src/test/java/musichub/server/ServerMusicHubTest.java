@@ -4,9 +4,18 @@ import musichub.business.*;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -186,6 +195,81 @@ public class ServerMusicHubTest {
         Assertions.assertEquals(b1, hub.elementByTitle(b1.getTitle()));
     }
 
+    @Test
+    public void testDeleteElementRemovesMemberships() throws Exception {
+        hub.addElementToAlbum(sg2.getTitle(), alb2.getTitle());
+        hub.deleteElement(sg2.getTitle());
+
+        Assertions.assertArrayEquals(new Song[] { sg1 }, hub.getAlbumSongs(alb1.getTitle()));
+        Assertions.assertArrayEquals(new Song[] { sg3 }, hub.getAlbumSongs(alb2.getTitle()));
+        Assertions.assertArrayEquals(new AudioElement[] { b1 }, hub.getPlaylistElements(pl1.getTitle()));
+        Assertions.assertArrayEquals(new AudioElement[] { sg1, sg3 }, hub.getPlaylistElements(pl2.getTitle()));
+    }
+
+    @Test
+    public void testMembershipsById() throws Exception {
+        // members held by another hub aren't looked up
+        UUID foreign = UUID.randomUUID();
+        long version = hub.catalogVersion();
+        hub.addSongsToAlbum(alb2.getUuid().toString(), new String[] {sg1.getUuid().toString(), foreign.toString()});
+        hub.addElementsToPlayList(pl1.getUuid().toString(), new String[] {foreign.toString()});
+        Assertions.assertEquals(version + 2, hub.catalogVersion());
+        Assertions.assertEquals(Arrays.asList(sg3.getUuid(), sg1.getUuid(), foreign), hub.albumByTitle("Album2").getSongs());
+
+        // a foreign element is only removed from the albums and playlists
+        hub.deleteElementById(foreign.toString());
+        Assertions.assertArrayEquals(new Song[] {sg3, sg1}, hub.getAlbumSongs("Album2"));
+        Assertions.assertArrayEquals(new AudioElement[] {sg2, b1}, hub.getPlaylistElements("Playlist1"));
+        Assertions.assertEquals(5, hub.elementCount());
+
+        version = hub.catalogVersion();
+        hub.deleteElementById(UUID.randomUUID().toString());
+        hub.addSongsToAlbum(alb1.getUuid().toString(), null);
+        Assertions.assertEquals(version, hub.catalogVersion());
+
+        hub.deleteElementById(b1.getUuid().toString());
+        Assertions.assertEquals(4, hub.elementCount());
+        Assertions.assertArrayEquals(new AudioElement[] {sg2}, hub.getPlaylistElements("Playlist1"));
+
+        Assertions.assertThrows(NoAlbumFoundException.class, () -> hub.addSongsToAlbum(UUID.randomUUID().toString(), new String[0]));
+        Assertions.assertThrows(NoPlayListFoundException.class, () -> hub.addElementsToPlayList(alb1.getUuid().toString(), new String[0]));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addSongsToAlbum(alb1.getUuid().toString(), new String[] {"not an id"}));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.deleteElementById(null));
+    }
+
+    @Test
+    public void testCorruptedSnapshotStopsLoading(@TempDir File dir) throws Exception {
+        ServerConfig config = new ServerConfig();
+        ServerMusicHub saved = ServerMusicHub.load(dir, config);
+        saved.addElement(sg1, null);
+        saved.addAlbum(alb2);
+        saved.saveAsync().join();
+        saved.addElement(sg2, null);
+        saved.close();
+
+        // the snapshot is truncated, the journal holds the last change
+        File snapshot = new File(dir, ServerMusicHub.SNAPSHOT_FILE);
+        byte[] original = Files.readAllBytes(snapshot.toPath());
+        byte[] truncated = Arrays.copyOf(original, original.length / 2);
+        Files.write(snapshot.toPath(), truncated);
+        File journal = new File(dir, ServerMusicHub.JOURNAL_DIR);
+        List<String> segments = Arrays.asList(journal.list());
+
+        Assertions.assertThrows(IOException.class, () -> ServerMusicHub.load(dir, config));
+        Assertions.assertArrayEquals(truncated, Files.readAllBytes(snapshot.toPath()));
+        Assertions.assertEquals(new HashSet<>(segments), new HashSet<>(Arrays.asList(journal.list())));
+
+        // once the snapshot is repaired, nothing was lost
+        Files.write(snapshot.toPath(), original);
+        ServerMusicHub loaded = ServerMusicHub.load(dir, config);
+        try {
+            Assertions.assertEquals(2, loaded.elementCount());
+            Assertions.assertEquals(alb2.getUuid(), loaded.albumByTitle("Album2").getUuid());
+        } finally {
+            loaded.close();
+        }
+    }
+
     // Boundary
     @Test
     public void testFindNull() throws NoElementFoundException {
@@ -234,5 +318,250 @@ public class ServerMusicHubTest {
         Assertions.assertThrows(NoElementFoundException.class, () -> hub.addElementToAlbum("Book1", "Album3"));
     }
 
+    @Test
+    public void testCounts() {
+        Assertions.assertEquals(5, hub.elementCount());
+        Assertions.assertEquals(3, hub.songCount());
+        Assertions.assertEquals(2, hub.audioBookCount());
+        Assertions.assertEquals(2, hub.albumCount());
+        Assertions.assertEquals(2, hub.playlistCount());
+    }
+
+    @Test
+    public void testOffsetPages() {
+        Assertions.assertArrayEquals(new AudioElement[] {sg2, sg3}, hub.elementsPage(1, 2));
+        Assertions.assertArrayEquals(new AudioElement[] {b2}, hub.elementsPage(4, 10));
+        Assertions.assertEquals(0, hub.elementsPage(10, 10).length);
+        Assertions.assertArrayEquals(new Song[] {sg3}, hub.songsPage(2, 2));
+        Assertions.assertArrayEquals(new AudioBook[] {b2}, hub.audioBooksPage(1, 1));
+        Assertions.assertArrayEquals(new Album[] {alb1, alb2}, hub.albumsPage(0, 5));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.playlistsPage(-1, 5));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.playlistsPage(0, 0));
+    }
+
+    @Test
+    public void testCursorPages() throws NoElementFoundException {
+        ElementPage first = hub.elementsAfter(null, 2);
+        Assertions.assertArrayEquals(new AudioElement[] {sg1, sg2}, first.getItems());
+        Assertions.assertEquals(5, first.getTotal());
+
+        // the cursor stays valid when the last element of the page is deleted
+        hub.deleteElement(sg2.getTitle());
+        ElementPage second = hub.elementsAfter(first.getNextCursor(), 2);
+        Assertions.assertArrayEquals(new AudioElement[] {sg3, b1}, second.getItems());
+
+        ElementPage last = hub.elementsAfter(second.getNextCursor(), 2);
+        Assertions.assertArrayEquals(new AudioElement[] {b2}, last.getItems());
+        Assertions.assertNull(last.getNextCursor());
+    }
+
+    @Test
+    public void testFilteredCursorPages() {
+        ElementPage first = hub.audioBooksAfter("", 1);
+        Assertions.assertArrayEquals(new AudioElement[] {b1}, first.getItems());
+        Assertions.assertEquals(2, first.getTotal());
+
+        ElementPage second = hub.audioBooksAfter(first.getNextCursor(), 1);
+        Assertions.assertArrayEquals(new AudioElement[] {b2}, second.getItems());
+        Assertions.assertNull(second.getNextCursor());
+
+        Assertions.assertNull(hub.songsAfter(null, 3).getNextCursor());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.albumsAfter("not a cursor!", 1));
+    }
+
+    @Test
+    public void testSearch() throws NoElementFoundException {
+        Assertions.assertArrayEquals(new AudioElement[] {sg1, sg2}, hub.searchElements("artist1", false, 10));
+        Assertions.assertArrayEquals(new AudioElement[] {sg3}, hub.searchElements("son artist2", false, 10));
+        Assertions.assertArrayEquals(new Album[] {alb2}, hub.searchAlbums("albm2", true, 10));
+        Assertions.assertArrayEquals(new PlayList[] {pl1, pl2}, hub.searchPlaylists("play", false, 10));
+
+        hub.deleteElement(sg1.getTitle());
+        Assertions.assertArrayEquals(new AudioElement[] {sg2}, hub.searchElements("artist1", false, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.searchAlbums("album", false, 0));
+    }
+
+    @Test
+    public void testAddBatch() throws Exception {
+        Song sg4 = new Song("Song4", "Artist5", 100, "", Genre.JAZZ);
+        AudioBook b3 = new AudioBook("Book3", "Artist5", 1000, "", Language.ENGLISH, Category.YOUTH);
+        Album alb3 = new Album("Album3", "Artist5", 100, new Date(3000));
+        PlayList pl3 = new PlayList("Playlist3");
+
+        hub.addBatch(new CatalogBatch().addElement(sg4).addElement(b3).addAlbum(alb3).addPlaylist(pl3)
+                .addToAlbum("song4", "Album3")
+                .addToAlbum("Song1", "Album3")
+                .addToPlayList("Book3", "Playlist1")
+                .addToPlayList("Song4", "Playlist3"));
+
+        Assertions.assertEquals(7, hub.elementCount());
+        Assertions.assertEquals(Arrays.asList(sg4.getUuid(), sg1.getUuid()), hub.albumByTitle("Album3").getSongs());
+        Assertions.assertEquals(b3.getUuid(), hub.playlistByTitle("Playlist1").getElements().get(2));
+        Assertions.assertEquals(Collections.singletonList(sg4.getUuid()), hub.playlistByTitle("Playlist3").getElements());
+    }
+
+    @Test
+    public void testAddBatchIsAtomic() {
+        Song sg4 = new Song("Song4", "Artist5", 100, "", Genre.JAZZ);
+        Album alb3 = new Album("Album3", "Artist5", 100, new Date(3000));
+
+        Assertions.assertThrows(NoElementFoundException.class, () -> hub.addBatch(new CatalogBatch()
+                .addElement(sg4).addAlbum(alb3).addToAlbum("Song4", "Album3").addToAlbum("Book1", "Album3")));
+        Assertions.assertThrows(NoPlayListFoundException.class, () -> hub.addBatch(new CatalogBatch()
+                .addElement(sg4).addToPlayList("Song4", "Unknown")));
+
+        Assertions.assertEquals(5, hub.elementCount());
+        Assertions.assertEquals(2, hub.albumCount());
+        Assertions.assertThrows(NoElementFoundException.class, () -> hub.elementByTitle("Song4"));
+    }
+
+    @Test
+    public void testRejectsIncompleteElements() {
+        long version = hub.catalogVersion();
+        Song noGenre = new Song("Song4", "Artist5", 100, "", null);
+        Song noArtist = new Song("Song5", null, 100, "", Genre.JAZZ);
+        AudioBook noCategory = new AudioBook("Book3", "Artist5", 1000, "", Language.ENGLISH, null);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addElement(noGenre, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addElement(noArtist, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.beginUpload(noCategory));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addBatch(new CatalogBatch()
+                .addElement(new Song("Song6", "Artist5", 100, "", Genre.JAZZ)).addElement(noGenre)));
+
+        Assertions.assertEquals(5, hub.elementCount());
+        Assertions.assertEquals(version, hub.catalogVersion());
+        Assertions.assertEquals(0, hub.queryElements(new ElementQuery().withArtist("Artist5"), null, 10).getTotal());
+    }
+
+    /**
+     * Clear a field, as a SOAP request without it would
+     */
+    private static <T> T without(T entity, Class<? super T> type, String field) throws ReflectiveOperationException {
+        Field declared = type.getDeclaredField(field);
+        declared.setAccessible(true);
+        declared.set(entity, null);
+        return entity;
+    }
+
+    @Test
+    public void testRejectsUntitledAlbumsAndPlaylists() throws Exception {
+        long version = hub.catalogVersion();
+        Album untitled = without(new Album("Album3", "Artist1", 100, new Date(3000)), Album.class, "title");
+        Album undated = without(new Album("Album4", "Artist1", 100, new Date(3000)), Album.class, "date");
+        PlayList untitledPlaylist = without(new PlayList("Playlist4"), PlayList.class, "title");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addAlbum(untitled));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addAlbum(undated));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addPlaylist(untitledPlaylist));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.addBatch(new CatalogBatch()
+                .addPlaylist(new PlayList("Playlist3")).addAlbum(untitled)));
+
+        Assertions.assertEquals(2, hub.albumCount());
+        Assertions.assertEquals(2, hub.playlistCount());
+        Assertions.assertEquals(version, hub.catalogVersion());
+        Assertions.assertEquals(2, hub.getAlbumsSortedByDate().length);
+    }
+
+    @Test
+    public void testMultiGet() {
+        ElementLookup byTitle = hub.elementsByTitle(new String[] {"song2", "Unknown", "Book1"});
+        Assertions.assertArrayEquals(new AudioElement[] {sg2, b1}, byTitle.getFound());
+        Assertions.assertArrayEquals(new String[] {"Unknown"}, byTitle.getMissing());
+
+        String deleted = UUID.randomUUID().toString();
+        ElementLookup byId = hub.elementsById(new String[] {sg3.getUuid().toString(), deleted, "not an id", b2.getUuid().toString()});
+        Assertions.assertArrayEquals(new AudioElement[] {sg3, b2}, byId.getFound());
+        Assertions.assertArrayEquals(new String[] {deleted, "not an id"}, byId.getMissing());
+
+        AlbumLookup albums = hub.albumsByTitle(new String[] {"Album2", "Album1"});
+        Assertions.assertArrayEquals(new Album[] {alb2, alb1}, albums.getFound());
+        Assertions.assertEquals(0, albums.getMissing().length);
+
+        PlayListLookup playlists = hub.playlistsByTitle(null);
+        Assertions.assertEquals(0, playlists.getFound().length);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.playlistsByTitle(new String[IMusicHub.MAX_PAGE_SIZE + 1]));
+    }
+
+    @Test
+    public void testQueryElements() throws NoElementFoundException {
+        ElementQuery artist1 = new ElementQuery().withArtist("Artist1").withMaxLength(125);
+        Assertions.assertArrayEquals(new AudioElement[] {sg1}, hub.queryElements(artist1, null, 10).getItems());
+        Assertions.assertArrayEquals(new AudioElement[] {b2},
+                hub.queryElements(new ElementQuery().withLanguage(Language.FRENCH), null, 10).getItems());
+
+        ElementPage first = hub.queryElements(null, null, 3);
+        Assertions.assertArrayEquals(new AudioElement[] {sg1, sg2, sg3}, first.getItems());
+        Assertions.assertEquals(5, first.getTotal());
+        Assertions.assertArrayEquals(new AudioElement[] {b1, b2}, hub.queryElements(null, first.getNextCursor(), 3).getItems());
+
+        hub.deleteElement(sg1.getTitle());
+        Assertions.assertEquals(0, hub.queryElements(artist1, null, 10).getTotal());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.queryElements(artist1, null, 0));
+    }
+
+    @Test
+    public void testChangesSince() throws Exception {
+        long version = hub.catalogVersion();
+        ChangePage all = hub.changesSince(0, 100);
+        Assertions.assertFalse(all.isSnapshot());
+        Assertions.assertEquals(version, all.getVersion());
+        Assertions.assertEquals(9, all.getUpdates().length);
+        Assertions.assertEquals(alb1.getUuid(), all.getUpdates()[5].getAlbum().getUuid());
+
+        // the new album is sent empty, followed by its songs
+        Album alb3 = new Album("Album3", "Artist2", 100, new Date(3000));
+        hub.addBatch(new CatalogBatch().addAlbum(alb3).addToAlbum("Song3", "Album3"));
+        CatalogUpdate[] batch = hub.changesSince(version, 100).getUpdates();
+        Assertions.assertEquals(2, batch.length);
+        Assertions.assertTrue(batch[0].getAlbum().getSongs().isEmpty());
+        Assertions.assertEquals(CatalogUpdate.Type.ADD_TO_ALBUM, batch[1].getType());
+        Assertions.assertEquals(sg3.getUuid(), batch[1].getTarget());
+        Assertions.assertEquals(Collections.singletonList(sg3.getUuid()), hub.albumByTitle("Album3").getSongs());
+
+        hub.deleteElement("Song1");
+        ChangePage deletion = hub.changesSince(version + 1, 100);
+        Assertions.assertEquals(CatalogUpdate.Type.DELETE_ELEMENT, deletion.getUpdates()[0].getType());
+        Assertions.assertEquals(hub.catalogVersion(), deletion.getVersion());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.changesSince(0, 0));
+    }
+
+    @Test
+    public void testChangesSinceSendsSnapshotToUnknownVersion() {
+        ChangePage page = hub.changesSince(hub.catalogVersion() + 10, 100);
+        Assertions.assertTrue(page.isSnapshot());
+        Assertions.assertEquals(hub.catalogVersion(), page.getVersion());
+        Assertions.assertEquals(5, page.getElements().length);
+        Assertions.assertEquals(2, page.getAlbums().length);
+        Assertions.assertEquals(2, page.getPlaylists().length);
+    }
+
+    @Test
+    public void testSnapshotIsSentInParts() {
+        long version = hub.catalogVersion();
+        ChangePage page = hub.changesSince(version + 10, 4);
+        Assertions.assertTrue(page.isSnapshot());
+        Assertions.assertTrue(page.isMore());
+        Assertions.assertEquals(4, page.getElements().length);
+
+        // the parts are read from the snapshot, not from the catalog changed meanwhile
+        hub.addAlbum(new Album("Album3", "Artist2", 100, new Date(3000)));
+        int elements = page.getElements().length, albums = 0, playlists = 0;
+        while (page.isMore()) {
+            page = hub.snapshotAfter(version, page.getCursor(), 4);
+            Assertions.assertEquals(version, page.getVersion());
+            elements += page.getElements().length;
+            albums += page.getAlbums().length;
+            playlists += page.getPlaylists().length;
+        }
+        Assertions.assertNull(page.getCursor());
+        Assertions.assertEquals(5, elements);
+        Assertions.assertEquals(2, albums);
+        Assertions.assertEquals(2, playlists);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> hub.snapshotAfter(version + 10, "4", 4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.snapshotAfter(version, "-", 4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hub.snapshotAfter(version, "4", 0));
+    }
+
     // Performance
 }
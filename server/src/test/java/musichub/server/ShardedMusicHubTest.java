@@ -0,0 +1,321 @@
+package musichub.server;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+import musichub.business.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.Endpoint;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.MTOMFeature;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ShardedMusicHubTest {
+    private final static Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final QName SERVICE = new QName("http://server.musichub/", "ServerMusicHubService");
+    private static final QName SHARD_SERVICE = new QName("http://server.musichub/", "ShardHubService");
+    private static final int SHARDS = 3;
+    private static final int SONGS = 30;
+
+    static {
+        // the SAAJ API pulled by jaxws-api defaults to the implementation bundled with Java 8
+        System.setProperty("javax.xml.soap.MetaFactory", "com.sun.xml.messaging.saaj.soap.SAAJMetaFactoryImpl");
+    }
+
+    private final List<ServerMusicHub> shards = new ArrayList<>();
+    private ShardedMusicHub router;
+    private final List<Song> songs = new ArrayList<>();
+    private final AudioBook b1 = new AudioBook("Book1", "Artist2", 293, "unknownFile", Language.GERMAN, Category.SPEECH);
+
+    private HttpServer httpServer;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+
+    public ShardedMusicHubTest() {
+        LOGGER.setLevel(Level.OFF);
+    }
+
+    @BeforeEach
+    public void initShards() throws Exception {
+        for (int i = 0; i < SHARDS; i++)
+            shards.add(new ServerMusicHub());
+        router = new ShardedMusicHub(new ArrayList<>(shards), new ArrayList<>(shards));
+
+        for (int i = 0; i < SONGS; i++) {
+            Song song = new Song("Song" + i, "Artist" + (i % 4), 100 + i, "unknownFile", Genre.values()[i % Genre.values().length]);
+            songs.add(song);
+            router.addElement(song, null);
+        }
+        router.addElement(b1, null);
+
+        Album album = new Album("Album1", "Artist1", 250, new Date(2000));
+        for (int i = 0; i < 10; i++)
+            album.addSong(songs.get(i).getUuid());
+        router.addAlbum(album);
+        router.addPlaylist(new PlayList("Playlist1"));
+    }
+
+    @AfterEach
+    public void stop() {
+        for (Endpoint endpoint : endpoints)
+            endpoint.stop();
+        if (httpServer != null)
+            httpServer.stop(0);
+        router.close();
+        for (ServerMusicHub shard : shards)
+            shard.close();
+    }
+
+    private static List<String> titles(AudioElement[] elements) {
+        List<String> titles = new ArrayList<>();
+        for (AudioElement element : elements)
+            titles.add(element.getTitle());
+        return titles;
+    }
+
+    @Test
+    public void testElementsArePartitioned() {
+        int total = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            for (AudioElement element : shards.get(i).elements())
+                Assertions.assertEquals(i, ShardedMusicHub.shardOf(element.getUuid(), SHARDS));
+            // spread over every shard
+            Assertions.assertTrue(shards.get(i).elementCount() > 0);
+            total += shards.get(i).elementCount();
+        }
+
+        Assertions.assertEquals(SONGS + 1, total);
+        Assertions.assertEquals(SONGS + 1, router.elementCount());
+        Assertions.assertEquals(SONGS, router.songs().length);
+        Assertions.assertEquals(1, router.audioBookCount());
+        Assertions.assertEquals(1, router.albumCount());
+    }
+
+    @Test
+    public void testPointLookups() throws Exception {
+        Assertions.assertEquals(songs.get(7).getUuid(), router.elementByTitle("song7").getUuid());
+        Assertions.assertThrows(NoElementFoundException.class, () -> router.elementByTitle("Unknown"));
+        Assertions.assertEquals("Album1", router.albumByTitle("Album1").getTitle());
+
+        ElementLookup byTitle = router.elementsByTitle(new String[] {"Song3", "Unknown", "Book1", "Song12"});
+        Assertions.assertEquals(Arrays.asList("Song3", "Book1", "Song12"), titles(byTitle.getFound()));
+        Assertions.assertArrayEquals(new String[] {"Unknown"}, byTitle.getMissing());
+
+        String deleted = UUID.randomUUID().toString();
+        ElementLookup byId = router.elementsById(new String[] {songs.get(20).getUuid().toString(), deleted, "not an id",
+                songs.get(2).getUuid().toString()});
+        Assertions.assertEquals(Arrays.asList("Song20", "Song2"), titles(byId.getFound()));
+        Assertions.assertArrayEquals(new String[] {deleted, "not an id"}, byId.getMissing());
+    }
+
+    @Test
+    public void testAlbumsResolveMembersOfEveryShard() throws Exception {
+        Song[] albumSongs = router.getAlbumSongs("Album1");
+        Assertions.assertEquals(Arrays.asList("Song0", "Song1", "Song2", "Song3", "Song4", "Song5", "Song6", "Song7",
+                "Song8", "Song9"), titles(albumSongs));
+
+        Song[] byGenre = router.getAlbumSongsSortedByGenre("Album1");
+        for (int i = 1; i < byGenre.length; i++)
+            Assertions.assertTrue(byGenre[i - 1].getGenre().compareTo(byGenre[i].getGenre()) <= 0);
+
+        router.addElementToPlayList("Book1", "Playlist1");
+        router.addElementToPlayList("Song25", "Playlist1");
+        Assertions.assertEquals(Arrays.asList("Book1", "Song25"), titles(router.getPlaylistElements("Playlist1")));
+        Assertions.assertThrows(NoElementFoundException.class, () -> router.addElementToAlbum("Book1", "Album1"));
+    }
+
+    @Test
+    public void testBatchAcrossShards() throws Exception {
+        Album album = new Album("Album2", "Artist1", 100, new Date(1000));
+        router.addBatch(new CatalogBatch()
+                .addElement(new Song("New song", "Artist1", 10, "", Genre.JAZZ))
+                .addAlbum(album)
+                .addToAlbum("New song", "Album2")
+                .addToAlbum("Song15", "Album2")
+                .addToAlbum("Song16", "Album1")
+                .addToPlayList("Song17", "Playlist1"));
+
+        Assertions.assertEquals(Arrays.asList("New song", "Song15"), titles(router.getAlbumSongs("Album2")));
+        Assertions.assertEquals(11, router.getAlbumSongs("Album1").length);
+        Assertions.assertEquals(Collections.singletonList("Song17"), titles(router.getPlaylistElements("Playlist1")));
+        Assertions.assertEquals(Arrays.asList("Album2", "Album1"), Arrays.asList(router.getAlbumsSortedByDate()[0].getTitle(),
+                router.getAlbumsSortedByDate()[1].getTitle()));
+
+        // nothing is added if a title is missing
+        int count = router.elementCount();
+        Assertions.assertThrows(NoPlayListFoundException.class, () -> router.addBatch(new CatalogBatch()
+                .addElement(new Song("Other song", "Artist1", 10, "", Genre.JAZZ)).addToPlayList("Other song", "Unknown")));
+        Assertions.assertEquals(count, router.elementCount());
+    }
+
+    @Test
+    public void testSortedListingsAreMerged() {
+        Random random = new Random(42);
+        for (int i = 0; i < 40; i++) {
+            router.addAlbum(new Album("Dated" + i, "Artist1", 100, new Date(random.nextInt(20) * 1000L)));
+            router.addElement(new AudioBook("Book" + (i + 2), "Author" + random.nextInt(10), 100, "unknownFile",
+                    Language.FRENCH, Category.NOVEL), null);
+        }
+
+        Album[] byDate = router.getAlbumsSortedByDate();
+        Assertions.assertEquals(router.albumCount(), byDate.length);
+        for (int i = 1; i < byDate.length; i++)
+            Assertions.assertTrue(byDate[i - 1].getDate().compareTo(byDate[i].getDate()) <= 0);
+
+        AudioBook[] byAuthor = router.getAudiobooksSortedByAuthor();
+        Assertions.assertEquals(router.audioBookCount(), byAuthor.length);
+        for (int i = 1; i < byAuthor.length; i++)
+            Assertions.assertTrue(byAuthor[i - 1].getArtist().compareTo(byAuthor[i].getArtist()) <= 0);
+    }
+
+    @Test
+    public void testReadersFollowTheShards(@TempDir File dir) throws Exception {
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> router.changesSince(0, 10));
+
+        // a replica of each shard, sharded the same way
+        List<ReplicaMusicHub> replicas = new ArrayList<>();
+        for (ServerMusicHub shard : shards)
+            replicas.add(new ReplicaMusicHub(shard, new File(dir, "replica" + replicas.size())));
+        ShardedMusicHub copy = new ShardedMusicHub(new ArrayList<>(replicas), new ArrayList<>(shards));
+        try {
+            router.addElement(new Song("Song" + SONGS, "Artist1", 100, "unknownFile", Genre.POP), null);
+            for (int i = 0; i < SHARDS; i++)
+                Assertions.assertEquals(shards.get(i).catalogVersion(), replicas.get(i).catchUp());
+            Assertions.assertEquals(SONGS + 2, copy.elementCount());
+            Assertions.assertEquals(10, copy.getAlbumSongs("Album1").length);
+        } finally {
+            copy.close();
+            for (ReplicaMusicHub replica : replicas)
+                replica.close();
+        }
+    }
+
+    @Test
+    public void testTitlesAreUniqueAcrossShards() throws Exception {
+        // an element with a taken title, on another shard than the one holding it
+        int owner = ShardedMusicHub.shardOf(songs.get(1).getUuid(), SHARDS);
+        Song copy;
+        do {
+            copy = new Song("SONG1", "Artist2", 100, "unknownFile", Genre.JAZZ);
+        } while (ShardedMusicHub.shardOf(copy.getUuid(), SHARDS) == owner);
+        Song duplicate = copy;
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> router.addElement(duplicate, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> router.beginUpload(duplicate));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> router.addAlbum(new Album("album1", "Artist2", 100, new Date(3000))));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> router.addPlaylist(new PlayList("Playlist1")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> router.addBatch(new CatalogBatch().addElement(duplicate)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> router.addBatch(new CatalogBatch()
+                .addPlaylist(new PlayList("Playlist2")).addPlaylist(new PlayList("playlist2"))));
+        Assertions.assertEquals(SONGS + 1, router.elementCount());
+        Assertions.assertEquals(1, router.playlistCount());
+        Assertions.assertEquals("Artist1", router.elementByTitle("Song1").getArtist());
+
+        // an entity added again keeps its title
+        router.addElement(songs.get(1), null);
+        Assertions.assertEquals(SONGS + 1, router.elementCount());
+    }
+
+    @Test
+    public void testDeleteElementCascadesToEveryShard() throws Exception {
+        router.addElementToPlayList("Song3", "Playlist1");
+        router.deleteElement("Song3");
+
+        Assertions.assertEquals(SONGS, router.elementCount());
+        Assertions.assertEquals(9, router.getAlbumSongs("Album1").length);
+        Assertions.assertEquals(0, router.getPlaylistElements("Playlist1").length);
+        Assertions.assertThrows(NoElementFoundException.class, () -> router.deleteElement("Song3"));
+
+        router.deleteAlbum("Album1");
+        Assertions.assertEquals(0, router.albumCount());
+    }
+
+    @Test
+    public void testPagesGoThroughEveryShard() {
+        Set<String> listed = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ElementPage page = router.elementsAfter(cursor, 4);
+            Assertions.assertEquals(SONGS + 1, page.getTotal());
+            Assertions.assertTrue(page.getItems().length > 0);
+            for (AudioElement element : page.getItems())
+                Assertions.assertTrue(listed.add(element.getTitle()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        Assertions.assertEquals(SONGS + 1, listed.size());
+        Assertions.assertEquals(8, pages);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> router.elementsAfter("9:", 4));
+
+        Set<String> offsets = new HashSet<>();
+        for (int offset = 0; offset < SONGS; offset += 7)
+            offsets.addAll(titles(router.songsPage(offset, 7)));
+        Assertions.assertEquals(SONGS, offsets.size());
+        Assertions.assertEquals(0, router.songsPage(SONGS, 7).length);
+
+        ElementPage artist1 = router.queryElements(new ElementQuery().withArtist("Artist1"), null, 100);
+        Assertions.assertEquals(SONGS / 4 + 1, artist1.getItems().length);
+        Assertions.assertEquals(artist1.getItems().length, artist1.getTotal());
+        Assertions.assertNull(artist1.getNextCursor());
+    }
+
+    @Test
+    public void testSearchInterleavesShards() {
+        Assertions.assertEquals(SONGS, router.searchElements("Song", false, 100).length);
+        Assertions.assertEquals(5, router.searchElements("Song", false, 5).length);
+        Assertions.assertEquals(1, router.searchAlbums("Album1", false, 10).length);
+    }
+
+    private void publish(String path, Object implementor) {
+        HttpContext context = httpServer.createContext(path);
+        Endpoint endpoint = Endpoint.create(implementor);
+        endpoint.publish(context);
+        endpoints.add(endpoint);
+    }
+
+    @Test
+    public void testRemoteShards() throws Exception {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.start();
+        List<IMusicHub> ports = new ArrayList<>();
+        List<ShardHub> shardPorts = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            String base = "http://localhost:" + httpServer.getAddress().getPort() + "/shard" + i;
+            publish("/shard" + i + HubEndpoint.PATH, shards.get(i));
+            publish("/shard" + i + HubEndpoint.SHARD_PATH, new ShardHubService(shards.get(i)));
+
+            ports.add(Service.create(new URL(base + HubEndpoint.PATH + "?wsdl"), SERVICE).getPort(IMusicHub.class, new MTOMFeature()));
+            shardPorts.add(Service.create(new URL(base + HubEndpoint.SHARD_PATH + "?wsdl"), SHARD_SERVICE).getPort(ShardHub.class));
+        }
+
+        ShardedMusicHub remote = new ShardedMusicHub(ports, shardPorts);
+        try {
+            Assertions.assertEquals(SONGS + 1, remote.elements().length);
+            Assertions.assertEquals(10, remote.getAlbumSongs("Album1").length);
+            remote.addElementToAlbum("Song20", "Album1");
+            Assertions.assertEquals(11, router.getAlbumSongs("Album1").length);
+            Assertions.assertEquals(0, remote.getPlaylistElements("Playlist1").length);
+            Assertions.assertEquals(router.catalogVersion(), remote.catalogVersion());
+
+            remote.deleteElement("Song3");
+            Assertions.assertEquals(10, router.getAlbumSongs("Album1").length);
+            Assertions.assertEquals(SONGS, router.elementCount());
+        } finally {
+            remote.close();
+        }
+    }
+}
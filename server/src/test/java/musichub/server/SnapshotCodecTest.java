@@ -0,0 +1,115 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+public class SnapshotCodecTest {
+    @TempDir
+    File dir;
+
+    private final Song sg1 = new Song("Song1", "Artist1", 120, "unknownFile1", Genre.POP);
+    private final Song sg2 = new Song("Song2", "Artist1", 130, null, Genre.METAL);
+    private final AudioBook b1 = new AudioBook("Book1", "ZArtist3", 293, "unknownFile4", Language.GERMAN, Category.SPEECH);
+    private final Album alb1 = new Album("Album1", "Artist1", 250, new Date(2000));
+    private final PlayList pl1 = new PlayList("Playlist1");
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        alb1.addSong(sg1.getUuid());
+        alb1.addSong(sg2.getUuid());
+        pl1.addElement(b1.getUuid());
+
+        CatalogDocument document = new CatalogDocument();
+        document.version = 42;
+        document.elements.add(sg1);
+        document.elements.add(sg2);
+        document.elements.add(b1);
+        document.albums.add(alb1);
+        document.playlists.add(pl1);
+
+        File file = new File(dir, "musichub.dat");
+        SnapshotCodec.write(document, file);
+        CatalogDocument read = SnapshotCodec.read(file);
+
+        Assertions.assertEquals(42, read.version);
+        Assertions.assertEquals(3, read.elements.size());
+        Assertions.assertEquals(sg1.toString(), read.elements.get(0).toString());
+        Assertions.assertEquals(sg2.toString(), read.elements.get(1).toString());
+        Assertions.assertEquals(b1.toString(), read.elements.get(2).toString());
+        Assertions.assertEquals(b1.getUuid(), read.elements.get(2).getUuid());
+
+        Album album = read.albums.get(0);
+        Assertions.assertEquals(alb1.getUuid(), album.getUuid());
+        Assertions.assertEquals(alb1.getDate(), album.getDate());
+        Assertions.assertEquals(alb1.getSongs(), album.getSongs());
+        Assertions.assertEquals(pl1.getElements(), read.playlists.get(0).getElements());
+    }
+
+    @Test
+    public void testRejectsForeignFile() throws IOException {
+        File file = new File(dir, "musichub.dat");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("<?xml version=\"1.0\"?>".getBytes());
+        }
+
+        Assertions.assertThrows(IOException.class, () -> SnapshotCodec.read(file));
+    }
+
+    @Test
+    public void testCorruptedFileThrowsIOException() throws IOException {
+        alb1.addSong(sg1.getUuid());
+        pl1.addElement(b1.getUuid());
+        CatalogDocument document = new CatalogDocument();
+        document.elements.add(sg1);
+        document.elements.add(b1);
+        document.albums.add(alb1);
+        document.playlists.add(pl1);
+
+        File file = new File(dir, "musichub.dat");
+        SnapshotCodec.write(document, file);
+        byte[] valid = Files.readAllBytes(file.toPath());
+
+        // every byte replaced by values read as negative or huge lengths, counts and ordinals
+        for (int i = 0; i < valid.length; i++) {
+            for (byte value : new byte[] {(byte) 0x7F, (byte) 0x80, (byte) 0xFF, 0x10}) {
+                byte[] corrupted = valid.clone();
+                corrupted[i] = value;
+                Files.write(file.toPath(), corrupted);
+                try {
+                    SnapshotCodec.read(file);
+                } catch (IOException expected) {
+                    // the only failure allowed
+                }
+            }
+        }
+
+        for (int length = 0; length < valid.length; length++) {
+            Files.write(file.toPath(), Arrays.copyOf(valid, length));
+            Assertions.assertThrows(IOException.class, () -> SnapshotCodec.read(file));
+        }
+    }
+
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    public void testLargeCatalog() throws IOException {
+        CatalogDocument document = new CatalogDocument();
+        for (int i = 0; i < 500000; i++)
+            document.elements.add(new Song("s" + i, "artist" + (i % 100), 100, "f" + i, Genre.HIPHOP));
+
+        File file = new File(dir, "musichub.dat");
+        SnapshotCodec.write(document, file);
+
+        Assertions.assertEquals(500000, SnapshotCodec.read(file).elements.size());
+    }
+}
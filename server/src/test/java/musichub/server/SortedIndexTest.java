@@ -0,0 +1,56 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+
+public class SortedIndexTest {
+    private final CatalogStore<AudioElement> store = new CatalogStore<>(AudioElement::getUuid, AudioElement::getTitle, AudioElement[]::new);
+    private final SortedIndex<AudioElement, AudioBook> byArtist =
+            new SortedIndex<>(AudioBook.class, Comparator.comparing(AudioElement::getArtist), AudioBook[]::new);
+
+    private final AudioBook b1 = new AudioBook("Book1", "Zola", 100, "", Language.FRENCH, Category.NOVEL);
+    private final AudioBook b2 = new AudioBook("Book2", "Balzac", 100, "", Language.FRENCH, Category.NOVEL);
+    private final AudioBook b3 = new AudioBook("Book3", "Zola", 100, "", Language.FRENCH, Category.NOVEL);
+    private final Song sg1 = new Song("Song1", "Abba", 120, "", Genre.POP);
+
+    public SortedIndexTest() {
+        store.addListener(byArtist);
+    }
+
+    @Test
+    public void testSortedAndFiltered() {
+        store.add(b1);
+        store.add(sg1);
+        store.add(b2);
+        store.add(b3);
+
+        // equal artists keep the insertion order
+        Assertions.assertArrayEquals(new AudioBook[] { b2, b1, b3 }, byArtist.toArray());
+    }
+
+    @Test
+    public void testFollowsRemovals() {
+        store.add(b1);
+        store.add(b2);
+        Assertions.assertArrayEquals(new AudioBook[] { b2, b1 }, byArtist.toArray());
+
+        store.remove(b2.getUuid());
+        Assertions.assertArrayEquals(new AudioBook[] { b1 }, byArtist.toArray());
+
+        // replacing an entity moves it after the entities with the same key
+        store.add(b3);
+        store.add(b1);
+        Assertions.assertArrayEquals(new AudioBook[] { b3, b1 }, byArtist.toArray());
+    }
+
+    @Test
+    public void testCopyMayBeModified() {
+        store.add(b1);
+        byArtist.toArray()[0] = null;
+
+        Assertions.assertArrayEquals(new AudioBook[] { b1 }, byArtist.toArray());
+    }
+}
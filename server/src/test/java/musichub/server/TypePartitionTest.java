@@ -0,0 +1,52 @@
+package musichub.server;
+
+import musichub.business.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TypePartitionTest {
+    private final CatalogStore<AudioElement> store = new CatalogStore<>(AudioElement::getUuid, AudioElement::getTitle, AudioElement[]::new);
+    private final TypePartition<AudioElement, Song> songs = new TypePartition<>(Song.class, Song[]::new);
+
+    private final Song sg1 = new Song("Song1", "Artist1", 120, "", Genre.POP);
+    private final Song sg2 = new Song("Song2", "Artist1", 130, "", Genre.ROCK);
+    private final AudioBook b1 = new AudioBook("Book1", "Artist2", 100, "", Language.FRENCH, Category.NOVEL);
+
+    public TypePartitionTest() {
+        store.addListener(songs);
+    }
+
+    @Test
+    public void testOnlyType() {
+        store.add(sg1);
+        store.add(b1);
+        store.add(sg2);
+
+        Assertions.assertEquals(2, songs.size());
+        Assertions.assertArrayEquals(new Song[] { sg1, sg2 }, songs.view().items);
+    }
+
+    @Test
+    public void testViewCachedUntilChange() {
+        store.add(sg1);
+        CatalogStore.View<Song> view = songs.view();
+
+        store.add(b1);
+        Assertions.assertSame(view, songs.view());
+
+        store.remove(sg1.getUuid());
+        Assertions.assertEquals(0, songs.view().items.length);
+        Assertions.assertEquals(0, songs.size());
+    }
+
+    @Test
+    public void testSequencesFollowStore() {
+        store.add(sg1);
+        store.add(b1);
+        store.add(sg2);
+
+        CatalogStore.View<Song> view = songs.view();
+        Assertions.assertEquals(1, view.indexAfter(view.sequence(0)));
+        Assertions.assertEquals(2, view.indexAfter(view.sequence(1)));
+    }
+}